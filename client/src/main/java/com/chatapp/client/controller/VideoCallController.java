@@ -1,3 +1,90 @@
 package com.chatapp.client.controller;
 
-public class VideoCallController {}
+import com.chatapp.client.media.VideoRenderer;
+import com.chatapp.client.model.CallSession;
+import com.chatapp.client.model.CallStats;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.fxml.FXML;
+import javafx.scene.control.Label;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.StackPane;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+
+/**
+ * Cửa sổ cuộc gọi video: video của bên kia (VideoRenderer), trạng thái và nút gác máy.
+ * Đóng cửa sổ là gác máy (xử lý ở nơi mở cửa sổ qua setOnHidden).
+ * Nút "Thống kê" bật overlay debug (CallStats.describe), cập nhật mỗi giây khi đang hiện.
+ */
+public class VideoCallController {
+    @FXML private StackPane root;
+    @FXML private ImageView remoteView;
+    @FXML private Label statusLabel;
+    @FXML private Label statsLabel;
+
+    private VideoRenderer renderer;
+    private CallSession call;
+    private final Timeline statsTimeline = new Timeline(new KeyFrame(Duration.seconds(1), event -> updateStats()));
+
+    @FXML
+    private void initialize() {
+        // Ảnh co theo cửa sổ, giữ tỉ lệ (GPU scale, không tạo ảnh mới)
+        remoteView.fitWidthProperty().bind(root.widthProperty());
+        remoteView.fitHeightProperty().bind(root.heightProperty());
+        statsTimeline.setCycleCount(Timeline.INDEFINITE);
+    }
+
+    /**
+     * Gắn cuộc gọi: bắt đầu nhận và hiển thị video của bên kia
+     */
+    public void setCall(CallSession call) {
+        this.call = call;
+        if (renderer == null && call.isVideo()) {
+            renderer = new VideoRenderer(remoteView);
+            call.attachVideoRenderer(renderer);
+            renderer.start();
+        }
+        updateState(call);
+    }
+
+    public void updateState(CallSession call) {
+        statusLabel.setText(call.getState() == CallSession.State.CONNECTED
+                ? "Đang trong cuộc gọi với " + call.getPeerId()
+                : "Đang gọi...");
+    }
+
+    /**
+     * Dừng renderer (gọi khi cửa sổ đóng)
+     */
+    public void stop() {
+        statsTimeline.stop();
+        if (renderer != null) {
+            renderer.stop();
+            renderer = null;
+        }
+    }
+
+    @FXML
+    private void toggleStats() {
+        boolean show = !statsLabel.isVisible();
+        statsLabel.setVisible(show);
+        if (show) {
+            updateStats();
+            statsTimeline.play();
+        } else {
+            statsTimeline.stop();
+        }
+    }
+
+    private void updateStats() {
+        if (call != null) {
+            statsLabel.setText(CallStats.describe(call));
+        }
+    }
+
+    @FXML
+    private void hangup() {
+        ((Stage) root.getScene().getWindow()).close();
+    }
+}
@@ -1,13 +1,22 @@
 package com.chatapp.client.controller.component;
 
+import com.chatapp.client.service.AuthService;
+import com.chatapp.client.service.ChatService;
+import com.chatapp.client.service.GroupService;
+import com.chatapp.common.model.ConversationSummary;
+import com.chatapp.common.model.Group;
+import com.chatapp.common.model.User;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 
+import java.util.List;
+
 public class ChatListController {
     @FXML private TextField searchField;
-    @FXML private ListView<?> chatListView;
+    @FXML private ListView<String> chatListView;
     @FXML private Button allChatsTab;
     @FXML private Button groupsTab;
 
@@ -17,6 +26,7 @@ public class ChatListController {
     public void initialize() {
         activeTab = allChatsTab;
         System.out.println("[CHAT LIST] Initialized");
+        loadConversations();
     }
 
     @FXML
@@ -34,12 +44,60 @@ public class ChatListController {
     private void showAllChats() {
         setActiveTab(allChatsTab);
         System.out.println("Show all chats");
+        loadConversations();
     }
 
     @FXML
     private void showGroups() {
         setActiveTab(groupsTab);
         System.out.println("Show groups");
+        loadGroups();
+    }
+
+    /**
+     * Tải danh sách chat (tin nhắn cuối + số chưa đọc) bằng một request
+     */
+    private void loadConversations() {
+        User currentUser = AuthService.getInstance().getCurrentUser();
+        if (currentUser == null) return;
+
+        new Thread(() -> {
+            try {
+                List<ConversationSummary> conversations =
+                        ChatService.getInstance().getConversations(currentUser.getId());
+                Platform.runLater(() -> {
+                    chatListView.getItems().clear();
+                    for (ConversationSummary conversation : conversations) {
+                        String title = conversation.getTitle() != null ? conversation.getTitle() : "Chat";
+                        String unread = conversation.getUnreadCount() > 0
+                                ? " (" + conversation.getUnreadCount() + ")" : "";
+                        String last = conversation.getLastContent() != null ? conversation.getLastContent() : "";
+                        chatListView.getItems().add(title + unread + "\n" + last);
+                    }
+                });
+            } catch (Exception e) {
+                System.err.println("[CHAT LIST] Failed to load conversations: " + e.getMessage());
+            }
+        }).start();
+    }
+
+    private void loadGroups() {
+        User currentUser = AuthService.getInstance().getCurrentUser();
+        if (currentUser == null) return;
+
+        new Thread(() -> {
+            try {
+                List<Group> groups = GroupService.getInstance().getGroups(currentUser.getId());
+                Platform.runLater(() -> {
+                    chatListView.getItems().clear();
+                    for (Group group : groups) {
+                        chatListView.getItems().add(group.getName() + " (" + group.getMemberCount() + ")");
+                    }
+                });
+            } catch (Exception e) {
+                System.err.println("[CHAT LIST] Failed to load groups: " + e.getMessage());
+            }
+        }).start();
     }
 
     private void setActiveTab(Button tab) {
@@ -1,13 +1,33 @@
 package com.chatapp.client.controller.component;
 
+import com.chatapp.client.controller.VideoCallController;
+import com.chatapp.client.media.VoiceNotePlayer;
+import com.chatapp.client.media.VoiceNoteRecorder;
+import com.chatapp.client.model.CallSession;
+import com.chatapp.client.service.AuthService;
+import com.chatapp.client.service.CallService;
+import com.chatapp.client.service.ChatService;
+import com.chatapp.client.service.FileService;
+import com.chatapp.common.model.FileInfo;
+import com.chatapp.common.model.Message;
+import com.chatapp.common.model.User;
+import com.chatapp.common.protocol.Packet;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
+import javafx.fxml.FXMLLoader;
 import javafx.geometry.Insets;
+import javafx.scene.Parent;
+import javafx.scene.Cursor;
+import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
 
 public class ChatViewController {
     @FXML private Label contactNameLabel;
@@ -24,26 +44,359 @@ public class ChatViewController {
     @FXML private Button emojiBtn;
     @FXML private Button voiceBtn;
 
+    private static final int PAGE_SIZE = 50;
+    private static final int SEARCH_LIMIT = 20;
+    private static final long P2P_MIN_SIZE = 8L * 1024 * 1024;
+    private static final long VOICE_MIN_MS = 300;
+
+    private final ChatService chatService = ChatService.getInstance();
+    private Long peerId;
+    private Long groupId;
+    private Long oldestSequence;
+    private boolean hasMoreHistory;
+    private boolean loadingHistory;
+    private Long lastSentSequence;
+    private String peerStatusText;
+    private final Label seenLabel = new Label("Đã xem");
+    private Stage callStage;
+    private VideoCallController callController;
+    private VoiceNoteRecorder voiceRecorder;
+    private FileService.LiveUpload voiceUpload;
+    private VoiceNotePlayer voicePlayer;
+
     @FXML
     public void initialize() {
         System.out.println("[CHAT VIEW] Initialized");
 
+        // Cuộn lên đầu -> tải trang cũ hơn theo keyset (beforeSequence)
+        messagesScrollPane.vvalueProperty().addListener((obs, oldValue, newValue) -> {
+            if (newValue.doubleValue() <= 0.0 && (peerId != null || groupId != null)) {
+                loadOlderMessages();
+            }
+        });
+
+        // Báo "đang nhập" khi gõ, "dừng nhập" khi ô nhập trống (ChatService tự giới hạn tần suất)
+        messageInputField.textProperty().addListener((obs, oldText, newText) -> {
+            if (peerId != null) {
+                chatService.sendTypingIndicator(peerId, !newText.isEmpty());
+            }
+        });
+
+        seenLabel.setStyle("-fx-text-fill: #888888; -fx-font-size: 11px;");
+
+        FileService.getInstance().setPeerOfferListener(offer -> Platform.runLater(() -> handlePeerOffer(offer)));
+        CallService.getInstance().setCallListener(new CallService.CallListener() {
+            @Override
+            public void onIncomingCall(CallSession call) {
+                Platform.runLater(() -> handleIncomingCall(call));
+            }
+
+            @Override
+            public void onCallConnected(CallSession call) {
+                Platform.runLater(() -> showCallWindow(call));
+            }
+
+            @Override
+            public void onCallEnded(CallSession call, String reason) {
+                Platform.runLater(() -> closeCallWindow(reason));
+            }
+        });
+
         // Test buttons
         if (videoCallBtn != null) System.out.println("[CHAT VIEW] Video call button found");
         if (attachBtn != null) System.out.println("[CHAT VIEW] Attach button found");
         if (emojiBtn != null) System.out.println("[CHAT VIEW] Emoji button found");
     }
 
+    /**
+     * Mở cuộc trò chuyện với một người: trang mới nhất được server phục vụ từ cache RAM
+     */
+    public void openConversation(Long peerId, String peerName) {
+        User currentUser = AuthService.getInstance().getCurrentUser();
+        if (currentUser == null) return;
+
+        this.peerId = peerId;
+        this.groupId = null;
+        this.oldestSequence = null;
+        this.hasMoreHistory = false;
+        this.lastSentSequence = null;
+        this.peerStatusText = contactStatusLabel.getText();
+
+        contactNameLabel.setText(peerName);
+        contactAvatarLabel.setText(peerName.substring(0, 1).toUpperCase());
+        messagesContainer.getChildren().clear();
+
+        chatService.setMessageListener(message -> {
+            if (peerId.equals(message.getSenderId())) {
+                Platform.runLater(() -> addMessageToUI(message, false));
+                markRead(message);
+            }
+        });
+
+        chatService.setTypingListener((senderId, typing) -> {
+            if (peerId.equals(senderId)) {
+                Platform.runLater(() -> contactStatusLabel.setText(typing ? "Đang nhập..." : peerStatusText));
+            }
+        });
+
+        chatService.setReadReceiptListener((readerId, readSequence) -> {
+            if (peerId.equals(readerId)) {
+                Platform.runLater(() -> showSeen(readSequence));
+            }
+        });
+
+        new Thread(() -> {
+            try {
+                List<Message> messages = chatService.getMessages(currentUser.getId(), peerId, null, PAGE_SIZE);
+                Platform.runLater(() -> {
+                    for (Message message : messages) {
+                        addMessageToUI(message, currentUser.getId().equals(message.getSenderId()));
+                    }
+                    updateHistoryCursor(messages);
+                });
+                if (!messages.isEmpty()) {
+                    markRead(messages.get(messages.size() - 1));
+                }
+            } catch (Exception e) {
+                System.err.println("[CHAT VIEW] Failed to load messages: " + e.getMessage());
+            }
+        }).start();
+    }
+
+    /**
+     * Mở cuộc trò chuyện nhóm
+     */
+    public void openGroupConversation(Long groupId, String groupName) {
+        User currentUser = AuthService.getInstance().getCurrentUser();
+        if (currentUser == null) return;
+
+        this.peerId = null;
+        this.groupId = groupId;
+        this.oldestSequence = null;
+        this.hasMoreHistory = false;
+        this.lastSentSequence = null;
+
+        contactNameLabel.setText(groupName);
+        contactAvatarLabel.setText(groupName.substring(0, 1).toUpperCase());
+        contactStatusLabel.setText("Nhóm");
+        messagesContainer.getChildren().clear();
+
+        chatService.setTypingListener(null);
+        chatService.setReadReceiptListener(null);
+        chatService.setMessageListener(message -> {
+            if (groupId.equals(message.getGroupId()) && !currentUser.getId().equals(message.getSenderId())) {
+                Platform.runLater(() -> addMessageToUI(message, false));
+                markRead(message);
+            }
+        });
+
+        new Thread(() -> {
+            try {
+                List<Message> messages = chatService.getGroupMessages(currentUser.getId(), groupId, null, PAGE_SIZE);
+                Platform.runLater(() -> {
+                    for (Message message : messages) {
+                        addMessageToUI(message, currentUser.getId().equals(message.getSenderId()));
+                    }
+                    updateHistoryCursor(messages);
+                });
+                if (!messages.isEmpty()) {
+                    markRead(messages.get(messages.size() - 1));
+                }
+            } catch (Exception e) {
+                System.err.println("[CHAT VIEW] Failed to load group messages: " + e.getMessage());
+            }
+        }).start();
+    }
+
+    private void loadOlderMessages() {
+        User currentUser = AuthService.getInstance().getCurrentUser();
+        if (currentUser == null || !hasMoreHistory || loadingHistory) return;
+
+        loadingHistory = true;
+        Long before = oldestSequence;
+        Long currentPeer = peerId;
+        Long currentGroup = groupId;
+
+        new Thread(() -> {
+            try {
+                List<Message> messages = currentGroup != null
+                        ? chatService.getGroupMessages(currentUser.getId(), currentGroup, before, PAGE_SIZE)
+                        : chatService.getMessages(currentUser.getId(), currentPeer, before, PAGE_SIZE);
+                Platform.runLater(() -> {
+                    if (Objects.equals(currentPeer, peerId) && Objects.equals(currentGroup, groupId)) {
+                        for (int i = messages.size() - 1; i >= 0; i--) {
+                            Message message = messages.get(i);
+                            messagesContainer.getChildren().add(0, createMessageLabel(message,
+                                    currentUser.getId().equals(message.getSenderId())));
+                        }
+                        updateHistoryCursor(messages);
+                    }
+                    loadingHistory = false;
+                });
+            } catch (Exception e) {
+                System.err.println("[CHAT VIEW] Failed to load older messages: " + e.getMessage());
+                Platform.runLater(() -> loadingHistory = false);
+            }
+        }).start();
+    }
+
+    private void updateHistoryCursor(List<Message> messages) {
+        if (!messages.isEmpty()) {
+            oldestSequence = messages.get(0).getSequence();
+        }
+        hasMoreHistory = messages.size() == PAGE_SIZE;
+    }
+
+    /**
+     * Gửi watermark đã đọc tới message này (chỉ một gói tin cho cả loạt message đang hiển thị)
+     */
+    private void markRead(Message message) {
+        if (message.getSequence() == null) return;
+        if (peerId != null) {
+            chatService.sendReadReceipt(peerId, message.getSequence());
+        } else if (groupId != null) {
+            chatService.sendGroupReadReceipt(groupId, message.getSequence());
+        }
+    }
+
+    /**
+     * Hiển thị "Đã xem" dưới tin nhắn cuối nếu người kia đã đọc tới nó
+     */
+    private void showSeen(long readSequence) {
+        if (lastSentSequence == null || readSequence < lastSentSequence) return;
+
+        messagesContainer.getChildren().remove(seenLabel);
+        messagesContainer.getChildren().add(seenLabel);
+    }
+
     @FXML
     private void startVideoCall() {
         System.out.println("[ACTION] ✅ Video call button clicked!");
-        showInfo("Video Call", "Đang phát triển tính năng gọi video...");
+
+        User currentUser = AuthService.getInstance().getCurrentUser();
+        if (currentUser == null || peerId == null) {
+            showInfo("Gọi", "Hãy mở cuộc trò chuyện với một người trước");
+            return;
+        }
+
+        Long calleeId = peerId;
+        new Thread(() -> {
+            try {
+                CallSession call = CallService.getInstance().startCall(currentUser.getId(), calleeId, true);
+                Platform.runLater(() -> showCallWindow(call));
+            } catch (Exception e) {
+                System.err.println("[CALL] Start failed: " + e.getMessage());
+                Platform.runLater(() -> showInfo("Gọi", "Không gọi được: " + e.getMessage()));
+            }
+        }, "call-start").start();
+    }
+
+    /**
+     * Có người gọi tới: hỏi nghe hay từ chối
+     */
+    private void handleIncomingCall(CallSession call) {
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Cuộc gọi đến");
+        confirm.setHeaderText(null);
+        confirm.setContentText("Người dùng " + call.getPeerId() + " đang gọi. Nghe máy?");
+
+        if (confirm.showAndWait().filter(button -> button == ButtonType.OK).isEmpty()) {
+            CallService.getInstance().rejectCall(call, "declined");
+            return;
+        }
+
+        new Thread(() -> {
+            try {
+                CallService.getInstance().acceptCall(call);
+            } catch (Exception e) {
+                System.err.println("[CALL] Accept failed: " + e.getMessage());
+                CallService.getInstance().rejectCall(call, "error");
+            }
+        }, "call-accept").start();
+    }
+
+    /**
+     * Cửa sổ cuộc gọi (video của bên kia), đóng cửa sổ là gác máy
+     */
+    private void showCallWindow(CallSession call) {
+        if (callStage != null) {
+            callController.setCall(call);
+            return;
+        }
+
+        try {
+            FXMLLoader loader = new FXMLLoader(getClass().getResource("/view/video-call.fxml"));
+            Parent root = loader.load();
+            callController = loader.getController();
+            callController.setCall(call);
+
+            callStage = new Stage();
+            callStage.setTitle("Cuộc gọi video");
+            callStage.setScene(new Scene(root));
+            callStage.setOnHidden(event -> {
+                callController.stop();
+                callStage = null;
+                callController = null;
+                new Thread(() -> CallService.getInstance().endCall(), "call-end").start();
+            });
+            callStage.show();
+        } catch (IOException e) {
+            System.err.println("[CALL] Cannot open call window: " + e.getMessage());
+            new Thread(() -> CallService.getInstance().endCall(), "call-end").start();
+        }
+    }
+
+    private void closeCallWindow(String reason) {
+        if (callStage != null) {
+            Stage stage = callStage;
+            callController.stop();
+            callStage = null;
+            callController = null;
+            stage.setOnHidden(null);
+            stage.close();
+        }
+        if (!"hangup".equals(reason)) {
+            showInfo("Cuộc gọi", "Cuộc gọi đã kết thúc (" + reason + ")");
+        }
     }
 
     @FXML
     private void searchInChat() {
         System.out.println("[ACTION] ✅ Search button clicked!");
-        showInfo("Tìm kiếm", "Đang phát triển tính năng tìm kiếm...");
+
+        User currentUser = AuthService.getInstance().getCurrentUser();
+        if (currentUser == null || (peerId == null && groupId == null)) {
+            showInfo("Tìm kiếm", "Hãy mở một cuộc trò chuyện trước");
+            return;
+        }
+
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("Tìm kiếm");
+        dialog.setHeaderText("Tìm trong cuộc trò chuyện");
+        dialog.setContentText("Từ khóa:");
+
+        dialog.showAndWait().map(String::trim).filter(q -> !q.isEmpty()).ifPresent(query -> {
+            Long currentPeer = peerId;
+            Long currentGroup = groupId;
+            new Thread(() -> {
+                try {
+                    List<Message> results = chatService.searchMessages(
+                            currentUser.getId(), currentPeer, currentGroup, query, SEARCH_LIMIT);
+
+                    StringBuilder text = new StringBuilder();
+                    for (Message message : results) {
+                        text.append(message.getCreatedAt() != null ? message.getCreatedAt().toLocalDate() + ": " : "")
+                                .append(message.getContent())
+                                .append("\n");
+                    }
+
+                    Platform.runLater(() -> showInfo("Kết quả tìm kiếm",
+                            results.isEmpty() ? "Không tìm thấy tin nhắn nào" : text.toString()));
+                } catch (Exception e) {
+                    System.err.println("[CHAT VIEW] Search failed: " + e.getMessage());
+                }
+            }).start();
+        });
     }
 
     @FXML
@@ -69,20 +422,110 @@ public class ChatViewController {
 
         if (file != null) {
             System.out.println("[FILE] ✅ Selected: " + file.getName());
-            showInfo("File đã chọn", file.getName() + "\n(" + file.length() + " bytes)");
+
+            User currentUser = AuthService.getInstance().getCurrentUser();
+            if ((peerId == null && groupId == null) || currentUser == null) {
+                showInfo("File đã chọn", "Hãy mở một cuộc trò chuyện trước");
+                return;
+            }
+
+            addMessageToUI("📎 " + file.getName() + " (đang gửi...)", true);
+            Long receiverId = peerId;
+            Long targetGroup = groupId;
+            new Thread(() -> {
+                try {
+                    // File lớn gửi cho một người: thử gửi trực tiếp P2P trước, không được thì gửi qua server
+                    if (targetGroup == null && file.length() >= P2P_MIN_SIZE) {
+                        FileService.P2PResult result = FileService.getInstance()
+                                .sendFileP2P(currentUser.getId(), receiverId, file);
+                        if (result == FileService.P2PResult.DELIVERED) {
+                            Platform.runLater(() -> addMessageToUI("📎 " + file.getName() + " (đã gửi trực tiếp)", true));
+                            return;
+                        }
+                        if (result == FileService.P2PResult.DECLINED) {
+                            Platform.runLater(() -> showInfo("Gửi file", "Người nhận đã từ chối file " + file.getName()));
+                            return;
+                        }
+                    }
+
+                    FileInfo fileInfo = FileService.getInstance().uploadFile(currentUser.getId(), file, null);
+                    Packet response = chatService.sendFileMessage(currentUser.getId(),
+                            targetGroup != null ? null : receiverId, targetGroup, fileInfo);
+                    Long sequence = response.getLong("sequence");
+                    if (response.isSuccess() && sequence != null) {
+                        Platform.runLater(() -> lastSentSequence = sequence);
+                    }
+                } catch (Exception e) {
+                    System.err.println("[FILE] Upload failed: " + e.getMessage());
+                    Platform.runLater(() -> showInfo("Gửi file thất bại", e.getMessage()));
+                }
+            }, "file-upload").start();
         }
     }
 
+    /**
+     * Peer muốn gửi file trực tiếp: hỏi người dùng có nhận không và lưu vào đâu
+     */
+    private void handlePeerOffer(Packet offer) {
+        FileService fileService = FileService.getInstance();
+        String fileName = offer.getString("fileName");
+
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Nhận file");
+        confirm.setHeaderText(null);
+        confirm.setContentText("Nhận file " + fileName + " (" + offer.getLong("fileSize") + " bytes)?");
+        if (confirm.showAndWait().filter(button -> button == ButtonType.OK).isEmpty()) {
+            fileService.rejectPeerOffer(offer);
+            return;
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Lưu file");
+        fileChooser.setInitialFileName(fileName);
+        File target = fileChooser.showSaveDialog(messagesContainer.getScene().getWindow());
+        if (target == null) {
+            fileService.rejectPeerOffer(offer);
+            return;
+        }
+
+        new Thread(() -> {
+            try {
+                fileService.acceptPeerOffer(offer, target, null);
+                Platform.runLater(() -> addMessageToUI("📎 " + fileName + " (đã nhận)", false));
+            } catch (Exception e) {
+                // Người gửi sẽ gửi lại qua server, file đến như tin nhắn bình thường
+                System.err.println("[FILE] P2P receive failed: " + e.getMessage());
+            }
+        }, "p2p-download").start();
+    }
+
     @FXML
     private void sendMessage() {
         String text = messageInputField.getText().trim();
         if (!text.isEmpty()) {
             System.out.println("[MESSAGE] ✅ Send: " + text);
 
-            // Add message to UI (temporary)
             addMessageToUI(text, true);
-
             messageInputField.clear();
+
+            User currentUser = AuthService.getInstance().getCurrentUser();
+            if ((peerId != null || groupId != null) && currentUser != null) {
+                Long receiverId = peerId;
+                Long targetGroup = groupId;
+                new Thread(() -> {
+                    try {
+                        Packet response = targetGroup != null
+                                ? chatService.sendGroupMessage(currentUser.getId(), targetGroup, text)
+                                : chatService.sendMessage(currentUser.getId(), receiverId, text);
+                        Long sequence = response.getLong("sequence");
+                        if (response.isSuccess() && sequence != null) {
+                            Platform.runLater(() -> lastSentSequence = sequence);
+                        }
+                    } catch (Exception e) {
+                        System.err.println("[MESSAGE] Send failed: " + e.getMessage());
+                    }
+                }).start();
+            }
         }
     }
 
@@ -104,13 +547,139 @@ public class ChatViewController {
         });
     }
 
+    /**
+     * Nhấn giữ nút micro để ghi âm; bản ghi được upload ngay trong lúc nói
+     * (offer gửi ở thread nền, phần ghi trước khi server nhận lời được giữ lại)
+     */
     @FXML
     private void recordVoice() {
-        System.out.println("[ACTION] ✅ Voice button clicked!");
-        showInfo("Ghi âm", "Đang phát triển tính năng ghi âm...");
+        User currentUser = AuthService.getInstance().getCurrentUser();
+        if ((peerId == null && groupId == null) || currentUser == null || voiceRecorder != null) return;
+
+        try {
+            voiceUpload = FileService.getInstance().startLiveUpload(currentUser.getId(),
+                    "voice-" + System.currentTimeMillis() + VoiceNoteRecorder.FILE_EXTENSION,
+                    VoiceNoteRecorder.MIME_TYPE);
+            voiceRecorder = new VoiceNoteRecorder(voiceUpload);
+            voiceRecorder.start();
+            voiceBtn.setStyle("-fx-background-color: #ea4335;");
+            System.out.println("[VOICE] Recording started");
+        } catch (Exception e) {
+            System.err.println("[VOICE] Cannot start recording: " + e.getMessage());
+            if (voiceUpload != null) {
+                voiceUpload.cancel();
+            }
+            voiceUpload = null;
+            voiceRecorder = null;
+            showInfo("Ghi âm", "Không thể ghi âm: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Thả nút micro: dừng ghi, gửi nốt phần còn lại rồi gửi tin nhắn thoại
+     */
+    @FXML
+    private void sendVoice() {
+        VoiceNoteRecorder recorder = voiceRecorder;
+        FileService.LiveUpload upload = voiceUpload;
+        if (recorder == null) return;
+        voiceRecorder = null;
+        voiceUpload = null;
+        voiceBtn.setStyle(null);
+
+        User currentUser = AuthService.getInstance().getCurrentUser();
+        Long receiverId = peerId;
+        Long targetGroup = groupId;
+        new Thread(() -> {
+            try {
+                long durationMs = recorder.stop();
+                if (durationMs < VOICE_MIN_MS) {
+                    upload.cancel();
+                    return;
+                }
+                FileInfo fileInfo = upload.finish();
+                Packet response = chatService.sendVoiceMessage(currentUser.getId(),
+                        targetGroup != null ? null : receiverId, targetGroup, fileInfo, durationMs);
+                if (!response.isSuccess()) {
+                    System.err.println("[VOICE] Send failed: " + response.getError());
+                    Platform.runLater(() -> showInfo("Gửi tin nhắn thoại thất bại", response.getError()));
+                    return;
+                }
+                Message message = new Message(currentUser.getId(), receiverId,
+                        ChatService.voiceMessageContent(durationMs), Message.MessageType.VOICE);
+                message.setFileId(fileInfo.getId());
+                Long sequence = response.getLong("sequence");
+                Platform.runLater(() -> {
+                    addMessageToUI(message, true);
+                    if (sequence != null) {
+                        lastSentSequence = sequence;
+                    }
+                });
+            } catch (Exception e) {
+                upload.cancel();
+                System.err.println("[VOICE] Send failed: " + e.getMessage());
+                Platform.runLater(() -> showInfo("Gửi tin nhắn thoại thất bại", e.getMessage()));
+            }
+        }, "voice-send").start();
+    }
+
+    /**
+     * Phát tin nhắn thoại trực tiếp từ server (vừa tải vừa phát); bấm lần nữa để dừng
+     */
+    private void playVoice(Long fileId) {
+        User currentUser = AuthService.getInstance().getCurrentUser();
+        if (currentUser == null) return;
+        VoiceNotePlayer playing = voicePlayer;
+        if (playing != null) {
+            playing.stop();
+            voicePlayer = null;
+            return;
+        }
+
+        new Thread(() -> {
+            try {
+                VoiceNotePlayer player = new VoiceNotePlayer(
+                        FileService.getInstance().openStream(currentUser.getId(), fileId, 0, -1));
+                voicePlayer = player;
+                player.play();
+            } catch (Exception e) {
+                System.err.println("[VOICE] Playback failed: " + e.getMessage());
+                Platform.runLater(() -> showInfo("Tin nhắn thoại", "Không thể phát: " + e.getMessage()));
+            } finally {
+                voicePlayer = null;
+            }
+        }, "voice-play").start();
     }
 
     private void addMessageToUI(String text, boolean isSent) {
+        messagesContainer.getChildren().remove(seenLabel);
+        messagesContainer.getChildren().add(createMessageLabel(text, isSent));
+
+        // Scroll to bottom
+        messagesScrollPane.setVvalue(1.0);
+    }
+
+    private void addMessageToUI(Message message, boolean isSent) {
+        messagesContainer.getChildren().remove(seenLabel);
+        messagesContainer.getChildren().add(createMessageLabel(message, isSent));
+        messagesScrollPane.setVvalue(1.0);
+    }
+
+    /**
+     * Tin nhắn thoại bấm vào để nghe, các loại khác hiển thị nội dung
+     */
+    private Label createMessageLabel(Message message, boolean isSent) {
+        Label messageLabel = createMessageLabel(message.getContent(), isSent);
+        if (message.getMessageType() == Message.MessageType.VOICE && message.getFileId() != null) {
+            Long fileId = message.getFileId();
+            messageLabel.setText("▶ " + message.getContent());
+            messageLabel.setCursor(Cursor.HAND);
+            messageLabel.setOnMouseClicked(event -> playVoice(fileId));
+        }
+        return messageLabel;
+    }
+
+    private Label createMessageLabel(String text, boolean isSent) {
         Label messageLabel = new Label(text);
         messageLabel.setWrapText(true);
         messageLabel.setMaxWidth(400);
@@ -124,10 +693,7 @@ public class ChatViewController {
                     "-fx-background-radius: 18 18 18 4; -fx-padding: 10;");
         }
 
-        messagesContainer.getChildren().add(messageLabel);
-
-        // Scroll to bottom
-        messagesScrollPane.setVvalue(1.0);
+        return messageLabel;
     }
 
     private void showInfo(String title, String message) {
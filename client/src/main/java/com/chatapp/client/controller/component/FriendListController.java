@@ -1,6 +1,7 @@
 package com.chatapp.client.controller.component;
 
 import com.chatapp.client.service.FriendService;
+import com.chatapp.client.util.ImageUtil;
 import com.chatapp.common.model.Friend;
 import com.chatapp.common.model.User;
 import javafx.application.Platform;
@@ -11,6 +12,8 @@ import javafx.fxml.Initializable;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
@@ -43,6 +46,8 @@ public class FriendListController implements Initializable {
 
     private String currentTab = "ALL"; // ALL, REQUESTS, ADD
 
+    private static final int AVATAR_SIZE = 40;
+
     private static final DateTimeFormatter TIME_FORMATTER =
             DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy");
 
@@ -102,6 +107,7 @@ public class FriendListController implements Initializable {
         // Avatar với status indicator
         StackPane avatarPane = createAvatar(
                 friend.getFriendUsername(),
+                friend.getFriendAvatarUrl(),
                 friend.getFriendStatusType()
         );
 
@@ -155,7 +161,8 @@ public class FriendListController implements Initializable {
         cell.getStyleClass().add("request-cell");
 
         // Avatar
-        StackPane avatarPane = createAvatar(request.getFriendUsername(), User.UserStatus.OFFLINE);
+        StackPane avatarPane = createAvatar(request.getFriendUsername(), request.getFriendAvatarUrl(),
+                User.UserStatus.OFFLINE);
 
         // Info
         VBox infoBox = new VBox(4);
@@ -198,6 +205,7 @@ public class FriendListController implements Initializable {
         // Avatar
         StackPane avatarPane = createAvatar(
                 friend.getFriendUsername(),
+                friend.getFriendAvatarUrl(),
                 friend.getFriendStatusType() != null ? friend.getFriendStatusType() : User.UserStatus.OFFLINE
         );
 
@@ -250,15 +258,21 @@ public class FriendListController implements Initializable {
     /**
      * Tạo avatar với status indicator
      */
-    private StackPane createAvatar(String username, User.UserStatus status) {
+    private StackPane createAvatar(String username, String avatarUrl, User.UserStatus status) {
         StackPane pane = new StackPane();
         pane.getStyleClass().add("avatar-container");
 
-        // Avatar circle
+        // Avatar circle: chữ cái đầu làm placeholder, thay bằng ảnh khi ImageUtil tải xong
         Label avatar = new Label(username.substring(0, 1).toUpperCase());
         avatar.getStyleClass().add("contact-avatar");
         avatar.setStyle("-fx-background-color: " + getAvatarColor(username) + ";");
 
+        Image cached = ImageUtil.getInstance().getAvatar(avatarUrl, AVATAR_SIZE,
+                image -> showAvatarImage(avatar, image));
+        if (cached != null) {
+            showAvatarImage(avatar, cached);
+        }
+
         // Status indicator
         Circle statusCircle = new Circle(6);
         statusCircle.setFill(Color.web(getStatusDotColor(status)));
@@ -272,6 +286,15 @@ public class FriendListController implements Initializable {
         return pane;
     }
 
+    private void showAvatarImage(Label avatar, Image image) {
+        ImageView view = new ImageView(image);
+        view.setFitWidth(AVATAR_SIZE);
+        view.setFitHeight(AVATAR_SIZE);
+        view.setClip(new Circle(AVATAR_SIZE / 2.0, AVATAR_SIZE / 2.0, AVATAR_SIZE / 2.0));
+        avatar.setText(null);
+        avatar.setGraphic(view);
+    }
+
     /**
      * Load all contacts
      */
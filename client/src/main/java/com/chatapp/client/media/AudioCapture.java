@@ -1,3 +1,273 @@
 package com.chatapp.client.media;
 
-public class AudioCapture {}
+import com.chatapp.common.protocol.MediaProtocol;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.TargetDataLine;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thu âm theo frame AUDIO_FRAME_MS.
+ * Thread thu âm chỉ đọc nguồn rồi đẩy vào ring buffer không khóa; thread gửi lấy frame PCM bằng take()
+ * hoặc gói đã nén bằng takePacket(). Khi bên gửi chậm, frame mới bị bỏ thay vì làm thread thu âm chờ
+ * (độ trễ không dồn lên).
+ *
+ * takePacket() ghép hai frame thành một gói AUDIO_PACKET_MS, cho qua VAD rồi nén Opus (AudioEncoder)
+ * trên thread gửi. Lúc im lặng (DTX) không gửi gì, chỉ gửi gói comfort noise khi mức nhiễu nền đổi từ
+ * CN_LEVEL_CHANGE_DB trở lên hoặc mỗi AUDIO_CN_INTERVAL_MS, để bên kia phát nhiễu nền cùng mức.
+ * Thread consumer ghi thời gian nén và độ trễ chờ trong ring buffer (ước lượng theo số frame đã thu
+ * sau gói) vào LatencyHistogram.
+ */
+public class AudioCapture {
+    private static final int RING_FRAMES = 16;
+    private static final int FRAMES_PER_PACKET = MediaProtocol.AUDIO_PACKET_MS / MediaProtocol.AUDIO_FRAME_MS;
+    private static final int CN_INTERVAL_FRAMES = MediaProtocol.AUDIO_CN_INTERVAL_MS / MediaProtocol.AUDIO_FRAME_MS;
+    private static final int CN_LEVEL_CHANGE_DB = 3;
+
+    private final AudioSource source;
+    private final AudioRingBuffer ring;
+    private final int bitrate;
+    private volatile boolean running;
+    private volatile Thread consumer;
+    private Thread captureThread;
+
+    // Chỉ thread consumer của takePacket() dùng
+    private final byte[] packetPcm = new byte[MediaProtocol.AUDIO_PACKET_BYTES];
+    private final byte[] framePcm = new byte[MediaProtocol.AUDIO_FRAME_BYTES];
+    private final VoiceActivityDetector vad = new VoiceActivityDetector();
+    private AudioEncoder encoder;
+    private boolean voiceActivityDetection = true;
+    private long firstFrameIndex = -1;
+    private long lastComfortNoiseIndex = -CN_INTERVAL_FRAMES;
+    private int lastComfortNoiseLevel;
+    private boolean talking;
+
+    private volatile long framesCaptured;
+    private volatile long framesDropped;
+    private volatile long packetsEncoded;
+    private volatile long packetsComfortNoise;
+    private volatile long packetsSuppressed;
+    private volatile long bytesEncoded;
+    private final LatencyHistogram queueDelay = new LatencyHistogram();
+    private final LatencyHistogram encodeTime = new LatencyHistogram();
+
+    /**
+     * Thu từ micro mặc định
+     */
+    public AudioCapture() throws LineUnavailableException {
+        this(new MicrophoneSource());
+    }
+
+    public AudioCapture(AudioSource source) {
+        this(source, MediaProtocol.AUDIO_BITRATE);
+    }
+
+    public AudioCapture(AudioSource source, int bitrate) {
+        this.source = source;
+        this.bitrate = bitrate;
+        this.ring = new AudioRingBuffer(RING_FRAMES, MediaProtocol.AUDIO_FRAME_BYTES);
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        captureThread = new Thread(this::captureLoop, "audio-capture");
+        captureThread.setDaemon(true);
+        captureThread.setPriority(Thread.MAX_PRIORITY);
+        captureThread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (captureThread != null) {
+            captureThread.interrupt();
+        }
+        source.close();
+        Thread waiting = consumer;
+        if (waiting != null) {
+            LockSupport.unpark(waiting);
+        }
+    }
+
+    /**
+     * Lấy frame tiếp theo (chỉ một thread consumer), chờ tối đa timeoutMs
+     *
+     * @return chỉ số frame từ lúc bắt đầu thu (timestamp = chỉ số * AUDIO_FRAME_SAMPLES), -1 nếu hết giờ
+     */
+    public long take(byte[] frame, long timeoutMs) {
+        consumer = Thread.currentThread();
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        while (true) {
+            long frameIndex = ring.poll(frame);
+            if (frameIndex >= 0) {
+                return frameIndex;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (!running || remaining <= 0) {
+                return -1;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    /**
+     * Lấy gói nén tiếp theo (chỉ một thread consumer, không dùng chung với take()), chờ tối đa timeoutMs.
+     * Các gói im lặng bị bỏ qua (DTX) không trả về.
+     *
+     * @return false nếu hết giờ hoặc đã dừng
+     */
+    public boolean takePacket(EncodedAudio out, long timeoutMs) {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        while (true) {
+            long remainingMs = (deadline - System.nanoTime()) / 1_000_000L;
+            long frameIndex = remainingMs > 0 ? take(framePcm, remainingMs) : -1;
+            if (frameIndex < 0) {
+                if (!running) {
+                    closeEncoder();
+                }
+                return false;
+            }
+
+            // Ghép hai frame liên tiếp; frame bị bỏ giữa chừng thì bắt đầu gói mới từ frame này
+            int position = firstFrameIndex < 0 ? 0 : (int) (frameIndex - firstFrameIndex);
+            if (position <= 0 || position >= FRAMES_PER_PACKET) {
+                firstFrameIndex = frameIndex;
+                position = 0;
+            }
+            System.arraycopy(framePcm, 0, packetPcm, position * MediaProtocol.AUDIO_FRAME_BYTES,
+                    MediaProtocol.AUDIO_FRAME_BYTES);
+            if (position < FRAMES_PER_PACKET - 1) {
+                continue;
+            }
+            long packetIndex = firstFrameIndex;
+            firstFrameIndex = -1;
+            long waitingFrames = framesCaptured - (packetIndex + FRAMES_PER_PACKET);
+            queueDelay.record(Math.max(0, waitingFrames) * MediaProtocol.AUDIO_FRAME_MS * 1_000_000L);
+
+            if (encode(packetIndex, out)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Bật/tắt VAD (tắt thì mọi gói đều nén và gửi, vd. khi ghi âm)
+     */
+    public void setVoiceActivityDetection(boolean enabled) {
+        this.voiceActivityDetection = enabled;
+    }
+
+    public long getFramesCaptured() { return framesCaptured; }
+    public long getFramesDropped() { return framesDropped; }
+    public int getQueuedFrames() { return ring.size(); }
+    public long getPacketsEncoded() { return packetsEncoded; }
+    public long getPacketsComfortNoise() { return packetsComfortNoise; }
+    /** Số gói im lặng không gửi nhờ DTX */
+    public long getPacketsSuppressed() { return packetsSuppressed; }
+    /** Tổng byte payload đã nén (gồm cả gói comfort noise) */
+    public long getBytesEncoded() { return bytesEncoded; }
+    /** Thời gian gói chờ trong ring buffer trước khi được nén */
+    public LatencyHistogram getQueueDelay() { return queueDelay; }
+    public LatencyHistogram getEncodeTime() { return encodeTime; }
+
+    private boolean encode(long packetIndex, EncodedAudio out) {
+        if (encoder == null) {
+            encoder = new AudioEncoder(bitrate);
+        }
+        boolean speech = !voiceActivityDetection || vad.isSpeech(packetPcm);
+        int length;
+        if (speech) {
+            long encodeStart = System.nanoTime();
+            length = encoder.encode(packetPcm, out.data);
+            encodeTime.record(System.nanoTime() - encodeStart);
+            if (length == 0) {
+                return false;
+            }
+            talking = true;
+            packetsEncoded++;
+        } else if (talking || packetIndex - lastComfortNoiseIndex >= CN_INTERVAL_FRAMES
+                || Math.abs(vad.getNoiseLevel() - lastComfortNoiseLevel) >= CN_LEVEL_CHANGE_DB) {
+            // Vừa hết tiếng nói, nhiễu nền đổi hoặc tới lượt nhắc lại mức nhiễu nền
+            lastComfortNoiseLevel = vad.getNoiseLevel();
+            length = AudioEncoder.comfortNoise(lastComfortNoiseLevel, out.data);
+            lastComfortNoiseIndex = packetIndex;
+            talking = false;
+            packetsComfortNoise++;
+        } else {
+            packetsSuppressed++;
+            return false;
+        }
+
+        out.length = length;
+        out.comfortNoise = !speech;
+        out.timestamp = (int) (packetIndex * MediaProtocol.AUDIO_FRAME_SAMPLES);
+        bytesEncoded += length;
+        return true;
+    }
+
+    private void closeEncoder() {
+        if (encoder != null) {
+            encoder.close();
+            encoder = null;
+        }
+    }
+
+    private void captureLoop() {
+        byte[] frame = new byte[MediaProtocol.AUDIO_FRAME_BYTES];
+        long frameIndex = 0;
+        try {
+            while (running) {
+                source.read(frame);
+                if (!ring.offer(frame, frameIndex)) {
+                    framesDropped++;
+                }
+                frameIndex++;
+                framesCaptured = frameIndex;
+
+                Thread waiting = consumer;
+                if (waiting != null) {
+                    LockSupport.unpark(waiting);
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[AudioCapture] Capture failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Micro mặc định qua javax.sound.sampled, buffer thiết bị nhỏ (vài frame) để giữ độ trễ thấp
+     */
+    public static class MicrophoneSource implements AudioSource {
+        private final TargetDataLine line;
+
+        public MicrophoneSource() throws LineUnavailableException {
+            AudioFormat format = new AudioFormat(MediaProtocol.AUDIO_SAMPLE_RATE, 16, 1, true, false);
+            line = AudioSystem.getTargetDataLine(format);
+            line.open(format, MediaProtocol.AUDIO_FRAME_BYTES * 4);
+            line.start();
+        }
+
+        @Override
+        public void read(byte[] frame) throws IOException {
+            int offset = 0;
+            while (offset < frame.length) {
+                int read = line.read(frame, offset, frame.length - offset);
+                if (read <= 0 && !line.isOpen()) {
+                    throw new IOException("Microphone closed");
+                }
+                offset += read;
+            }
+        }
+
+        @Override
+        public void close() {
+            line.stop();
+            line.close();
+        }
+    }
+}
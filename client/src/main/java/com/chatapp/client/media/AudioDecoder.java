@@ -0,0 +1,158 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+import org.bytedeco.ffmpeg.avcodec.AVCodec;
+import org.bytedeco.ffmpeg.avcodec.AVCodecContext;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avutil.AVDictionary;
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.javacpp.BytePointer;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.bytedeco.ffmpeg.global.avcodec.*;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+
+/**
+ * Giải nén payload audio (byte đầu là MediaProtocol.AUDIO_CODEC_*) thành một gói PCM AUDIO_PACKET_BYTES.
+ * Decoder Opus chỉ mở khi gặp gói Opus đầu tiên (bên kia có thể đang dùng MuLaw); mở lỗi thì chỉ báo
+ * một lần, các gói Opus sau coi như mất. Gói comfort noise chỉ đổi mức nhiễu nền cho comfortNoise().
+ * Chỉ thread phát của AudioPlayer dùng.
+ */
+class AudioDecoder implements AutoCloseable {
+    private static final String[] DECODERS = {"libopus", "opus"};
+
+    private AVCodecContext context;
+    private AVFrame frame;
+    private AVPacket packet;
+    private BytePointer input;
+    private boolean opusFailed;
+    private int muLawLast;
+    private double noiseAmplitude;
+
+    /**
+     * @return số byte PCM đã ghi vào pcm (AUDIO_PACKET_BYTES), -1 nếu không giải được;
+     *         với gói comfort noise thì pcm là nhiễu nền ở mức mới
+     */
+    int decode(byte[] payload, int length, byte[] pcm) {
+        if (length < 1) {
+            return -1;
+        }
+        switch (payload[0]) {
+            case MediaProtocol.AUDIO_CODEC_OPUS:
+                return decodeOpus(payload, length, pcm);
+            case MediaProtocol.AUDIO_CODEC_PCMU:
+                muLawLast = MuLaw.decode(payload, 1, length - 1, pcm, muLawLast);
+                return MediaProtocol.AUDIO_PACKET_BYTES;
+            case MediaProtocol.AUDIO_CODEC_CN:
+                int level = length > 1 ? payload[1] & 0x7F : 127;
+                // Biên độ nhiễu đều có RMS bằng mức -dBov: a = rms * sqrt(3)
+                noiseAmplitude = 32768.0 * Math.pow(10, -level / 20.0) * Math.sqrt(3);
+                comfortNoise(pcm);
+                return MediaProtocol.AUDIO_PACKET_BYTES;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Nhiễu nền theo mức của gói comfort noise gần nhất (phát trong lúc bên kia im lặng)
+     */
+    void comfortNoise(byte[] pcm) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int amplitude = (int) Math.min(32767, noiseAmplitude);
+        for (int i = 0; i < MediaProtocol.AUDIO_PACKET_SAMPLES; i++) {
+            int sample = amplitude > 0 ? random.nextInt(-amplitude, amplitude + 1) : 0;
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (context != null) {
+            avcodec_free_context(context);
+            context = null;
+        }
+        if (frame != null) {
+            av_frame_free(frame);
+            frame = null;
+        }
+        if (packet != null) {
+            av_packet_free(packet);
+            packet = null;
+        }
+        if (input != null) {
+            av_free(input);
+            input = null;
+        }
+    }
+
+    private int decodeOpus(byte[] payload, int length, byte[] pcm) {
+        if (context == null && (opusFailed || !openOpus())) {
+            return -1;
+        }
+        int size = length - 1;
+        input.position(0).put(payload, 1, size);
+        input.position(size).limit(size + AV_INPUT_BUFFER_PADDING_SIZE).fill(0);
+        input.position(0).limit(input.capacity());
+        packet.data(input);
+        packet.size(size);
+        if (avcodec_send_packet(context, packet) < 0) {
+            return -1;
+        }
+
+        int written = -1;
+        while (avcodec_receive_frame(context, frame) == 0) {
+            int samples = Math.min(frame.nb_samples(), MediaProtocol.AUDIO_PACKET_SAMPLES);
+            BytePointer data = frame.data(0);
+            if (frame.format() == AV_SAMPLE_FMT_S16) {
+                data.get(pcm, 0, samples * 2);
+            } else {
+                // FLT/FLTP mono có cùng bố cục
+                for (int i = 0; i < samples; i++) {
+                    int sample = (int) Math.max(-32768, Math.min(32767, data.getFloat(4L * i) * 32768f));
+                    pcm[2 * i] = (byte) sample;
+                    pcm[2 * i + 1] = (byte) (sample >> 8);
+                }
+            }
+            Arrays.fill(pcm, samples * 2, MediaProtocol.AUDIO_PACKET_BYTES, (byte) 0);
+            written = MediaProtocol.AUDIO_PACKET_BYTES;
+            av_frame_unref(frame);
+        }
+        return written;
+    }
+
+    private boolean openOpus() {
+        try {
+            av_log_set_level(AV_LOG_ERROR);
+            for (String name : DECODERS) {
+                AVCodec codec = avcodec_find_decoder_by_name(name);
+                if (codec == null) {
+                    continue;
+                }
+                context = avcodec_alloc_context3(codec);
+                context.sample_rate(MediaProtocol.AUDIO_SAMPLE_RATE);
+                av_channel_layout_default(context.ch_layout(), 1);
+                context.request_sample_fmt(AV_SAMPLE_FMT_S16);
+                if (avcodec_open2(context, codec, (AVDictionary) null) < 0) {
+                    avcodec_free_context(context);
+                    context = null;
+                    continue;
+                }
+                frame = av_frame_alloc();
+                packet = av_packet_alloc();
+                input = new BytePointer(av_malloc(MediaProtocol.MAX_PAYLOAD_SIZE + AV_INPUT_BUFFER_PADDING_SIZE))
+                        .capacity(MediaProtocol.MAX_PAYLOAD_SIZE + AV_INPUT_BUFFER_PADDING_SIZE);
+                return true;
+            }
+            System.err.println("[AudioDecoder] No Opus decoder available");
+        } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+            System.err.println("[AudioDecoder] FFmpeg native libraries unavailable: " + e.getMessage());
+        }
+        opusFailed = true;
+        close();
+        return false;
+    }
+}
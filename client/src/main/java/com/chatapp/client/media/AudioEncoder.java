@@ -0,0 +1,168 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+import org.bytedeco.ffmpeg.avcodec.AVCodec;
+import org.bytedeco.ffmpeg.avcodec.AVCodecContext;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avutil.AVDictionary;
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.javacpp.BytePointer;
+
+import static org.bytedeco.ffmpeg.global.avcodec.*;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+
+/**
+ * Nén mỗi gói AUDIO_PACKET_MS bằng Opus qua FFmpeg (libavcodec của JavaCV): libopus chế độ voip nếu có,
+ * không thì encoder Opus có sẵn của FFmpeg (chỉ nhận float planar). Máy không có native FFmpeg thì
+ * dùng MuLaw để cuộc gọi vẫn chạy, chỉ tốn băng thông hơn.
+ * Payload ghi ra đã có byte mã codec ở đầu (MediaProtocol.AUDIO_CODEC_*).
+ */
+class AudioEncoder implements AutoCloseable {
+    private static final String[] ENCODERS = {"libopus", "opus"};
+
+    private final byte codecId;
+    private AVCodecContext context;
+    private AVFrame frame;
+    private AVPacket packet;
+    private boolean planarFloat;
+    private long pts;
+
+    AudioEncoder(int bitrate) {
+        String name = null;
+        try {
+            av_log_set_level(AV_LOG_ERROR);
+            for (String candidate : ENCODERS) {
+                if (open(candidate, bitrate)) {
+                    name = candidate;
+                    break;
+                }
+            }
+        } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+            System.err.println("[AudioEncoder] FFmpeg native libraries unavailable: " + e.getMessage());
+        }
+
+        if (name != null) {
+            codecId = MediaProtocol.AUDIO_CODEC_OPUS;
+            System.out.println("[AudioEncoder] " + name + " " + bitrate + " bps");
+        } else {
+            codecId = MediaProtocol.AUDIO_CODEC_PCMU;
+            System.err.println("[AudioEncoder] Opus unavailable, falling back to mu-law 16 kHz");
+        }
+    }
+
+    /**
+     * Nén một gói PCM (AUDIO_PACKET_BYTES)
+     *
+     * @return độ dài payload trong out (gồm byte mã codec), 0 nếu encoder giữ lại chưa ra gói
+     */
+    int encode(byte[] pcm, byte[] out) {
+        out[0] = codecId;
+        if (codecId == MediaProtocol.AUDIO_CODEC_PCMU) {
+            return 1 + MuLaw.encode(pcm, out, 1);
+        }
+
+        if (av_frame_make_writable(frame) < 0) {
+            return 0;
+        }
+        BytePointer data = frame.data(0);
+        if (planarFloat) {
+            for (int i = 0; i < MediaProtocol.AUDIO_PACKET_SAMPLES; i++) {
+                short sample = (short) ((pcm[2 * i] & 0xFF) | (pcm[2 * i + 1] << 8));
+                data.putFloat(4L * i, sample / 32768f);
+            }
+        } else {
+            data.put(pcm, 0, MediaProtocol.AUDIO_PACKET_BYTES);
+        }
+        frame.pts(pts);
+        pts += MediaProtocol.AUDIO_PACKET_SAMPLES;
+
+        if (avcodec_send_frame(context, frame) < 0) {
+            return 0;
+        }
+        int length = 0;
+        while (avcodec_receive_packet(context, packet) == 0) {
+            int size = packet.size();
+            // Một frame vào ra một gói; nếu encoder trả dồn thì chỉ giữ gói mới nhất
+            if (1 + size <= out.length) {
+                packet.data().get(out, 1, size);
+                length = 1 + size;
+            }
+            av_packet_unref(packet);
+        }
+        return length;
+    }
+
+    /**
+     * Gói comfort noise (RFC 3389: một byte mức nhiễu -dBov)
+     */
+    static int comfortNoise(int levelDbov, byte[] out) {
+        out[0] = MediaProtocol.AUDIO_CODEC_CN;
+        out[1] = (byte) Math.max(0, Math.min(127, levelDbov));
+        return 2;
+    }
+
+    byte getCodec() {
+        return codecId;
+    }
+
+    @Override
+    public void close() {
+        if (context != null) {
+            avcodec_free_context(context);
+            context = null;
+        }
+        if (frame != null) {
+            av_frame_free(frame);
+            frame = null;
+        }
+        if (packet != null) {
+            av_packet_free(packet);
+            packet = null;
+        }
+    }
+
+    private boolean open(String name, int bitrate) {
+        AVCodec codec = avcodec_find_encoder_by_name(name);
+        if (codec == null) {
+            return false;
+        }
+        boolean libopus = "libopus".equals(name);
+        int sampleFormat = libopus ? AV_SAMPLE_FMT_S16 : AV_SAMPLE_FMT_FLTP;
+
+        context = avcodec_alloc_context3(codec);
+        context.sample_rate(MediaProtocol.AUDIO_SAMPLE_RATE);
+        context.sample_fmt(sampleFormat);
+        av_channel_layout_default(context.ch_layout(), 1);
+        context.bit_rate(bitrate);
+        context.time_base(av_make_q(1, MediaProtocol.AUDIO_SAMPLE_RATE));
+        // Encoder Opus của FFmpeg vẫn được đánh dấu thử nghiệm
+        context.strict_std_compliance(FF_COMPLIANCE_EXPERIMENTAL);
+
+        AVDictionary options = new AVDictionary(null);
+        if (libopus) {
+            av_dict_set(options, "application", "voip", 0);
+            av_dict_set(options, "frame_duration", String.valueOf(MediaProtocol.AUDIO_PACKET_MS), 0);
+        } else {
+            av_dict_set(options, "opus_delay", String.valueOf(MediaProtocol.AUDIO_PACKET_MS), 0);
+        }
+        int result = avcodec_open2(context, codec, options);
+        av_dict_free(options);
+        if (result < 0 || (context.frame_size() != 0 && context.frame_size() != MediaProtocol.AUDIO_PACKET_SAMPLES)) {
+            close();
+            return false;
+        }
+
+        frame = av_frame_alloc();
+        frame.format(sampleFormat);
+        frame.nb_samples(MediaProtocol.AUDIO_PACKET_SAMPLES);
+        frame.sample_rate(MediaProtocol.AUDIO_SAMPLE_RATE);
+        av_channel_layout_copy(frame.ch_layout(), context.ch_layout());
+        if (av_frame_get_buffer(frame, 0) < 0) {
+            close();
+            return false;
+        }
+        packet = av_packet_alloc();
+        planarFloat = !libopus;
+        return true;
+    }
+}
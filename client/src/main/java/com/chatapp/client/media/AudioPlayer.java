@@ -1,3 +1,169 @@
 package com.chatapp.client.media;
 
-public class AudioPlayer {}
+import com.chatapp.common.protocol.MediaProtocol;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Phát audio của người bên kia qua jitter buffer thích ứng.
+ * Thread phát lấy một gói AUDIO_PACKET_MS mỗi nhịp (nhịp do buffer của loa giữ) và giải nén bằng AudioDecoder;
+ * gói mất được che bằng gói tốt gần nhất giảm dần âm lượng, mất liên tiếp quá MAX_CONCEALED_FRAMES thì
+ * phát im lặng. Sau gói comfort noise (bên kia đang im lặng, không gửi gì) thì phát nhiễu nền tới khi
+ * có tiếng nói lại, khoảng trống đó không tính là mất gói.
+ */
+public class AudioPlayer {
+    private static final int MAX_CONCEALED_FRAMES = 5;
+
+    private final AudioSink sink;
+    private final JitterBuffer jitterBuffer;
+    private volatile boolean running;
+    private Thread playoutThread;
+
+    private volatile long framesPlayed;
+    private volatile long framesConcealed;
+    private volatile long framesSilent;
+    private volatile long framesComfortNoise;
+    private final LatencyHistogram decodeTime = new LatencyHistogram();
+
+    /**
+     * Phát ra loa mặc định
+     */
+    public AudioPlayer() throws LineUnavailableException {
+        this(new SpeakerSink());
+    }
+
+    public AudioPlayer(AudioSink sink) {
+        this.sink = sink;
+        this.jitterBuffer = new JitterBuffer(MediaProtocol.MAX_PAYLOAD_SIZE,
+                MediaProtocol.AUDIO_PACKET_MS, MediaProtocol.AUDIO_SAMPLE_RATE);
+    }
+
+    /**
+     * Nhận gói audio từ MediaTransport (thread mạng)
+     */
+    public void receive(int sequence, int timestamp, ByteBuffer payload) {
+        jitterBuffer.put(sequence, timestamp, payload);
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        playoutThread = new Thread(this::playoutLoop, "audio-playout");
+        playoutThread.setDaemon(true);
+        playoutThread.setPriority(Thread.MAX_PRIORITY);
+        playoutThread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (playoutThread != null) {
+            playoutThread.interrupt();
+        }
+        sink.close();
+    }
+
+    public JitterBuffer getJitterBuffer() { return jitterBuffer; }
+    public long getFramesPlayed() { return framesPlayed; }
+    public long getFramesConcealed() { return framesConcealed; }
+    public long getFramesSilent() { return framesSilent; }
+    public long getFramesComfortNoise() { return framesComfortNoise; }
+    public LatencyHistogram getDecodeTime() { return decodeTime; }
+
+    private void playoutLoop() {
+        byte[] packet = new byte[MediaProtocol.MAX_PAYLOAD_SIZE];
+        byte[] frame = new byte[MediaProtocol.AUDIO_PACKET_BYTES];
+        byte[] lastFrame = new byte[MediaProtocol.AUDIO_PACKET_BYTES];
+        int concealed = 0;
+        boolean comfortNoise = false;
+
+        try (AudioDecoder decoder = new AudioDecoder()) {
+            while (running) {
+                int length = jitterBuffer.pop(packet);
+                int decoded = -1;
+                if (length >= 0) {
+                    long decodeStart = System.nanoTime();
+                    decoded = decoder.decode(packet, length, frame);
+                    decodeTime.record(System.nanoTime() - decodeStart);
+                }
+                if (decoded >= 0) {
+                    comfortNoise = packet[0] == MediaProtocol.AUDIO_CODEC_CN;
+                    if (comfortNoise) {
+                        Arrays.fill(lastFrame, (byte) 0);
+                        framesComfortNoise++;
+                    } else {
+                        System.arraycopy(frame, 0, lastFrame, 0, frame.length);
+                        framesPlayed++;
+                    }
+                    concealed = 0;
+                } else if (comfortNoise) {
+                    decoder.comfortNoise(frame);
+                    framesComfortNoise++;
+                } else if (length != JitterBuffer.NOT_READY && concealed < MAX_CONCEALED_FRAMES) {
+                    // Lặp lại frame trước, mỗi lần nhỏ đi một nửa để không nghe thành tiếng lặp
+                    attenuate(lastFrame);
+                    System.arraycopy(lastFrame, 0, frame, 0, frame.length);
+                    concealed++;
+                    framesConcealed++;
+                } else {
+                    Arrays.fill(frame, (byte) 0);
+                    framesSilent++;
+                }
+                sink.write(frame, frame.length);
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[AudioPlayer] Playout failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void attenuate(byte[] pcm) {
+        for (int i = 0; i + 1 < pcm.length; i += 2) {
+            short sample = (short) ((pcm[i] & 0xFF) | (pcm[i + 1] << 8));
+            sample >>= 1;
+            pcm[i] = (byte) sample;
+            pcm[i + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    /**
+     * Loa mặc định; buffer thiết bị 2 gói để tổng độ trễ đầu-cuối vẫn dưới 150 ms trên LAN
+     */
+    public static class SpeakerSink implements AudioSink {
+        private final SourceDataLine line;
+
+        public SpeakerSink() throws LineUnavailableException {
+            this(MediaProtocol.AUDIO_PACKET_BYTES * 2);
+        }
+
+        /**
+         * @param bufferBytes buffer thiết bị (lớn hơn khi không cần độ trễ thấp, vd. nghe tin nhắn thoại)
+         */
+        public SpeakerSink(int bufferBytes) throws LineUnavailableException {
+            AudioFormat format = new AudioFormat(MediaProtocol.AUDIO_SAMPLE_RATE, 16, 1, true, false);
+            line = AudioSystem.getSourceDataLine(format);
+            line.open(format, bufferBytes);
+            line.start();
+        }
+
+        @Override
+        public void write(byte[] frame, int length) throws IOException {
+            if (!line.isOpen()) {
+                throw new IOException("Speaker closed");
+            }
+            line.write(frame, 0, length);
+        }
+
+        @Override
+        public void close() {
+            line.stop();
+            line.close();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.chatapp.client.media;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ring buffer một producer / một consumer cho các frame audio kích thước cố định.
+ * Slot được cấp sẵn, offer/poll chỉ chép bytes và dời con trỏ bằng lazySet, không khóa và
+ * không cấp phát, nên thread thu âm không bao giờ bị thread gửi chặn lại.
+ */
+class AudioRingBuffer {
+    private final byte[][] slots;
+    private final long[] frameIndexes;
+    private final int mask;
+    private final int frameBytes;
+
+    private final AtomicLong head = new AtomicLong();   // Vị trí đọc tiếp theo (consumer)
+    private final AtomicLong tail = new AtomicLong();   // Vị trí ghi tiếp theo (producer)
+
+    /**
+     * @param capacity số frame, làm tròn lên lũy thừa của 2
+     */
+    AudioRingBuffer(int capacity, int frameBytes) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new byte[size][frameBytes];
+        this.frameIndexes = new long[size];
+        this.mask = size - 1;
+        this.frameBytes = frameBytes;
+    }
+
+    /**
+     * Chỉ gọi từ thread producer
+     *
+     * @return false nếu đầy (frame bị bỏ)
+     */
+    boolean offer(byte[] frame, long frameIndex) {
+        long t = tail.get();
+        if (t - head.get() >= slots.length) {
+            return false;
+        }
+        int slot = (int) (t & mask);
+        System.arraycopy(frame, 0, slots[slot], 0, frameBytes);
+        frameIndexes[slot] = frameIndex;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Chỉ gọi từ thread consumer
+     *
+     * @return chỉ số frame đã lấy, hoặc -1 nếu rỗng
+     */
+    long poll(byte[] frame) {
+        long h = head.get();
+        if (h == tail.get()) {
+            return -1;
+        }
+        int slot = (int) (h & mask);
+        System.arraycopy(slots[slot], 0, frame, 0, frameBytes);
+        long frameIndex = frameIndexes[slot];
+        head.lazySet(h + 1);
+        return frameIndex;
+    }
+
+    int size() {
+        return (int) (tail.get() - head.get());
+    }
+}
@@ -0,0 +1,16 @@
+package com.chatapp.client.media;
+
+import java.io.IOException;
+
+/**
+ * Đích phát audio cho AudioPlayer: loa thật hoặc đích giả giữ nhịp khi chạy thử không có thiết bị.
+ */
+public interface AudioSink {
+
+    /**
+     * Ghi một frame PCM; chặn khi buffer thiết bị đầy, nên giữ nhịp cho thread phát
+     */
+    void write(byte[] frame, int length) throws IOException;
+
+    void close();
+}
@@ -0,0 +1,17 @@
+package com.chatapp.client.media;
+
+import java.io.IOException;
+
+/**
+ * Nguồn audio cho AudioCapture: micro thật hoặc nguồn tổng hợp khi chạy thử không có thiết bị.
+ * Định dạng: PCM 16-bit little-endian mono 48 kHz (MediaProtocol.AUDIO_*).
+ */
+public interface AudioSource {
+
+    /**
+     * Đọc đủ một frame, chặn tới khi có dữ liệu (nguồn tự giữ nhịp thời gian thực)
+     */
+    void read(byte[] frame) throws IOException;
+
+    void close();
+}
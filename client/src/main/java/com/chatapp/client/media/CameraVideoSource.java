@@ -0,0 +1,64 @@
+package com.chatapp.client.media;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Camera mặc định qua JavaCV. Grabber dùng lại Frame của nó, ở đây chỉ chép từng dòng
+ * sang buffer của pool (bỏ phần padding cuối dòng), không tạo object mới theo frame.
+ */
+public class CameraVideoSource implements VideoSource {
+    private final FrameGrabber grabber;
+
+    public CameraVideoSource(int width, int height, int fps) throws IOException {
+        try {
+            grabber = FrameGrabber.createDefault(0);
+            grabber.setImageWidth(width);
+            grabber.setImageHeight(height);
+            grabber.setFrameRate(fps);
+            grabber.start();
+        } catch (FrameGrabber.Exception e) {
+            throw new IOException("Camera unavailable: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean grab(VideoFrame target) throws IOException {
+        Frame frame;
+        try {
+            frame = grabber.grab();
+        } catch (FrameGrabber.Exception e) {
+            throw new IOException("Camera grab failed: " + e.getMessage(), e);
+        }
+        if (frame == null) {
+            return false;
+        }
+        if (frame.image == null || frame.imageChannels != 3) {
+            return true; // Bỏ qua frame không phải ảnh BGR (vd. frame audio)
+        }
+
+        int width = frame.imageWidth;
+        int height = frame.imageHeight;
+        target.setBgr(width, height, System.nanoTime());
+
+        ByteBuffer buffer = (ByteBuffer) frame.image[0];
+        int rowBytes = width * 3;
+        for (int y = 0; y < height; y++) {
+            buffer.get(y * frame.imageStride, target.data, y * rowBytes, rowBytes);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        try {
+            grabber.stop();
+            grabber.release();
+        } catch (FrameGrabber.Exception e) {
+            System.err.println("[CameraVideoSource] Error closing camera: " + e.getMessage());
+        }
+    }
+}
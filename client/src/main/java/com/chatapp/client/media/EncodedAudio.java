@@ -0,0 +1,19 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+
+/**
+ * Một gói audio đã nén từ AudioCapture.takePacket() (dùng lại giữa các lần lấy).
+ * Payload bắt đầu bằng mã codec (MediaProtocol.AUDIO_CODEC_*), timestamp theo mẫu 48 kHz.
+ */
+public class EncodedAudio {
+    final byte[] data = new byte[MediaProtocol.MAX_MEDIA_PAYLOAD_SIZE];
+    int length;
+    int timestamp;
+    boolean comfortNoise;
+
+    public byte[] getData() { return data; }
+    public int getLength() { return length; }
+    public int getTimestamp() { return timestamp; }
+    public boolean isComfortNoise() { return comfortNoise; }
+}
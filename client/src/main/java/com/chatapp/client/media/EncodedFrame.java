@@ -0,0 +1,27 @@
+package com.chatapp.client.media;
+
+/**
+ * Một frame video đã nén (pool, buffer dùng lại giữa stage encode và stage gửi)
+ */
+class EncodedFrame {
+    byte[] data;
+    int length;
+    boolean keyFrame;
+    byte codec;
+    long timestampNanos;
+
+    EncodedFrame(int capacity) {
+        this.data = new byte[capacity];
+    }
+
+    /**
+     * Bảo đảm đủ chỗ (chỉ cấp lại khi keyframe lớn hơn mọi frame trước đó)
+     */
+    void ensureCapacity(int capacity) {
+        if (data.length < capacity) {
+            byte[] larger = new byte[Math.max(capacity, data.length * 2)];
+            System.arraycopy(data, 0, larger, 0, length);
+            data = larger;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FEC phía nhận cho một luồng: giữ bản sao các gói gần nhất trong vòng slot cấp sẵn (theo sequence),
+ * khi có gói KIND_FEC mà nhóm của nó thiếu đúng một gói thì XOR dựng lại gói đó và chuyển tiếp
+ * với cờ FLAG_RECOVERED. Parity tới khi nhóm còn thiếu hai gói được giữ lại, gói trễ tới sau vẫn
+ * giúp cứu gói kia.
+ *
+ * Chế độ ordered (video): ghép frame cần gói đúng thứ tự, nên gói chỉ được chuyển tiếp theo sequence;
+ * gặp lỗ thì giữ các gói sau lại tới khi lỗ được lấp (gói trễ hoặc FEC), parity của nhóm đã tới mà
+ * vẫn không cứu được, hoặc đã chờ quá MAX_HOLD_NANOS. Audio không cần (jitter buffer tự xếp lại).
+ *
+ * Chỉ thread nhận của MediaTransport dùng, không khóa, không cấp phát theo gói.
+ */
+class FecDecoder {
+    private static final int RING = 128;
+    private static final int PENDING = 8;
+    private static final long MAX_HOLD_NANOS = 60_000_000L;
+    private static final long FEC_ACTIVE_NANOS = 1_000_000_000L;
+
+    private static final class Slot {
+        final byte[] data = new byte[MediaProtocol.MAX_PAYLOAD_SIZE];
+        final ByteBuffer view = ByteBuffer.wrap(data);
+        boolean present;
+        boolean recovered;
+        int sequence;
+        byte flags;
+        int stream;
+        int timestamp;
+        int length;
+        long arrivalNanos;
+    }
+
+    private static final class Parity {
+        final byte[] data = new byte[MediaProtocol.MAX_PAYLOAD_SIZE];
+        boolean used;
+        int baseSequence;
+        int count;
+        int timestampXor;
+        int length;
+    }
+
+    private final MediaTransport.Listener out;
+    private final boolean ordered;
+    private final Slot[] slots = new Slot[RING];
+    private final Parity[] pending = new Parity[PENDING];
+
+    private boolean started;
+    private int ssrc;
+    private int highestSequence;
+    private int nextDelivery;
+    private int parityEnd;
+    private long lastParityNanos;
+
+    private long recovered;
+    private long skipped;
+
+    FecDecoder(boolean ordered, MediaTransport.Listener out) {
+        this.ordered = ordered;
+        this.out = out;
+        for (int i = 0; i < RING; i++) {
+            slots[i] = new Slot();
+        }
+        for (int i = 0; i < PENDING; i++) {
+            pending[i] = new Parity();
+        }
+    }
+
+    long getRecovered() { return recovered; }
+    /** Chế độ ordered: số vị trí bỏ qua vì không lấp được */
+    long getSkipped() { return skipped; }
+
+    /**
+     * Gói media nhận được từ mạng
+     */
+    void onMedia(byte flags, int stream, int ssrc, int sequence, int timestamp, ByteBuffer payload) {
+        long now = System.nanoTime();
+        if (!started || ssrc != this.ssrc || Math.abs(sequence - highestSequence) >= RING) {
+            reset(ssrc, sequence);
+        }
+        if (ordered && sequence - nextDelivery < 0) {
+            return; // Đã bỏ qua vị trí này (hoặc trùng)
+        }
+        Slot slot = slots[sequence & (RING - 1)];
+        if (slot.present && slot.sequence == sequence) {
+            return; // Trùng (đã nhận hoặc đã dựng lại)
+        }
+
+        int position = payload.position();
+        int length = Math.min(payload.remaining(), slot.data.length);
+        payload.get(position, slot.data, 0, length);
+        store(slot, flags, stream, sequence, timestamp, length, now);
+        slot.recovered = false;
+
+        if (!ordered) {
+            out.onPacket(flags, stream, ssrc, sequence, timestamp, payload);
+        }
+        retryPending(sequence);
+        if (ordered) {
+            release(now);
+        }
+    }
+
+    /**
+     * Gói KIND_FEC nhận được (payload bắt đầu ở phần FEC header)
+     */
+    void onParity(int ssrc, int baseSequence, int count, int timestampXor, ByteBuffer payload) {
+        if (!started || ssrc != this.ssrc || count <= 0 || count >= RING / 2
+                || payload.remaining() < MediaProtocol.FEC_HEADER_SIZE) {
+            return;
+        }
+        long now = System.nanoTime();
+        lastParityNanos = now;
+        int end = baseSequence + count;
+        if (end - parityEnd > 0) {
+            parityEnd = end;
+        }
+
+        Parity parity = null;
+        for (Parity candidate : pending) {
+            if (!candidate.used) {
+                parity = candidate;
+                break;
+            }
+        }
+        if (parity == null) {
+            // Hết chỗ: thay parity cũ nhất
+            parity = pending[0];
+            for (Parity candidate : pending) {
+                if (candidate.baseSequence - parity.baseSequence < 0) {
+                    parity = candidate;
+                }
+            }
+        }
+        int length = Math.min(payload.remaining(), parity.data.length);
+        payload.get(payload.position(), parity.data, 0, length);
+        parity.used = true;
+        parity.baseSequence = baseSequence;
+        parity.count = count;
+        parity.timestampXor = timestampXor;
+        parity.length = length;
+
+        tryRecover(parity, now);
+        if (ordered) {
+            release(now);
+        }
+    }
+
+    private void reset(int ssrc, int sequence) {
+        started = true;
+        this.ssrc = ssrc;
+        highestSequence = sequence;
+        nextDelivery = sequence;
+        parityEnd = sequence;
+        for (Slot slot : slots) {
+            slot.present = false;
+        }
+        for (Parity parity : pending) {
+            parity.used = false;
+        }
+    }
+
+    private void store(Slot slot, byte flags, int stream, int sequence, int timestamp, int length, long now) {
+        slot.present = true;
+        slot.sequence = sequence;
+        slot.flags = flags;
+        slot.stream = stream;
+        slot.timestamp = timestamp;
+        slot.length = length;
+        slot.arrivalNanos = now;
+        if (sequence - highestSequence > 0) {
+            highestSequence = sequence;
+        }
+    }
+
+    private boolean has(int sequence) {
+        Slot slot = slots[sequence & (RING - 1)];
+        return slot.present && slot.sequence == sequence;
+    }
+
+    private void retryPending(int sequence) {
+        long now = System.nanoTime();
+        for (Parity parity : pending) {
+            if (parity.used && sequence - parity.baseSequence >= 0
+                    && sequence - parity.baseSequence < parity.count) {
+                tryRecover(parity, now);
+            }
+        }
+    }
+
+    /**
+     * Dựng lại gói thiếu nếu nhóm chỉ thiếu một gói; nhóm đủ hoặc quá cũ thì bỏ parity
+     */
+    private void tryRecover(Parity parity, long now) {
+        if (highestSequence - parity.baseSequence >= RING - parity.count) {
+            parity.used = false; // Gói của nhóm đã bị vòng slot ghi đè
+            return;
+        }
+        int missing = 0;
+        int missingCount = 0;
+        for (int i = 0; i < parity.count; i++) {
+            int sequence = parity.baseSequence + i;
+            if (!has(sequence)) {
+                if (++missingCount > 1) {
+                    return; // Thiếu từ hai gói: chờ gói trễ
+                }
+                missing = sequence;
+            }
+        }
+        parity.used = false;
+        if (missingCount == 0) {
+            return;
+        }
+
+        // Header FEC: [0..1] XOR độ dài, [2] XOR flags, [3] XOR stream
+        byte[] source = parity.data;
+        int length = ((source[0] & 0xFF) << 8) | (source[1] & 0xFF);
+        int flags = source[2];
+        int stream = source[3] & 0xFF;
+        int timestamp = parity.timestampXor;
+        for (int i = 0; i < parity.count; i++) {
+            int sequence = parity.baseSequence + i;
+            if (sequence == missing) continue;
+            Slot slot = slots[sequence & (RING - 1)];
+            length ^= slot.length;
+            flags ^= slot.flags;
+            stream ^= slot.stream & 0xFF;
+            timestamp ^= slot.timestamp;
+        }
+        int parityLength = parity.length - MediaProtocol.FEC_HEADER_SIZE;
+        if (length < 0 || length > parityLength) {
+            return; // Parity hỏng hoặc không khớp nhóm
+        }
+
+        Slot target = slots[missing & (RING - 1)];
+        System.arraycopy(source, MediaProtocol.FEC_HEADER_SIZE, target.data, 0, length);
+        for (int i = 0; i < parity.count; i++) {
+            int sequence = parity.baseSequence + i;
+            if (sequence == missing) continue;
+            Slot slot = slots[sequence & (RING - 1)];
+            int common = Math.min(length, slot.length);
+            for (int j = 0; j < common; j++) {
+                target.data[j] ^= slot.data[j];
+            }
+        }
+        store(target, (byte) flags, stream, missing, timestamp, length, now);
+        target.recovered = true;
+        recovered++;
+
+        if (!ordered) {
+            target.view.limit(length).position(0);
+            out.onPacket((byte) (flags | MediaProtocol.FLAG_RECOVERED), stream, ssrc, missing, timestamp,
+                    target.view);
+        }
+    }
+
+    /**
+     * Chế độ ordered: chuyển tiếp các gói liên tiếp từ nextDelivery, bỏ qua lỗ khi không còn hi vọng lấp
+     */
+    private void release(long now) {
+        while (nextDelivery - highestSequence <= 0) {
+            Slot slot = slots[nextDelivery & (RING - 1)];
+            if (slot.present && slot.sequence == nextDelivery) {
+                slot.view.limit(slot.length).position(0);
+                byte flags = slot.recovered ? (byte) (slot.flags | MediaProtocol.FLAG_RECOVERED) : slot.flags;
+                out.onPacket(flags, slot.stream, ssrc, nextDelivery, slot.timestamp, slot.view);
+                nextDelivery++;
+                continue;
+            }
+
+            // Lỗ ở nextDelivery: chờ nếu FEC đang chạy, parity của nhóm chưa tới và chưa chờ quá lâu
+            boolean fecActive = lastParityNanos != 0 && now - lastParityNanos < FEC_ACTIVE_NANOS;
+            boolean parityPassed = nextDelivery - parityEnd < 0;
+            Slot oldest = slots[(nextDelivery + 1) & (RING - 1)];
+            for (int sequence = nextDelivery + 1; sequence - highestSequence <= 0; sequence++) {
+                Slot candidate = slots[sequence & (RING - 1)];
+                if (candidate.present && candidate.sequence == sequence) {
+                    oldest = candidate;
+                    break;
+                }
+            }
+            boolean heldTooLong = now - oldest.arrivalNanos > MAX_HOLD_NANOS;
+            if (fecActive && !parityPassed && !heldTooLong) {
+                return;
+            }
+            skipped++;
+            nextDelivery++;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FEC phía gửi cho một luồng (audio hoặc video): XOR dồn từng gói vào buffer parity cấp sẵn,
+ * đủ nhóm thì MediaTransport phát gói KIND_FEC (định dạng trong MediaProtocol).
+ *
+ * Độ dư thích ứng theo tỉ lệ mất trước FEC mà bên nhận báo: với XOR một parity cho k gói, gói mất
+ * chỉ không cứu được khi trong nhóm còn gói khác cũng mất, nên tỉ lệ mất còn lại ~ p * k * p.
+ * Chọn k lớn nhất giữ mức đó dưới TARGET_RESIDUAL (k = TARGET_RESIDUAL / p^2), trong [MIN_GROUP, maxGroup];
+ * mất dưới OFF_LOSS thì tắt. Không đồng bộ: chỉ gọi khi giữ khóa buffer gửi của MediaTransport.
+ */
+class FecEncoder {
+    static final int MIN_GROUP = 2;
+    private static final double TARGET_RESIDUAL = 0.01;
+    private static final double OFF_LOSS = 0.005;
+    private static final double LOSS_DECAY = 0.8;
+
+    private final int maxGroup;
+    private final boolean flushOnFrameEnd;
+    private final byte[] parity = new byte[MediaProtocol.MAX_MEDIA_PAYLOAD_SIZE];
+
+    private volatile int groupSize;
+    private double smoothedLoss = -1;
+
+    private int count;
+    private int baseSequence;
+    private int nextSequence;
+    private int ssrc;
+    private int maxLength;
+    private int lengthXor;
+    private int flagsXor;
+    private int streamXor;
+    private int timestampXor;
+
+    /**
+     * @param maxGroup        số gói tối đa mỗi nhóm (audio nhỏ để gói cứu được kịp jitter buffer)
+     * @param flushOnFrameEnd video: kết thúc nhóm ở cuối frame khi nhóm đã được nửa, để frame không chờ frame sau
+     */
+    FecEncoder(int maxGroup, int startGroup, boolean flushOnFrameEnd) {
+        this.maxGroup = maxGroup;
+        this.flushOnFrameEnd = flushOnFrameEnd;
+        this.groupSize = startGroup;
+    }
+
+    /**
+     * Cập nhật theo tỉ lệ mất trước FEC trong receiver report (tăng ngay, giảm từ từ)
+     */
+    void onLoss(double rawLoss) {
+        smoothedLoss = smoothedLoss < 0 || rawLoss > smoothedLoss
+                ? rawLoss : smoothedLoss * LOSS_DECAY + rawLoss * (1 - LOSS_DECAY);
+        if (smoothedLoss < OFF_LOSS) {
+            groupSize = 0;
+            return;
+        }
+        int size = (int) (TARGET_RESIDUAL / (smoothedLoss * smoothedLoss));
+        groupSize = Math.max(MIN_GROUP, Math.min(maxGroup, size));
+    }
+
+    void disable() {
+        groupSize = 0;
+        count = 0;
+    }
+
+    /** @return số gói mỗi nhóm, 0 = tắt */
+    int getGroupSize() {
+        return groupSize;
+    }
+
+    /**
+     * Đưa một gói vừa gửi vào nhóm
+     *
+     * @return true nếu nhóm đủ, cần gọi writeParity ngay
+     */
+    boolean add(byte flags, int stream, int ssrc, int sequence, int timestamp,
+                byte[] payload, int offset, int length) {
+        int size = groupSize;
+        if (size == 0 || length > parity.length) {
+            count = 0;
+            return false;
+        }
+        if (count > 0 && (ssrc != this.ssrc || sequence != nextSequence)) {
+            count = 0; // Luồng đổi hoặc sequence nhảy: bỏ nhóm dở
+        }
+
+        if (count == 0) {
+            this.ssrc = ssrc;
+            baseSequence = sequence;
+            maxLength = 0;
+            lengthXor = 0;
+            flagsXor = 0;
+            streamXor = 0;
+            timestampXor = 0;
+        }
+        // Phần đã dùng của parity luôn nằm trong [0, maxLength), phần sau là rác của nhóm trước
+        for (int i = 0; i < length; i++) {
+            byte value = payload[offset + i];
+            parity[i] = i < maxLength ? (byte) (parity[i] ^ value) : value;
+        }
+        maxLength = Math.max(maxLength, length);
+        lengthXor ^= length;
+        flagsXor ^= flags;
+        streamXor ^= stream;
+        timestampXor ^= timestamp;
+        nextSequence = sequence + 1;
+        count++;
+
+        boolean frameEnd = flushOnFrameEnd && (flags & MediaProtocol.FLAG_FRAME_END) != 0 && count * 2 >= size;
+        return count >= size || frameEnd;
+    }
+
+    /**
+     * Ghi gói FEC của nhóm vừa đủ (cả header) vào out, bắt đầu nhóm mới
+     */
+    void writeParity(ByteBuffer out, byte kind) {
+        out.put(MediaProtocol.KIND_FEC)
+                .put(kind)
+                .putShort((short) count)
+                .putInt(ssrc)
+                .putInt(baseSequence)
+                .putInt(timestampXor)
+                .putShort((short) lengthXor)
+                .put((byte) flagsXor)
+                .put((byte) streamXor)
+                .put(parity, 0, maxLength);
+        count = 0;
+    }
+}
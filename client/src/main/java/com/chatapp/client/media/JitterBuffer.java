@@ -0,0 +1,210 @@
+package com.chatapp.client.media;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Jitter buffer thích ứng cho một luồng audio.
+ * Gói được xếp vào slot theo sequence (slot cấp sẵn, không cấp phát theo gói); thread phát lấy
+ * đúng một frame mỗi nhịp. Độ sâu mục tiêu tính từ jitter đo theo RFC 3550
+ * (J += (|D| - J) / 16): mạng ổn định thì giữ 2 frame, mạng giật thì tăng dần tới MAX_DEPTH.
+ * Khi buffer sâu hơn mục tiêu (jitter đã giảm), bỏ bớt frame cũ để kéo độ trễ xuống.
+ * Khi buffer cạn (chưa có gói nào mới hơn, vd. bên gửi đang im lặng theo DTX) thì giữ nguyên vị trí,
+ * gói tiếp theo tới muộn vẫn được phát thay vì bị coi là trễ.
+ * Thời gian mỗi gói nằm trong buffer (từ lúc tới tới lúc được lấy ra phát) ghi vào bufferDelay.
+ */
+public class JitterBuffer {
+    /** pop(): đang chờ đủ gói để bắt đầu phát, phát im lặng */
+    public static final int NOT_READY = -2;
+    /** pop(): gói tới lượt phát bị mất hoặc tới muộn, cần che lỗi */
+    public static final int MISSING = -1;
+
+    private static final int CAPACITY = 64;
+    private static final int MIN_DEPTH = 2;
+    private static final int MAX_DEPTH = 8;
+    private static final int DRAIN_SLACK = 2;
+    private static final int MAX_MISSING_BEFORE_REBUFFER = 10;
+
+    private final byte[][] slots;
+    private final int[] lengths;
+    private final int[] slotSequences;
+    private final boolean[] filled;
+    private final long[] arrivals;
+    private final double frameMs;
+    private final double msPerTimestampUnit;
+
+    private boolean playing;
+    private int nextSequence;
+    private int highestSequence;
+    private boolean hasHighest;
+    private int consecutiveMissing;
+    private int targetDepth = MIN_DEPTH;
+
+    private long lastArrivalNanos;
+    private int lastTimestamp;
+    private double jitterMs;
+
+    private long received;
+    private long late;
+    private long duplicates;
+    private long missing;
+    private long drained;
+    private final LatencyHistogram bufferDelay = new LatencyHistogram();
+
+    /**
+     * @param maxPayload        kích thước payload lớn nhất
+     * @param frameMs           thời lượng một gói
+     * @param timestampRate     số đơn vị timestamp mỗi giây (audio: sample rate)
+     */
+    public JitterBuffer(int maxPayload, double frameMs, int timestampRate) {
+        this.slots = new byte[CAPACITY][maxPayload];
+        this.lengths = new int[CAPACITY];
+        this.slotSequences = new int[CAPACITY];
+        this.filled = new boolean[CAPACITY];
+        this.arrivals = new long[CAPACITY];
+        this.frameMs = frameMs;
+        this.msPerTimestampUnit = 1000.0 / timestampRate;
+    }
+
+    /**
+     * Nhận một gói từ thread mạng
+     */
+    public synchronized void put(int sequence, int timestamp, ByteBuffer payload) {
+        long now = System.nanoTime();
+        updateJitter(now, timestamp);
+        received++;
+
+        if (playing && sequence - nextSequence < 0) {
+            late++;
+            return;
+        }
+        if (playing && sequence - nextSequence >= CAPACITY) {
+            // Bên gửi nhảy sequence (khởi động lại luồng): phát lại từ đầu
+            reset();
+        }
+
+        int slot = sequence & (CAPACITY - 1);
+        if (filled[slot] && slotSequences[slot] == sequence) {
+            duplicates++;
+            return;
+        }
+
+        int length = Math.min(payload.remaining(), slots[slot].length);
+        payload.get(slots[slot], 0, length);
+        lengths[slot] = length;
+        slotSequences[slot] = sequence;
+        arrivals[slot] = now;
+        filled[slot] = true;
+
+        if (!hasHighest || sequence - highestSequence > 0) {
+            highestSequence = sequence;
+            hasHighest = true;
+        }
+    }
+
+    /**
+     * Lấy payload tới lượt phát (gọi mỗi nhịp frame từ thread phát)
+     *
+     * @return độ dài payload đã chép vào out, MISSING hoặc NOT_READY
+     */
+    public synchronized int pop(byte[] out) {
+        if (!playing) {
+            if (!hasHighest || bufferedCount() < targetDepth) {
+                return NOT_READY;
+            }
+            playing = true;
+            nextSequence = lowestBuffered();
+        }
+
+        // Buffer dày hơn cần thiết: bỏ frame cũ nhất để giảm độ trễ
+        while (highestSequence - nextSequence + 1 > targetDepth + DRAIN_SLACK) {
+            int slot = nextSequence & (CAPACITY - 1);
+            if (filled[slot] && slotSequences[slot] == nextSequence) {
+                filled[slot] = false;
+            }
+            nextSequence++;
+            drained++;
+        }
+
+        int slot = nextSequence & (CAPACITY - 1);
+        if (filled[slot] && slotSequences[slot] == nextSequence) {
+            nextSequence++;
+            filled[slot] = false;
+            consecutiveMissing = 0;
+            bufferDelay.record(System.nanoTime() - arrivals[slot]);
+            System.arraycopy(slots[slot], 0, out, 0, lengths[slot]);
+            return lengths[slot];
+        }
+        if (highestSequence - nextSequence > 0) {
+            nextSequence++; // Đã có gói sau: gói này coi như mất
+        }
+
+        missing++;
+        if (++consecutiveMissing > MAX_MISSING_BEFORE_REBUFFER && highestSequence - nextSequence <= 0) {
+            // Luồng tạm ngừng: chờ đủ gói rồi mới phát tiếp
+            playing = false;
+            consecutiveMissing = 0;
+        }
+        return MISSING;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(filled, false);
+        playing = false;
+        hasHighest = false;
+        consecutiveMissing = 0;
+        lastArrivalNanos = 0;
+    }
+
+    /**
+     * Độ trễ buffer hiện tại (ms)
+     */
+    public synchronized double getDelayMs() {
+        return playing ? Math.max(0, highestSequence - nextSequence + 1) * frameMs : bufferedCount() * frameMs;
+    }
+
+    public synchronized double getJitterMs() { return jitterMs; }
+    public synchronized int getTargetDepth() { return targetDepth; }
+    public synchronized long getReceived() { return received; }
+    public synchronized long getLate() { return late; }
+    public synchronized long getDuplicates() { return duplicates; }
+    public synchronized long getMissing() { return missing; }
+    public synchronized long getDrained() { return drained; }
+    /** Chỉ thread phát ghi (trong pop()), đọc không cần khóa */
+    public LatencyHistogram getBufferDelay() { return bufferDelay; }
+
+    /**
+     * D = chênh lệch thời gian tới trừ chênh lệch timestamp của hai gói liên tiếp
+     */
+    private void updateJitter(long arrivalNanos, int timestamp) {
+        if (lastArrivalNanos != 0) {
+            double arrivalDiffMs = (arrivalNanos - lastArrivalNanos) / 1_000_000.0;
+            double timestampDiffMs = (timestamp - lastTimestamp) * msPerTimestampUnit;
+            jitterMs += (Math.abs(arrivalDiffMs - timestampDiffMs) - jitterMs) / 16;
+
+            // Đủ chỗ cho khoảng 3 lần jitter cộng một frame dự phòng
+            int depth = (int) Math.ceil(3 * jitterMs / frameMs) + 1;
+            targetDepth = Math.max(MIN_DEPTH, Math.min(MAX_DEPTH, depth));
+        }
+        lastArrivalNanos = arrivalNanos;
+        lastTimestamp = timestamp;
+    }
+
+    private int bufferedCount() {
+        int count = 0;
+        for (boolean f : filled) {
+            if (f) count++;
+        }
+        return count;
+    }
+
+    private int lowestBuffered() {
+        int lowest = highestSequence;
+        for (int i = 0; i < CAPACITY; i++) {
+            if (filled[i] && slotSequences[i] - lowest < 0) {
+                lowest = slotSequences[i];
+            }
+        }
+        return lowest;
+    }
+}
@@ -0,0 +1,81 @@
+package com.chatapp.client.media;
+
+/**
+ * Histogram độ trễ chi phí thấp cho pipeline media: bucket cố định theo micro giây, mỗi bậc lũy thừa 2
+ * chia 4 bucket (sai số tối đa ~25%), từ 1 us tới khoảng 30 s. record() chỉ là vài phép bit và cộng,
+ * không khóa, không cấp phát; mỗi histogram chỉ một thread ghi, thread khác đọc không khóa nên
+ * số liệu đọc được là gần đúng (đủ cho overlay và báo cáo cuối cuộc gọi).
+ */
+public class LatencyHistogram {
+    private static final int LINEAR_BUCKETS = 8;
+    private static final int SUB_BUCKETS = 4;
+    private static final int OCTAVES = 22;
+    private static final int BUCKETS = LINEAR_BUCKETS + OCTAVES * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private volatile long count;
+    private volatile long sumMicros;
+    private volatile long maxMicros;
+
+    /**
+     * Ghi một mẫu (nano giây, vd. hiệu hai lần System.nanoTime())
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts[bucketOf(micros)]++;
+        sumMicros += micros;
+        if (micros > maxMicros) {
+            maxMicros = micros;
+        }
+        count++;
+    }
+
+    public long getCount() { return count; }
+
+    public double getMeanMs() {
+        long n = count;
+        return n > 0 ? sumMicros / 1000.0 / n : 0;
+    }
+
+    public double getMaxMs() {
+        return maxMicros / 1000.0;
+    }
+
+    /**
+     * Giá trị tại phân vị fraction (0..1), lấy cận trên của bucket (ms)
+     */
+    public double getPercentileMs(double fraction) {
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * fraction));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(upperBoundMicros(i), maxMicros) / 1000.0;
+            }
+        }
+        return getMaxMs();
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int octave = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (octave - 2)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, LINEAR_BUCKETS + (octave - 3) * SUB_BUCKETS + sub);
+    }
+
+    static long upperBoundMicros(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket + 1;
+        }
+        int octave = 3 + (bucket - LINEAR_BUCKETS) / SUB_BUCKETS;
+        int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub + 1) << (octave - 2);
+    }
+}
@@ -0,0 +1,227 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Kênh phản hồi kiểu RTCP trên chính MediaTransport (gói KIND_CONTROL).
+ * Mỗi REPORT_INTERVAL_MS gửi sender report (để bên kia tính RTT) và receiver report cho từng
+ * luồng đang nhận (mất gói, jitter, sequence cao nhất). Báo cáo nhận được về luồng của mình
+ * được chuyển cho Listener kèm RTT; bên gửi dùng để điều chỉnh bitrate/độ phân giải.
+ */
+public class MediaFeedback {
+
+    public interface Listener {
+        /**
+         * Bên kia báo cáo về luồng ssrc của mình
+         *
+         * @param fractionLost    tỉ lệ mất sau khi FEC khôi phục
+         * @param rawFractionLost tỉ lệ mất trên đường truyền (trước FEC)
+         * @param rttMs           -1 nếu chưa tính được
+         */
+        void onReceiverReport(int ssrc, double fractionLost, double rawFractionLost, long totalLost,
+                              double jitterMs, double rttMs);
+
+        void onKeyFrameRequest(int ssrc);
+    }
+
+    private final MediaTransport transport;
+    private final int ssrc;
+    private final ReceiverStats audioStats = new ReceiverStats(MediaProtocol.AUDIO_SAMPLE_RATE);
+    private final ReceiverStats videoStats = new ReceiverStats(MediaProtocol.VIDEO_CLOCK_RATE);
+
+    private final byte[] reportPayload = new byte[MediaProtocol.RECEIVER_REPORT_SIZE];
+    private final ByteBuffer reportBuffer = ByteBuffer.wrap(reportPayload);
+    private final byte[] requestPayload = new byte[4];
+    private final ByteBuffer requestBuffer = ByteBuffer.wrap(requestPayload);
+
+    private volatile Listener listener;
+    private volatile boolean sendingVideo;
+    private volatile int localVideoSsrc;
+    private volatile boolean running;
+    private Thread reportThread;
+
+    // Sender report gần nhất của bên kia (để trả lại trong receiver report)
+    private volatile int lastSenderReport;
+    private volatile long lastSenderReportNanos;
+
+    private volatile double rttMs = -1;
+    private volatile long reportsSent;
+    private volatile long reportsReceived;
+    private volatile long keyFramesRequested;
+
+    public MediaFeedback(MediaTransport transport, int ssrc) {
+        this.transport = transport;
+        this.ssrc = ssrc;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * ssrc luồng video mình gửi (để đổi jitter trong báo cáo về ms theo đồng hồ 90 kHz)
+     */
+    public void setLocalVideoSsrc(int ssrc) {
+        this.localVideoSsrc = ssrc;
+        this.sendingVideo = true;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        transport.setListener(MediaProtocol.KIND_CONTROL, this::onControl);
+        reportThread = new Thread(this::reportLoop, "media-report");
+        reportThread.setDaemon(true);
+        reportThread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (reportThread != null) {
+            reportThread.interrupt();
+        }
+    }
+
+    /**
+     * Ghi nhận một gói media nhận được (gọi từ thread nhận của MediaTransport)
+     *
+     * @param flags flags của gói (FLAG_RECOVERED nếu do FEC dựng lại)
+     */
+    public void onPacket(byte kind, byte flags, int ssrc, int sequence, int timestamp, int length) {
+        ReceiverStats stats = kind == MediaProtocol.KIND_VIDEO ? videoStats : audioStats;
+        stats.onPacket(ssrc, sequence, timestamp, length, System.nanoTime(),
+                (flags & MediaProtocol.FLAG_RECOVERED) != 0);
+    }
+
+    /**
+     * Xin bên gửi phát keyframe cho luồng video đang nhận
+     */
+    public void requestKeyFrame() {
+        if (!videoStats.isStarted()) {
+            return;
+        }
+        synchronized (requestPayload) {
+            requestBuffer.putInt(0, videoStats.getSsrc());
+            send(MediaProtocol.CONTROL_KEYFRAME_REQUEST, requestPayload, 4);
+        }
+        keyFramesRequested++;
+    }
+
+    public double getRttMs() { return rttMs; }
+    public long getReportsSent() { return reportsSent; }
+    public long getReportsReceived() { return reportsReceived; }
+    public long getKeyFramesRequested() { return keyFramesRequested; }
+
+    public double getAudioJitterMs() { return audioStats.getJitterMs(); }
+    public double getAudioFractionLost() { return audioStats.getFractionLost(); }
+    public double getAudioRawFractionLost() { return audioStats.getRawFractionLost(); }
+    public long getAudioLost() { return audioStats.getLost(); }
+    public double getVideoJitterMs() { return videoStats.getJitterMs(); }
+    public double getVideoFractionLost() { return videoStats.getFractionLost(); }
+    public double getVideoRawFractionLost() { return videoStats.getRawFractionLost(); }
+    public long getVideoLost() { return videoStats.getLost(); }
+    public long getVideoBytesReceived() { return videoStats.getBytes(); }
+
+    private void reportLoop() {
+        while (running) {
+            try {
+                Thread.sleep(MediaProtocol.REPORT_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            // Sender report: đồng hồ của mình nằm ở trường timestamp của header
+            reportBuffer.clear();
+            reportBuffer.putInt((int) transport.getPacketsSent()).putInt((int) transport.getBytesSent());
+            send(MediaProtocol.CONTROL_SENDER_REPORT, reportPayload, MediaProtocol.SENDER_REPORT_SIZE);
+
+            int echo = lastSenderReport;
+            int delay = lastSenderReportNanos == 0 ? 0
+                    : (int) ((System.nanoTime() - lastSenderReportNanos) / 1_000_000);
+            sendReceiverReport(audioStats, echo, delay);
+            sendReceiverReport(videoStats, echo, delay);
+        }
+    }
+
+    private void sendReceiverReport(ReceiverStats stats, int echo, int delay) {
+        reportBuffer.clear();
+        if (stats.writeReport(reportBuffer, echo, delay)) {
+            send(MediaProtocol.CONTROL_RECEIVER_REPORT, reportPayload, MediaProtocol.RECEIVER_REPORT_SIZE);
+            reportsSent++;
+        }
+    }
+
+    private void send(byte type, byte[] payload, int length) {
+        try {
+            transport.send(MediaProtocol.KIND_CONTROL, type, 0, ssrc, 0, nowMs(), payload, 0, length);
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[MediaFeedback] Send failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void onControl(byte type, int stream, int fromSsrc, int sequence, int timestamp, ByteBuffer payload) {
+        int position = payload.position();
+        switch (type) {
+            case MediaProtocol.CONTROL_SENDER_REPORT:
+                lastSenderReport = timestamp;
+                lastSenderReportNanos = System.nanoTime();
+                break;
+
+            case MediaProtocol.CONTROL_RECEIVER_REPORT: {
+                if (payload.remaining() < MediaProtocol.RECEIVER_REPORT_SIZE) {
+                    return;
+                }
+                int reportedSsrc = payload.getInt(position);
+                double fractionLost = (payload.get(position + 4) & 0xFF) / 256.0;
+                long totalLost = payload.getInt(position + 5) & 0xFFFFFFFFL;
+                int jitterUnits = payload.getInt(position + 13);
+                int echo = payload.getInt(position + 17);
+                int delay = payload.getInt(position + 21);
+                double rawFractionLost = (payload.get(position + 25) & 0xFF) / 256.0;
+                reportsReceived++;
+
+                // RTT = bây giờ - lúc mình gửi sender report - thời gian bên kia giữ nó
+                if (echo != 0) {
+                    int rtt = nowMs() - echo - delay;
+                    if (rtt >= 0 && rtt < 10_000) {
+                        rttMs = rttMs < 0 ? rtt : rttMs * 0.75 + rtt * 0.25;
+                    }
+                }
+
+                boolean video = sendingVideo && reportedSsrc == localVideoSsrc;
+                double jitterMs = jitterUnits * 1000.0
+                        / (video ? MediaProtocol.VIDEO_CLOCK_RATE : MediaProtocol.AUDIO_SAMPLE_RATE);
+                Listener current = listener;
+                if (current != null) {
+                    current.onReceiverReport(reportedSsrc, fractionLost, rawFractionLost, totalLost, jitterMs, rttMs);
+                }
+                break;
+            }
+
+            case MediaProtocol.CONTROL_KEYFRAME_REQUEST: {
+                if (payload.remaining() < 4) {
+                    return;
+                }
+                Listener current = listener;
+                if (current != null) {
+                    current.onKeyFrameRequest(payload.getInt(position));
+                }
+                break;
+            }
+
+            default:
+                break;
+        }
+    }
+
+    private static int nowMs() {
+        // Không dùng 0 vì 0 nghĩa là "chưa có sender report"
+        int now = (int) (System.nanoTime() / 1_000_000);
+        return now == 0 ? 1 : now;
+    }
+}
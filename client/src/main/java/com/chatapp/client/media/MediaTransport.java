@@ -0,0 +1,248 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Kênh UDP của một cuộc gọi: đóng/mở header MediaProtocol và chuyển gói nhận được
+ * cho listener theo loại gói. Buffer gửi/nhận là direct buffer cấp một lần, không cấp phát theo gói.
+ * Chỉ nhận gói từ địa chỉ remote đã đặt, gói lạ bị bỏ qua.
+ * Luồng audio và video được bảo vệ bằng FEC (FecEncoder/FecDecoder): gói FEC phát ngay sau mỗi nhóm,
+ * gói dựng lại được chuyển cho listener với cờ FLAG_RECOVERED.
+ */
+public class MediaTransport {
+
+    /**
+     * Nhận một gói media. payload chỉ hợp lệ trong lúc gọi hàm (buffer được dùng lại).
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onPacket(byte flags, int stream, int ssrc, int sequence, int timestamp, ByteBuffer payload);
+    }
+
+    private static final int SOCKET_BUFFER_SIZE = 256 * 1024;
+    private static final int AUDIO_FEC_MAX_GROUP = 4;
+    private static final int VIDEO_FEC_MAX_GROUP = 16;
+    private static final int FEC_START_GROUP = 8;
+
+    private final Listener[] listeners = new Listener[16];
+    private final FecEncoder[] fecEncoders = new FecEncoder[listeners.length];
+    private final FecDecoder[] fecDecoders = new FecDecoder[listeners.length];
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MediaProtocol.MAX_PACKET_SIZE);
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MediaProtocol.MAX_PACKET_SIZE);
+    private volatile DatagramChannel channel;
+    private volatile InetSocketAddress remote;
+    private volatile boolean running;
+
+    private volatile long packetsSent;
+    private volatile long bytesSent;
+    private volatile long packetsReceived;
+    private volatile long bytesReceived;
+    private volatile long fecPacketsSent;
+
+    public MediaTransport() {
+        // Audio: nhóm nhỏ để gói dựng lại còn kịp jitter buffer; video: chuyển gói theo thứ tự cho bộ ghép frame
+        fecEncoders[MediaProtocol.KIND_AUDIO] = new FecEncoder(AUDIO_FEC_MAX_GROUP,
+                AUDIO_FEC_MAX_GROUP, false);
+        fecEncoders[MediaProtocol.KIND_VIDEO] = new FecEncoder(VIDEO_FEC_MAX_GROUP, FEC_START_GROUP, true);
+        fecDecoders[MediaProtocol.KIND_AUDIO] = new FecDecoder(false,
+                (flags, stream, ssrc, sequence, timestamp, payload) ->
+                        dispatch(MediaProtocol.KIND_AUDIO, flags, stream, ssrc, sequence, timestamp, payload));
+        fecDecoders[MediaProtocol.KIND_VIDEO] = new FecDecoder(true,
+                (flags, stream, ssrc, sequence, timestamp, payload) ->
+                        dispatch(MediaProtocol.KIND_VIDEO, flags, stream, ssrc, sequence, timestamp, payload));
+    }
+
+    /**
+     * Mở socket UDP (port = 0 để chọn cổng ngẫu nhiên) và chạy thread nhận
+     *
+     * @return cổng local
+     */
+    public synchronized int open(int port) throws IOException {
+        if (channel != null) {
+            return getLocalPort();
+        }
+        channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_SIZE);
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER_SIZE);
+        channel.bind(new InetSocketAddress(port));
+        running = true;
+
+        DatagramChannel current = channel;
+        Thread receiver = new Thread(() -> receiveLoop(current), "media-receiver");
+        receiver.setDaemon(true);
+        receiver.setPriority(Thread.MAX_PRIORITY);
+        receiver.start();
+        return getLocalPort();
+    }
+
+    public synchronized int getLocalPort() {
+        return channel != null ? channel.socket().getLocalPort() : -1;
+    }
+
+    public void setRemote(InetSocketAddress remote) {
+        this.remote = remote;
+    }
+
+    public InetSocketAddress getRemote() {
+        return remote;
+    }
+
+    public void setListener(byte kind, Listener listener) {
+        listeners[kind] = listener;
+    }
+
+    /**
+     * Chỉnh độ dư FEC của luồng kind theo tỉ lệ mất trước FEC bên kia báo về
+     */
+    public void onFecLoss(byte kind, double rawLoss) {
+        FecEncoder encoder = fecEncoders[kind];
+        if (encoder != null) {
+            encoder.onLoss(rawLoss);
+        }
+    }
+
+    /**
+     * @return số gói mỗi nhóm FEC của luồng kind, 0 = tắt
+     */
+    public int getFecGroupSize(byte kind) {
+        FecEncoder encoder = fecEncoders[kind];
+        return encoder != null ? encoder.getGroupSize() : 0;
+    }
+
+    /**
+     * Gửi một gói tới remote. Gọi được từ nhiều thread (audio, video), buffer gửi được khóa.
+     */
+    public void send(byte kind, byte flags, int stream, int ssrc, int sequence, int timestamp,
+                     byte[] payload, int offset, int length) throws IOException {
+        InetSocketAddress target = remote;
+        if (target == null || !running) {
+            return;
+        }
+        int maxLength = kind == MediaProtocol.KIND_CONTROL
+                ? MediaProtocol.MAX_PAYLOAD_SIZE : MediaProtocol.MAX_MEDIA_PAYLOAD_SIZE;
+        if (length > maxLength) {
+            throw new IllegalArgumentException("Media payload too large: " + length);
+        }
+
+        synchronized (sendBuffer) {
+            DatagramChannel current = channel;
+            if (current == null) {
+                return;
+            }
+            sendBuffer.clear();
+            sendBuffer.put(kind)
+                    .put(flags)
+                    .putShort((short) stream)
+                    .putInt(ssrc)
+                    .putInt(sequence)
+                    .putInt(timestamp)
+                    .put(payload, offset, length);
+            sendBuffer.flip();
+            current.send(sendBuffer, target);
+            packetsSent++;
+            bytesSent += MediaProtocol.HEADER_SIZE + length;
+
+            FecEncoder encoder = fecEncoders[kind];
+            if (encoder != null && encoder.add(flags, stream, ssrc, sequence, timestamp, payload, offset, length)) {
+                sendBuffer.clear();
+                encoder.writeParity(sendBuffer, kind);
+                sendBuffer.flip();
+                bytesSent += sendBuffer.remaining();
+                current.send(sendBuffer, target);
+                fecPacketsSent++;
+            }
+        }
+    }
+
+    public synchronized void close() {
+        running = false;
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            System.err.println("[MediaTransport] Error closing channel: " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    public long getPacketsSent() { return packetsSent; }
+    public long getBytesSent() { return bytesSent; }
+    public long getPacketsReceived() { return packetsReceived; }
+    public long getBytesReceived() { return bytesReceived; }
+    public long getFecPacketsSent() { return fecPacketsSent; }
+    public long getFecRecovered() {
+        return fecDecoders[MediaProtocol.KIND_AUDIO].getRecovered() + fecDecoders[MediaProtocol.KIND_VIDEO].getRecovered();
+    }
+    public long getFecSkipped() { return fecDecoders[MediaProtocol.KIND_VIDEO].getSkipped(); }
+
+    private void receiveLoop(DatagramChannel current) {
+        try {
+            while (running) {
+                receiveBuffer.clear();
+                SocketAddress from = current.receive(receiveBuffer);
+                if (from == null || !from.equals(remote)) {
+                    continue;
+                }
+                receiveBuffer.flip();
+                if (receiveBuffer.remaining() < MediaProtocol.HEADER_SIZE) {
+                    continue;
+                }
+                packetsReceived++;
+                bytesReceived += receiveBuffer.remaining();
+
+                byte kind = receiveBuffer.get(MediaProtocol.OFFSET_KIND);
+                if (kind < 0 || kind >= listeners.length) {
+                    continue;
+                }
+
+                byte flags = receiveBuffer.get(MediaProtocol.OFFSET_FLAGS);
+                int stream = receiveBuffer.getShort(MediaProtocol.OFFSET_STREAM) & 0xFFFF;
+                int ssrc = receiveBuffer.getInt(MediaProtocol.OFFSET_SSRC);
+                int sequence = receiveBuffer.getInt(MediaProtocol.OFFSET_SEQUENCE);
+                int timestamp = receiveBuffer.getInt(MediaProtocol.OFFSET_TIMESTAMP);
+                receiveBuffer.position(MediaProtocol.HEADER_SIZE);
+
+                if (kind == MediaProtocol.KIND_FEC) {
+                    // flags = loại gói được bảo vệ, stream = số gói trong nhóm
+                    FecDecoder decoder = flags > 0 && flags < fecDecoders.length ? fecDecoders[flags] : null;
+                    if (decoder != null) {
+                        decoder.onParity(ssrc, sequence, stream, timestamp, receiveBuffer);
+                    }
+                    continue;
+                }
+                FecDecoder decoder = fecDecoders[kind];
+                if (decoder != null) {
+                    decoder.onMedia(flags, stream, ssrc, sequence, timestamp, receiveBuffer);
+                } else {
+                    dispatch(kind, flags, stream, ssrc, sequence, timestamp, receiveBuffer);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // Cuộc gọi kết thúc
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[MediaTransport] Receive error: " + e.getMessage());
+            }
+        }
+    }
+
+    private void dispatch(byte kind, byte flags, int stream, int ssrc, int sequence, int timestamp,
+                          ByteBuffer payload) {
+        Listener listener = listeners[kind];
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onPacket(flags, stream, ssrc, sequence, timestamp, payload);
+        } catch (Exception e) {
+            System.err.println("[MediaTransport] Listener error: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+
+/**
+ * Codec dự phòng khi không có FFmpeg/Opus: hạ 48 kHz xuống 16 kHz (trung bình 3 mẫu) rồi nén G.711 mu-law,
+ * 1 byte mỗi mẫu (128 kbps). Bên nhận giải mu-law và nội suy tuyến tính lên lại 48 kHz.
+ */
+final class MuLaw {
+    static final int DECIMATION = 3;
+    static final int PACKET_SAMPLES = MediaProtocol.AUDIO_PACKET_SAMPLES / DECIMATION;
+
+    private static final int BIAS = 0x84;
+    private static final int CLIP = 32635;
+    private static final short[] DECODE = new short[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int value = ~i & 0xFF;
+            int exponent = (value >> 4) & 0x07;
+            int sample = (((value & 0x0F) << 3) + BIAS) << exponent;
+            sample -= BIAS;
+            DECODE[i] = (short) ((value & 0x80) != 0 ? -sample : sample);
+        }
+    }
+
+    private MuLaw() {}
+
+    /**
+     * Nén một gói PCM 48 kHz (AUDIO_PACKET_BYTES) vào out từ offset
+     *
+     * @return số byte đã ghi (PACKET_SAMPLES)
+     */
+    static int encode(byte[] pcm, byte[] out, int offset) {
+        for (int i = 0; i < PACKET_SAMPLES; i++) {
+            int sum = 0;
+            for (int j = 0; j < DECIMATION; j++) {
+                int index = 2 * (i * DECIMATION + j);
+                sum += (short) ((pcm[index] & 0xFF) | (pcm[index + 1] << 8));
+            }
+            out[offset + i] = encodeSample(sum / DECIMATION);
+        }
+        return PACKET_SAMPLES;
+    }
+
+    /**
+     * Giải nén PACKET_SAMPLES byte thành một gói PCM 48 kHz
+     *
+     * @param previous mẫu 16 kHz cuối của gói trước (nội suy liền mạch giữa hai gói)
+     * @return mẫu 16 kHz cuối của gói này
+     */
+    static int decode(byte[] data, int offset, int length, byte[] pcm, int previous) {
+        int last = previous;
+        for (int i = 0; i < PACKET_SAMPLES; i++) {
+            int sample = i < length ? DECODE[data[offset + i] & 0xFF] : 0;
+            for (int j = 0; j < DECIMATION; j++) {
+                int value = last + (sample - last) * (j + 1) / DECIMATION;
+                int index = 2 * (i * DECIMATION + j);
+                pcm[index] = (byte) value;
+                pcm[index + 1] = (byte) (value >> 8);
+            }
+            last = sample;
+        }
+        return last;
+    }
+
+    private static byte encodeSample(int pcm) {
+        int sign = (pcm >> 8) & 0x80;
+        if (sign != 0) {
+            pcm = -pcm;
+        }
+        if (pcm > CLIP) {
+            pcm = CLIP;
+        }
+        pcm += BIAS;
+        int exponent = 7;
+        for (int mask = 0x4000; (pcm & mask) == 0 && exponent > 0; exponent--, mask >>= 1) {
+            // Tìm bit cao nhất
+        }
+        int mantissa = (pcm >> (exponent + 3)) & 0x0F;
+        return (byte) ~(sign | (exponent << 4) | mantissa);
+    }
+}
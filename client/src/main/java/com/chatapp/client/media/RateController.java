@@ -0,0 +1,128 @@
+package com.chatapp.client.media;
+
+/**
+ * Điều chỉnh bitrate/độ phân giải/fps của video gửi đi theo receiver report của bên kia.
+ *
+ * Bitrate (giống phần loss-based + delay-based của GCC):
+ *   - mất > 10%: giảm theo tỉ lệ mất (b *= 1 - 0.5 * loss)
+ *   - RTT vượt mức nền quá RTT_QUEUE_MS hoặc jitter lớn (hàng đợi trên đường truyền đang dâng): b *= 0.85
+ *   - mất < 2% và không có dấu hiệu trên: tăng 8% mỗi báo cáo, nhưng chờ HOLD_AFTER_DECREASE_MS sau lần giảm
+ *   - còn lại giữ nguyên
+ * Độ phân giải/fps chọn theo bậc của bitrate; xuống bậc ngay, lên bậc chỉ khi dư UPSWITCH_MARGIN
+ * và đã ở bậc hiện tại ít nhất LAYER_HOLD_MS, tránh nhảy qua lại (mỗi lần đổi là một keyframe).
+ * Bitrate là tổng trên đường truyền; encoder nhận phần còn lại sau khi trừ gói FEC (protection overhead).
+ */
+public class RateController {
+    /** width, height, fps, bitrate tối thiểu cho bậc */
+    private static final int[][] LADDER = {
+            {1280, 720, 30, 1_200_000},
+            {960, 540, 30, 700_000},
+            {640, 360, 30, 350_000},
+            {480, 270, 20, 180_000},
+            {320, 180, 15, 0}
+    };
+
+    private static final double HIGH_LOSS = 0.10;
+    private static final double LOW_LOSS = 0.02;
+    private static final double INCREASE = 1.08;
+    private static final double DELAY_DECREASE = 0.85;
+    private static final double RTT_QUEUE_MS = 150;
+    private static final double JITTER_LIMIT_MS = 40;
+    private static final long HOLD_AFTER_DECREASE_MS = 2000;
+    private static final long LAYER_HOLD_MS = 4000;
+    private static final double UPSWITCH_MARGIN = 1.2;
+
+    private final int minBitrate;
+    private final int maxBitrate;
+    private double bitrate;
+    private int layer;
+    private long lastDecreaseMs;
+    private long lastLayerChangeMs;
+    private double minRttMs = -1;
+    private double protectionOverhead;
+
+    public RateController(int minBitrate, int maxBitrate, int startBitrate) {
+        this.minBitrate = minBitrate;
+        this.maxBitrate = maxBitrate;
+        this.bitrate = Math.max(minBitrate, Math.min(maxBitrate, startBitrate));
+        this.layer = layerFor(bitrate);
+    }
+
+    /**
+     * Cập nhật theo một receiver report về luồng video của mình
+     *
+     * @param rttMs -1 nếu chưa có
+     * @return true nếu cấu hình (bitrate/bậc) đổi
+     */
+    public synchronized boolean onReport(double fractionLost, double jitterMs, double rttMs, long nowMs) {
+        double previousBitrate = bitrate;
+        int previousLayer = layer;
+
+        if (rttMs >= 0) {
+            minRttMs = minRttMs < 0 ? rttMs : Math.min(minRttMs, rttMs);
+        }
+        boolean queueBuilding = (rttMs >= 0 && rttMs > minRttMs + RTT_QUEUE_MS) || jitterMs > JITTER_LIMIT_MS;
+
+        if (fractionLost > HIGH_LOSS) {
+            bitrate *= 1 - 0.5 * fractionLost;
+            lastDecreaseMs = nowMs;
+        } else if (queueBuilding) {
+            bitrate *= DELAY_DECREASE;
+            lastDecreaseMs = nowMs;
+        } else if (fractionLost < LOW_LOSS && nowMs - lastDecreaseMs >= HOLD_AFTER_DECREASE_MS) {
+            bitrate *= INCREASE;
+        }
+        bitrate = Math.max(minBitrate, Math.min(maxBitrate, bitrate));
+
+        int target = layerFor(bitrate);
+        if (target > layer) {
+            layer = target;
+            lastLayerChangeMs = nowMs;
+        } else if (target < layer && nowMs - lastLayerChangeMs >= LAYER_HOLD_MS
+                && bitrate >= LADDER[layer - 1][3] * UPSWITCH_MARGIN) {
+            layer--;
+            lastLayerChangeMs = nowMs;
+        }
+
+        return layer != previousLayer || Math.abs(bitrate - previousBitrate) > previousBitrate * 0.05;
+    }
+
+    /**
+     * Tỉ lệ gói FEC so với gói media (1/k), phần này không dành cho encoder
+     *
+     * @return true nếu đổi
+     */
+    public synchronized boolean setProtectionOverhead(double overhead) {
+        if (overhead == protectionOverhead) {
+            return false;
+        }
+        protectionOverhead = overhead;
+        return true;
+    }
+
+    /**
+     * Áp cấu hình hiện tại vào pipeline gửi
+     */
+    public synchronized void apply(VideoCapture capture) {
+        int[] step = LADDER[layer];
+        capture.setSettings(step[0], step[1], step[2], getEncoderBitrate());
+    }
+
+    public synchronized int getBitrate() { return (int) bitrate; }
+    public synchronized int getEncoderBitrate() { return (int) (bitrate / (1 + protectionOverhead)); }
+    public synchronized int getWidth() { return LADDER[layer][0]; }
+    public synchronized int getHeight() { return LADDER[layer][1]; }
+    public synchronized int getFps() { return LADDER[layer][2]; }
+
+    /**
+     * Chỉ số bậc (0 là cao nhất) mà bitrate đủ dùng
+     */
+    private static int layerFor(double bitrate) {
+        for (int i = 0; i < LADDER.length; i++) {
+            if (bitrate >= LADDER[i][3]) {
+                return i;
+            }
+        }
+        return LADDER.length - 1;
+    }
+}
@@ -0,0 +1,125 @@
+package com.chatapp.client.media;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Thống kê nhận của một luồng media (một ssrc) để lập receiver report như RTCP (RFC 3550 mục 6.4):
+ * sequence cao nhất (mở rộng qua vòng tràn), số gói mất, tỉ lệ mất từ báo cáo trước và jitter.
+ * Gói do FEC dựng lại tính là đã nhận (mất còn lại sau FEC) nhưng được đếm riêng để báo cả
+ * tỉ lệ mất trước FEC; chúng không tham gia tính jitter vì thời điểm tới là giả.
+ */
+class ReceiverStats {
+    private final int clockRate;
+
+    private boolean started;
+    private int ssrc;
+    private long baseSequence;
+    private long highestSequence;
+    private long received;
+    private long bytes;
+    private long expectedPrior;
+    private long receivedPrior;
+    private long recovered;
+    private long recoveredPrior;
+
+    private long lastArrivalNanos;
+    private int lastTimestamp;
+    private double jitter;
+
+    private double lastFractionLost;
+    private double lastRawFractionLost;
+
+    ReceiverStats(int clockRate) {
+        this.clockRate = clockRate;
+    }
+
+    synchronized void onPacket(int ssrc, int sequence, int timestamp, int length, long arrivalNanos,
+                               boolean recoveredByFec) {
+        if (!started || ssrc != this.ssrc) {
+            // Luồng mới (hoặc bên gửi khởi động lại luồng): tính lại từ đầu
+            started = true;
+            this.ssrc = ssrc;
+            baseSequence = sequence;
+            highestSequence = sequence;
+            received = 0;
+            bytes = 0;
+            expectedPrior = 0;
+            receivedPrior = 0;
+            recovered = 0;
+            recoveredPrior = 0;
+            jitter = 0;
+            lastArrivalNanos = arrivalNanos;
+            lastTimestamp = timestamp;
+        }
+
+        received++;
+        bytes += length;
+        int delta = sequence - (int) highestSequence;
+        if (delta > 0) {
+            highestSequence += delta;
+        }
+        if (recoveredByFec) {
+            recovered++;
+            return;
+        }
+
+        // J += (|D| - J) / 16, D là chênh lệch thời gian truyền giữa hai gói liên tiếp
+        double arrivalUnits = (arrivalNanos - lastArrivalNanos) * (clockRate / 1e9);
+        double transitDelta = arrivalUnits - (timestamp - lastTimestamp);
+        jitter += (Math.abs(transitDelta) - jitter) / 16.0;
+        lastArrivalNanos = arrivalNanos;
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * Ghi receiver report (không kể header) vào out theo MediaProtocol, cập nhật mốc tỉ lệ mất
+     *
+     * @return false nếu chưa nhận gói nào
+     */
+    synchronized boolean writeReport(ByteBuffer out, int lastSenderReport, int delaySinceSenderReportMs) {
+        if (!started) {
+            return false;
+        }
+        long expected = highestSequence - baseSequence + 1;
+        long lost = Math.max(0, expected - received);
+
+        long expectedInterval = expected - expectedPrior;
+        long receivedInterval = received - receivedPrior;
+        long recoveredInterval = recovered - recoveredPrior;
+        expectedPrior = expected;
+        receivedPrior = received;
+        recoveredPrior = recovered;
+        long lostInterval = expectedInterval - receivedInterval;
+        int fraction = fraction(lostInterval, expectedInterval);
+        int rawFraction = fraction(lostInterval + recoveredInterval, expectedInterval);
+        lastFractionLost = fraction / 256.0;
+        lastRawFractionLost = rawFraction / 256.0;
+
+        out.putInt(ssrc)
+                .put((byte) fraction)
+                .putInt((int) Math.min(Integer.MAX_VALUE, lost))
+                .putInt((int) highestSequence)
+                .putInt((int) jitter)
+                .putInt(lastSenderReport)
+                .putInt(delaySinceSenderReportMs)
+                .put((byte) rawFraction);
+        return true;
+    }
+
+    private static int fraction(long lost, long expected) {
+        return expected <= 0 || lost <= 0 ? 0 : (int) Math.min(255, (lost << 8) / expected);
+    }
+
+    synchronized int getSsrc() { return ssrc; }
+    synchronized boolean isStarted() { return started; }
+    synchronized long getReceived() { return received; }
+    synchronized long getBytes() { return bytes; }
+    synchronized double getJitterMs() { return jitter * 1000.0 / clockRate; }
+    synchronized double getFractionLost() { return lastFractionLost; }
+    synchronized double getRawFractionLost() { return lastRawFractionLost; }
+    synchronized long getRecovered() { return recovered; }
+
+    synchronized long getLost() {
+        return started ? Math.max(0, highestSequence - baseSequence + 1 - received) : 0;
+    }
+}
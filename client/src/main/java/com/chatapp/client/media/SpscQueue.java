@@ -0,0 +1,80 @@
+package com.chatapp.client.media;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hàng đợi có giới hạn, đúng một producer và một consumer, không khóa.
+ * Dùng giữa các stage của pipeline video và làm free-list trả object về pool
+ * (chiều ngược lại), nên không có object nào được cấp phát khi pipeline đang chạy.
+ */
+class SpscQueue<T> {
+    private final Object[] items;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private volatile Thread consumer;
+
+    /**
+     * @param capacity làm tròn lên lũy thừa của 2
+     */
+    SpscQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.items = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return false nếu đầy
+     */
+    boolean offer(T item) {
+        long t = tail.get();
+        if (t - head.get() >= items.length) {
+            return false;
+        }
+        items[(int) (t & mask)] = item;
+        tail.lazySet(t + 1);
+
+        Thread waiting = consumer;
+        if (waiting != null) {
+            LockSupport.unpark(waiting);
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    T poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        int index = (int) (h & mask);
+        T item = (T) items[index];
+        items[index] = null;
+        head.lazySet(h + 1);
+        return item;
+    }
+
+    /**
+     * Chờ tối đa timeoutMs cho tới khi có phần tử
+     */
+    T take(long timeoutMs) {
+        consumer = Thread.currentThread();
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        while (true) {
+            T item = poll();
+            if (item != null) {
+                return item;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    int size() {
+        return (int) (tail.get() - head.get());
+    }
+}
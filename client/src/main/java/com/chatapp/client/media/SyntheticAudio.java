@@ -0,0 +1,135 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Nguồn và đích audio tổng hợp, giữ nhịp theo đồng hồ hệ thống như thiết bị thật.
+ * Dùng để chạy hai client trên loopback mà không cần micro/loa.
+ */
+public final class SyntheticAudio {
+
+    private SyntheticAudio() {}
+
+    /**
+     * Sóng sin tần số cho trước, biên độ vừa phải
+     */
+    public static AudioSource tone(double frequencyHz) {
+        return new AudioSource() {
+            private final Pacer pacer = new Pacer();
+            private long sample;
+
+            @Override
+            public void read(byte[] frame) {
+                pacer.await();
+                for (int i = 0; i < MediaProtocol.AUDIO_FRAME_SAMPLES; i++, sample++) {
+                    short value = (short) (Math.sin(2 * Math.PI * frequencyHz * sample / MediaProtocol.AUDIO_SAMPLE_RATE) * 8000);
+                    frame[2 * i] = (byte) value;
+                    frame[2 * i + 1] = (byte) (value >> 8);
+                }
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    /**
+     * Một người trong cuộc hội thoại nhiều người: các người lần lượt nói theo lượt turnMs (người thứ index nói
+     * trong lượt thứ index, index + participants...), lúc nói là giọng tổng hợp (cao độ đổi dần, âm lượng lên
+     * xuống theo âm tiết ~4 Hz), lúc khác chỉ có nhiễu nền nhỏ (~-63 dBov) như micro trong phòng yên tĩnh
+     */
+    public static AudioSource conversation(int index, int participants, long turnMs) {
+        return new AudioSource() {
+            private final Pacer pacer = new Pacer();
+            private final long turnSamples = turnMs * MediaProtocol.AUDIO_SAMPLE_RATE / 1000;
+            private long sample;
+            private double phase;
+
+            @Override
+            public void read(byte[] frame) {
+                pacer.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < MediaProtocol.AUDIO_FRAME_SAMPLES; i++, sample++) {
+                    double value = random.nextInt(-40, 41);
+                    if ((sample / turnSamples) % participants == index) {
+                        double t = (double) sample / MediaProtocol.AUDIO_SAMPLE_RATE;
+                        double pitch = 150 + 40 * Math.sin(2 * Math.PI * 0.7 * t);
+                        phase += 2 * Math.PI * pitch / MediaProtocol.AUDIO_SAMPLE_RATE;
+                        double envelope = Math.max(0, Math.sin(2 * Math.PI * 4 * t));
+                        value += envelope * 7000 * (Math.sin(phase) + 0.5 * Math.sin(2 * phase)
+                                + 0.25 * Math.sin(3 * phase));
+                    }
+                    short pcm = (short) Math.max(-32768, Math.min(32767, value));
+                    frame[2 * i] = (byte) pcm;
+                    frame[2 * i + 1] = (byte) (pcm >> 8);
+                }
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    /**
+     * Nguồn im lặng (máy không có micro vẫn giữ được luồng gói đều đặn)
+     */
+    public static AudioSource silence() {
+        return new AudioSource() {
+            private final Pacer pacer = new Pacer();
+
+            @Override
+            public void read(byte[] frame) {
+                pacer.await();
+                Arrays.fill(frame, (byte) 0);
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    /**
+     * Đích bỏ dữ liệu nhưng vẫn chặn đúng thời lượng dữ liệu được ghi (AUDIO_FRAME_MS mỗi frame)
+     */
+    public static AudioSink discard() {
+        return new AudioSink() {
+            private final Pacer pacer = new Pacer();
+
+            @Override
+            public void write(byte[] frame, int length) {
+                pacer.await(Math.max(1, length / MediaProtocol.AUDIO_FRAME_BYTES));
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    /**
+     * Chờ tới mốc frame tiếp theo; mốc tính từ lần gọi đầu nên không trôi theo độ trễ xử lý
+     */
+    private static class Pacer {
+        private static final long FRAME_NANOS = MediaProtocol.AUDIO_FRAME_MS * 1_000_000L;
+        private long next;
+
+        void await() {
+            await(1);
+        }
+
+        void await(int frames) {
+            long now = System.nanoTime();
+            if (next == 0) {
+                next = now;
+            }
+            while (now < next) {
+                LockSupport.parkNanos(next - now);
+                now = System.nanoTime();
+            }
+            next += frames * FRAME_NANOS;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.chatapp.client.media;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Nguồn ảnh tổng hợp: dải màu chạy ngang và một khối vuông di chuyển, đủ chuyển động để
+ * encoder làm việc như với camera. Giữ nhịp fps theo đồng hồ hệ thống, không cấp phát theo frame.
+ */
+public class SyntheticVideoSource implements VideoSource {
+    private final int width;
+    private final int height;
+    private final long frameNanos;
+    private long nextFrame;
+    private long frameCount;
+    private volatile boolean open = true;
+
+    public SyntheticVideoSource(int width, int height, int fps) {
+        this.width = width;
+        this.height = height;
+        this.frameNanos = 1_000_000_000L / fps;
+    }
+
+    @Override
+    public boolean grab(VideoFrame target) {
+        long now = System.nanoTime();
+        if (nextFrame == 0) {
+            nextFrame = now;
+        }
+        while (open && now < nextFrame) {
+            LockSupport.parkNanos(nextFrame - now);
+            now = System.nanoTime();
+        }
+        if (!open) {
+            return false;
+        }
+        nextFrame += frameNanos;
+
+        target.setBgr(width, height, now);
+        byte[] data = target.data;
+        int shift = (int) (frameCount * 4);
+        int boxX = (int) (frameCount * 8 % Math.max(1, width - 64));
+        int boxY = height / 2 - 32;
+
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            boolean boxRow = y >= boxY && y < boxY + 64;
+            for (int x = 0; x < width; x++) {
+                if (boxRow && x >= boxX && x < boxX + 64) {
+                    data[index++] = (byte) 255;
+                    data[index++] = (byte) 255;
+                    data[index++] = (byte) 255;
+                } else {
+                    data[index++] = (byte) (x + shift);
+                    data[index++] = (byte) (y + shift);
+                    data[index++] = (byte) (x + y);
+                }
+            }
+        }
+        frameCount++;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+}
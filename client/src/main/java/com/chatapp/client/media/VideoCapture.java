@@ -1,3 +1,405 @@
 package com.chatapp.client.media;
 
-public class VideoCapture {}
+import com.chatapp.common.protocol.MediaProtocol;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipeline gửi video: grab -> convert (BGR24 -> I420, co giãn) -> encode -> đóng gói + gửi UDP.
+ * Mỗi stage một thread, nối với nhau bằng SpscQueue có giới hạn. Frame và buffer nằm trong pool
+ * cố định (mỗi stage trả object về free-list của stage trước), nên khi chạy ổn định không có
+ * cấp phát theo frame. Stage nào chậm thì frame bị bỏ ở đầu vào của nó, không dồn độ trễ.
+ * Độ trễ từng stage tính từ lúc chụp (timestampNanos của nguồn, theo System.nanoTime()) và ghi vào
+ * LatencyHistogram của stage đó; mỗi histogram chỉ thread của stage ghi.
+ */
+public class VideoCapture {
+    private static final int POOL_SIZE = 3;
+    private static final int INITIAL_ENCODED_CAPACITY = 256 * 1024;
+    private static final long TAKE_TIMEOUT_MS = 100;
+
+    /** Cấu hình encode hiện tại (đổi nguyên khối, chỉ cấp phát khi đổi) */
+    private static final class Settings {
+        final int width;
+        final int height;
+        final int fps;
+        final int bitrate;
+
+        Settings(int width, int height, int fps, int bitrate) {
+            this.width = width;
+            this.height = height;
+            this.fps = fps;
+            this.bitrate = bitrate;
+        }
+    }
+
+    private final VideoSource source;
+    private final MediaTransport transport;
+    private final int ssrc;
+    private final int maxWidth;
+    private final int maxHeight;
+
+    private final SpscQueue<VideoFrame> rawFree = new SpscQueue<>(POOL_SIZE);
+    private final SpscQueue<VideoFrame> rawQueue = new SpscQueue<>(POOL_SIZE);
+    private final SpscQueue<VideoFrame> yuvFree = new SpscQueue<>(POOL_SIZE);
+    private final SpscQueue<VideoFrame> yuvQueue = new SpscQueue<>(POOL_SIZE);
+    private final SpscQueue<EncodedFrame> encodedFree = new SpscQueue<>(POOL_SIZE);
+    private final SpscQueue<EncodedFrame> encodedQueue = new SpscQueue<>(POOL_SIZE);
+    private final VideoFrame spareFrame;
+
+    private volatile Settings settings;
+    private final AtomicBoolean keyFrameRequested = new AtomicBoolean(true);
+    private volatile boolean running;
+    private Thread[] threads;
+
+    private volatile long framesGrabbed;
+    private volatile long framesEncoded;
+    private volatile long keyFrames;
+    private volatile long bytesEncoded;
+    private volatile long packetsSent;
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final LatencyHistogram convertLatency = new LatencyHistogram();
+    private final LatencyHistogram encodeTime = new LatencyHistogram();
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+
+    /**
+     * @param maxWidth  kích thước lớn nhất nguồn có thể trả về (để cấp pool một lần)
+     * @param maxHeight như trên
+     */
+    public VideoCapture(VideoSource source, MediaTransport transport, int ssrc,
+                        int maxWidth, int maxHeight, int fps, int bitrate) {
+        this.source = source;
+        this.transport = transport;
+        this.ssrc = ssrc;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.settings = new Settings(maxWidth & ~1, maxHeight & ~1, fps, bitrate);
+
+        int rawSize = VideoFrame.sizeOf(VideoFrame.Format.BGR24, maxWidth, maxHeight);
+        int yuvSize = VideoFrame.sizeOf(VideoFrame.Format.I420, maxWidth, maxHeight);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            rawFree.offer(new VideoFrame(rawSize));
+            yuvFree.offer(new VideoFrame(yuvSize));
+            encodedFree.offer(new EncodedFrame(INITIAL_ENCODED_CAPACITY));
+        }
+        this.spareFrame = new VideoFrame(rawSize);
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        threads = new Thread[]{
+                new Thread(this::grabLoop, "video-grab"),
+                new Thread(this::convertLoop, "video-convert"),
+                new Thread(this::encodeLoop, "video-encode"),
+                new Thread(this::sendLoop, "video-send")
+        };
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        source.close();
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Đổi độ phân giải/fps/bitrate khi đang chạy. Đổi độ phân giải/fps thì encoder được mở lại
+     * ở frame kế tiếp (bắt đầu bằng keyframe); chỉ đổi bitrate thì áp ngay nếu encoder hỗ trợ.
+     * Độ phân giải bị giới hạn trong kích thước tối đa và làm tròn xuống số chẵn (I420).
+     */
+    public void setSettings(int width, int height, int fps, int bitrate) {
+        int w = Math.max(2, Math.min(width, maxWidth)) & ~1;
+        int h = Math.max(2, Math.min(height, maxHeight)) & ~1;
+        settings = new Settings(w, h, Math.max(1, fps), Math.max(10_000, bitrate));
+    }
+
+    /**
+     * Yêu cầu keyframe ở frame tiếp theo (vd. bên nhận mất gói)
+     */
+    public void requestKeyFrame() {
+        keyFrameRequested.set(true);
+    }
+
+    public int getWidth() { return settings.width; }
+    public int getHeight() { return settings.height; }
+    public int getFps() { return settings.fps; }
+    public int getBitrate() { return settings.bitrate; }
+
+    public long getFramesGrabbed() { return framesGrabbed; }
+    public long getFramesDropped() { return framesDropped.get(); }
+    public long getFramesEncoded() { return framesEncoded; }
+    public long getKeyFrames() { return keyFrames; }
+    public long getBytesEncoded() { return bytesEncoded; }
+    public long getPacketsSent() { return packetsSent; }
+    public int getRawQueued() { return rawQueue.size(); }
+    public int getYuvQueued() { return yuvQueue.size(); }
+    public int getEncodedQueued() { return encodedQueue.size(); }
+    /** Từ lúc chụp tới khi đổi xong sang I420 (gồm thời gian chờ trong queue) */
+    public LatencyHistogram getConvertLatency() { return convertLatency; }
+    /** Thời gian encoder nén một frame */
+    public LatencyHistogram getEncodeTime() { return encodeTime; }
+    /** Từ lúc chụp tới khi gói cuối của frame được gửi */
+    public LatencyHistogram getSendLatency() { return sendLatency; }
+
+    // ===== Stage 1: lấy ảnh từ nguồn, giới hạn fps =====
+
+    private void grabLoop() {
+        VideoFrame frame = null;
+        long lastAccepted = 0;
+        try {
+            while (running) {
+                if (frame == null) {
+                    frame = rawFree.poll();
+                }
+                // Pool cạn (stage sau chậm): vẫn đọc nguồn để camera không bị dồn, rồi bỏ frame
+                VideoFrame target = frame != null ? frame : spareFrame;
+                if (!source.grab(target)) {
+                    break;
+                }
+                framesGrabbed++;
+
+                long interval = 1_000_000_000L / settings.fps;
+                long timestamp = target.timestampNanos;
+                if (target == spareFrame || timestamp - lastAccepted < interval - interval / 8) {
+                    framesDropped.incrementAndGet();
+                    continue;
+                }
+                lastAccepted = timestamp;
+                rawQueue.offer(frame);
+                frame = null;
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[VideoCapture] Grab failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // ===== Stage 2: BGR24 -> I420 theo kích thước đích =====
+
+    private void convertLoop() {
+        int[] columns = new int[0];
+        int columnsFor = -1;
+        int sourceWidthFor = -1;
+
+        while (running) {
+            VideoFrame raw = rawQueue.take(TAKE_TIMEOUT_MS);
+            if (raw == null) {
+                continue;
+            }
+            VideoFrame yuv = yuvFree.poll();
+            if (yuv == null) {
+                framesDropped.incrementAndGet();
+                rawFree.offer(raw);
+                continue;
+            }
+
+            Settings current = settings;
+            int width = Math.min(current.width, raw.width & ~1);
+            int height = Math.min(current.height, raw.height & ~1);
+            if (columnsFor != width || sourceWidthFor != raw.width) {
+                columns = new int[width];
+                for (int x = 0; x < width; x++) {
+                    columns[x] = x * raw.width / width * 3;
+                }
+                columnsFor = width;
+                sourceWidthFor = raw.width;
+            }
+
+            bgrToI420(raw, yuv, width, height, columns);
+            convertLatency.record(System.nanoTime() - raw.timestampNanos);
+            rawFree.offer(raw);
+            yuvQueue.offer(yuv);
+        }
+    }
+
+    /**
+     * BT.601 số nguyên (dải limited), lấy mẫu láng giềng gần nhất khi co nhỏ.
+     * U/V là trung bình của khối 2x2.
+     */
+    private static void bgrToI420(VideoFrame raw, VideoFrame yuv, int width, int height, int[] columns) {
+        byte[] in = raw.data;
+        byte[] out = yuv.data;
+        int sourceStride = raw.width * 3;
+        int uOffset = width * height;
+        int vOffset = uOffset + (width / 2) * (height / 2);
+
+        for (int y = 0; y < height; y += 2) {
+            int row0 = (y * raw.height / height) * sourceStride;
+            int row1 = ((y + 1) * raw.height / height) * sourceStride;
+            int yIndex0 = y * width;
+            int yIndex1 = yIndex0 + width;
+            int chromaIndex = (y / 2) * (width / 2);
+
+            for (int x = 0; x < width; x += 2) {
+                int p00 = row0 + columns[x];
+                int p01 = row0 + columns[x + 1];
+                int p10 = row1 + columns[x];
+                int p11 = row1 + columns[x + 1];
+
+                int b = 0, g = 0, r = 0;
+                int pb, pg, pr;
+
+                pb = in[p00] & 0xFF; pg = in[p00 + 1] & 0xFF; pr = in[p00 + 2] & 0xFF;
+                out[yIndex0 + x] = (byte) (((66 * pr + 129 * pg + 25 * pb + 128) >> 8) + 16);
+                b += pb; g += pg; r += pr;
+
+                pb = in[p01] & 0xFF; pg = in[p01 + 1] & 0xFF; pr = in[p01 + 2] & 0xFF;
+                out[yIndex0 + x + 1] = (byte) (((66 * pr + 129 * pg + 25 * pb + 128) >> 8) + 16);
+                b += pb; g += pg; r += pr;
+
+                pb = in[p10] & 0xFF; pg = in[p10 + 1] & 0xFF; pr = in[p10 + 2] & 0xFF;
+                out[yIndex1 + x] = (byte) (((66 * pr + 129 * pg + 25 * pb + 128) >> 8) + 16);
+                b += pb; g += pg; r += pr;
+
+                pb = in[p11] & 0xFF; pg = in[p11 + 1] & 0xFF; pr = in[p11 + 2] & 0xFF;
+                out[yIndex1 + x + 1] = (byte) (((66 * pr + 129 * pg + 25 * pb + 128) >> 8) + 16);
+                b += pb; g += pg; r += pr;
+
+                b >>= 2; g >>= 2; r >>= 2;
+                out[uOffset + chromaIndex] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+                out[vOffset + chromaIndex] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+                chromaIndex++;
+            }
+        }
+
+        yuv.width = width;
+        yuv.height = height;
+        yuv.format = VideoFrame.Format.I420;
+        yuv.timestampNanos = raw.timestampNanos;
+    }
+
+    // ===== Stage 3: nén =====
+
+    private void encodeLoop() {
+        VideoEncoder encoder = null;
+        Settings failedSettings = null;
+        EncodedFrame output = null;
+        try {
+            while (running) {
+                VideoFrame yuv = yuvQueue.take(TAKE_TIMEOUT_MS);
+                if (yuv == null) {
+                    continue;
+                }
+                if (output == null) {
+                    output = encodedFree.poll();
+                }
+                if (output == null) {
+                    framesDropped.incrementAndGet();
+                    yuvFree.offer(yuv);
+                    continue;
+                }
+
+                Settings current = settings;
+                if (encoder == null || !encoder.matches(yuv.width, yuv.height, current.fps)
+                        || !encoder.setBitrate(current.bitrate)) {
+                    if (encoder != null) {
+                        encoder.close();
+                        encoder = null;
+                    }
+                    if (current == failedSettings) {
+                        // Không mở được encoder với cấu hình này; chỉ thử lại khi cấu hình đổi
+                        framesDropped.incrementAndGet();
+                        yuvFree.offer(yuv);
+                        continue;
+                    }
+                    try {
+                        encoder = new VideoEncoder(yuv.width, yuv.height, current.fps, current.bitrate);
+                    } catch (IOException e) {
+                        System.err.println("[VideoCapture] " + e.getMessage());
+                        failedSettings = current;
+                        yuvFree.offer(yuv);
+                        continue;
+                    }
+                    keyFrameRequested.set(true);
+                }
+
+                boolean produced;
+                long encodeStart = System.nanoTime();
+                try {
+                    produced = encoder.encode(yuv, keyFrameRequested.getAndSet(false), output);
+                } finally {
+                    yuvFree.offer(yuv);
+                }
+                encodeTime.record(System.nanoTime() - encodeStart);
+                if (!produced) {
+                    continue;
+                }
+
+                framesEncoded++;
+                bytesEncoded += output.length;
+                if (output.keyFrame) {
+                    keyFrames++;
+                }
+                encodedQueue.offer(output);
+                output = null;
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[VideoCapture] Encode failed: " + e.getMessage());
+            }
+        } finally {
+            if (encoder != null) {
+                encoder.close();
+            }
+        }
+    }
+
+    // ===== Stage 4: cắt frame thành gói UDP và gửi =====
+
+    private void sendLoop() {
+        byte[] payload = new byte[MediaProtocol.MAX_MEDIA_PAYLOAD_SIZE];
+        int chunkSize = payload.length - 1;
+        int sequence = 0;
+        long baseNanos = -1;
+
+        try {
+            while (running) {
+                EncodedFrame frame = encodedQueue.take(TAKE_TIMEOUT_MS);
+                if (frame == null) {
+                    continue;
+                }
+                if (baseNanos < 0) {
+                    baseNanos = frame.timestampNanos;
+                }
+                int timestamp = (int) ((frame.timestampNanos - baseNanos) * 9 / 100_000);
+
+                payload[0] = frame.codec;
+                for (int offset = 0; offset < frame.length; offset += chunkSize) {
+                    int length = Math.min(chunkSize, frame.length - offset);
+                    byte flags = 0;
+                    if (offset == 0) flags |= MediaProtocol.FLAG_FRAME_START;
+                    if (offset + length == frame.length) flags |= MediaProtocol.FLAG_FRAME_END;
+                    if (frame.keyFrame) flags |= MediaProtocol.FLAG_KEYFRAME;
+
+                    System.arraycopy(frame.data, offset, payload, 1, length);
+                    transport.send(MediaProtocol.KIND_VIDEO, flags, 0, ssrc, sequence++, timestamp,
+                            payload, 0, length + 1);
+                    packetsSent++;
+                }
+                sendLatency.record(System.nanoTime() - frame.timestampNanos);
+                encodedFree.offer(frame);
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[VideoCapture] Send failed: " + e.getMessage());
+            }
+        }
+    }
+}
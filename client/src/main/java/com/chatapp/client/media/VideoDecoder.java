@@ -0,0 +1,169 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+import org.bytedeco.ffmpeg.avcodec.AVCodec;
+import org.bytedeco.ffmpeg.avcodec.AVCodecContext;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avutil.AVDictionary;
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.ffmpeg.swscale.SwsContext;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.PointerPointer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.bytedeco.ffmpeg.global.avcodec.*;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+import static org.bytedeco.ffmpeg.global.swscale.*;
+
+/**
+ * Decoder video qua FFmpeg, chọn theo mã codec ở byte đầu payload (VIDEO_CODEC_*).
+ * Buffer đầu vào native, AVFrame/AVPacket và SwsContext cấp một lần; ảnh giải nén được
+ * swscale chuyển thẳng sang ARGB trong buffer direct của renderer, không qua mảng Java.
+ */
+class VideoDecoder implements AutoCloseable {
+    /** Byte ARGB theo thứ tự bộ nhớ của int (IntBuffer native order) */
+    private static final int TARGET_FORMAT =
+            ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? AV_PIX_FMT_BGRA : AV_PIX_FMT_ARGB;
+
+    private final byte codec;
+    private AVCodecContext context;
+    private AVFrame frame;
+    private AVPacket packet;
+    private BytePointer input;
+    private int inputCapacity;
+    private SwsContext scaler;
+    private final PointerPointer<BytePointer> targetPlanes = new PointerPointer<>(1);
+    private final IntPointer targetStrides = new IntPointer(1);
+
+    VideoDecoder(byte codec) throws IOException {
+        this.codec = codec;
+        AVCodec decoder;
+        try {
+            decoder = avcodec_find_decoder(codecId(codec));
+        } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+            throw new IOException("FFmpeg native libraries unavailable: " + e.getMessage());
+        }
+        if (decoder == null) {
+            throw new IOException("No decoder for codec " + codec);
+        }
+
+        context = avcodec_alloc_context3(decoder);
+        context.flags(context.flags() | AV_CODEC_FLAG_LOW_DELAY);
+        context.thread_count(2);
+        if (avcodec_open2(context, decoder, (AVDictionary) null) < 0) {
+            close();
+            throw new IOException("Failed to open decoder for codec " + codec);
+        }
+        frame = av_frame_alloc();
+        packet = av_packet_alloc();
+        ensureInput(64 * 1024);
+    }
+
+    /**
+     * Đưa một frame nén vào decoder
+     *
+     * @return true nếu có ảnh mới (lấy bằng width()/height()/convert())
+     */
+    boolean decode(EncodedFrame encoded) {
+        ensureInput(encoded.length);
+        input.position(0).put(encoded.data, 0, encoded.length);
+        // Phần đệm sau dữ liệu phải bằng 0 để parser của FFmpeg không đọc rác
+        input.position(encoded.length).limit(encoded.length + AV_INPUT_BUFFER_PADDING_SIZE).fill(0);
+        input.position(0).limit(input.capacity());
+
+        packet.data(input);
+        packet.size(encoded.length);
+        packet.flags(encoded.keyFrame ? AV_PKT_FLAG_KEY : 0);
+        if (avcodec_send_packet(context, packet) < 0) {
+            return false;
+        }
+
+        boolean decoded = false;
+        while (avcodec_receive_frame(context, frame) == 0) {
+            decoded = true;
+        }
+        return decoded;
+    }
+
+    int width() {
+        return frame.width();
+    }
+
+    int height() {
+        return frame.height();
+    }
+
+    /**
+     * Chuyển ảnh vừa giải nén sang ARGB vào buffer direct (width * height * 4 byte)
+     */
+    void convert(BytePointer target) {
+        int width = frame.width();
+        int height = frame.height();
+        scaler = sws_getCachedContext(scaler, width, height, frame.format(),
+                width, height, TARGET_FORMAT, SWS_POINT, null, null, (DoublePointer) null);
+        targetPlanes.put(0, target);
+        targetStrides.put(0, width * 4);
+        sws_scale(scaler, frame.data(), frame.linesize(), 0, height, targetPlanes, targetStrides);
+    }
+
+    byte getCodec() {
+        return codec;
+    }
+
+    /**
+     * Pointer trỏ vào bộ nhớ của buffer direct (tạo một lần cho mỗi buffer)
+     */
+    static BytePointer pointerTo(ByteBuffer direct) {
+        return new BytePointer(direct);
+    }
+
+    @Override
+    public void close() {
+        if (context != null) {
+            avcodec_free_context(context);
+            context = null;
+        }
+        if (frame != null) {
+            av_frame_free(frame);
+            frame = null;
+        }
+        if (packet != null) {
+            av_packet_free(packet);
+            packet = null;
+        }
+        if (input != null) {
+            av_free(input);
+            input = null;
+        }
+        if (scaler != null) {
+            sws_freeContext(scaler);
+            scaler = null;
+        }
+    }
+
+    private void ensureInput(int length) {
+        if (inputCapacity >= length) {
+            return;
+        }
+        if (input != null) {
+            av_free(input);
+        }
+        inputCapacity = Math.max(length, inputCapacity * 2);
+        input = new BytePointer(av_malloc(inputCapacity + AV_INPUT_BUFFER_PADDING_SIZE))
+                .capacity(inputCapacity + AV_INPUT_BUFFER_PADDING_SIZE);
+    }
+
+    private static int codecId(byte codec) throws IOException {
+        switch (codec) {
+            case MediaProtocol.VIDEO_CODEC_H264: return AV_CODEC_ID_H264;
+            case MediaProtocol.VIDEO_CODEC_VP8: return AV_CODEC_ID_VP8;
+            case MediaProtocol.VIDEO_CODEC_MPEG4: return AV_CODEC_ID_MPEG4;
+            default: throw new IOException("Unknown video codec " + codec);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+import org.bytedeco.ffmpeg.avcodec.AVCodec;
+import org.bytedeco.ffmpeg.avcodec.AVCodecContext;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avutil.AVDictionary;
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.javacpp.BytePointer;
+
+import java.io.IOException;
+
+import static org.bytedeco.ffmpeg.global.avcodec.*;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+
+/**
+ * Encoder video qua FFmpeg (libavcodec của JavaCV), cấu hình cho thời gian thực:
+ * không B-frame, keyframe mỗi 2 giây, preset nhanh nhất của từng codec.
+ * AVFrame/AVPacket cấp một lần; mỗi frame chỉ chép các plane I420 vào AVFrame.
+ * Dùng codec đầu tiên có trong bản FFmpeg đang chạy: H.264 (x264/OpenH264), VP8, rồi MPEG-4.
+ */
+class VideoEncoder implements AutoCloseable {
+    private static final String[] ENCODERS = {"libx264", "libopenh264", "libvpx", "mpeg4"};
+    private static final byte[] CODECS = {
+            MediaProtocol.VIDEO_CODEC_H264, MediaProtocol.VIDEO_CODEC_H264,
+            MediaProtocol.VIDEO_CODEC_VP8, MediaProtocol.VIDEO_CODEC_MPEG4
+    };
+
+    private final int width;
+    private final int height;
+    private final int fps;
+    private int bitrate;
+    private final byte codecId;
+    private final boolean reconfigurable;
+    private AVCodecContext context;
+    private AVFrame frame;
+    private AVPacket packet;
+    private long pts;
+
+    VideoEncoder(int width, int height, int fps, int bitrate) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.bitrate = bitrate;
+
+        AVCodec codec = null;
+        String name = null;
+        byte id = 0;
+        try {
+            av_log_set_level(AV_LOG_ERROR);
+            for (int i = 0; i < ENCODERS.length && codec == null; i++) {
+                codec = avcodec_find_encoder_by_name(ENCODERS[i]);
+                name = ENCODERS[i];
+                id = CODECS[i];
+            }
+        } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+            throw new IOException("FFmpeg native libraries unavailable: " + e.getMessage());
+        }
+        if (codec == null) {
+            throw new IOException("No video encoder available");
+        }
+        this.codecId = id;
+        // libx264 của FFmpeg đọc lại bit_rate mỗi frame và tự cấu hình lại, codec khác phải mở lại
+        this.reconfigurable = "libx264".equals(name);
+
+        context = avcodec_alloc_context3(codec);
+        context.width(width);
+        context.height(height);
+        context.time_base(av_make_q(1, fps));
+        context.framerate(av_make_q(fps, 1));
+        context.pix_fmt(AV_PIX_FMT_YUV420P);
+        context.bit_rate(bitrate);
+        context.rc_max_rate(bitrate);
+        context.rc_buffer_size(bitrate / 2);
+        context.gop_size(fps * 2);
+        context.max_b_frames(0);
+        context.thread_count(2);
+
+        AVDictionary options = new AVDictionary(null);
+        if ("libx264".equals(name)) {
+            av_dict_set(options, "preset", "ultrafast", 0);
+            av_dict_set(options, "tune", "zerolatency", 0);
+        } else if ("libvpx".equals(name)) {
+            av_dict_set(options, "deadline", "realtime", 0);
+            av_dict_set(options, "cpu-used", "8", 0);
+            av_dict_set(options, "lag-in-frames", "0", 0);
+        }
+        int result = avcodec_open2(context, codec, options);
+        av_dict_free(options);
+        if (result < 0) {
+            close();
+            throw new IOException("Failed to open encoder " + name + ": " + result);
+        }
+
+        frame = av_frame_alloc();
+        frame.format(AV_PIX_FMT_YUV420P);
+        frame.width(width);
+        frame.height(height);
+        if (av_frame_get_buffer(frame, 32) < 0) {
+            close();
+            throw new IOException("Failed to allocate encoder frame");
+        }
+        packet = av_packet_alloc();
+
+        System.out.println("[VideoEncoder] " + name + " " + width + "x" + height + "@" + fps + " " + bitrate + " bps");
+    }
+
+    /**
+     * Nén một frame I420 cùng kích thước encoder
+     *
+     * @return true nếu out có dữ liệu (encoder có thể giữ lại frame đầu)
+     */
+    boolean encode(VideoFrame input, boolean forceKeyFrame, EncodedFrame out) throws IOException {
+        if (av_frame_make_writable(frame) < 0) {
+            throw new IOException("Encoder frame not writable");
+        }
+        copyPlane(input.data, 0, width, height, frame.data(0), frame.linesize(0));
+        copyPlane(input.data, width * height, width / 2, height / 2, frame.data(1), frame.linesize(1));
+        copyPlane(input.data, width * height * 5 / 4, width / 2, height / 2, frame.data(2), frame.linesize(2));
+
+        frame.pts(pts++);
+        frame.pict_type(forceKeyFrame ? AV_PICTURE_TYPE_I : AV_PICTURE_TYPE_NONE);
+
+        if (avcodec_send_frame(context, frame) < 0) {
+            throw new IOException("Encoder rejected frame");
+        }
+
+        out.length = 0;
+        out.keyFrame = false;
+        out.codec = codecId;
+        out.timestampNanos = input.timestampNanos;
+        while (avcodec_receive_packet(context, packet) == 0) {
+            int size = packet.size();
+            out.ensureCapacity(out.length + size);
+            packet.data().get(out.data, out.length, size);
+            out.length += size;
+            out.keyFrame |= (packet.flags() & AV_PKT_FLAG_KEY) != 0;
+            av_packet_unref(packet);
+        }
+        return out.length > 0;
+    }
+
+    boolean matches(int width, int height, int fps) {
+        return this.width == width && this.height == height && this.fps == fps;
+    }
+
+    /**
+     * Đổi bitrate không cần mở lại encoder (không tạo keyframe)
+     *
+     * @return false nếu encoder không hỗ trợ, phải mở lại
+     */
+    boolean setBitrate(int bitrate) {
+        if (bitrate == this.bitrate) {
+            return true;
+        }
+        if (!reconfigurable) {
+            return false;
+        }
+        context.bit_rate(bitrate);
+        context.rc_max_rate(bitrate);
+        context.rc_buffer_size(bitrate / 2);
+        this.bitrate = bitrate;
+        return true;
+    }
+
+    byte getCodec() {
+        return codecId;
+    }
+
+    @Override
+    public void close() {
+        if (context != null) {
+            avcodec_free_context(context);
+            context = null;
+        }
+        if (frame != null) {
+            av_frame_free(frame);
+            frame = null;
+        }
+        if (packet != null) {
+            av_packet_free(packet);
+            packet = null;
+        }
+    }
+
+    private static void copyPlane(byte[] source, int offset, int planeWidth, int planeHeight,
+                                  BytePointer target, int lineSize) {
+        if (lineSize == planeWidth) {
+            target.put(source, offset, planeWidth * planeHeight);
+            return;
+        }
+        for (int y = 0; y < planeHeight; y++) {
+            target.position((long) y * lineSize).put(source, offset + y * planeWidth, planeWidth);
+        }
+        target.position(0);
+    }
+}
@@ -0,0 +1,46 @@
+package com.chatapp.client.media;
+
+/**
+ * Một frame ảnh chưa nén trong pipeline video. Buffer cấp một lần theo kích thước lớn nhất
+ * và được dùng lại qua pool; width/height là kích thước thật của frame đang chứa.
+ */
+public class VideoFrame {
+
+    public enum Format { BGR24, I420 }
+
+    final byte[] data;
+    int width;
+    int height;
+    Format format;
+    long timestampNanos;
+
+    VideoFrame(int capacity) {
+        this.data = new byte[capacity];
+    }
+
+    /**
+     * Số byte cần cho frame kích thước cho trước
+     */
+    static int sizeOf(Format format, int width, int height) {
+        return format == Format.BGR24 ? width * height * 3 : width * height * 3 / 2;
+    }
+
+    public byte[] getData() { return data; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public Format getFormat() { return format; }
+    public long getTimestampNanos() { return timestampNanos; }
+
+    /**
+     * Nguồn ảnh ghi frame BGR24 vào buffer của pool
+     */
+    public void setBgr(int width, int height, long timestampNanos) {
+        if (sizeOf(Format.BGR24, width, height) > data.length) {
+            throw new IllegalArgumentException("Frame too large: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.format = Format.BGR24;
+        this.timestampNanos = timestampNanos;
+    }
+}
@@ -1,3 +1,313 @@
 package com.chatapp.client.media;
 
-public class VideoRenderer {}
+import com.chatapp.common.protocol.MediaProtocol;
+import javafx.application.Platform;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import org.bytedeco.javacpp.BytePointer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hiển thị video nhận được: ghép gói thành frame -> thread decode -> ImageView.
+ *
+ * Decoder ghi thẳng ARGB vào IntBuffer direct làm nền cho PixelBuffer của WritableImage,
+ * không qua BufferedImage/SwingFXUtils. Có bốn buffer xoay vòng: FX đang hiện (front),
+ * vừa bị thay ở lần present() trước (retired, render thread có thể vẫn đang upload nó),
+ * frame mới nhất chờ hiện (ready) và buffer decoder đang ghi (back). Buffer retired chỉ được trả
+ * cho decoder (free) sau lần present() kế tiếp, nên decoder không bao giờ ghi vào buffer
+ * mà FX/render thread còn đọc. Khi FX thread chậm, frame ready cũ bị ghi đè bằng frame mới hơn;
+ * mỗi lúc chỉ có một lệnh runLater đang chờ.
+ * Thời gian ghép gói, thời gian decode và độ trễ từ lúc nhận đủ frame tới khi hiện lên màn hình
+ * được ghi vào LatencyHistogram (mỗi cái một thread ghi: thread nhận, thread decode, FX thread).
+ */
+public class VideoRenderer {
+    private static final int POOL_SIZE = 3;
+    private static final int INITIAL_FRAME_CAPACITY = 256 * 1024;
+    private static final long KEY_FRAME_REQUEST_INTERVAL_NANOS = 500_000_000L;
+
+    /** Một buffer ảnh và WritableImage dùng nó (chỉ tạo lại khi đổi độ phân giải) */
+    private static final class Slot {
+        final int width;
+        final int height;
+        final BytePointer pointer;
+        final PixelBuffer<IntBuffer> pixels;
+        final WritableImage image;
+        long receivedNanos;
+
+        Slot(int width, int height) {
+            this.width = width;
+            this.height = height;
+            ByteBuffer bytes = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder());
+            this.pointer = VideoDecoder.pointerTo(bytes);
+            this.pixels = new PixelBuffer<>(width, height, bytes.asIntBuffer(), PixelFormat.getIntArgbPreInstance());
+            this.image = new WritableImage(pixels);
+        }
+    }
+
+    private final ImageView view;
+    private final SpscQueue<EncodedFrame> frameFree = new SpscQueue<>(POOL_SIZE);
+    private final SpscQueue<EncodedFrame> frameQueue = new SpscQueue<>(POOL_SIZE);
+
+    // Trạng thái ghép gói, chỉ thread nhận của MediaTransport dùng
+    private EncodedFrame assembling;
+    private boolean assemblingValid;
+    private int assemblingTimestamp;
+    private int expectedSequence;
+    private long assemblingStartNanos;
+    private volatile boolean waitingForKeyFrame = true;
+    private volatile long lastKeyFrameRequest;
+    private volatile Runnable keyFrameListener;
+
+    private final Object slotLock = new Object();
+    private Slot back;
+    private Slot ready;
+    private Slot front;
+    private Slot retired;
+    private Slot free;
+    private boolean fresh;
+    private final AtomicBoolean presentPending = new AtomicBoolean();
+    private final Runnable presentTask = this::present;
+
+    private volatile boolean running;
+    private Thread decodeThread;
+
+    private volatile long packetsReceived;
+    private volatile long framesReceived;
+    private volatile long framesIncomplete;
+    private volatile long framesDecoded;
+    private volatile long framesSkipped;
+    private volatile long framesStale;
+    private volatile long framesRendered;
+    private final LatencyHistogram assemblyTime = new LatencyHistogram();
+    private final LatencyHistogram decodeTime = new LatencyHistogram();
+    private final LatencyHistogram renderLatency = new LatencyHistogram();
+
+    public VideoRenderer(ImageView view) {
+        this.view = view;
+        for (int i = 0; i < POOL_SIZE; i++) {
+            frameFree.offer(new EncodedFrame(INITIAL_FRAME_CAPACITY));
+        }
+    }
+
+    /**
+     * Gọi khi mất gói/không giải nén được, để bên gửi phát keyframe (tối đa 2 lần/giây)
+     */
+    public void setKeyFrameListener(Runnable listener) {
+        this.keyFrameListener = listener;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        decodeThread = new Thread(this::decodeLoop, "video-decode");
+        decodeThread.setDaemon(true);
+        decodeThread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (decodeThread != null) {
+            decodeThread.interrupt();
+        }
+    }
+
+    /**
+     * Nhận một gói video từ MediaTransport (luôn cùng một thread nhận)
+     */
+    public void receive(byte flags, int sequence, int timestamp, ByteBuffer payload) {
+        packetsReceived++;
+        int position = payload.position();
+        int length = payload.remaining() - 1;
+        if (length < 0) {
+            return;
+        }
+
+        if ((flags & MediaProtocol.FLAG_FRAME_START) != 0) {
+            if (assemblingValid) {
+                framesIncomplete++; // Frame trước mất gói cuối
+                requestKeyFrame();
+            }
+            if (assembling == null) {
+                assembling = frameFree.poll();
+            }
+            if (assembling == null) {
+                // Decoder không theo kịp: bỏ frame, các frame sau tham chiếu nó nên chờ keyframe
+                assemblingValid = false;
+                framesSkipped++;
+                requestKeyFrame();
+                return;
+            }
+            assembling.length = 0;
+            assembling.keyFrame = (flags & MediaProtocol.FLAG_KEYFRAME) != 0;
+            assembling.codec = payload.get(position);
+            assemblingTimestamp = timestamp;
+            assemblingStartNanos = System.nanoTime();
+            expectedSequence = sequence;
+            assemblingValid = true;
+        }
+
+        if (!assemblingValid) {
+            return;
+        }
+        if (sequence != expectedSequence || timestamp != assemblingTimestamp) {
+            assemblingValid = false;
+            framesIncomplete++;
+            requestKeyFrame();
+            return;
+        }
+
+        assembling.ensureCapacity(assembling.length + length);
+        payload.get(position + 1, assembling.data, assembling.length, length);
+        assembling.length += length;
+        expectedSequence++;
+
+        if ((flags & MediaProtocol.FLAG_FRAME_END) == 0) {
+            return;
+        }
+        assemblingValid = false;
+        framesReceived++;
+        assembling.timestampNanos = System.nanoTime();
+        assemblyTime.record(assembling.timestampNanos - assemblingStartNanos);
+        if (waitingForKeyFrame && !assembling.keyFrame) {
+            framesSkipped++;
+            return;
+        }
+        waitingForKeyFrame = false;
+        frameQueue.offer(assembling);
+        assembling = null;
+    }
+
+    public long getPacketsReceived() { return packetsReceived; }
+    public long getFramesReceived() { return framesReceived; }
+    public long getFramesIncomplete() { return framesIncomplete; }
+    public long getFramesDecoded() { return framesDecoded; }
+    public long getFramesSkipped() { return framesSkipped; }
+    public long getFramesStale() { return framesStale; }
+    public long getFramesRendered() { return framesRendered; }
+    /** Từ gói đầu tới gói cuối của một frame */
+    public LatencyHistogram getAssemblyTime() { return assemblyTime; }
+    public LatencyHistogram getDecodeTime() { return decodeTime; }
+    /** Từ lúc nhận đủ frame tới khi FX thread đưa lên ImageView (gồm chờ decode và chờ FX) */
+    public LatencyHistogram getRenderLatency() { return renderLatency; }
+
+    private void requestKeyFrame() {
+        waitingForKeyFrame = true;
+        long now = System.nanoTime();
+        if (now - lastKeyFrameRequest < KEY_FRAME_REQUEST_INTERVAL_NANOS) {
+            return;
+        }
+        lastKeyFrameRequest = now;
+        Runnable listener = keyFrameListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private void decodeLoop() {
+        VideoDecoder decoder = null;
+        int failedCodec = -1;
+        try {
+            while (running) {
+                EncodedFrame encoded = frameQueue.take(100);
+                if (encoded == null) {
+                    continue;
+                }
+
+                boolean decoded = false;
+                long receivedNanos = encoded.timestampNanos;
+                long decodeStart = System.nanoTime();
+                try {
+                    if (decoder == null || decoder.getCodec() != encoded.codec) {
+                        if (decoder != null) {
+                            decoder.close();
+                            decoder = null;
+                        }
+                        // Không mở được decoder cho codec này thì không thử lại mỗi frame
+                        if (encoded.codec != failedCodec) {
+                            decoder = new VideoDecoder(encoded.codec);
+                        }
+                    }
+                    if (decoder != null) {
+                        decoded = decoder.decode(encoded);
+                    }
+                } catch (IOException e) {
+                    System.err.println("[VideoRenderer] " + e.getMessage());
+                    failedCodec = encoded.codec;
+                } finally {
+                    frameFree.offer(encoded);
+                }
+                if (!decoded) {
+                    if (decoder != null) {
+                        requestKeyFrame();
+                    }
+                    continue;
+                }
+                framesDecoded++;
+                decodeTime.record(System.nanoTime() - decodeStart);
+
+                int width = decoder.width();
+                int height = decoder.height();
+                Slot target = back;
+                if (target == null || target.width != width || target.height != height) {
+                    target = new Slot(width, height);
+                    back = target;
+                }
+                decoder.convert(target.pointer);
+                target.receivedNanos = receivedNanos;
+
+                synchronized (slotLock) {
+                    if (fresh) {
+                        framesStale++; // FX chưa kịp hiện frame trước, bỏ nó: chưa ai đọc nên ghi lại được ngay
+                        back = ready;
+                    } else {
+                        back = free; // null khi chưa đủ bốn buffer: lần sau tạo thêm
+                        free = null;
+                    }
+                    ready = target;
+                    fresh = true;
+                }
+                if (presentPending.compareAndSet(false, true)) {
+                    Platform.runLater(presentTask);
+                }
+            }
+        } finally {
+            if (decoder != null) {
+                decoder.close();
+            }
+        }
+    }
+
+    /**
+     * Chạy trên FX thread: đưa frame mới nhất lên ImageView
+     */
+    private void present() {
+        presentPending.set(false);
+        Slot shown;
+        synchronized (slotLock) {
+            if (!fresh) {
+                return;
+            }
+            shown = ready;
+            ready = null;
+            // Buffer bị thay từ lần present() trước đã qua một lượt hiện, trả lại cho decoder
+            free = retired;
+            retired = front;
+            front = shown;
+            fresh = false;
+        }
+
+        shown.pixels.updateBuffer(pixels -> null);
+        if (view.getImage() != shown.image) {
+            view.setImage(shown.image);
+        }
+        framesRendered++;
+        renderLatency.record(System.nanoTime() - shown.receivedNanos);
+    }
+}
@@ -0,0 +1,18 @@
+package com.chatapp.client.media;
+
+import java.io.IOException;
+
+/**
+ * Nguồn ảnh cho VideoCapture: camera qua JavaCV hoặc nguồn tổng hợp để chạy/benchmark không cần camera.
+ */
+public interface VideoSource {
+
+    /**
+     * Ghi frame BGR24 tiếp theo vào target (VideoFrame.setBgr), chặn theo nhịp của nguồn
+     *
+     * @return false nếu nguồn đã đóng
+     */
+    boolean grab(VideoFrame target) throws IOException;
+
+    void close();
+}
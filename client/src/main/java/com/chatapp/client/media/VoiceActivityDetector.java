@@ -0,0 +1,64 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+
+/**
+ * VAD theo năng lượng cho từng gói AUDIO_PACKET_MS: gói có tiếng nói khi năng lượng cao hơn mức nhiễu nền
+ * SPEECH_MARGIN_DB và vượt ngưỡng tuyệt đối MIN_SPEECH_DBOV. Nhiễu nền đi xuống ngay theo gói yên nhất,
+ * đi lên chậm (vài dB mỗi giây, rất chậm khi đang có tiếng nói) nên quạt/điều hòa bật lên vẫn được học lại
+ * mà người nói liền một mạch không bị coi là nhiễu. Sau tiếng nói cuối còn giữ
+ * HANGOVER_PACKETS gói để không cắt mất phụ âm cuối và khoảng nghỉ ngắn giữa các từ.
+ */
+class VoiceActivityDetector {
+    private static final double SPEECH_MARGIN_DB = 9.0;
+    private static final double MIN_SPEECH_DBOV = -55.0;
+    private static final double FLOOR_RISE_DB = 0.06;
+    private static final double FLOOR_RISE_SPEECH_DB = 0.01;
+    private static final double INITIAL_FLOOR_DBOV = -70.0;
+    private static final double SILENCE_DBOV = -96.0;
+    private static final int HANGOVER_PACKETS = 200 / MediaProtocol.AUDIO_PACKET_MS;
+
+    private double noiseFloorDbov = INITIAL_FLOOR_DBOV;
+    private double lastLevelDbov = SILENCE_DBOV;
+    private int hangover;
+
+    /**
+     * Xét một gói PCM (AUDIO_PACKET_BYTES)
+     *
+     * @return true nếu cần gửi gói này như tiếng nói
+     */
+    boolean isSpeech(byte[] pcm) {
+        double energy = 0;
+        for (int i = 0; i + 1 < MediaProtocol.AUDIO_PACKET_BYTES; i += 2) {
+            double sample = (short) ((pcm[i] & 0xFF) | (pcm[i + 1] << 8));
+            energy += sample * sample;
+        }
+        double rms = Math.sqrt(energy / MediaProtocol.AUDIO_PACKET_SAMPLES) / 32768.0;
+        double level = rms > 0 ? Math.max(SILENCE_DBOV, 20 * Math.log10(rms)) : SILENCE_DBOV;
+        lastLevelDbov = level;
+
+        boolean speech = level > noiseFloorDbov + SPEECH_MARGIN_DB && level > MIN_SPEECH_DBOV;
+        if (level < noiseFloorDbov) {
+            noiseFloorDbov = level;
+        } else {
+            noiseFloorDbov += speech ? FLOOR_RISE_SPEECH_DB : FLOOR_RISE_DB;
+        }
+
+        if (speech) {
+            hangover = HANGOVER_PACKETS;
+            return true;
+        }
+        if (hangover > 0) {
+            hangover--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Mức nhiễu nền hiện tại theo -dBov (gửi trong gói comfort noise)
+     */
+    int getNoiseLevel() {
+        return (int) Math.round(Math.max(0, Math.min(127, -Math.min(lastLevelDbov, noiseFloorDbov))));
+    }
+}
@@ -0,0 +1,88 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+
+import javax.sound.sampled.LineUnavailableException;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Phát tin nhắn thoại (định dạng của VoiceNoteRecorder) trực tiếp từ stream, vd. FileService.openStream():
+ * đọc tới đâu giải nén và phát tới đó, không chờ tải hết file. Loa dùng buffer SINK_BUFFER_MS vì
+ * ở đây không cần độ trễ thấp như cuộc gọi.
+ */
+public class VoiceNotePlayer {
+    private static final int SINK_BUFFER_MS = 200;
+
+    private final DataInputStream in;
+    private final AudioSink sink;
+    private volatile boolean stopped;
+
+    /**
+     * Phát ra loa mặc định
+     */
+    public VoiceNotePlayer(InputStream in) throws LineUnavailableException {
+        this(in, new AudioPlayer.SpeakerSink(
+                MediaProtocol.AUDIO_PACKET_BYTES * SINK_BUFFER_MS / MediaProtocol.AUDIO_PACKET_MS));
+    }
+
+    public VoiceNotePlayer(InputStream in, AudioSink sink) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.sink = sink;
+    }
+
+    /**
+     * Phát tới hết (chặn thread gọi) hoặc tới khi stop()
+     *
+     * @return thời lượng đã phát (ms)
+     */
+    public long play() throws IOException {
+        byte[] payload = new byte[MediaProtocol.MAX_MEDIA_PAYLOAD_SIZE];
+        byte[] pcm = new byte[MediaProtocol.AUDIO_PACKET_BYTES];
+        long packets = 0;
+        try (AudioDecoder decoder = new AudioDecoder()) {
+            byte[] magic = new byte[VoiceNoteRecorder.MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, VoiceNoteRecorder.MAGIC)) {
+                throw new IOException("Not a voice message");
+            }
+            while (!stopped) {
+                int length;
+                try {
+                    length = in.readUnsignedShort();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length > payload.length) {
+                    throw new IOException("Corrupt voice message");
+                }
+                in.readFully(payload, 0, length);
+                if (decoder.decode(payload, length, pcm) < 0) {
+                    Arrays.fill(pcm, (byte) 0);
+                }
+                sink.write(pcm, MediaProtocol.AUDIO_PACKET_BYTES);
+                packets++;
+            }
+        } catch (IOException e) {
+            if (!stopped) {
+                throw e;
+            }
+        } finally {
+            sink.close();
+            in.close();
+        }
+        return packets * MediaProtocol.AUDIO_PACKET_MS;
+    }
+
+    public void stop() {
+        stopped = true;
+        try {
+            in.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+
+import javax.sound.sampled.LineUnavailableException;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Ghi tin nhắn thoại: thu âm qua AudioCapture (tắt VAD để giữ nguyên khoảng nghỉ), nén Opus như trong
+ * cuộc gọi rồi ghi từng gói vào stream ngay khi có, nên bản ghi được upload trong lúc đang nói.
+ * Mỗi FLUSH_PACKETS gói gọi flush() một lần để stream (vd. FileService.LiveUpload) gửi chunk đi.
+ *
+ * Định dạng file (MIME_TYPE): MAGIC, sau đó mỗi gói AUDIO_PACKET_MS là [u16 độ dài][payload audio]
+ * với byte đầu payload là MediaProtocol.AUDIO_CODEC_*.
+ */
+public class VoiceNoteRecorder {
+    public static final String MIME_TYPE = "audio/x-chatapp-voice";
+    public static final String FILE_EXTENSION = ".cav";
+    static final byte[] MAGIC = {'C', 'A', 'V', '1'};
+
+    private static final int FLUSH_PACKETS = 1000 / MediaProtocol.AUDIO_PACKET_MS;
+    private static final long POLL_MS = 100;
+
+    private final AudioCapture capture;
+    private final DataOutputStream out;
+    private Thread writer;
+    private volatile boolean recording;
+    private volatile IOException error;
+    private volatile long packets;
+
+    /**
+     * Ghi từ micro mặc định
+     */
+    public VoiceNoteRecorder(OutputStream out) throws LineUnavailableException {
+        this(new AudioCapture.MicrophoneSource(), out);
+    }
+
+    public VoiceNoteRecorder(AudioSource source, OutputStream out) {
+        this.capture = new AudioCapture(source);
+        this.capture.setVoiceActivityDetection(false);
+        this.out = new DataOutputStream(out);
+    }
+
+    public synchronized void start() throws IOException {
+        if (recording) return;
+        out.write(MAGIC);
+        recording = true;
+        capture.start();
+        writer = new Thread(this::writeLoop, "voice-note-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Dừng thu, ghi nốt các gói còn lại (chưa flush stream)
+     *
+     * @return độ dài bản ghi (ms)
+     */
+    public synchronized long stop() throws IOException {
+        if (recording) {
+            recording = false;
+            capture.stop();
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return getDurationMs();
+    }
+
+    public long getDurationMs() {
+        return packets * MediaProtocol.AUDIO_PACKET_MS;
+    }
+
+    private void writeLoop() {
+        EncodedAudio packet = new EncodedAudio();
+        try {
+            // Sau stop() vẫn lấy hết frame còn trong ring buffer
+            while (capture.takePacket(packet, POLL_MS) || recording) {
+                if (packet.getLength() == 0) {
+                    continue;
+                }
+                out.writeShort(packet.getLength());
+                out.write(packet.getData(), 0, packet.getLength());
+                packet.length = 0;
+                if (++packets % FLUSH_PACKETS == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[VoiceNoteRecorder] Write failed: " + e.getMessage());
+            error = e;
+            recording = false;
+            capture.stop();
+        }
+    }
+}
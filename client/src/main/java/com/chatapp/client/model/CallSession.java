@@ -1,3 +1,252 @@
 package com.chatapp.client.model;
 
-public class CallSession {}
+import com.chatapp.client.media.AudioCapture;
+import com.chatapp.client.media.AudioPlayer;
+import com.chatapp.client.media.AudioSink;
+import com.chatapp.client.media.AudioSource;
+import com.chatapp.client.media.EncodedAudio;
+import com.chatapp.client.media.LatencyHistogram;
+import com.chatapp.client.media.MediaFeedback;
+import com.chatapp.client.media.MediaTransport;
+import com.chatapp.client.media.RateController;
+import com.chatapp.client.media.VideoCapture;
+import com.chatapp.client.media.VideoRenderer;
+import com.chatapp.client.media.VideoSource;
+import com.chatapp.common.protocol.MediaProtocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Một cuộc gọi 1-1: thông tin signaling và đường media UDP.
+ * Audio: AudioCapture (VAD, nén Opus 20 ms) -> thread gửi (đánh sequence) -> MediaTransport
+ *        -> MediaTransport bên kia -> AudioPlayer (jitter buffer, giải nén, che lỗi, comfort noise) -> loa.
+ *        Lúc im lặng chỉ còn vài gói comfort noise mỗi giây.
+ * Video (cuộc gọi video): VideoCapture (grab -> convert -> encode -> gửi) trên cùng MediaTransport,
+ *        bên nhận ghép gói và hiển thị bằng VideoRenderer.
+ * Phản hồi: MediaFeedback trao đổi báo cáo kiểu RTCP; báo cáo về luồng video của mình đi vào
+ *        RateController để chỉnh bitrate/độ phân giải/fps của VideoCapture, yêu cầu keyframe từ
+ *        renderer bên kia làm VideoCapture phát keyframe.
+ * FEC: MediaTransport bảo vệ cả hai luồng; tỉ lệ mất trước FEC trong báo cáo chỉnh độ dư, RateController
+ *        chỉ thấy mất còn lại sau FEC và chừa phần băng thông cho gói FEC.
+ * Telemetry: mỗi stage tự ghi counter/LatencyHistogram; CallSession thêm RTT từ các báo cáo,
+ *        CallStats gom lại cho overlay và báo cáo cuối cuộc gọi.
+ */
+public class CallSession {
+    public static final int VIDEO_WIDTH = 1280;
+    public static final int VIDEO_HEIGHT = 720;
+    public static final int VIDEO_FPS = 30;
+    public static final int VIDEO_BITRATE = 1_500_000;
+    public static final int VIDEO_MIN_BITRATE = 150_000;
+    public static final int VIDEO_MAX_BITRATE = 2_500_000;
+
+    public enum State { OUTGOING, INCOMING, CONNECTED, ENDED }
+
+    private volatile String callId;
+    private final Long peerId;
+    private final boolean video;
+    private volatile State state;
+
+    private String remoteHost;
+    private int remotePort;
+
+    private final MediaTransport transport = new MediaTransport();
+    private final int audioSsrc = ThreadLocalRandom.current().nextInt();
+    private final int videoSsrc = ThreadLocalRandom.current().nextInt();
+    private AudioCapture audioCapture;
+    private AudioPlayer audioPlayer;
+    private Thread audioSender;
+    private final MediaFeedback feedback = new MediaFeedback(transport, audioSsrc);
+    private volatile VideoCapture videoCapture;
+    private volatile RateController rateController;
+    private volatile VideoRenderer videoRenderer;
+    private volatile boolean mediaRunning;
+    private volatile long mediaStartedAt;
+    private volatile long mediaStoppedAt;
+    private final LatencyHistogram rtt = new LatencyHistogram();
+
+    public CallSession(String callId, Long peerId, boolean video, State state) {
+        this.callId = callId;
+        this.peerId = peerId;
+        this.video = video;
+        this.state = state;
+    }
+
+    /**
+     * Mở cổng UDP local (port = 0 để chọn ngẫu nhiên) trước khi gửi signaling
+     *
+     * @return cổng media để báo cho bên kia
+     */
+    public int openMedia(int port) throws IOException {
+        return transport.open(port);
+    }
+
+    /**
+     * Bắt đầu gửi/nhận audio với địa chỉ media của bên kia
+     */
+    public synchronized void startMedia(InetSocketAddress remote, AudioSource source, AudioSink sink) {
+        if (mediaRunning) return;
+        mediaRunning = true;
+        mediaStartedAt = System.currentTimeMillis();
+
+        audioCapture = new AudioCapture(source);
+        audioPlayer = new AudioPlayer(sink);
+        transport.setListener(MediaProtocol.KIND_AUDIO, (flags, stream, ssrc, sequence, timestamp, payload) -> {
+            feedback.onPacket(MediaProtocol.KIND_AUDIO, flags, ssrc, sequence, timestamp, payload.remaining());
+            audioPlayer.receive(sequence, timestamp, payload);
+        });
+        transport.setListener(MediaProtocol.KIND_VIDEO, (flags, stream, ssrc, sequence, timestamp, payload) -> {
+            feedback.onPacket(MediaProtocol.KIND_VIDEO, flags, ssrc, sequence, timestamp, payload.remaining());
+            VideoRenderer renderer = videoRenderer;
+            if (renderer != null) {
+                renderer.receive(flags, sequence, timestamp, payload);
+            }
+        });
+        feedback.setListener(new MediaFeedback.Listener() {
+            @Override
+            public void onReceiverReport(int ssrc, double fractionLost, double rawFractionLost, long totalLost,
+                                         double jitterMs, double rttMs) {
+                transport.onFecLoss(ssrc == audioSsrc ? MediaProtocol.KIND_AUDIO : MediaProtocol.KIND_VIDEO,
+                        rawFractionLost);
+                if (rttMs >= 0 && ssrc == audioSsrc) {
+                    rtt.record((long) (rttMs * 1_000_000));
+                }
+                adaptVideo(ssrc, fractionLost, jitterMs, rttMs);
+            }
+
+            @Override
+            public void onKeyFrameRequest(int ssrc) {
+                VideoCapture capture = videoCapture;
+                if (capture != null && ssrc == videoSsrc) {
+                    capture.requestKeyFrame();
+                }
+            }
+        });
+        transport.setRemote(remote);
+
+        audioPlayer.start();
+        audioCapture.start();
+        feedback.start();
+
+        audioSender = new Thread(this::sendAudioLoop, "audio-sender");
+        audioSender.setDaemon(true);
+        audioSender.setPriority(Thread.MAX_PRIORITY);
+        audioSender.start();
+
+        state = State.CONNECTED;
+    }
+
+    /**
+     * Bắt đầu gửi video (gọi sau startMedia, chỉ với cuộc gọi video)
+     */
+    public synchronized void startVideo(VideoSource source) {
+        if (!mediaRunning || videoCapture != null) return;
+        RateController controller = new RateController(VIDEO_MIN_BITRATE, VIDEO_MAX_BITRATE, VIDEO_BITRATE);
+        VideoCapture capture = new VideoCapture(source, transport, videoSsrc,
+                VIDEO_WIDTH, VIDEO_HEIGHT, VIDEO_FPS, VIDEO_BITRATE);
+        controller.apply(capture);
+        feedback.setLocalVideoSsrc(videoSsrc);
+        rateController = controller;
+        videoCapture = capture;
+        capture.start();
+    }
+
+    /**
+     * Chuyển gói video nhận được cho renderer (cửa sổ cuộc gọi gắn vào khi mở)
+     */
+    public void attachVideoRenderer(VideoRenderer renderer) {
+        renderer.setKeyFrameListener(feedback::requestKeyFrame);
+        videoRenderer = renderer;
+    }
+
+    /**
+     * Dừng media và đóng cổng UDP
+     */
+    public synchronized void stopMedia() {
+        if (mediaRunning) {
+            mediaStoppedAt = System.currentTimeMillis();
+        }
+        mediaRunning = false;
+        state = State.ENDED;
+        if (audioCapture != null) audioCapture.stop();
+        if (audioPlayer != null) audioPlayer.stop();
+        if (audioSender != null) audioSender.interrupt();
+        if (videoCapture != null) videoCapture.stop();
+        feedback.stop();
+        transport.close();
+    }
+
+    /**
+     * Báo cáo của bên kia về luồng video mình gửi: chỉnh bitrate/độ phân giải
+     */
+    private void adaptVideo(int ssrc, double fractionLost, double jitterMs, double rttMs) {
+        VideoCapture capture = videoCapture;
+        RateController controller = rateController;
+        if (capture == null || controller == null || ssrc != videoSsrc) {
+            return;
+        }
+        int fecGroup = transport.getFecGroupSize(MediaProtocol.KIND_VIDEO);
+        boolean protectionChanged = controller.setProtectionOverhead(fecGroup > 0 ? 1.0 / fecGroup : 0);
+        if (controller.onReport(fractionLost, jitterMs, rttMs, System.currentTimeMillis()) | protectionChanged) {
+            controller.apply(capture);
+        }
+    }
+
+    private void sendAudioLoop() {
+        EncodedAudio packet = new EncodedAudio();
+        int sequence = 0;
+        try {
+            while (mediaRunning) {
+                if (!audioCapture.takePacket(packet, 100)) {
+                    continue;
+                }
+                // Gói bỏ qua lúc im lặng không chiếm sequence, bên nhận không tính là mất
+                transport.send(MediaProtocol.KIND_AUDIO, (byte) 0, 0, audioSsrc, sequence++, packet.getTimestamp(),
+                        packet.getData(), 0, packet.getLength());
+            }
+        } catch (IOException e) {
+            if (mediaRunning) {
+                System.err.println("[CallSession] Audio send failed: " + e.getMessage());
+            }
+        }
+    }
+
+    public String getCallId() { return callId; }
+    /** Glare: server gộp cuộc gọi này vào cuộc gọi ngược chiều, dùng callId của cuộc gọi đó */
+    public void setCallId(String callId) { this.callId = callId; }
+    public Long getPeerId() { return peerId; }
+    public boolean isVideo() { return video; }
+    public State getState() { return state; }
+    public void setState(State state) { this.state = state; }
+
+    public String getRemoteHost() { return remoteHost; }
+    public int getRemotePort() { return remotePort; }
+
+    public void setRemote(String remoteHost, int remotePort) {
+        this.remoteHost = remoteHost;
+        this.remotePort = remotePort;
+    }
+
+    public MediaTransport getTransport() { return transport; }
+    public AudioCapture getAudioCapture() { return audioCapture; }
+    public AudioPlayer getAudioPlayer() { return audioPlayer; }
+    public VideoCapture getVideoCapture() { return videoCapture; }
+    public RateController getRateController() { return rateController; }
+    public MediaFeedback getFeedback() { return feedback; }
+    public VideoRenderer getVideoRenderer() { return videoRenderer; }
+    /** RTT theo các báo cáo về luồng audio của mình */
+    public LatencyHistogram getRtt() { return rtt; }
+
+    /**
+     * Thời gian có media (ms), 0 nếu chưa nối máy
+     */
+    public long getMediaDurationMs() {
+        long started = mediaStartedAt;
+        if (started == 0) {
+            return 0;
+        }
+        long stopped = mediaStoppedAt;
+        return (stopped != 0 ? stopped : System.currentTimeMillis()) - started;
+    }
+}
@@ -0,0 +1,165 @@
+package com.chatapp.client.model;
+
+import com.chatapp.client.media.AudioCapture;
+import com.chatapp.client.media.AudioPlayer;
+import com.chatapp.client.media.JitterBuffer;
+import com.chatapp.client.media.LatencyHistogram;
+import com.chatapp.client.media.MediaFeedback;
+import com.chatapp.client.media.MediaTransport;
+import com.chatapp.client.media.VideoCapture;
+import com.chatapp.client.media.VideoRenderer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Gom counter và histogram của các stage media trong một cuộc gọi:
+ *   - describe(): vài dòng cho overlay debug của cửa sổ cuộc gọi
+ *   - summarize(): map phẳng (tên -> số) gửi lên server trong CALL_INFO khi cuộc gọi kết thúc
+ * Chỉ đọc số liệu (không khóa), gọi bao nhiêu lần cũng không ảnh hưởng pipeline.
+ * Độ trễ theo stage:
+ *   capture (chờ ring buffer / chụp -> I420) -> encode -> gửi -> mạng (RTT) -> jitter buffer / ghép frame
+ *   -> decode -> hiển thị
+ */
+public final class CallStats {
+
+    private CallStats() {}
+
+    /**
+     * Báo cáo cuối cuộc gọi: độ trễ theo ms (p50/p95/max), tỉ lệ theo %, bitrate theo kbps
+     */
+    public static Map<String, Object> summarize(CallSession call) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        long durationMs = call.getMediaDurationMs();
+        summary.put("durationMs", durationMs);
+        summary.put("video", call.isVideo());
+
+        MediaTransport transport = call.getTransport();
+        MediaFeedback feedback = call.getFeedback();
+        putLatency(summary, "rtt", call.getRtt());
+        summary.put("sentKbps", kbps(transport.getBytesSent(), durationMs));
+        summary.put("receivedKbps", kbps(transport.getBytesReceived(), durationMs));
+        summary.put("fecRecovered", transport.getFecRecovered());
+
+        AudioCapture capture = call.getAudioCapture();
+        if (capture != null) {
+            summary.put("audioFramesDropped", capture.getFramesDropped());
+            summary.put("audioPacketsEncoded", capture.getPacketsEncoded());
+            summary.put("audioPacketsSuppressed", capture.getPacketsSuppressed());
+            summary.put("audioKbps", kbps(capture.getBytesEncoded(), durationMs));
+            putLatency(summary, "audioQueue", capture.getQueueDelay());
+            putLatency(summary, "audioEncode", capture.getEncodeTime());
+        }
+        AudioPlayer player = call.getAudioPlayer();
+        if (player != null) {
+            JitterBuffer jitterBuffer = player.getJitterBuffer();
+            summary.put("audioLossPct", round(feedback.getAudioFractionLost() * 100));
+            summary.put("audioJitterMs", round(feedback.getAudioJitterMs()));
+            summary.put("audioLate", jitterBuffer.getLate());
+            summary.put("audioFramesPlayed", player.getFramesPlayed());
+            summary.put("audioFramesConcealed", player.getFramesConcealed());
+            summary.put("audioFramesSilent", player.getFramesSilent());
+            putLatency(summary, "audioJitterBuffer", jitterBuffer.getBufferDelay());
+            putLatency(summary, "audioDecode", player.getDecodeTime());
+        }
+
+        VideoCapture video = call.getVideoCapture();
+        if (video != null) {
+            summary.put("videoFramesGrabbed", video.getFramesGrabbed());
+            summary.put("videoFramesEncoded", video.getFramesEncoded());
+            summary.put("videoFramesDropped", video.getFramesDropped());
+            summary.put("videoKeyFrames", video.getKeyFrames());
+            summary.put("videoKbps", kbps(video.getBytesEncoded(), durationMs));
+            summary.put("videoTargetKbps", video.getBitrate() / 1000);
+            summary.put("videoHeight", video.getHeight());
+            putLatency(summary, "videoConvert", video.getConvertLatency());
+            putLatency(summary, "videoEncode", video.getEncodeTime());
+            putLatency(summary, "videoSend", video.getSendLatency());
+        }
+        VideoRenderer renderer = call.getVideoRenderer();
+        if (renderer != null) {
+            summary.put("videoLossPct", round(feedback.getVideoFractionLost() * 100));
+            summary.put("videoFramesReceived", renderer.getFramesReceived());
+            summary.put("videoFramesIncomplete", renderer.getFramesIncomplete());
+            summary.put("videoFramesSkipped", renderer.getFramesSkipped());
+            summary.put("videoFramesStale", renderer.getFramesStale());
+            summary.put("videoFramesRendered", renderer.getFramesRendered());
+            summary.put("videoKeyFramesRequested", feedback.getKeyFramesRequested());
+            putLatency(summary, "videoAssembly", renderer.getAssemblyTime());
+            putLatency(summary, "videoDecode", renderer.getDecodeTime());
+            putLatency(summary, "videoRender", renderer.getRenderLatency());
+        }
+        return summary;
+    }
+
+    /**
+     * Nội dung overlay debug (độ trễ dạng p50/p95 ms)
+     */
+    public static String describe(CallSession call) {
+        StringBuilder text = new StringBuilder();
+        long durationMs = call.getMediaDurationMs();
+        MediaTransport transport = call.getTransport();
+        MediaFeedback feedback = call.getFeedback();
+
+        text.append(String.format("Mạng   rtt %s | gửi %d kbps | nhận %d kbps | FEC khôi phục %d%n",
+                latency(call.getRtt()), kbps(transport.getBytesSent(), durationMs),
+                kbps(transport.getBytesReceived(), durationMs), transport.getFecRecovered()));
+
+        AudioCapture capture = call.getAudioCapture();
+        if (capture != null) {
+            text.append(String.format("Mic    chờ %s | nén %s | %d kbps | bỏ %d frame | DTX %d gói%n",
+                    latency(capture.getQueueDelay()), latency(capture.getEncodeTime()),
+                    kbps(capture.getBytesEncoded(), durationMs), capture.getFramesDropped(),
+                    capture.getPacketsSuppressed()));
+        }
+        AudioPlayer player = call.getAudioPlayer();
+        if (player != null) {
+            JitterBuffer jitterBuffer = player.getJitterBuffer();
+            text.append(String.format("Loa    mất %.1f%% | jitter %.1f ms | buffer %s (mục tiêu %d) | giải nén %s | che %d%n",
+                    feedback.getAudioFractionLost() * 100, feedback.getAudioJitterMs(),
+                    latency(jitterBuffer.getBufferDelay()), jitterBuffer.getTargetDepth(),
+                    latency(player.getDecodeTime()), player.getFramesConcealed()));
+        }
+
+        VideoCapture video = call.getVideoCapture();
+        if (video != null) {
+            text.append(String.format("Camera %dx%d@%d %d kbps | I420 %s | nén %s | gửi %s | bỏ %d | queue %d/%d/%d%n",
+                    video.getWidth(), video.getHeight(), video.getFps(), video.getBitrate() / 1000,
+                    latency(video.getConvertLatency()), latency(video.getEncodeTime()),
+                    latency(video.getSendLatency()), video.getFramesDropped(),
+                    video.getRawQueued(), video.getYuvQueued(), video.getEncodedQueued()));
+        }
+        VideoRenderer renderer = call.getVideoRenderer();
+        if (renderer != null) {
+            text.append(String.format("Hình   mất %.1f%% | ghép %s | giải nén %s | hiện %s | thiếu %d | bỏ %d/%d%n",
+                    feedback.getVideoFractionLost() * 100, latency(renderer.getAssemblyTime()),
+                    latency(renderer.getDecodeTime()), latency(renderer.getRenderLatency()),
+                    renderer.getFramesIncomplete(), renderer.getFramesSkipped(), renderer.getFramesStale()));
+        }
+        return text.toString().trim();
+    }
+
+    private static void putLatency(Map<String, Object> summary, String name, LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+        summary.put(name + "P50Ms", round(histogram.getPercentileMs(0.50)));
+        summary.put(name + "P95Ms", round(histogram.getPercentileMs(0.95)));
+        summary.put(name + "MaxMs", round(histogram.getMaxMs()));
+    }
+
+    private static String latency(LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "-";
+        }
+        return String.format("%.1f/%.1f ms", histogram.getPercentileMs(0.50), histogram.getPercentileMs(0.95));
+    }
+
+    private static long kbps(long bytes, long durationMs) {
+        return durationMs > 0 ? bytes * 8 / durationMs : 0;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+}
@@ -1,5 +1,8 @@
 package com.chatapp.client.network;
 
+import com.chatapp.client.service.CallService;
+import com.chatapp.client.service.ChatService;
+import com.chatapp.client.service.FileService;
 import com.chatapp.common.protocol.Packet;
 import com.chatapp.common.protocol.MessageType;
 import javafx.application.Platform;
@@ -48,6 +51,38 @@ public class MessageHandler {
                 handleReceiveMessage(data);
                 break;
 
+            case TYPING_INDICATOR:
+                ChatService.getInstance().onTypingIndicator(data);
+                break;
+
+            case READ_RECEIPT:
+                ChatService.getInstance().onReadReceipt(data);
+                break;
+
+            // Truyền file P2P: server chỉ chuyển tiếp offer và trả lời giữa hai client
+            case FILE_OFFER:
+                FileService.getInstance().onPeerOffer(packet);
+                break;
+
+            case FILE_ACCEPT:
+            case FILE_REJECT:
+                FileService.getInstance().onPeerAnswer(packet);
+                break;
+
+            // Signaling cuộc gọi do server chuyển tiếp từ người kia
+            case CALL_REQUEST:
+                CallService.getInstance().onCallRequest(packet);
+                break;
+
+            case CALL_ACCEPT:
+                CallService.getInstance().onCallAccept(packet);
+                break;
+
+            case CALL_REJECT:
+            case CALL_END:
+                CallService.getInstance().onCallEnd(packet);
+                break;
+
             case STATUS_UPDATE:
                 handleStatusUpdate(data);
                 break;
@@ -164,8 +199,8 @@ public class MessageHandler {
      * Xử lý tin nhắn nhận được
      */
     private static void handleReceiveMessage(Map<String, Object> data) {
-        // TODO: Implement message receiving
         System.out.println("Message received");
+        ChatService.getInstance().onMessageReceived(data);
     }
 
     /**
@@ -1,3 +1,115 @@
 package com.chatapp.client.network;
 
-public class P2PClient {}
+import com.chatapp.common.protocol.FileTransferProtocol;
+import com.chatapp.common.protocol.MessageType;
+import com.chatapp.common.protocol.PacketBuilder;
+import com.chatapp.common.util.JsonUtil;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Phía nhận của truyền file P2P: kết nối tới P2PServer của người gửi và kéo file về
+ * qua nhiều range song song (RangeDownload). Mất kết nối thì bên gọi thử lại, chỉ các đoạn còn thiếu được tải tiếp.
+ * Socket có read timeout IDLE_TIMEOUT_MS nên người gửi treo hoặc mạng mất gói không làm kết nối chờ mãi.
+ */
+public class P2PClient {
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+    /** Máy người gửi thường chỉ có một đường lên, không cần nhiều luồng như khi tải từ server */
+    private static final int MAX_STREAMS = 4;
+    public static final long IDLE_TIMEOUT_MS = RangeDownload.IDLE_TIMEOUT_MS;
+
+    private final String host;
+    private final int port;
+    private final String transferId;
+    private final String token;
+
+    public P2PClient(String host, int port, String transferId, String token) {
+        this.host = host;
+        this.port = port;
+        this.transferId = transferId;
+        this.token = token;
+    }
+
+    /**
+     * Tải các đoạn còn thiếu của file part
+     *
+     * @return tổng kích thước file
+     */
+    public long download(Path part, Consumer<Double> progress) throws Exception {
+        return new RangeDownload(this::open, MAX_STREAMS).download(part, progress);
+    }
+
+    /**
+     * Mở kết nối đọc [offset, offset + length) của file người gửi đang chia sẻ
+     */
+    private RangeDownload.Range open(long offset, long length) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout((int) IDLE_TIMEOUT_MS);
+
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+
+            out.writeUTF(JsonUtil.toJson(PacketBuilder.create(MessageType.FILE_INFO)
+                    .put("op", FileTransferProtocol.OP_DOWNLOAD)
+                    .put("resource", transferId)
+                    .put("ticket", token)
+                    .put("offset", offset)
+                    .put("length", length)
+                    .build()));
+
+            long size = in.readLong();
+            if (size < 0) {
+                throw new IOException(in.readUTF());
+            }
+            return new PeerRange(socket, in, size, in.readLong(), in.readLong());
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Một range đang đọc từ peer; đóng range sẽ đóng kết nối
+     */
+    private static class PeerRange implements RangeDownload.Range {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final long totalSize;
+        private final long start;
+        private final long length;
+
+        PeerRange(Socket socket, DataInputStream in, long totalSize, long start, long length) {
+            this.socket = socket;
+            this.in = in;
+            this.totalSize = totalSize;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public long getTotalSize() { return totalSize; }
+        @Override
+        public long getStart() { return start; }
+        @Override
+        public long getLength() { return length; }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return in.read(buffer, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
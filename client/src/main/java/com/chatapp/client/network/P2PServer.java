@@ -1,3 +1,189 @@
 package com.chatapp.client.network;
 
-public class P2PServer {}
+import com.chatapp.common.protocol.FileTransferProtocol;
+import com.chatapp.common.protocol.Packet;
+import com.chatapp.common.util.JsonUtil;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Phía gửi của truyền file P2P: lắng nghe trên một cổng ngẫu nhiên, peer nhận kết nối tới
+ * và kéo file theo cùng khung DOWNLOAD của cổng truyền file (resource = transferId, ticket = token),
+ * có thể qua nhiều kết nối, mỗi kết nối một range.
+ * Bytes đi thẳng từ file sang socket bằng transferTo, server chỉ chuyển tiếp offer/accept.
+ * Gửi hết bytes chưa phải là xong: offer còn giữ (peer có thể kết nối lại tải nốt) tới khi
+ * peer báo đã kiểm tra checksum, việc đó do FileService theo dõi.
+ */
+public class P2PServer {
+    private static P2PServer instance;
+    private ServerSocketChannel serverChannel;
+    private final Map<String, Outgoing> offers = new ConcurrentHashMap<>();
+
+    private P2PServer() {}
+
+    public static P2PServer getInstance() {
+        if (instance == null) {
+            synchronized (P2PServer.class) {
+                if (instance == null) {
+                    instance = new P2PServer();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Mở cổng lắng nghe (lần đầu gọi) và trả về số cổng
+     */
+    public synchronized int start() throws IOException {
+        if (serverChannel == null || !serverChannel.isOpen()) {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(0));
+
+            ServerSocketChannel current = serverChannel;
+            Thread acceptor = new Thread(() -> acceptLoop(current), "p2p-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            System.out.println("[P2P] Listening on port " + getPort());
+        }
+        return getPort();
+    }
+
+    public synchronized int getPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    /**
+     * Đăng ký file để peer kéo về
+     */
+    public Outgoing register(Path file) {
+        Outgoing outgoing = new Outgoing(UUID.randomUUID().toString(), UUID.randomUUID().toString(), file);
+        offers.put(outgoing.transferId, outgoing);
+        return outgoing;
+    }
+
+    /**
+     * Hủy offer (peer từ chối, hết thời gian chờ hoặc đã chuyển sang gửi qua server)
+     */
+    public void cancel(String transferId) {
+        offers.remove(transferId);
+    }
+
+    public Outgoing getOffer(String transferId) {
+        return offers.get(transferId);
+    }
+
+    public synchronized void stop() {
+        offers.clear();
+        try {
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException e) {
+            System.err.println("[P2P] Error closing listener: " + e.getMessage());
+        }
+    }
+
+    private void acceptLoop(ServerSocketChannel channel) {
+        try {
+            while (channel.isOpen()) {
+                SocketChannel peer = channel.accept();
+                Thread worker = new Thread(() -> serve(peer), "p2p-upload");
+                worker.setDaemon(true);
+                worker.start();
+            }
+        } catch (IOException e) {
+            if (channel.isOpen()) {
+                System.err.println("[P2P] Accept error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gửi range peer yêu cầu; gửi tới byte cuối cùng thì đánh dấu offer đã gửi hết
+     */
+    private void serve(SocketChannel peer) {
+        // Stream không buffer để không đọc lấn sang phần dữ liệu sau header
+        try (SocketChannel channel = peer;
+             DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+             DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel))) {
+
+            Packet header = JsonUtil.fromJson(in.readUTF(), Packet.class);
+            Outgoing outgoing = offers.get(header.getString("resource"));
+            if (!FileTransferProtocol.OP_DOWNLOAD.equals(header.getString("op"))
+                    || outgoing == null || !outgoing.matches(header.getString("ticket"))) {
+                out.writeLong(-1);
+                out.writeUTF("Invalid transfer");
+                return;
+            }
+
+            try (FileChannel file = FileChannel.open(outgoing.file, StandardOpenOption.READ)) {
+                long size = file.size();
+                Long offset = header.getLong("offset");
+                Long length = header.getLong("length");
+                long start = Math.min(Math.max(offset != null ? offset : 0, 0), size);
+                long end = length == null || length < 0 ? size : start + Math.min(length, size - start);
+
+                out.writeLong(size);
+                out.writeLong(start);
+                out.writeLong(end - start);
+
+                long position = start;
+                while (position < end) {
+                    position += file.transferTo(position, end - position, channel);
+                    outgoing.lastActivity = System.currentTimeMillis();
+                }
+
+                // Peer tải nhiều range song song: chỉ range chứa byte cuối đánh dấu đã gửi hết
+                if (end == size) {
+                    outgoing.sent = true;
+                    System.out.println("[P2P] Transfer " + outgoing.transferId + " sent");
+                }
+            }
+
+        } catch (IOException e) {
+            // Peer sẽ kết nối lại để tải tiếp hoặc báo chuyển sang gửi qua server
+            System.err.println("[P2P] Transfer interrupted: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Một file đang chờ peer kéo về
+     */
+    public static class Outgoing {
+        private final String transferId;
+        private final String token;
+        private final Path file;
+        private volatile boolean sent;
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        Outgoing(String transferId, String token, Path file) {
+            this.transferId = transferId;
+            this.token = token;
+            this.file = file;
+        }
+
+        boolean matches(String ticket) {
+            return ticket != null && MessageDigest.isEqual(
+                    token.getBytes(StandardCharsets.US_ASCII), ticket.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        public String getTransferId() { return transferId; }
+        public String getToken() { return token; }
+        /** Đã gửi tới byte cuối (peer chưa chắc đã nhận đủ và đúng) */
+        public boolean isSent() { return sent; }
+        public long getLastActivity() { return lastActivity; }
+    }
+}
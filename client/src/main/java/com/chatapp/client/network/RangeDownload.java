@@ -0,0 +1,323 @@
+package com.chatapp.client.network;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Tải một file vào file .part qua nhiều kết nối đọc range song song (server hoặc P2PServer của peer).
+ * Block đầu tiên cho biết tổng kích thước; phần còn thiếu chia thành block BLOCK_SIZE, các luồng cùng lấy block.
+ * Bắt đầu với 2 luồng, mỗi chu kỳ đo throughput tổng: còn tăng thì thêm luồng (tới maxStreams),
+ * giảm rõ rệt thì bớt một luồng, như upload nhiều luồng.
+ * Các đoạn đã ghi xong được lưu vào file .part.ranges, lần thử sau chỉ tải phần còn thiếu.
+ * Mỗi đối tượng chỉ dùng cho một lần tải.
+ */
+public class RangeDownload {
+    public static final long BLOCK_SIZE = 8L * 1024 * 1024;
+    /** Kết nối không nhận thêm byte nào trong khoảng này thì bị coi là treo (read timeout của socket) */
+    public static final int IDLE_TIMEOUT_MS = 15000;
+    private static final long THROUGHPUT_WINDOW_MS = 2000;
+
+    /**
+     * Mở kết nối đọc [offset, offset + length) của file
+     */
+    public interface Opener {
+        Range open(long offset, long length) throws Exception;
+    }
+
+    /**
+     * Một range đang đọc: [start, start + length) trong tổng totalSize byte
+     */
+    public interface Range extends Closeable {
+        long getTotalSize();
+        long getStart();
+        long getLength();
+        int read(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private final Opener opener;
+    private final int maxStreams;
+    private final ConcurrentLinkedDeque<long[]> blocks = new ConcurrentLinkedDeque<>();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicInteger targetStreams = new AtomicInteger(1);
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private final List<long[]> done = new ArrayList<>();
+    private volatile IOException lastError;
+    private volatile long totalSize = -1;
+    private Path rangesFile;
+    private FileChannel out;
+    private Consumer<Double> progress;
+
+    public RangeDownload(Opener opener, int maxStreams) {
+        this.opener = opener;
+        this.maxStreams = Math.max(1, maxStreams);
+    }
+
+    /**
+     * File ghi lại các đoạn đã tải xong của part
+     */
+    public static Path rangesOf(Path part) {
+        return part.resolveSibling(part.getFileName() + ".ranges");
+    }
+
+    /**
+     * Xóa file .part và các đoạn đã ghi nhận của nó
+     */
+    public static void discard(Path part) throws IOException {
+        Files.deleteIfExists(part);
+        Files.deleteIfExists(rangesOf(part));
+    }
+
+    /**
+     * Tải tiếp các đoạn còn thiếu của part. Lỗi mạng ném IOException, lần gọi sau (đối tượng mới) tải tiếp.
+     *
+     * @return tổng kích thước file
+     */
+    public long download(Path part, Consumer<Double> progress) throws Exception {
+        this.progress = progress;
+        this.rangesFile = rangesOf(part);
+        loadDone(part);
+
+        // Block đầu tiên: từ chỗ thiếu đầu tiên, tối đa BLOCK_SIZE và không đè lên đoạn đã có
+        long first = !done.isEmpty() && done.get(0)[0] == 0 ? done.get(0)[1] : 0;
+        long firstEnd = first + BLOCK_SIZE;
+        for (long[] range : done) {
+            if (range[0] > first) {
+                firstEnd = Math.min(firstEnd, range[0]);
+                break;
+            }
+        }
+        done.add(new long[]{first, firstEnd});
+        blocks.add(new long[]{first, firstEnd});
+
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            out = channel;
+            startWorker();
+            adapt();
+
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            if (totalSize < 0 || !blocks.isEmpty()) {
+                throw lastError != null ? lastError : new IOException("Download incomplete");
+            }
+            channel.truncate(totalSize);
+        }
+
+        if (totalSize > BLOCK_SIZE) {
+            System.out.println("[RangeDownload] Finished with " + targetStreams.get() + " streams");
+        }
+
+        Files.deleteIfExists(rangesFile);
+        if (progress != null) progress.accept(1.0);
+        return totalSize;
+    }
+
+    /**
+     * Đọc các đoạn đã có. Part không kèm file .ranges là bản tải tuần tự cũ: đã đủ từ 0 tới hết part
+     */
+    private void loadDone(Path part) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        if (Files.exists(rangesFile)) {
+            for (String line : Files.readAllLines(rangesFile, StandardCharsets.UTF_8)) {
+                String[] fields = line.trim().split(" ");
+                try {
+                    if (fields.length == 2) {
+                        ranges.add(new long[]{Long.parseLong(fields[0]), Long.parseLong(fields[1])});
+                    }
+                } catch (NumberFormatException ignored) {
+                    // Dòng ghi dở khi lần trước bị dừng đột ngột
+                }
+            }
+        } else {
+            Files.write(rangesFile, new byte[0]);
+            if (Files.exists(part) && Files.size(part) > 0) {
+                record(0, Files.size(part));
+                ranges.add(new long[]{0, Files.size(part)});
+            }
+        }
+
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        long bytes = 0;
+        for (long[] range : ranges) {
+            long[] last = done.isEmpty() ? null : done.get(done.size() - 1);
+            if (last != null && range[0] <= last[1]) {
+                bytes += Math.max(0, range[1] - last[1]);
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                bytes += range[1] - range[0];
+                done.add(range);
+            }
+        }
+        received.set(bytes);
+    }
+
+    /**
+     * Biết tổng kích thước (header của range đầu tiên): chia các đoạn còn thiếu thành block
+     */
+    private synchronized void plan(long size) {
+        if (totalSize >= 0) {
+            return;
+        }
+        done.sort(Comparator.comparingLong(range -> range[0]));
+        long position = 0;
+        for (long[] range : done) {
+            split(position, Math.min(range[0], size));
+            position = Math.max(position, range[1]);
+        }
+        split(position, size);
+        totalSize = size;
+        targetStreams.set(Math.min(2, maxStreams));
+        notifyAll();
+    }
+
+    private void split(long start, long end) {
+        for (long position = start; position < end; position += BLOCK_SIZE) {
+            blocks.add(new long[]{position, Math.min(end, position + BLOCK_SIZE)});
+        }
+    }
+
+    private synchronized void record(long start, long end) throws IOException {
+        Files.write(rangesFile, (start + " " + end + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Chờ các luồng xong; mỗi chu kỳ đo throughput để thêm hoặc bớt luồng
+     */
+    private synchronized void adapt() throws InterruptedException {
+        long lastBytes = received.get();
+        long lastTime = System.currentTimeMillis();
+        double bestThroughput = 0;
+        boolean growing = true;
+        boolean spread = false;
+
+        while (activeWorkers.get() > 0) {
+            wait(THROUGHPUT_WINDOW_MS);
+            if (totalSize < 0) {
+                continue;
+            }
+            // Chỉ mở thêm luồng khi vừa biết kích thước; luồng lỗi không được thay để lần thử kết thúc
+            if (!spread) {
+                spread = true;
+                for (int i = 1; i < targetStreams.get() && !blocks.isEmpty(); i++) {
+                    startWorker();
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastTime < THROUGHPUT_WINDOW_MS) {
+                continue;
+            }
+            long bytes = received.get();
+            double throughput = (bytes - lastBytes) * 1000.0 / (now - lastTime);
+            lastBytes = bytes;
+            lastTime = now;
+
+            int target = targetStreams.get();
+            if (growing && throughput > bestThroughput * 1.1) {
+                bestThroughput = throughput;
+                if (target < maxStreams && !blocks.isEmpty()) {
+                    targetStreams.incrementAndGet();
+                    startWorker();
+                }
+            } else {
+                growing = false;
+                if (throughput < bestThroughput * 0.8 && target > 1) {
+                    targetStreams.decrementAndGet(); // Một luồng sẽ dừng sau block đang tải
+                }
+            }
+        }
+    }
+
+    private void startWorker() {
+        activeWorkers.incrementAndGet();
+        Thread worker = new Thread(() -> {
+            try {
+                runWorker();
+            } finally {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }, "file-download-stream");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Lấy block để tải cho tới khi hết block, có lỗi, hoặc số luồng mục tiêu giảm
+     */
+    private void runWorker() {
+        byte[] buffer = new byte[64 * 1024];
+        try {
+            while (failure.get() == null) {
+                int active = activeWorkers.get();
+                if (active > targetStreams.get() && activeWorkers.compareAndSet(active, active - 1)) {
+                    return;
+                }
+                long[] block = blocks.poll();
+                if (block == null) {
+                    break;
+                }
+                fetch(block, buffer);
+            }
+        } catch (SocketTimeoutException e) {
+            lastError = new IOException("No data for " + IDLE_TIMEOUT_MS + " ms");
+            System.err.println("[RangeDownload] Stream stalled: " + lastError.getMessage());
+        } catch (IOException e) {
+            lastError = e;
+            System.err.println("[RangeDownload] Stream failed: " + e.getMessage());
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+        }
+        activeWorkers.decrementAndGet();
+    }
+
+    private void fetch(long[] block, byte[] buffer) throws Exception {
+        long position = block[0];
+        long end = block[1];
+        try (Range range = opener.open(block[0], block[1] - block[0])) {
+            plan(range.getTotalSize());
+            position = range.getStart();
+            end = position + range.getLength();
+
+            while (position < end) {
+                int read = range.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+                if (read == -1) {
+                    throw new EOFException("Connection closed at " + position + "/" + end);
+                }
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    position += out.write(chunk, position);
+                }
+                long bytes = received.addAndGet(read);
+                if (progress != null) progress.accept((double) bytes / totalSize);
+            }
+        } catch (IOException e) {
+            // Phần còn lại của block trả về hàng đợi cho luồng khác hoặc lần thử sau
+            blocks.addFirst(new long[]{position, end});
+            throw e;
+        } finally {
+            if (position > block[0]) {
+                record(block[0], position);
+            }
+        }
+    }
+}
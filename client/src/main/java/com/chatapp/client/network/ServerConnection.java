@@ -1,17 +1,62 @@
 package com.chatapp.client.network;
 
+import com.chatapp.common.protocol.MessageType;
 import com.chatapp.common.protocol.Packet;
 import com.chatapp.common.util.JsonUtil;
 
 import java.io.*;
 import java.net.Socket;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public class ServerConnection {
     private static ServerConnection instance;
     private Socket socket;
     private BufferedReader input;
     private PrintWriter output;
-    private boolean connected;
+    private volatile boolean connected;
+    private String host;
+    private int port;
+
+    private static final long RESPONSE_TIMEOUT_MS = 30000;
+    /** Gói dài (ảnh Base64, trang tin nhắn) chỉ log phần đầu */
+    private static final int LOG_PREVIEW_CHARS = 300;
+
+    /**
+     * Các loại gói tin server chủ động đẩy xuống (không phải response cho request đang chờ)
+     */
+    private static final Set<MessageType> PUSH_TYPES = EnumSet.of(
+            MessageType.RECEIVE_MESSAGE,
+            MessageType.TYPING_INDICATOR,
+            MessageType.READ_RECEIPT,
+            MessageType.FILE_OFFER,
+            MessageType.CALL_REQUEST,
+            MessageType.CALL_ACCEPT,
+            MessageType.CALL_REJECT,
+            MessageType.CALL_END
+    );
+
+    /**
+     * Response của request đang chờ, do reader thread đưa vào
+     */
+    private final BlockingQueue<Packet> responses = new LinkedBlockingQueue<>();
+
+    /**
+     * Khóa ghi socket: gói một chiều có thể được gửi trong lúc một request khác đang chờ response
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Khôi phục phiên trên socket mới sau reconnect() (server gắn user theo từng kết nối)
+     */
+    public interface SessionRestorer {
+        void restore(ServerConnection connection) throws IOException;
+    }
+
+    private volatile SessionRestorer sessionRestorer;
 
     private ServerConnection() {}
 
@@ -24,14 +69,24 @@ public class ServerConnection {
 
     public void connect(String host, int port) throws IOException {
         System.out.println("[CLIENT] Connecting to " + host + ":" + port);
+        this.host = host;
+        this.port = port;
         socket = new Socket(host, port);
         socket.setTcpNoDelay(true); // Disable Nagle's algorithm
-        socket.setSoTimeout(30000); // 30 second timeout
 
         input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
         output = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+        responses.clear();
         connected = true;
 
+        // Reader thread đọc liên tục để server push (vd. bundle tin nhắn offline khi login)
+        // không bị kẹt trong socket buffer giữa hai request
+        Socket current = socket;
+        BufferedReader socketReader = input;
+        Thread reader = new Thread(() -> readLoop(current, socketReader), "server-reader");
+        reader.setDaemon(true);
+        reader.start();
+
         System.out.println("[CLIENT] Connected successfully");
     }
 
@@ -45,23 +100,112 @@ public class ServerConnection {
 
         // Serialize and send
         String requestJson = JsonUtil.toJson(packet);
-        System.out.println("[CLIENT] >>> SEND: " + requestJson);
+        System.out.println("[CLIENT] >>> SEND: " + preview(requestJson));
 
-        output.println(requestJson);
-        output.flush();
+        responses.clear(); // Bỏ response trễ của request trước đã timeout
+        synchronized (writeLock) {
+            output.println(requestJson);
+            output.flush();
+        }
 
         // Wait for response
-        String responseLine = input.readLine();
+        try {
+            Packet response = responses.poll(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (response == null) {
+                throw new IOException(connected ? "Response timeout" : "Server closed connection");
+            }
+            return response;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for response");
+        }
+    }
+
+    /**
+     * Gửi gói tin một chiều (không chờ response), ví dụ TYPING_INDICATOR, READ_RECEIPT
+     */
+    public void send(Packet packet) throws IOException {
+        if (!connected || socket == null || socket.isClosed()) {
+            throw new IOException("Not connected to server");
+        }
 
-        if (responseLine == null) {
-            throw new IOException("Server closed connection");
+        synchronized (writeLock) {
+            output.println(JsonUtil.toJson(packet));
+            output.flush();
         }
+    }
+
+    /**
+     * Đọc mọi gói tin từ server: push được chuyển cho MessageHandler, còn lại là response
+     */
+    private void readLoop(Socket readerSocket, BufferedReader reader) {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                System.out.println("[CLIENT] <<< RECV: " + preview(line));
+
+                Packet packet = JsonUtil.fromJson(line, Packet.class);
+                if (isPush(packet)) {
+                    try {
+                        MessageHandler.handlePacket(packet);
+                    } catch (Exception e) {
+                        System.err.println("[CLIENT] Error handling push: " + e.getMessage());
+                    }
+                } else {
+                    responses.offer(packet);
+                }
+            }
+        } catch (IOException e) {
+            if (connected) {
+                System.err.println("[CLIENT] Connection lost: " + e.getMessage());
+            }
+        } finally {
+            // Chỉ đánh dấu mất kết nối nếu chưa reconnect sang socket mới
+            if (readerSocket == socket) {
+                connected = false;
+            }
+        }
+    }
+
+    private static String preview(String json) {
+        if (json.length() <= LOG_PREVIEW_CHARS) {
+            return json;
+        }
+        return json.substring(0, LOG_PREVIEW_CHARS) + "... (" + json.length() + " chars)";
+    }
+
+    /**
+     * FILE_ACCEPT/FILE_REJECT có transferId là trả lời P2P của peer, không phải response cho upload
+     */
+    private static boolean isPush(Packet packet) {
+        MessageType type = packet.getType();
+        if (type == null) {
+            return false;
+        }
+        if (type == MessageType.FILE_ACCEPT || type == MessageType.FILE_REJECT) {
+            return packet.get("transferId") != null;
+        }
+        return PUSH_TYPES.contains(type);
+    }
 
-        System.out.println("[CLIENT] <<< RECV: " + responseLine);
+    /**
+     * Kết nối lại tới server cuối cùng (dùng khi gửi lại sau khi mất kết nối) và đăng nhập lại,
+     * để request gửi lại chạy dưới phiên của user và kết nối mới nhận được push
+     */
+    public synchronized void reconnect() throws IOException {
+        if (host == null) {
+            throw new IOException("No previous connection");
+        }
+        disconnect();
+        connect(host, port);
+        SessionRestorer restorer = sessionRestorer;
+        if (restorer != null) {
+            restorer.restore(this);
+        }
+    }
 
-        // Parse response
-        Packet response = JsonUtil.fromJson(responseLine, Packet.class);
-        return response;
+    public void setSessionRestorer(SessionRestorer restorer) {
+        this.sessionRestorer = restorer;
     }
 
     public void disconnect() {
@@ -75,7 +219,14 @@ public class ServerConnection {
         }
     }
 
+    /**
+     * Host server đang kết nối (cổng truyền file dùng chung host)
+     */
+    public String getHost() {
+        return host;
+    }
+
     public boolean isConnected() {
         return connected && socket != null && !socket.isClosed();
     }
-}
\ No newline at end of file
+}
@@ -7,6 +7,8 @@ import com.chatapp.common.protocol.Packet;
 import com.chatapp.common.protocol.PacketBuilder;
 import com.chatapp.common.protocol.MessageType;
 
+import java.io.IOException;
+
 public class AuthService {
     private static AuthService instance;
     private ServerConnection connection;
@@ -45,6 +47,8 @@ public class AuthService {
             currentUser.setFullName(response.getString("fullName"));
 
             PreferenceManager.getInstance().setCurrentUser(currentUser);
+            // Server chưa có session token: giữ thông tin đăng nhập trong RAM để đăng nhập lại khi reconnect
+            connection.setSessionRestorer(restored -> relogin(restored, username, password));
             System.out.println("[AUTH] Login successful: " + currentUser.getUsername());
         } else {
             System.out.println("[AUTH] Login failed: " + response.getError());
@@ -53,6 +57,17 @@ public class AuthService {
         return response;
     }
 
+    private void relogin(ServerConnection restored, String username, String password) throws IOException {
+        Packet response = restored.sendAndReceive(PacketBuilder.create(MessageType.LOGIN_REQUEST)
+                .put("username", username)
+                .put("password", password)
+                .build());
+        if (!response.isSuccess()) {
+            throw new IOException("Re-login failed: " + response.getError());
+        }
+        System.out.println("[AUTH] Session restored after reconnect");
+    }
+
     public Packet register(String username, String email, String password, String fullName) throws Exception {
         System.out.println("[AUTH] Registration attempt: " + username);
 
@@ -102,6 +117,7 @@ public class AuthService {
             PreferenceManager.getInstance().clearCurrentUser();
         }
 
+        connection.setSessionRestorer(null);
         connection.disconnect();
     }
 
@@ -0,0 +1,284 @@
+package com.chatapp.client.service;
+
+import com.chatapp.client.media.AudioCapture;
+import com.chatapp.client.media.AudioPlayer;
+import com.chatapp.client.media.AudioSink;
+import com.chatapp.client.media.AudioSource;
+import com.chatapp.client.media.CameraVideoSource;
+import com.chatapp.client.media.SyntheticAudio;
+import com.chatapp.client.model.CallSession;
+import com.chatapp.client.model.CallStats;
+import com.chatapp.client.network.ServerConnection;
+import com.chatapp.common.protocol.MessageType;
+import com.chatapp.common.protocol.Packet;
+import com.chatapp.common.protocol.PacketBuilder;
+
+import javax.sound.sampled.LineUnavailableException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.UUID;
+
+/**
+ * Service cuộc gọi ở client: signaling qua server (CALL_REQUEST/ACCEPT/REJECT/END),
+ * còn media đi thẳng UDP giữa hai client tới địa chỉ server nhìn thấy của bên kia.
+ * Mỗi lúc chỉ có một cuộc gọi; cuộc gọi tới khi đang bận bị từ chối với reason "busy".
+ * Server giữ trạng thái cuộc gọi: hai bên gọi nhau cùng lúc (glare) thì server nối luôn, CALL_INFO trả về
+ * state "connected" kèm địa chỉ media của bên kia.
+ * Cuộc gọi đã có media thì khi kết thúc gửi báo cáo chất lượng (CallStats.summarize) trong CALL_INFO
+ * để server tổng hợp.
+ */
+public class CallService {
+    private static CallService instance;
+    private final ServerConnection connection;
+    private volatile CallSession currentCall;
+    private volatile CallListener callListener;
+
+    /**
+     * Sự kiện cuộc gọi cho UI (gọi từ thread mạng)
+     */
+    public interface CallListener {
+        void onIncomingCall(CallSession call);
+        void onCallConnected(CallSession call);
+        void onCallEnded(CallSession call, String reason);
+    }
+
+    private CallService() {
+        this.connection = ServerConnection.getInstance();
+    }
+
+    public static CallService getInstance() {
+        if (instance == null) {
+            synchronized (CallService.class) {
+                if (instance == null) {
+                    instance = new CallService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public void setCallListener(CallListener listener) {
+        this.callListener = listener;
+    }
+
+    public CallSession getCurrentCall() {
+        return currentCall;
+    }
+
+    /**
+     * Gọi tới peer: mở cổng media rồi gửi CALL_REQUEST, chờ peer trả lời qua push.
+     * Không giữ khóa trong lúc chờ response, vì push CALL_ACCEPT đi qua cùng reader thread.
+     */
+    public CallSession startCall(Long userId, Long peerId, boolean video) throws IOException {
+        CallSession call = new CallSession(UUID.randomUUID().toString(), peerId, video, CallSession.State.OUTGOING);
+        synchronized (this) {
+            if (currentCall != null) {
+                throw new IOException("Already in a call");
+            }
+            currentCall = call;
+        }
+
+        try {
+            int mediaPort = call.openMedia(0);
+            Packet response = connection.sendAndReceive(PacketBuilder.create(MessageType.CALL_REQUEST)
+                    .put("userId", userId)
+                    .put("peerId", peerId)
+                    .put("callId", call.getCallId())
+                    .put("video", video)
+                    .put("mediaPort", mediaPort)
+                    .build());
+
+            if (!response.isSuccess()) {
+                throw new IOException(response.getError());
+            }
+            if ("connected".equals(response.getString("state"))) {
+                onGlareConnected(call, response);
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                call.stopMedia();
+                if (currentCall == call) {
+                    currentCall = null;
+                }
+            }
+            throw e;
+        }
+
+        System.out.println("[CallService] Calling " + peerId + " (" + call.getCallId() + ")");
+        return call;
+    }
+
+    /**
+     * Nhận cuộc gọi tới: mở cổng media, báo CALL_ACCEPT rồi bắt đầu gửi/nhận ngay
+     */
+    public synchronized void acceptCall(CallSession call) throws IOException {
+        int mediaPort = call.openMedia(0);
+        connection.send(PacketBuilder.create(MessageType.CALL_ACCEPT)
+                .put("peerId", call.getPeerId())
+                .put("callId", call.getCallId())
+                .put("mediaPort", mediaPort)
+                .build());
+
+        startMedia(call);
+        notifyConnected(call);
+    }
+
+    public synchronized void rejectCall(CallSession call, String reason) {
+        sendSignal(MessageType.CALL_REJECT, call, reason);
+        finish(call, reason);
+    }
+
+    /**
+     * Kết thúc cuộc gọi hiện tại (gác máy, hoặc hủy khi bên kia chưa nghe)
+     */
+    public synchronized void endCall() {
+        CallSession call = currentCall;
+        if (call != null) {
+            sendSignal(MessageType.CALL_END, call, "hangup");
+            finish(call, "hangup");
+        }
+    }
+
+    /**
+     * Được gọi bởi MessageHandler khi có CALL_REQUEST từ peer
+     */
+    public synchronized void onCallRequest(Packet packet) {
+        Long fromUserId = packet.getLong("fromUserId");
+        CallSession call = new CallSession(packet.getString("callId"), fromUserId,
+                Boolean.TRUE.equals(packet.getBoolean("video")), CallSession.State.INCOMING);
+        call.setRemote(packet.getString("host"), packet.getInt("mediaPort"));
+
+        CallListener listener = callListener;
+        CallSession current = currentCall;
+        if (current != null && current.getState() == CallSession.State.OUTGOING
+                && fromUserId != null && fromUserId.equals(current.getPeerId())) {
+            return; // Glare: server sẽ gộp hai lời gọi, không từ chối
+        }
+        if (current != null || listener == null) {
+            sendSignal(MessageType.CALL_REJECT, call, "busy");
+            return;
+        }
+
+        currentCall = call;
+        listener.onIncomingCall(call);
+    }
+
+    /**
+     * Server đã gộp lời gọi của mình vào lời gọi của peer (hai bên gọi nhau cùng lúc)
+     */
+    private synchronized void onGlareConnected(CallSession call, Packet response) {
+        if (currentCall != call) {
+            return;
+        }
+        call.setCallId(response.getString("callId"));
+        call.setRemote(response.getString("host"), response.getInt("mediaPort"));
+        startMedia(call);
+        notifyConnected(call);
+    }
+
+    /**
+     * Peer đã nghe máy: bắt đầu media tới địa chỉ của peer
+     */
+    public synchronized void onCallAccept(Packet packet) {
+        CallSession call = currentCall;
+        if (call == null || !call.getCallId().equals(packet.getString("callId"))) {
+            return;
+        }
+
+        call.setRemote(packet.getString("host"), packet.getInt("mediaPort"));
+        startMedia(call);
+        notifyConnected(call);
+    }
+
+    /**
+     * Peer từ chối hoặc gác máy
+     */
+    public synchronized void onCallEnd(Packet packet) {
+        CallSession call = currentCall;
+        if (call == null || !call.getCallId().equals(packet.getString("callId"))) {
+            return;
+        }
+        String reason = packet.getString("reason");
+        finish(call, reason != null ? reason : "ended");
+    }
+
+    private void startMedia(CallSession call) {
+        AudioSource source;
+        try {
+            source = new AudioCapture.MicrophoneSource();
+        } catch (LineUnavailableException e) {
+            System.err.println("[CallService] Microphone unavailable, sending silence: " + e.getMessage());
+            source = SyntheticAudio.silence();
+        }
+
+        AudioSink sink;
+        try {
+            sink = new AudioPlayer.SpeakerSink();
+        } catch (LineUnavailableException e) {
+            System.err.println("[CallService] Speaker unavailable: " + e.getMessage());
+            sink = SyntheticAudio.discard();
+        }
+
+        call.startMedia(new InetSocketAddress(call.getRemoteHost(), call.getRemotePort()), source, sink);
+        if (call.isVideo()) {
+            try {
+                call.startVideo(new CameraVideoSource(CallSession.VIDEO_WIDTH, CallSession.VIDEO_HEIGHT,
+                        CallSession.VIDEO_FPS));
+            } catch (IOException e) {
+                System.err.println("[CallService] Camera unavailable, audio only: " + e.getMessage());
+            }
+        }
+        System.out.println("[CallService] Media started with " + call.getRemoteHost() + ":" + call.getRemotePort());
+    }
+
+    private void finish(CallSession call, String reason) {
+        call.stopMedia();
+        sendSummary(call, reason);
+        if (currentCall == call) {
+            currentCall = null;
+        }
+        CallListener listener = callListener;
+        if (listener != null) {
+            listener.onCallEnded(call, reason);
+        }
+        System.out.println("[CallService] Call " + call.getCallId() + " ended: " + reason);
+    }
+
+    private void notifyConnected(CallSession call) {
+        CallListener listener = callListener;
+        if (listener != null) {
+            listener.onCallConnected(call);
+        }
+    }
+
+    /**
+     * Báo cáo chất lượng cuối cuộc gọi (không chờ response)
+     */
+    private void sendSummary(CallSession call, String reason) {
+        if (call.getMediaDurationMs() <= 0) {
+            return;
+        }
+        try {
+            connection.send(PacketBuilder.create(MessageType.CALL_INFO)
+                    .put("peerId", call.getPeerId())
+                    .put("callId", call.getCallId())
+                    .put("reason", reason)
+                    .put("summary", CallStats.summarize(call))
+                    .build());
+        } catch (IOException e) {
+            System.err.println("[CallService] Failed to send call summary: " + e.getMessage());
+        }
+    }
+
+    private void sendSignal(MessageType type, CallSession call, String reason) {
+        try {
+            connection.send(PacketBuilder.create(type)
+                    .put("peerId", call.getPeerId())
+                    .put("callId", call.getCallId())
+                    .put("reason", reason)
+                    .build());
+        } catch (IOException e) {
+            System.err.println("[CallService] Failed to send " + type + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package com.chatapp.client.service;
+
+import com.chatapp.client.network.ServerConnection;
+import com.chatapp.common.model.ConversationSummary;
+import com.chatapp.common.model.FileInfo;
+import com.chatapp.common.model.Message;
+import com.chatapp.common.protocol.MessageType;
+import com.chatapp.common.protocol.Packet;
+import com.chatapp.common.protocol.PacketBuilder;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Service xử lý gửi/nhận tin nhắn ở client
+ */
+public class ChatService {
+    private static ChatService instance;
+    private ServerConnection connection;
+    private volatile Consumer<Message> messageListener;
+    private volatile BiConsumer<Long, Boolean> typingListener;
+    private volatile BiConsumer<Long, Long> readReceiptListener;
+
+    // Lần cuối báo "đang nhập" và watermark đã gửi, theo peerId
+    private final Map<Long, Long> lastTypingSent = new ConcurrentHashMap<>();
+    private final Map<Long, Long> sentReadWatermarks = new ConcurrentHashMap<>();
+    private final Map<Long, Long> sentGroupReadWatermarks = new ConcurrentHashMap<>();
+
+    private static final int MAX_SEND_ATTEMPTS = 3;
+    private static final long TYPING_INTERVAL_MS = 3000;
+
+    private ChatService() {
+        this.connection = ServerConnection.getInstance();
+    }
+
+    public static ChatService getInstance() {
+        if (instance == null) {
+            synchronized (ChatService.class) {
+                if (instance == null) {
+                    instance = new ChatService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Gửi tin nhắn văn bản.
+     * clientMessageId được sinh một lần và giữ nguyên qua các lần gửi lại,
+     * nên server sẽ bỏ bản trùng nếu lần gửi trước thực ra đã thành công.
+     */
+    public Packet sendMessage(Long senderId, Long receiverId, String content) throws Exception {
+        Packet request = PacketBuilder.create(MessageType.SEND_MESSAGE_REQUEST)
+                .put("senderId", senderId)
+                .put("receiverId", receiverId)
+                .put("clientMessageId", UUID.randomUUID().toString())
+                .put("content", content)
+                .put("messageType", Message.MessageType.TEXT.name())
+                .build();
+
+        return sendWithRetry(request);
+    }
+
+    /**
+     * Gửi tin nhắn văn bản vào nhóm (server lưu một lần rồi fan-out cho thành viên)
+     */
+    public Packet sendGroupMessage(Long senderId, Long groupId, String content) throws Exception {
+        Packet request = PacketBuilder.create(MessageType.SEND_MESSAGE_REQUEST)
+                .put("senderId", senderId)
+                .put("groupId", groupId)
+                .put("clientMessageId", UUID.randomUUID().toString())
+                .put("content", content)
+                .put("messageType", Message.MessageType.TEXT.name())
+                .build();
+
+        return sendWithRetry(request);
+    }
+
+    /**
+     * Gửi tin nhắn đính kèm file đã upload (receiverId hoặc groupId, một trong hai)
+     */
+    public Packet sendFileMessage(Long senderId, Long receiverId, Long groupId, FileInfo fileInfo) throws Exception {
+        Message.MessageType type = "IMAGE".equals(fileInfo.getFileType())
+                ? Message.MessageType.IMAGE : Message.MessageType.FILE;
+        Packet request = PacketBuilder.create(MessageType.SEND_MESSAGE_REQUEST)
+                .put("senderId", senderId)
+                .put("receiverId", receiverId)
+                .put("groupId", groupId)
+                .put("clientMessageId", UUID.randomUUID().toString())
+                .put("content", fileInfo.getFileName())
+                .put("messageType", type.name())
+                .put("fileId", fileInfo.getId())
+                .build();
+
+        return sendWithRetry(request);
+    }
+
+    /**
+     * Gửi tin nhắn thoại đã upload (file đã lên server trong lúc ghi âm nên gửi ngay khi thả nút)
+     */
+    public Packet sendVoiceMessage(Long senderId, Long receiverId, Long groupId, FileInfo fileInfo, long durationMs)
+            throws Exception {
+        Packet request = PacketBuilder.create(MessageType.SEND_MESSAGE_REQUEST)
+                .put("senderId", senderId)
+                .put("receiverId", receiverId)
+                .put("groupId", groupId)
+                .put("clientMessageId", UUID.randomUUID().toString())
+                .put("content", voiceMessageContent(durationMs))
+                .put("messageType", Message.MessageType.VOICE.name())
+                .put("fileId", fileInfo.getId())
+                .build();
+
+        return sendWithRetry(request);
+    }
+
+    /**
+     * Nội dung hiển thị của tin nhắn thoại (kèm thời lượng)
+     */
+    public static String voiceMessageContent(long durationMs) {
+        long seconds = Math.round(durationMs / 1000.0);
+        return String.format("🎤 Tin nhắn thoại %d:%02d", seconds / 60, seconds % 60);
+    }
+
+    private Packet sendWithRetry(Packet request) throws Exception {
+        IOException lastError = null;
+        for (int attempt = 1; attempt <= MAX_SEND_ATTEMPTS; attempt++) {
+            try {
+                if (!connection.isConnected()) {
+                    connection.reconnect();
+                }
+
+                Packet response = connection.sendAndReceive(request);
+
+                if (response.isSuccess()) {
+                    System.out.println("[ChatService] Message sent, seq=" + response.getLong("sequence")
+                            + (Boolean.TRUE.equals(response.getBoolean("duplicate")) ? " (duplicate)" : ""));
+                } else {
+                    System.err.println("[ChatService] Send message failed: " + response.getError());
+                }
+                return response;
+
+            } catch (IOException e) {
+                lastError = e;
+                System.err.println("[ChatService] Send attempt " + attempt + " failed: " + e.getMessage());
+                connection.disconnect();
+            }
+        }
+
+        throw new Exception("Không thể gửi tin nhắn: " + lastError.getMessage());
+    }
+
+    /**
+     * Lấy lịch sử tin nhắn với một người (keyset pagination).
+     * @param beforeSequence null để lấy trang mới nhất, hoặc sequence nhỏ nhất đang hiển thị để cuộn lên
+     */
+    public List<Message> getMessages(Long userId, Long peerId, Long beforeSequence, int limit) throws Exception {
+        return fetchMessages(PacketBuilder.create(MessageType.GET_MESSAGES_REQUEST)
+                .put("userId", userId)
+                .put("peerId", peerId)
+                .put("limit", limit)
+                .build(), beforeSequence);
+    }
+
+    /**
+     * Lấy lịch sử tin nhắn của nhóm (keyset pagination như chat 1-1)
+     */
+    public List<Message> getGroupMessages(Long userId, Long groupId, Long beforeSequence, int limit) throws Exception {
+        return fetchMessages(PacketBuilder.create(MessageType.GET_MESSAGES_REQUEST)
+                .put("userId", userId)
+                .put("groupId", groupId)
+                .put("limit", limit)
+                .build(), beforeSequence);
+    }
+
+    /**
+     * Lấy danh sách chat (tin nhắn cuối + số chưa đọc) trong một request
+     */
+    public List<ConversationSummary> getConversations(Long userId) throws Exception {
+        if (!connection.isConnected()) {
+            throw new Exception("Not connected to server");
+        }
+
+        Packet request = PacketBuilder.create(MessageType.GET_CONVERSATIONS_REQUEST)
+                .put("userId", userId)
+                .build();
+
+        Packet response = connection.sendAndReceive(request);
+
+        List<ConversationSummary> conversations = new ArrayList<>();
+        if (response.isSuccess()) {
+            Object conversationsObj = response.get("conversations");
+            if (conversationsObj instanceof List) {
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> maps = (List<Map<String, Object>>) conversationsObj;
+                for (Map<String, Object> map : maps) {
+                    conversations.add(mapToSummary(map));
+                }
+            }
+        } else {
+            System.err.println("[ChatService] Failed to get conversations: " + response.getError());
+        }
+
+        return conversations;
+    }
+
+    /**
+     * Tìm kiếm tin nhắn trong cuộc trò chuyện (server dùng inverted index, không phân biệt dấu)
+     *
+     * @param peerId  người chat 1-1, hoặc null nếu tìm trong nhóm
+     * @param groupId nhóm, hoặc null nếu tìm trong chat 1-1
+     */
+    public List<Message> searchMessages(Long userId, Long peerId, Long groupId, String query, int limit) throws Exception {
+        Packet request = PacketBuilder.create(MessageType.SEARCH_MESSAGES_REQUEST)
+                .put("userId", userId)
+                .put("query", query)
+                .put("limit", limit)
+                .build();
+
+        if (groupId != null) {
+            request.put("groupId", groupId);
+        } else {
+            request.put("peerId", peerId);
+        }
+
+        return fetchMessages(request, null);
+    }
+
+    private List<Message> fetchMessages(Packet request, Long beforeSequence) throws Exception {
+        if (!connection.isConnected()) {
+            throw new Exception("Not connected to server");
+        }
+
+        if (beforeSequence != null) {
+            request.put("beforeSequence", beforeSequence);
+        }
+
+        Packet response = connection.sendAndReceive(request);
+
+        List<Message> messages = new ArrayList<>();
+        if (response.isSuccess()) {
+            Object messagesObj = response.get("messages");
+            if (messagesObj instanceof List) {
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> messageMaps = (List<Map<String, Object>>) messagesObj;
+                for (Map<String, Object> map : messageMaps) {
+                    messages.add(mapToMessage(map));
+                }
+            }
+        } else {
+            System.err.println("[ChatService] Failed to get messages: " + response.getError());
+        }
+
+        return messages;
+    }
+
+    /**
+     * Báo trạng thái đang nhập (một chiều, không chờ response).
+     * "Đang nhập" chỉ được gửi lại sau TYPING_INTERVAL_MS; "dừng nhập" chỉ gửi nếu đã báo đang nhập.
+     */
+    public void sendTypingIndicator(Long peerId, boolean typing) {
+        long now = System.currentTimeMillis();
+        if (typing) {
+            Long last = lastTypingSent.get(peerId);
+            if (last != null && now - last < TYPING_INTERVAL_MS) {
+                return;
+            }
+            lastTypingSent.put(peerId, now);
+        } else if (lastTypingSent.remove(peerId) == null) {
+            return;
+        }
+
+        sendOneWay(PacketBuilder.create(MessageType.TYPING_INDICATOR)
+                .put("peerId", peerId)
+                .put("typing", typing)
+                .build());
+    }
+
+    /**
+     * Báo đã đọc tới readSequence (một chiều). Chỉ gửi khi watermark tăng,
+     * nên đọc nhiều tin một lúc chỉ tốn một gói tin.
+     */
+    public void sendReadReceipt(Long peerId, long readSequence) {
+        Long previous = sentReadWatermarks.get(peerId);
+        if (previous != null && previous >= readSequence) {
+            return;
+        }
+        sentReadWatermarks.put(peerId, readSequence);
+
+        sendOneWay(PacketBuilder.create(MessageType.READ_RECEIPT)
+                .put("peerId", peerId)
+                .put("readSequence", readSequence)
+                .build());
+    }
+
+    /**
+     * Báo đã đọc tới readSequence trong nhóm (một chiều), để server giảm số chưa đọc của nhóm
+     */
+    public void sendGroupReadReceipt(Long groupId, long readSequence) {
+        Long previous = sentGroupReadWatermarks.get(groupId);
+        if (previous != null && previous >= readSequence) {
+            return;
+        }
+        sentGroupReadWatermarks.put(groupId, readSequence);
+
+        sendOneWay(PacketBuilder.create(MessageType.READ_RECEIPT)
+                .put("groupId", groupId)
+                .put("readSequence", readSequence)
+                .build());
+    }
+
+    private void sendOneWay(Packet packet) {
+        try {
+            connection.send(packet);
+        } catch (IOException e) {
+            System.err.println("[ChatService] Failed to send " + packet.getType() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Đăng ký listener nhận tin nhắn mới (RECEIVE_MESSAGE)
+     */
+    public void setMessageListener(Consumer<Message> listener) {
+        this.messageListener = listener;
+    }
+
+    /**
+     * Được gọi bởi MessageHandler khi server đẩy tin nhắn mới
+     * ("message" cho một tin, "messages" cho bundle tin nhắn offline khi đăng nhập)
+     */
+    public void onMessageReceived(Map<String, Object> data) {
+        Consumer<Message> listener = messageListener;
+        if (listener == null) {
+            return;
+        }
+
+        Object messageObj = data.get("message");
+        if (messageObj instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> map = (Map<String, Object>) messageObj;
+            listener.accept(mapToMessage(map));
+        }
+
+        Object messagesObj = data.get("messages");
+        if (messagesObj instanceof List) {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> maps = (List<Map<String, Object>>) messagesObj;
+            for (Map<String, Object> map : maps) {
+                listener.accept(mapToMessage(map));
+            }
+        }
+    }
+
+    /**
+     * Đăng ký listener trạng thái đang nhập (senderId, typing)
+     */
+    public void setTypingListener(BiConsumer<Long, Boolean> listener) {
+        this.typingListener = listener;
+    }
+
+    /**
+     * Đăng ký listener "đã xem" (userId người đọc, readSequence)
+     */
+    public void setReadReceiptListener(BiConsumer<Long, Long> listener) {
+        this.readReceiptListener = listener;
+    }
+
+    /**
+     * Được gọi bởi MessageHandler khi người kia đang nhập / dừng nhập
+     */
+    public void onTypingIndicator(Map<String, Object> data) {
+        BiConsumer<Long, Boolean> listener = typingListener;
+        if (listener != null && data.get("senderId") instanceof Number) {
+            listener.accept(((Number) data.get("senderId")).longValue(),
+                    !Boolean.FALSE.equals(data.get("typing")));
+        }
+    }
+
+    /**
+     * Được gọi bởi MessageHandler khi người kia đã đọc tới một sequence
+     */
+    public void onReadReceipt(Map<String, Object> data) {
+        BiConsumer<Long, Long> listener = readReceiptListener;
+        if (listener != null && data.get("userId") instanceof Number && data.get("readSequence") instanceof Number) {
+            listener.accept(((Number) data.get("userId")).longValue(),
+                    ((Number) data.get("readSequence")).longValue());
+        }
+    }
+
+    /**
+     * Convert Map to ConversationSummary object
+     */
+    private ConversationSummary mapToSummary(Map<String, Object> map) {
+        ConversationSummary summary = new ConversationSummary();
+
+        if (map.get("peerId") instanceof Number) {
+            summary.setPeerId(((Number) map.get("peerId")).longValue());
+        }
+        if (map.get("groupId") instanceof Number) {
+            summary.setGroupId(((Number) map.get("groupId")).longValue());
+        }
+        if (map.get("lastMessageId") instanceof Number) {
+            summary.setLastMessageId(((Number) map.get("lastMessageId")).longValue());
+        }
+        if (map.get("lastSenderId") instanceof Number) {
+            summary.setLastSenderId(((Number) map.get("lastSenderId")).longValue());
+        }
+        if (map.get("lastSequence") instanceof Number) {
+            summary.setLastSequence(((Number) map.get("lastSequence")).longValue());
+        }
+        if (map.get("unreadCount") instanceof Number) {
+            summary.setUnreadCount(((Number) map.get("unreadCount")).intValue());
+        }
+
+        summary.setConversationId((String) map.get("conversationId"));
+        summary.setTitle((String) map.get("title"));
+        summary.setAvatarUrl((String) map.get("avatarUrl"));
+        summary.setLastContent((String) map.get("lastContent"));
+
+        if (map.get("lastMessageAt") != null) {
+            summary.setLastMessageAt(LocalDateTime.parse(map.get("lastMessageAt").toString()));
+        }
+
+        return summary;
+    }
+
+    /**
+     * Convert Map to Message object
+     */
+    private Message mapToMessage(Map<String, Object> map) {
+        Message message = new Message();
+
+        if (map.get("id") instanceof Number) {
+            message.setId(((Number) map.get("id")).longValue());
+        }
+        if (map.get("sequence") instanceof Number) {
+            message.setSequence(((Number) map.get("sequence")).longValue());
+        }
+        if (map.get("senderId") instanceof Number) {
+            message.setSenderId(((Number) map.get("senderId")).longValue());
+        }
+        if (map.get("receiverId") instanceof Number) {
+            message.setReceiverId(((Number) map.get("receiverId")).longValue());
+        }
+        if (map.get("groupId") instanceof Number) {
+            message.setGroupId(((Number) map.get("groupId")).longValue());
+        }
+        if (map.get("fileId") instanceof Number) {
+            message.setFileId(((Number) map.get("fileId")).longValue());
+        }
+
+        message.setConversationId((String) map.get("conversationId"));
+        message.setClientMessageId((String) map.get("clientMessageId"));
+        message.setContent((String) map.get("content"));
+
+        if (map.get("messageType") != null) {
+            message.setMessageType(Message.MessageType.valueOf(map.get("messageType").toString()));
+        }
+        if (map.get("read") instanceof Boolean) {
+            message.setRead((Boolean) map.get("read"));
+        }
+        if (map.get("createdAt") != null) {
+            message.setCreatedAt(LocalDateTime.parse(map.get("createdAt").toString()));
+        }
+
+        return message;
+    }
+}
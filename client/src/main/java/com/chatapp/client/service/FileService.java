@@ -0,0 +1,981 @@
+package com.chatapp.client.service;
+
+import com.chatapp.client.network.P2PClient;
+import com.chatapp.client.network.P2PServer;
+import com.chatapp.client.network.RangeDownload;
+import com.chatapp.client.network.ServerConnection;
+import com.chatapp.common.model.FileInfo;
+import com.chatapp.common.protocol.FileTransferProtocol;
+import com.chatapp.common.protocol.MessageType;
+import com.chatapp.common.protocol.Packet;
+import com.chatapp.common.protocol.PacketBuilder;
+import com.chatapp.common.util.JsonUtil;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Service truyền file ở client: upload thương lượng qua FILE_OFFER/FILE_ACCEPT trên kênh JSON,
+ * gửi bytes theo chunk qua cổng truyền file, tự upload tiếp từ offset server đã nhận khi mất kết nối.
+ * Checksum được gửi kèm offer nên file server đã có sẽ không phải upload lại.
+ * Download lấy vé qua FILE_DOWNLOAD_REQUEST rồi đọc nhiều range song song, tải tiếp được từ file .part.
+ * Gửi file cho một người có thể đi trực tiếp P2P (server chỉ chuyển tiếp offer), gửi qua server là dự phòng.
+ */
+public class FileService {
+    private static FileService instance;
+    private ServerConnection connection;
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_MS = 2000;
+    private static final int MAX_STREAMS = 8;
+    private static final long PARALLEL_BLOCK_SIZE = 8L * 1024 * 1024;
+    private static final long THROUGHPUT_WINDOW_MS = 2000;
+    private static final long P2P_ANSWER_TIMEOUT_MS = 60000;
+    private static final long P2P_IDLE_TIMEOUT_MS = 60000;
+    /** Người nhận bỏ cuộc (và báo FILE_REJECT) sớm hơn P2P_IDLE_TIMEOUT_MS của người gửi */
+    private static final long P2P_RECEIVE_GIVE_UP_MS = 40000;
+    /** Ước lượng thấp tốc độ tính SHA-256 ở người nhận, để chờ xác nhận file lớn */
+    private static final long CHECKSUM_BYTES_PER_MS = 50_000;
+
+    // Trả lời của peer cho các offer P2P đang chờ, theo transferId
+    private final Map<String, BlockingQueue<Packet>> peerAnswers = new ConcurrentHashMap<>();
+    private volatile Consumer<Packet> peerOfferListener;
+
+    private FileService() {
+        this.connection = ServerConnection.getInstance();
+    }
+
+    public static FileService getInstance() {
+        if (instance == null) {
+            synchronized (FileService.class) {
+                if (instance == null) {
+                    instance = new FileService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Upload file lên server
+     *
+     * @param progress nhận tỉ lệ đã gửi (0..1), có thể null
+     * @return thông tin file đã lưu (có id để gửi kèm tin nhắn)
+     */
+    public FileInfo uploadFile(Long userId, File file, Consumer<Double> progress) throws Exception {
+        Path path = file.toPath();
+        String mimeType = Files.probeContentType(path);
+        String checksum = sha256(path);
+        Packet accept = sendOffer(PacketBuilder.create(MessageType.FILE_OFFER)
+                .put("userId", userId)
+                .put("fileName", file.getName())
+                .put("fileSize", file.length())
+                .put("mimeType", mimeType)
+                .put("checksum", checksum)
+                .put("streams", MAX_STREAMS)
+                .build());
+
+        String challenge = accept.getString("challenge");
+        if (challenge != null) {
+            // Server đã có nội dung cùng checksum: chứng minh có file bằng hash của đoạn server chọn
+            accept = sendOffer(PacketBuilder.create(MessageType.FILE_OFFER)
+                    .put("userId", userId)
+                    .put("fileName", file.getName())
+                    .put("fileSize", file.length())
+                    .put("mimeType", mimeType)
+                    .put("checksum", checksum)
+                    .put("streams", MAX_STREAMS)
+                    .put("challenge", challenge)
+                    .put("proof", proofOf(path, challenge, accept.getLong("proofOffset"), accept.getInt("proofLength")))
+                    .build());
+        }
+        if (Boolean.TRUE.equals(accept.getBoolean("complete"))) {
+            // Server đã có file cùng nội dung, không cần gửi lại
+            System.out.println("[FileService] File already on server, upload skipped: " + file.getName());
+            if (progress != null) progress.accept(1.0);
+            return JsonUtil.fromJson(JsonUtil.toJson(accept.get("file")), FileInfo.class);
+        }
+        String uploadId = accept.getString("uploadId");
+
+        Exception lastError = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                Integer streams = accept.getInt("streams");
+                return streams != null && streams > 1
+                        ? transferParallel(path, accept, progress)
+                        : transfer(path, accept, progress);
+            } catch (IOException e) {
+                lastError = e;
+                System.err.println("[FileService] Upload attempt " + attempt + " failed: " + e.getMessage());
+                Thread.sleep(RETRY_DELAY_MS);
+
+                // Hỏi lại offset server đã nhận để upload tiếp
+                accept = sendOffer(PacketBuilder.create(MessageType.FILE_OFFER)
+                        .put("userId", userId)
+                        .put("uploadId", uploadId)
+                        .build());
+            }
+        }
+
+        throw new Exception("Không thể upload file: " + lastError.getMessage());
+    }
+
+    private Packet sendOffer(Packet offer) throws Exception {
+        if (!connection.isConnected()) {
+            connection.reconnect();
+        }
+
+        Packet response = connection.sendAndReceive(offer);
+        if (response.getType() != MessageType.FILE_ACCEPT || !response.isSuccess()) {
+            throw new Exception(response.getError() != null ? response.getError() : "File rejected");
+        }
+        return response;
+    }
+
+    /**
+     * Gửi file từ offset server báo, mỗi chunk kèm CRC32
+     */
+    private FileInfo transfer(Path path, Packet accept, Consumer<Double> progress) throws Exception {
+        int chunkSize = accept.getInt("chunkSize");
+        long fileSize = Files.size(path);
+
+        try (Socket socket = new Socket(connection.getHost(), accept.getInt("port"));
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+             FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            out.writeUTF(JsonUtil.toJson(PacketBuilder.create(MessageType.FILE_INFO)
+                    .put("op", FileTransferProtocol.OP_UPLOAD)
+                    .put("uploadId", accept.getString("uploadId"))
+                    .put("token", accept.getString("token"))
+                    .build()));
+            out.flush();
+
+            long offset = in.readLong();
+            if (offset < 0) {
+                throw new Exception(in.readUTF());
+            }
+
+            byte[] buffer = new byte[chunkSize];
+            CRC32 crc = new CRC32();
+
+            while (true) {
+                // Server đã có đủ bytes (lần trước mất kết nối lúc hoàn tất) thì chỉ chờ kết quả
+                if (offset < fileSize) {
+                    int length = (int) Math.min(chunkSize, fileSize - offset);
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, length);
+                    while (chunk.hasRemaining()) {
+                        if (channel.read(chunk, offset + chunk.position()) < 0) {
+                            throw new EOFException("File changed during upload");
+                        }
+                    }
+
+                    crc.reset();
+                    crc.update(buffer, 0, length);
+                    out.writeInt(length);
+                    out.writeLong(crc.getValue());
+                    out.write(buffer, 0, length);
+                    out.flush();
+                }
+
+                byte status = in.readByte();
+                switch (status) {
+                    case FileTransferProtocol.ACK:
+                    case FileTransferProtocol.NACK:
+                        offset = in.readLong();
+                        if (progress != null) progress.accept((double) offset / fileSize);
+                        break;
+                    case FileTransferProtocol.DONE:
+                        if (progress != null) progress.accept(1.0);
+                        return JsonUtil.fromJson(in.readUTF(), FileInfo.class);
+                    default:
+                        throw new Exception(in.readUTF());
+                }
+            }
+        }
+    }
+
+    /**
+     * Upload dữ liệu đang được tạo ra, chưa biết kích thước (vd. tin nhắn thoại đang ghi).
+     * Trả về ngay, không chờ mạng: offer được gửi ở thread nền, dữ liệu ghi trước khi server nhận lời
+     * được giữ lại thành chunk. Đủ một chunk hoặc mỗi lần flush() thì chunk được gửi, finish() gửi nốt
+     * phần còn lại và chờ server lưu xong. Chỉ các chunk chưa gửi kịp nằm trong RAM.
+     */
+    public LiveUpload startLiveUpload(Long userId, String fileName, String mimeType) {
+        LiveUpload upload = new LiveUpload(userId, PacketBuilder.create(MessageType.FILE_OFFER)
+                .put("userId", userId)
+                .put("fileName", fileName)
+                .put("mimeType", mimeType)
+                .put("live", true)
+                .build());
+        upload.sender.start();
+        return upload;
+    }
+
+    /**
+     * Tải file về target qua nhiều range song song (RangeDownload, tối đa số luồng vé cho phép).
+     * Dữ liệu ghi vào target.part; nếu lần trước tải dở thì chỉ tải các đoạn còn thiếu, tải xong mới đổi tên thành target.
+     */
+    public void downloadFile(Long userId, Long fileId, File target, Consumer<Double> progress) throws Exception {
+        download(PacketBuilder.create(MessageType.FILE_DOWNLOAD_REQUEST)
+                .put("userId", userId)
+                .put("fileId", fileId)
+                .build(), target.toPath(), progress);
+    }
+
+    /**
+     * Tải avatar về target qua cổng truyền file
+     */
+    public void downloadAvatar(Long userId, String avatarUrl, File target) throws Exception {
+        download(PacketBuilder.create(MessageType.FILE_DOWNLOAD_REQUEST)
+                .put("userId", userId)
+                .put("avatarUrl", avatarUrl)
+                .build(), target.toPath(), null);
+    }
+
+    /**
+     * Mở stream đọc file từ offset (vd. tua video); đóng stream sẽ đóng kết nối
+     *
+     * @param length số byte cần đọc, -1 để đọc tới cuối file
+     */
+    public RangeStream openStream(Long userId, Long fileId, long offset, long length) throws Exception {
+        Packet ticket = requestTicket(PacketBuilder.create(MessageType.FILE_DOWNLOAD_REQUEST)
+                .put("userId", userId)
+                .put("fileId", fileId)
+                .build());
+        return openRange(ticket, offset, length, 0);
+    }
+
+    private void download(Packet request, Path target, Consumer<Double> progress) throws Exception {
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        Packet ticket = requestTicket(request);
+        Integer streams = ticket.getInt("streams");
+
+        Exception lastError = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                new RangeDownload((offset, length) -> openRange(ticket, offset, length, RangeDownload.IDLE_TIMEOUT_MS),
+                        streams != null ? streams : 1).download(part, progress);
+            } catch (IOException e) {
+                lastError = e;
+                System.err.println("[FileService] Download attempt " + attempt + " failed: " + e.getMessage());
+                Thread.sleep(RETRY_DELAY_MS);
+                continue;
+            }
+
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+
+        throw new Exception("Không thể tải file: " + lastError.getMessage());
+    }
+
+    private Packet requestTicket(Packet request) throws Exception {
+        if (!connection.isConnected()) {
+            connection.reconnect();
+        }
+
+        Packet response = connection.sendAndReceive(request);
+        if (!response.isSuccess()) {
+            throw new Exception(response.getError() != null ? response.getError() : "Download rejected");
+        }
+        return response;
+    }
+
+    /**
+     * @param timeoutMs read timeout của socket, 0 để chờ không giới hạn
+     */
+    private RangeStream openRange(Packet ticket, long offset, long length, int timeoutMs) throws Exception {
+        Socket socket = new Socket(connection.getHost(), ticket.getInt("port"));
+        try {
+            socket.setSoTimeout(timeoutMs);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            out.writeUTF(JsonUtil.toJson(PacketBuilder.create(MessageType.FILE_INFO)
+                    .put("op", FileTransferProtocol.OP_DOWNLOAD)
+                    .put("resource", ticket.getString("resource"))
+                    .put("expires", ticket.getLong("expires"))
+                    .put("ticket", ticket.getString("ticket"))
+                    .put("offset", offset)
+                    .put("length", length)
+                    .build()));
+            out.flush();
+
+            long totalSize = in.readLong();
+            if (totalSize < 0) {
+                throw new Exception(in.readUTF());
+            }
+            return new RangeStream(socket, in, totalSize, in.readLong(), in.readLong());
+        } catch (Exception e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Stream một range của file trên server: [start, start + length) trong tổng totalSize byte
+     */
+    public static class RangeStream extends FilterInputStream implements RangeDownload.Range {
+        private final Socket socket;
+        private final long totalSize;
+        private final long start;
+        private final long length;
+
+        RangeStream(Socket socket, InputStream in, long totalSize, long start, long length) {
+            super(in);
+            this.socket = socket;
+            this.totalSize = totalSize;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public long getTotalSize() { return totalSize; }
+        @Override
+        public long getStart() { return start; }
+        @Override
+        public long getLength() { return length; }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Stream upload live (xem startLiveUpload). Chỉ một thread ghi; chunk đang gửi được giữ tới khi server ACK
+     * nên mất kết nối thì hỏi lại offset bằng uploadId và gửi tiếp, như uploadFile.
+     */
+    public class LiveUpload extends OutputStream {
+        private static final long FINISH_TIMEOUT_MS = 60000;
+        private static final int LIVE_CHUNK_SIZE = 64 * 1024;
+        private final byte[] END = new byte[0];
+
+        private final Long userId;
+        private final Packet offer;
+        private String uploadId;
+        private final byte[] buffer = new byte[LIVE_CHUNK_SIZE];
+        private final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+        private final CompletableFuture<FileInfo> result = new CompletableFuture<>();
+        private final Thread sender;
+        private Packet accept;
+        private int length;
+        private boolean finished;
+        private volatile boolean cancelled;
+        private volatile Socket socket;
+
+        private LiveUpload(Long userId, Packet offer) {
+            this.userId = userId;
+            this.offer = offer;
+            this.sender = new Thread(this::sendLoop, "live-upload");
+            this.sender.setDaemon(true);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            buffer[length++] = (byte) b;
+            if (length == buffer.length) {
+                flush();
+            }
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int count) throws IOException {
+            while (count > 0) {
+                int copied = Math.min(count, buffer.length - length);
+                System.arraycopy(data, offset, buffer, length, copied);
+                length += copied;
+                offset += copied;
+                count -= copied;
+                if (length == buffer.length) {
+                    flush();
+                }
+            }
+        }
+
+        /**
+         * Chuyển phần đã ghi thành một chunk để gửi ngay
+         */
+        @Override
+        public void flush() throws IOException {
+            if (cancelled) {
+                throw new IOException("Upload cancelled");
+            }
+            if (result.isCompletedExceptionally()) {
+                throw new IOException("Upload failed");
+            }
+            if (length > 0) {
+                chunks.add(Arrays.copyOf(buffer, length));
+                length = 0;
+            }
+        }
+
+        /**
+         * Gửi nốt và chờ server lưu xong
+         *
+         * @return thông tin file (có id để gửi kèm tin nhắn)
+         */
+        public FileInfo finish() throws Exception {
+            flush();
+            finished = true;
+            chunks.add(END);
+            try {
+                return result.get(FINISH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+
+        /**
+         * Bỏ upload (file tạm trên server bị dọn khi phiên hết hạn)
+         */
+        public void cancel() {
+            cancelled = true;
+            sender.interrupt();
+            Socket current = socket;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!finished) {
+                cancel();
+            }
+        }
+
+        private void sendLoop() {
+            try {
+                accept = sendOffer(offer);
+                uploadId = accept.getString("uploadId");
+                if (accept.getInt("chunkSize") < LIVE_CHUNK_SIZE) {
+                    throw new Exception("Server chunk size too small for live upload");
+                }
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            long offset = 0;
+            byte[] pending = null; // Chunk đã gửi nhưng chưa được ACK
+            int failures = 0;
+            CRC32 crc = new CRC32();
+
+            while (!cancelled) {
+                try (Socket s = new Socket(connection.getHost(), accept.getInt("port"));
+                     DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                     DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 64 * 1024))) {
+                    socket = s;
+                    out.writeUTF(JsonUtil.toJson(PacketBuilder.create(MessageType.FILE_INFO)
+                            .put("op", FileTransferProtocol.OP_UPLOAD)
+                            .put("uploadId", uploadId)
+                            .put("token", accept.getString("token"))
+                            .build()));
+                    out.flush();
+
+                    long received = in.readLong();
+                    if (received < 0) {
+                        throw new Exception(in.readUTF());
+                    }
+                    if (pending != null && received == offset + pending.length) {
+                        // Server đã ghi chunk này trước khi mất kết nối
+                        offset = received;
+                        pending = null;
+                    } else if (received != offset) {
+                        throw new Exception("Unexpected upload offset " + received + ", expected " + offset);
+                    }
+
+                    while (true) {
+                        if (pending == null) {
+                            pending = chunks.take();
+                        }
+                        crc.reset();
+                        crc.update(pending, 0, pending.length);
+                        out.writeInt(pending.length);
+                        out.writeLong(pending == END ? 0 : crc.getValue());
+                        out.write(pending);
+                        out.flush();
+
+                        byte status = in.readByte();
+                        switch (status) {
+                            case FileTransferProtocol.ACK:
+                                offset = in.readLong();
+                                pending = null;
+                                failures = 0;
+                                break;
+                            case FileTransferProtocol.NACK:
+                                in.readLong(); // Gửi lại đúng chunk này
+                                break;
+                            case FileTransferProtocol.DONE:
+                                result.complete(JsonUtil.fromJson(in.readUTF(), FileInfo.class));
+                                return;
+                            default:
+                                throw new Exception(in.readUTF());
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                } catch (IOException e) {
+                    if (cancelled) {
+                        break;
+                    }
+                    System.err.println("[FileService] Live upload connection failed: " + e.getMessage());
+                    if (++failures >= MAX_ATTEMPTS) {
+                        result.completeExceptionally(new Exception("Không thể upload: " + e.getMessage()));
+                        return;
+                    }
+                    try {
+                        Thread.sleep(RETRY_DELAY_MS);
+                        accept = sendOffer(PacketBuilder.create(MessageType.FILE_OFFER)
+                                .put("userId", userId)
+                                .put("uploadId", uploadId)
+                                .build());
+                    } catch (Exception retryError) {
+                        System.err.println("[FileService] Live upload resume failed: " + retryError.getMessage());
+                    }
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+            }
+            result.completeExceptionally(new Exception("Upload cancelled"));
+        }
+    }
+
+    /**
+     * Gửi file trực tiếp cho peer (P2P). Server chỉ chuyển tiếp FILE_OFFER/FILE_ACCEPT,
+     * peer kéo file từ P2PServer của máy này.
+     *
+     * @return FALLBACK nếu peer offline/không kết nối được, khi đó nên gửi qua server (uploadFile)
+     */
+    public P2PResult sendFileP2P(Long userId, Long peerId, File file) throws Exception {
+        Path path = file.toPath();
+        P2PServer p2pServer = P2PServer.getInstance();
+        int port = p2pServer.start();
+        P2PServer.Outgoing outgoing = p2pServer.register(path);
+        String transferId = outgoing.getTransferId();
+
+        BlockingQueue<Packet> answers = new LinkedBlockingQueue<>();
+        peerAnswers.put(transferId, answers);
+        try {
+            Packet ack = connection.sendAndReceive(PacketBuilder.create(MessageType.FILE_OFFER)
+                    .put("userId", userId)
+                    .put("peerId", peerId)
+                    .put("transferId", transferId)
+                    .put("token", outgoing.getToken())
+                    .put("fileName", file.getName())
+                    .put("fileSize", file.length())
+                    .put("checksum", sha256(path))
+                    .put("port", port)
+                    .build());
+            if (!ack.isSuccess()) {
+                System.out.println("[FileService] P2P offer not delivered: " + ack.getError());
+                return P2PResult.FALLBACK;
+            }
+
+            Packet answer = answers.poll(P2P_ANSWER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (answer == null) {
+                return P2PResult.FALLBACK;
+            }
+            if (answer.getType() == MessageType.FILE_REJECT) {
+                return "declined".equals(answer.getString("reason")) ? P2PResult.DECLINED : P2PResult.FALLBACK;
+            }
+
+            // Peer đã nhận lời: chỉ xong khi peer báo đã nhận đủ và đúng checksum (FILE_ACCEPT received).
+            // FILE_REJECT (không kết nối được, sai checksum) hoặc im lặng quá lâu thì gửi qua server
+            long acceptedAt = System.currentTimeMillis();
+            long checksumTimeout = P2P_IDLE_TIMEOUT_MS + file.length() / CHECKSUM_BYTES_PER_MS;
+            while (true) {
+                Packet next = answers.poll(1, TimeUnit.SECONDS);
+                if (next != null) {
+                    if (next.getType() == MessageType.FILE_REJECT) {
+                        System.out.println("[FileService] P2P transfer " + transferId + " failed: "
+                                + next.getString("reason"));
+                        return P2PResult.FALLBACK;
+                    }
+                    if (Boolean.TRUE.equals(next.getBoolean("received"))) {
+                        return P2PResult.DELIVERED;
+                    }
+                    continue;
+                }
+                long idle = System.currentTimeMillis() - Math.max(acceptedAt, outgoing.getLastActivity());
+                if (idle > (outgoing.isSent() ? checksumTimeout : P2P_IDLE_TIMEOUT_MS)) {
+                    return P2PResult.FALLBACK;
+                }
+            }
+        } finally {
+            peerAnswers.remove(transferId);
+            p2pServer.cancel(transferId);
+        }
+    }
+
+    /**
+     * Nhận lời offer P2P và kéo file về target (chạy ở thread nền).
+     * Nhận đủ và đúng checksum thì báo FILE_ACCEPT received để người gửi kết thúc.
+     * Sai checksum, hoặc không nhận thêm được byte nào trong P2P_RECEIVE_GIVE_UP_MS, thì xóa .part
+     * và báo FILE_REJECT để người gửi chuyển sang gửi qua server.
+     */
+    public void acceptPeerOffer(Packet offer, File target, Consumer<Double> progress) throws Exception {
+        Long fromUserId = offer.getLong("fromUserId");
+        String transferId = offer.getString("transferId");
+        connection.send(PacketBuilder.create(MessageType.FILE_ACCEPT)
+                .put("peerId", fromUserId)
+                .put("transferId", transferId)
+                .build());
+
+        P2PClient client = new P2PClient(offer.getString("host"), offer.getInt("port"),
+                transferId, offer.getString("token"));
+        Path targetPath = target.toPath();
+        Path part = targetPath.resolveSibling(targetPath.getFileName() + ".part");
+
+        Exception lastError = null;
+        String reason = "unreachable";
+        // Các range ghi song song nên kích thước .part không phản ánh tiến độ: theo dõi qua callback
+        AtomicLong lastProgress = new AtomicLong(System.currentTimeMillis());
+        Consumer<Double> tracked = fraction -> {
+            lastProgress.set(System.currentTimeMillis());
+            if (progress != null) progress.accept(fraction);
+        };
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                client.download(part, tracked);
+                if (!sha256(part).equalsIgnoreCase(offer.getString("checksum"))) {
+                    lastError = new IOException("Checksum mismatch");
+                    reason = "checksum";
+                    break;
+                }
+                Files.move(part, targetPath, StandardCopyOption.REPLACE_EXISTING);
+                connection.send(PacketBuilder.create(MessageType.FILE_ACCEPT)
+                        .put("peerId", fromUserId)
+                        .put("transferId", transferId)
+                        .put("received", true)
+                        .build());
+                System.out.println("[FileService] P2P transfer " + transferId + " received");
+                return;
+            } catch (IOException e) {
+                lastError = e;
+                System.err.println("[FileService] P2P attempt " + attempt + " failed: " + e.getMessage());
+                // Lần thử sau có thể treo tới IDLE_TIMEOUT_MS: không đủ thời gian thì bỏ cuộc ngay
+                if (System.currentTimeMillis() - lastProgress.get() + RETRY_DELAY_MS + P2PClient.IDLE_TIMEOUT_MS
+                        > P2P_RECEIVE_GIVE_UP_MS) {
+                    break;
+                }
+                Thread.sleep(RETRY_DELAY_MS);
+            }
+        }
+
+        // Người gửi sẽ gửi lại qua server: bỏ .part để không còn bản dở dang
+        RangeDownload.discard(part);
+        connection.send(PacketBuilder.create(MessageType.FILE_REJECT)
+                .put("peerId", fromUserId)
+                .put("transferId", transferId)
+                .put("reason", reason)
+                .build());
+        throw new Exception("Không nhận được file trực tiếp: " + lastError.getMessage());
+    }
+
+    /**
+     * Từ chối offer P2P (người gửi sẽ không gửi lại qua server)
+     */
+    public void rejectPeerOffer(Packet offer) {
+        try {
+            connection.send(PacketBuilder.create(MessageType.FILE_REJECT)
+                    .put("peerId", offer.getLong("fromUserId"))
+                    .put("transferId", offer.getString("transferId"))
+                    .put("reason", "declined")
+                    .build());
+        } catch (IOException e) {
+            System.err.println("[FileService] Failed to reject offer: " + e.getMessage());
+        }
+    }
+
+    public void setPeerOfferListener(Consumer<Packet> listener) {
+        this.peerOfferListener = listener;
+    }
+
+    /**
+     * Offer P2P từ peer (server đẩy xuống)
+     */
+    public void onPeerOffer(Packet offer) {
+        Consumer<Packet> listener = peerOfferListener;
+        if (listener != null) {
+            listener.accept(offer);
+        } else {
+            rejectPeerOffer(offer);
+        }
+    }
+
+    /**
+     * Trả lời (FILE_ACCEPT/FILE_REJECT) của peer cho offer P2P của mình
+     */
+    public void onPeerAnswer(Packet answer) {
+        BlockingQueue<Packet> answers = peerAnswers.get(answer.getString("transferId"));
+        if (answers != null) {
+            answers.offer(answer);
+        }
+    }
+
+    /**
+     * Kết quả gửi P2P
+     */
+    public enum P2PResult {
+        DELIVERED,  // Peer đã nhận đủ file
+        DECLINED,   // Peer từ chối
+        FALLBACK    // Không gửi trực tiếp được, nên gửi qua server
+    }
+
+    /**
+     * Upload nhiều luồng: chia các đoạn server còn thiếu thành block, nhiều kết nối cùng lấy block để gửi.
+     * Bắt đầu với 2 luồng, mỗi chu kỳ đo throughput tổng: còn tăng thì thêm luồng (tới mức server cho phép),
+     * giảm rõ rệt thì bớt một luồng.
+     */
+    private FileInfo transferParallel(Path path, Packet accept, Consumer<Double> progress) throws Exception {
+        int maxStreams = accept.getInt("streams");
+        long fileSize = Files.size(path);
+
+        ConcurrentLinkedDeque<long[]> blocks = new ConcurrentLinkedDeque<>();
+        long pending = 0;
+        for (Object item : (List<?>) accept.get("missing")) {
+            List<?> range = (List<?>) item;
+            long start = ((Number) range.get(0)).longValue();
+            long end = ((Number) range.get(1)).longValue();
+            pending += end - start;
+            for (long position = start; position < end; position += PARALLEL_BLOCK_SIZE) {
+                blocks.add(new long[]{position, Math.min(end, position + PARALLEL_BLOCK_SIZE)});
+            }
+        }
+
+        ParallelUpload upload = new ParallelUpload(path, accept, blocks, fileSize - pending, progress, fileSize);
+        upload.targetStreams.set(Math.min(2, maxStreams));
+        for (int i = 0; i < upload.targetStreams.get(); i++) {
+            upload.startWorker();
+        }
+
+        long lastBytes = upload.sentBytes.get();
+        long lastTime = System.currentTimeMillis();
+        double bestThroughput = 0;
+        boolean growing = true;
+
+        while (upload.activeWorkers.get() > 0) {
+            Thread.sleep(THROUGHPUT_WINDOW_MS);
+
+            long now = System.currentTimeMillis();
+            long bytes = upload.sentBytes.get();
+            double throughput = (bytes - lastBytes) * 1000.0 / Math.max(1, now - lastTime);
+            lastBytes = bytes;
+            lastTime = now;
+
+            int target = upload.targetStreams.get();
+            if (growing && throughput > bestThroughput * 1.1) {
+                bestThroughput = throughput;
+                if (target < maxStreams && !blocks.isEmpty()) {
+                    upload.targetStreams.incrementAndGet();
+                    upload.startWorker();
+                }
+            } else {
+                growing = false;
+                if (throughput < bestThroughput * 0.8 && target > 1) {
+                    upload.targetStreams.decrementAndGet(); // Một luồng sẽ dừng sau block đang gửi
+                }
+            }
+        }
+
+        if (upload.result.get() != null) {
+            System.out.println("[FileService] Parallel upload finished with " + upload.targetStreams.get() + " streams");
+            return upload.result.get();
+        }
+        if (upload.failure.get() != null) {
+            throw upload.failure.get();
+        }
+        throw new IOException("Parallel upload incomplete");
+    }
+
+    /**
+     * Trạng thái chung của các luồng trong một upload nhiều luồng
+     */
+    private class ParallelUpload {
+        private final Path path;
+        private final Packet accept;
+        private final ConcurrentLinkedDeque<long[]> blocks;
+        private final Consumer<Double> progress;
+        private final long fileSize;
+        private final AtomicLong sentBytes;
+        private final AtomicInteger activeWorkers = new AtomicInteger();
+        private final AtomicInteger targetStreams = new AtomicInteger();
+        private final AtomicReference<FileInfo> result = new AtomicReference<>();
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+        ParallelUpload(Path path, Packet accept, ConcurrentLinkedDeque<long[]> blocks, long alreadySent,
+                       Consumer<Double> progress, long fileSize) {
+            this.path = path;
+            this.accept = accept;
+            this.blocks = blocks;
+            this.progress = progress;
+            this.fileSize = fileSize;
+            this.sentBytes = new AtomicLong(alreadySent);
+        }
+
+        void startWorker() {
+            activeWorkers.incrementAndGet();
+            Thread worker = new Thread(() -> {
+                try {
+                    runWorker();
+                } catch (IOException e) {
+                    System.err.println("[FileService] Upload stream failed: " + e.getMessage());
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    activeWorkers.decrementAndGet();
+                }
+            }, "file-upload-stream");
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        /**
+         * Lấy block để gửi cho tới khi hết block, upload xong, hoặc số luồng mục tiêu giảm
+         */
+        private void runWorker() throws Exception {
+            int chunkSize = accept.getInt("chunkSize");
+
+            try (Socket socket = new Socket(connection.getHost(), accept.getInt("port"));
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+                 FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+                out.writeUTF(JsonUtil.toJson(PacketBuilder.create(MessageType.FILE_INFO)
+                        .put("op", FileTransferProtocol.OP_UPLOAD_RANGES)
+                        .put("uploadId", accept.getString("uploadId"))
+                        .put("token", accept.getString("token"))
+                        .build()));
+                out.flush();
+                if (in.readLong() < 0) {
+                    throw new Exception(in.readUTF());
+                }
+
+                byte[] buffer = new byte[chunkSize];
+                CRC32 crc = new CRC32();
+
+                while (result.get() == null && failure.get() == null
+                        && activeWorkers.get() <= targetStreams.get()) {
+                    long[] block = blocks.poll();
+                    if (block == null) {
+                        break;
+                    }
+
+                    long offset = block[0];
+                    try {
+                        out.writeLong(block[0]);
+                        out.writeLong(block[1] - block[0]);
+                        while (offset < block[1]) {
+                            int length = (int) Math.min(chunkSize, block[1] - offset);
+                            ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, length);
+                            while (chunk.hasRemaining()) {
+                                if (channel.read(chunk, offset + chunk.position()) < 0) {
+                                    throw new EOFException("File changed during upload");
+                                }
+                            }
+
+                            crc.reset();
+                            crc.update(buffer, 0, length);
+                            out.writeInt(length);
+                            out.writeLong(crc.getValue());
+                            out.write(buffer, 0, length);
+                            out.flush();
+
+                            byte status = in.readByte();
+                            if (status == FileTransferProtocol.DONE) {
+                                sentBytes.addAndGet(length);
+                                result.compareAndSet(null, JsonUtil.fromJson(in.readUTF(), FileInfo.class));
+                                if (progress != null) progress.accept(1.0);
+                                return;
+                            }
+                            if (status != FileTransferProtocol.ACK && status != FileTransferProtocol.NACK) {
+                                throw new Exception(in.readUTF());
+                            }
+                            long acked = in.readLong();
+                            sentBytes.addAndGet(acked - offset);
+                            offset = acked;
+                            if (progress != null) progress.accept((double) sentBytes.get() / fileSize);
+                        }
+                    } catch (IOException e) {
+                        // Phần còn lại của block trả về hàng đợi cho luồng khác
+                        blocks.addFirst(new long[]{offset, block[1]});
+                        throw e;
+                    }
+                }
+
+                out.writeLong(-1);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * SHA-256(challenge || đoạn [offset, offset + length) của file), hex
+     */
+    private static String proofOf(Path file, String challenge, long offset, int length) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(challenge.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("File changed during upload");
+                }
+            }
+        }
+        buffer.flip();
+        digest.update(buffer);
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static String sha256(Path file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        return toHex(digest.digest());
+    }
+}
@@ -0,0 +1,145 @@
+package com.chatapp.client.service;
+
+import com.chatapp.client.network.ServerConnection;
+import com.chatapp.common.model.Group;
+import com.chatapp.common.protocol.MessageType;
+import com.chatapp.common.protocol.Packet;
+import com.chatapp.common.protocol.PacketBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service xử lý các thao tác nhóm chat ở client
+ */
+public class GroupService {
+    private static GroupService instance;
+    private ServerConnection connection;
+
+    private GroupService() {
+        this.connection = ServerConnection.getInstance();
+    }
+
+    public static GroupService getInstance() {
+        if (instance == null) {
+            synchronized (GroupService.class) {
+                if (instance == null) {
+                    instance = new GroupService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Tạo nhóm mới với các thành viên ban đầu
+     */
+    public Group createGroup(Long userId, String name, List<Long> memberIds) throws Exception {
+        if (!connection.isConnected()) {
+            throw new Exception("Not connected to server");
+        }
+
+        Packet request = PacketBuilder.create(MessageType.CREATE_GROUP_REQUEST)
+                .put("userId", userId)
+                .put("name", name)
+                .put("memberIds", memberIds)
+                .build();
+
+        Packet response = connection.sendAndReceive(request);
+
+        if (!response.isSuccess()) {
+            throw new Exception(response.getError());
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> groupMap = (Map<String, Object>) response.get("group");
+        return mapToGroup(groupMap);
+    }
+
+    /**
+     * Lấy danh sách nhóm của user
+     */
+    public List<Group> getGroups(Long userId) throws Exception {
+        if (!connection.isConnected()) {
+            throw new Exception("Not connected to server");
+        }
+
+        Packet request = PacketBuilder.create(MessageType.GET_GROUPS_REQUEST)
+                .put("userId", userId)
+                .build();
+
+        Packet response = connection.sendAndReceive(request);
+
+        List<Group> groups = new ArrayList<>();
+        if (response.isSuccess()) {
+            Object groupsObj = response.get("groups");
+            if (groupsObj instanceof List) {
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> groupMaps = (List<Map<String, Object>>) groupsObj;
+                for (Map<String, Object> map : groupMaps) {
+                    groups.add(mapToGroup(map));
+                }
+            }
+        } else {
+            System.err.println("[GroupService] Failed to get groups: " + response.getError());
+        }
+
+        return groups;
+    }
+
+    /**
+     * Thêm thành viên vào nhóm
+     */
+    public Packet addMembers(Long userId, Long groupId, List<Long> memberIds) throws Exception {
+        if (!connection.isConnected()) {
+            throw new Exception("Not connected to server");
+        }
+
+        Packet request = PacketBuilder.create(MessageType.ADD_GROUP_MEMBERS_REQUEST)
+                .put("userId", userId)
+                .put("groupId", groupId)
+                .put("memberIds", memberIds)
+                .build();
+
+        return connection.sendAndReceive(request);
+    }
+
+    /**
+     * Rời nhóm
+     */
+    public Packet leaveGroup(Long userId, Long groupId) throws Exception {
+        if (!connection.isConnected()) {
+            throw new Exception("Not connected to server");
+        }
+
+        Packet request = PacketBuilder.create(MessageType.LEAVE_GROUP_REQUEST)
+                .put("userId", userId)
+                .put("groupId", groupId)
+                .build();
+
+        return connection.sendAndReceive(request);
+    }
+
+    /**
+     * Convert Map to Group object
+     */
+    private Group mapToGroup(Map<String, Object> map) {
+        Group group = new Group();
+
+        if (map.get("id") instanceof Number) {
+            group.setId(((Number) map.get("id")).longValue());
+        }
+        if (map.get("ownerId") instanceof Number) {
+            group.setOwnerId(((Number) map.get("ownerId")).longValue());
+        }
+        if (map.get("memberCount") instanceof Number) {
+            group.setMemberCount(((Number) map.get("memberCount")).intValue());
+        }
+
+        group.setName((String) map.get("name"));
+        group.setAvatarUrl((String) map.get("avatarUrl"));
+
+        return group;
+    }
+}
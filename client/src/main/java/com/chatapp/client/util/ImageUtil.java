@@ -1,3 +1,382 @@
 package com.chatapp.client.util;
 
-public class ImageUtil {}
+import com.chatapp.client.network.ServerConnection;
+import com.chatapp.common.protocol.MessageType;
+import com.chatapp.common.protocol.Packet;
+import com.chatapp.common.protocol.PacketBuilder;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Cache ảnh avatar ở client, hai tầng:
+ * - RAM: LRU các Image đã decode sẵn đúng kích thước hiển thị; ảnh bị đẩy khỏi LRU
+ *   chuyển sang SoftReference, GC chỉ thu hồi khi thiếu bộ nhớ.
+ * - Đĩa: ~/.chatapp/cache/avatars, mỗi ảnh lưu kèm ETag của server; quá hạn thì hỏi lại
+ *   server với ETag, server trả notModified nếu không đổi. Tổng dung lượng giữ dưới DISK_MAX_BYTES.
+ * Ảnh cần hỏi server được gom thành lô (một GET_AVATAR_REQUEST cho nhiều ảnh); ảnh tải lỗi
+ * được nhớ trong FAILED_RETRY_MS để không hỏi lại mỗi lần cell vẽ lại.
+ * Tải và decode chạy trên pool nền; UI hiện placeholder rồi nhận ảnh qua callback trên FX thread.
+ */
+public class ImageUtil {
+    private static ImageUtil instance;
+
+    private static final int MEMORY_ENTRIES = 512;
+    private static final int DECODE_THREADS = 3;
+    private static final long DISK_MAX_AGE_MS = TimeUnit.DAYS.toMillis(7);
+    private static final long DISK_MAX_BYTES = 64L * 1024 * 1024;
+    private static final long FAILED_RETRY_MS = TimeUnit.MINUTES.toMillis(5);
+    /** Bằng giới hạn lô của server */
+    private static final int BATCH_SIZE = 32;
+
+    private final Map<String, Image> memory;
+    private final Map<String, SoftReference<Image>> spilled = new HashMap<>();
+    private final Map<String, List<Consumer<Image>>> pending = new HashMap<>();
+    private final Map<String, Long> failed = new HashMap<>();
+    private final List<AvatarRequest> batch = new ArrayList<>();
+    private boolean batchRunning;
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final ExecutorService workers;
+    private final Path diskDir;
+
+    private ImageUtil() {
+        this.memory = new LinkedHashMap<>(MEMORY_ENTRIES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+                if (size() > MEMORY_ENTRIES) {
+                    if (spilled.size() > MEMORY_ENTRIES * 4) {
+                        spilled.values().removeIf(ref -> ref.get() == null);
+                    }
+                    spilled.put(eldest.getKey(), new SoftReference<>(eldest.getValue()));
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.workers = Executors.newFixedThreadPool(DECODE_THREADS, r -> {
+            Thread t = new Thread(r, "image-loader");
+            t.setDaemon(true);
+            return t;
+        });
+        this.diskDir = Paths.get(System.getProperty("user.home"), ".chatapp", "cache", "avatars");
+        try {
+            Files.createDirectories(diskDir);
+        } catch (IOException e) {
+            System.err.println("[ImageUtil] Failed to create cache directory: " + e.getMessage());
+        }
+        workers.execute(this::trimDisk);
+    }
+
+    public static ImageUtil getInstance() {
+        if (instance == null) {
+            synchronized (ImageUtil.class) {
+                if (instance == null) {
+                    instance = new ImageUtil();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Lấy avatar đã thu nhỏ về size px.
+     *
+     * @param onLoaded gọi trên FX thread khi ảnh tải xong (chỉ khi chưa có sẵn trong RAM)
+     * @return ảnh nếu đã có trong RAM, null nếu đang tải (hiện placeholder trong lúc chờ)
+     */
+    public Image getAvatar(String avatarUrl, int size, Consumer<Image> onLoaded) {
+        if (avatarUrl == null || avatarUrl.isEmpty()) {
+            return null;
+        }
+        String key = avatarUrl + "@" + size;
+
+        synchronized (this) {
+            Image image = memory.get(key);
+            if (image != null) {
+                return image;
+            }
+
+            SoftReference<Image> ref = spilled.remove(key);
+            image = ref != null ? ref.get() : null;
+            if (image != null) {
+                memory.put(key, image);
+                return image;
+            }
+
+            Long retryAt = failed.get(key);
+            if (retryAt != null) {
+                if (System.currentTimeMillis() < retryAt) {
+                    return null;
+                }
+                failed.remove(key);
+            }
+
+            // Nhiều cell cùng xin một ảnh thì chỉ tải một lần
+            List<Consumer<Image>> waiters = pending.get(key);
+            if (waiters != null) {
+                if (onLoaded != null) waiters.add(onLoaded);
+                return null;
+            }
+            waiters = new ArrayList<>();
+            if (onLoaded != null) waiters.add(onLoaded);
+            pending.put(key, waiters);
+        }
+
+        workers.execute(() -> load(key, avatarUrl, size));
+        return null;
+    }
+
+    /**
+     * Đọc từ đĩa nếu còn hạn; nếu không thì xếp vào lô hỏi server (fetchBatches)
+     */
+    private void load(String key, String avatarUrl, int size) {
+        byte[] data = null;
+        try {
+            AvatarRequest request = new AvatarRequest(key, avatarUrl, size, hash(key));
+            boolean cached = Files.exists(request.dataFile) && Files.exists(request.etagFile);
+            if (cached && System.currentTimeMillis()
+                    - Files.getLastModifiedTime(request.dataFile).toMillis() < DISK_MAX_AGE_MS) {
+                data = Files.readAllBytes(request.dataFile);
+            } else if (ServerConnection.getInstance().isConnected()) {
+                request.etag = cached ? Files.readString(request.etagFile) : null;
+                enqueue(request);
+                return;
+            } else if (cached) {
+                data = Files.readAllBytes(request.dataFile);
+            }
+        } catch (Exception e) {
+            System.err.println("[ImageUtil] Failed to load " + avatarUrl + ": " + e.getMessage());
+        }
+        finish(key, avatarUrl, size, data);
+    }
+
+    private void enqueue(AvatarRequest request) {
+        synchronized (this) {
+            batch.add(request);
+            if (batchRunning) {
+                return;
+            }
+            batchRunning = true;
+        }
+        workers.execute(this::fetchBatches);
+    }
+
+    /**
+     * Mỗi lúc chỉ một lô đang chờ server; ảnh bị miss trong lúc đó gom vào lô sau,
+     * nên một danh sách dài chỉ tốn vài round trip thay vì một round trip mỗi ảnh
+     */
+    private void fetchBatches() {
+        while (true) {
+            List<AvatarRequest> requests;
+            synchronized (this) {
+                if (batch.isEmpty()) {
+                    batchRunning = false;
+                    return;
+                }
+                List<AvatarRequest> head = batch.subList(0, Math.min(BATCH_SIZE, batch.size()));
+                requests = new ArrayList<>(head);
+                head.clear();
+            }
+            fetchBatch(requests);
+        }
+    }
+
+    private void fetchBatch(List<AvatarRequest> requests) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (AvatarRequest request : requests) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("avatarUrl", request.avatarUrl);
+            item.put("size", request.size);
+            item.put("etag", request.etag);
+            items.add(item);
+        }
+
+        List<?> results = Collections.emptyList();
+        try {
+            Packet response = ServerConnection.getInstance().sendAndReceive(
+                    PacketBuilder.create(MessageType.GET_AVATAR_REQUEST)
+                            .put("avatars", items)
+                            .build());
+            if (response.isSuccess() && response.get("avatars") instanceof List) {
+                results = (List<?>) response.get("avatars");
+            } else {
+                System.err.println("[ImageUtil] Failed to fetch avatars: " + response.getError());
+            }
+        } catch (IOException e) {
+            System.err.println("[ImageUtil] Failed to fetch avatars: " + e.getMessage());
+        }
+
+        for (int i = 0; i < requests.size(); i++) {
+            AvatarRequest request = requests.get(i);
+            byte[] data = null;
+            try {
+                Map<?, ?> result = i < results.size() && results.get(i) instanceof Map
+                        ? (Map<?, ?>) results.get(i) : null;
+                data = store(request, result);
+            } catch (Exception e) {
+                System.err.println("[ImageUtil] Failed to load " + request.avatarUrl + ": " + e.getMessage());
+            }
+            finish(request.key, request.avatarUrl, request.size, data);
+        }
+    }
+
+    /**
+     * Bytes ảnh theo kết quả server: ảnh mới được ghi đĩa, notModified thì gia hạn bản trên đĩa,
+     * lỗi/không có kết quả thì dùng tạm bản cũ trên đĩa nếu có
+     */
+    private byte[] store(AvatarRequest request, Map<?, ?> result) throws Exception {
+        boolean cached = request.etag != null && Files.exists(request.dataFile);
+        if (result == null || result.get("error") != null || !(result.get("etag") instanceof String)) {
+            return cached ? Files.readAllBytes(request.dataFile) : null;
+        }
+
+        if (cached && Boolean.TRUE.equals(result.get("notModified"))) {
+            Files.setLastModifiedTime(request.dataFile, FileTime.fromMillis(System.currentTimeMillis()));
+            return Files.readAllBytes(request.dataFile);
+        }
+        if (!(result.get("data") instanceof String)) {
+            return null;
+        }
+
+        byte[] data = Base64.getDecoder().decode((String) result.get("data"));
+        byte[] etag = ((String) result.get("etag")).getBytes(StandardCharsets.UTF_8);
+        writeAtomically(request.dataFile, data);
+        writeAtomically(request.etagFile, etag);
+        if (diskBytes.addAndGet(data.length + etag.length) > DISK_MAX_BYTES) {
+            trimDisk();
+        }
+        return data;
+    }
+
+    /**
+     * Decode ở kích thước hiển thị rồi báo cho các cell đang chờ; không có ảnh thì ghi nhớ lỗi
+     * trong FAILED_RETRY_MS để các cell sau không hỏi lại server ngay
+     */
+    private void finish(String key, String avatarUrl, int size, byte[] data) {
+        Image image = null;
+        if (data != null) {
+            try {
+                image = new Image(new ByteArrayInputStream(data), size, size, true, true);
+                if (image.isError()) {
+                    image = null;
+                }
+            } catch (Exception e) {
+                System.err.println("[ImageUtil] Failed to decode " + avatarUrl + ": " + e.getMessage());
+            }
+        }
+
+        List<Consumer<Image>> waiters;
+        synchronized (this) {
+            waiters = pending.remove(key);
+            if (image != null) {
+                memory.put(key, image);
+            } else {
+                if (failed.size() > MEMORY_ENTRIES) {
+                    long now = System.currentTimeMillis();
+                    failed.values().removeIf(retryAt -> retryAt <= now);
+                }
+                failed.put(key, System.currentTimeMillis() + FAILED_RETRY_MS);
+            }
+        }
+
+        if (image != null && waiters != null && !waiters.isEmpty()) {
+            Image loaded = image;
+            Platform.runLater(() -> waiters.forEach(waiter -> waiter.accept(loaded)));
+        }
+    }
+
+    /**
+     * Giữ cache đĩa dưới DISK_MAX_BYTES: xóa các ảnh lâu không dùng nhất (theo mtime,
+     * fetch gia hạn mtime mỗi lần dùng lại) tới khi còn 3/4 giới hạn
+     */
+    private void trimDisk() {
+        synchronized (diskBytes) {
+            List<Path> images = new ArrayList<>();
+            Map<Path, Long> modified = new HashMap<>();
+            long total = 0;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(diskDir)) {
+                for (Path file : files) {
+                    total += Files.size(file);
+                    if (file.getFileName().toString().endsWith(".img")) {
+                        images.add(file);
+                        modified.put(file, Files.getLastModifiedTime(file).toMillis());
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("[ImageUtil] Failed to scan cache directory: " + e.getMessage());
+                return;
+            }
+
+            if (total > DISK_MAX_BYTES) {
+                images.sort(Comparator.comparing(modified::get));
+                for (Path image : images) {
+                    if (total <= DISK_MAX_BYTES / 4 * 3) {
+                        break;
+                    }
+                    String name = image.getFileName().toString();
+                    Path etag = image.resolveSibling(name.substring(0, name.length() - 4) + ".etag");
+                    try {
+                        total -= Files.size(image);
+                        Files.delete(image);
+                        if (Files.exists(etag)) {
+                            total -= Files.size(etag);
+                            Files.delete(etag);
+                        }
+                    } catch (IOException e) {
+                        System.err.println("[ImageUtil] Failed to evict " + name + ": " + e.getMessage());
+                    }
+                }
+            }
+            diskBytes.set(total);
+        }
+    }
+
+    /** Một ảnh đang chờ server trả trong lô */
+    private final class AvatarRequest {
+        final String key;
+        final String avatarUrl;
+        final int size;
+        final Path dataFile;
+        final Path etagFile;
+        String etag;
+
+        AvatarRequest(String key, String avatarUrl, int size, String name) {
+            this.key = key;
+            this.avatarUrl = avatarUrl;
+            this.size = size;
+            this.dataFile = diskDir.resolve(name + ".img");
+            this.etagFile = diskDir.resolve(name + ".etag");
+        }
+    }
+
+    private static void writeAtomically(Path target, byte[] data) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), "img", ".tmp");
+        Files.write(temp, data);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String hash(String value) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8))) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
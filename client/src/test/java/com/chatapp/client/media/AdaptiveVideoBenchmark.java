@@ -0,0 +1,79 @@
+package com.chatapp.client.media;
+
+import com.chatapp.client.model.CallSession;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * Đo bộ điều khiển bitrate: hai CallSession nối qua NetworkSimulator, bên gọi gửi video tổng hợp 720p.
+ * Đường truyền đổi theo từng giai đoạn (tốt -> nghẽn băng thông -> mất gói -> trễ cao -> tốt);
+ * mỗi giây in thông số đường truyền, cấu hình encoder hiện tại và báo cáo bên nhận.
+ *
+ * Lưu ý: audio vẫn là PCM (~800 kbps mỗi chiều), nên băng thông còn lại cho video nhỏ hơn con số giới hạn.
+ *
+ * Cách chạy: java ... com.chatapp.client.media.AdaptiveVideoBenchmark [số giây mỗi giai đoạn]
+ */
+public class AdaptiveVideoBenchmark {
+
+    /** delayMs, jitterMs, loss (phần nghìn), bandwidth kbps */
+    private static final int[][] PHASES = {
+            {20, 2, 0, 8000},
+            {20, 2, 0, 1800},
+            {20, 2, 50, 8000},
+            {150, 30, 0, 8000},
+            {20, 2, 0, 8000}
+    };
+
+    public static void main(String[] args) throws Exception {
+        int phaseSeconds = args.length > 0 ? Integer.parseInt(args[0]) : 15;
+
+        CallSession caller = new CallSession("adaptive", 2L, true, CallSession.State.OUTGOING);
+        CallSession callee = new CallSession("adaptive", 1L, true, CallSession.State.INCOMING);
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int callerPort = caller.openMedia(0);
+        int calleePort = callee.openMedia(0);
+
+        NetworkSimulator network = new NetworkSimulator(new InetSocketAddress(loopback, callerPort),
+                new InetSocketAddress(loopback, calleePort));
+        network.start();
+
+        caller.startMedia(new InetSocketAddress(loopback, network.getPortForA()),
+                SyntheticAudio.tone(440), SyntheticAudio.discard());
+        callee.startMedia(new InetSocketAddress(loopback, network.getPortForB()),
+                SyntheticAudio.silence(), SyntheticAudio.discard());
+        caller.startVideo(new SyntheticVideoSource(CallSession.VIDEO_WIDTH, CallSession.VIDEO_HEIGHT,
+                CallSession.VIDEO_FPS));
+
+        long lastVideoBytes = 0;
+        int second = 0;
+        for (int[] phase : PHASES) {
+            network.setImpairment(phase[0], phase[1], phase[2] / 1000.0, phase[3] * 1000L);
+            for (int i = 0; i < phaseSeconds; i++) {
+                Thread.sleep(1000);
+                second++;
+
+                RateController controller = caller.getRateController();
+                VideoCapture capture = caller.getVideoCapture();
+                MediaFeedback sent = caller.getFeedback();
+                MediaFeedback received = callee.getFeedback();
+                long videoBytes = received.getVideoBytesReceived();
+
+                System.out.printf("[%3ds] link=%dms+-%d loss=%.1f%% bw=%dkbps | target=%dkbps %dx%d@%d " +
+                                "encoded=%d keyframes=%d | rx=%.0fkbps loss=%.1f%% jitter=%.1fms rtt=%.0fms " +
+                                "netDrop=%d/%d%n",
+                        second, phase[0], phase[1], phase[2] / 10.0, phase[3],
+                        controller.getBitrate() / 1000, controller.getWidth(), controller.getHeight(),
+                        controller.getFps(), capture.getFramesEncoded(), capture.getKeyFrames(),
+                        (videoBytes - lastVideoBytes) * 8 / 1000.0, received.getVideoFractionLost() * 100,
+                        received.getVideoJitterMs(), sent.getRttMs(),
+                        network.getDropped(), network.getQueueDropped());
+                lastVideoBytes = videoBytes;
+            }
+        }
+
+        caller.stopMedia();
+        callee.stopMedia();
+        network.stop();
+    }
+}
@@ -0,0 +1,130 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+
+/**
+ * Đo băng thông audio sau nén + VAD: N người trong một cuộc gọi nhóm lần lượt nói (SyntheticAudio.conversation),
+ * mỗi người một AudioCapture lấy gói bằng takePacket() như thread gửi của CallSession. Mỗi giây in số gói/giây,
+ * kbps (gồm header media) của mỗi người, tỉ lệ gói comfort noise/bỏ qua, và tổng lưu lượng tới người nhận
+ * (mỗi gói tới N-1 người) so với PCM 10 ms không nén như trước.
+ * Cuối cùng in codec thực sự đã dùng và bitrate payload của gói thoại so với mục tiêu AUDIO_BITRATE.
+ * Chỉ khi codec là Opus thì mục tiêu đó mới được kiểm chứng: máy không có native FFmpeg chạy mu-law
+ * (khoảng 128 kbps payload khi nói) và kết quả chỉ cho biết mức tiết kiệm nhờ VAD/DTX và gói 20 ms.
+ *
+ * Cách chạy: java ... com.chatapp.client.media.AudioCodecBenchmark [số người] [số giây] [ms mỗi lượt nói]
+ */
+public class AudioCodecBenchmark {
+    private static final int PCM_PACKETS_PER_SECOND = 1000 / MediaProtocol.AUDIO_FRAME_MS;
+    private static final int PCM_PACKET_BYTES = MediaProtocol.HEADER_SIZE + MediaProtocol.AUDIO_FRAME_BYTES;
+
+    private static volatile boolean running = true;
+    private static final long[] speechPackets = new long[4];
+    private static final long[] speechBytes = new long[4];
+
+    public static void main(String[] args) throws Exception {
+        int participants = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+        long turnMs = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+
+        AudioCapture[] captures = new AudioCapture[participants];
+        long[] packets = new long[participants];
+        long[] bytes = new long[participants];
+        Thread[] senders = new Thread[participants];
+        for (int i = 0; i < participants; i++) {
+            captures[i] = new AudioCapture(SyntheticAudio.conversation(i, participants, turnMs));
+            captures[i].start();
+            int index = i;
+            senders[i] = new Thread(() -> send(captures[index], packets, bytes, index), "audio-bench-" + i);
+            senders[i].setDaemon(true);
+            senders[i].start();
+        }
+
+        long[] lastPackets = new long[participants];
+        long[] lastBytes = new long[participants];
+        long totalPackets = 0, totalBytes = 0;
+        for (int second = 1; second <= seconds; second++) {
+            Thread.sleep(1000);
+            long secondPackets = 0, secondBytes = 0;
+            StringBuilder perUser = new StringBuilder();
+            for (int i = 0; i < participants; i++) {
+                long p, b;
+                synchronized (packets) {
+                    p = packets[i] - lastPackets[i];
+                    b = bytes[i] - lastBytes[i];
+                    lastPackets[i] = packets[i];
+                    lastBytes[i] = bytes[i];
+                }
+                secondPackets += p;
+                secondBytes += b;
+                perUser.append(String.format(" %3d/%4.1f", p, b * 8 / 1000.0));
+            }
+            totalPackets += secondPackets;
+            totalBytes += secondBytes;
+            long forwardedPackets = secondPackets * (participants - 1);
+            long forwardedBytes = secondBytes * (participants - 1);
+            long pcmPackets = (long) PCM_PACKETS_PER_SECOND * participants * (participants - 1);
+            System.out.printf("[%2ds] pps/kbps per user:%s | fan-out %d pps %.0f kbps (PCM: %d pps %.0f kbps)%n",
+                    second, perUser, forwardedPackets, forwardedBytes * 8 / 1000.0,
+                    pcmPackets, pcmPackets * PCM_PACKET_BYTES * 8 / 1000.0);
+        }
+
+        running = false;
+        long encoded = 0, comfortNoise = 0, suppressed = 0;
+        for (AudioCapture capture : captures) {
+            capture.stop();
+            encoded += capture.getPacketsEncoded();
+            comfortNoise += capture.getPacketsComfortNoise();
+            suppressed += capture.getPacketsSuppressed();
+        }
+        double pcmRate = (double) PCM_PACKETS_PER_SECOND * participants * seconds;
+        System.out.printf("Average per user: %.1f pps %.1f kbps | speech=%d cn=%d suppressed=%d | " +
+                        "fan-out vs PCM: %.1fx fewer packets, %.1fx fewer bytes%n",
+                (double) totalPackets / participants / seconds, totalBytes * 8 / 1000.0 / participants / seconds,
+                encoded, comfortNoise, suppressed,
+                pcmRate / Math.max(1, totalPackets), pcmRate * PCM_PACKET_BYTES / Math.max(1, totalBytes));
+        reportCodec();
+    }
+
+    /**
+     * Codec đã dùng và bitrate payload khi nói (không tính header, comfort noise) so với mục tiêu Opus
+     */
+    private static void reportCodec() {
+        long opusPackets, opusBytes, pcmuPackets, pcmuBytes;
+        synchronized (speechPackets) {
+            opusPackets = speechPackets[MediaProtocol.AUDIO_CODEC_OPUS];
+            opusBytes = speechBytes[MediaProtocol.AUDIO_CODEC_OPUS];
+            pcmuPackets = speechPackets[MediaProtocol.AUDIO_CODEC_PCMU];
+            pcmuBytes = speechBytes[MediaProtocol.AUDIO_CODEC_PCMU];
+        }
+        double target = MediaProtocol.AUDIO_BITRATE / 1000.0;
+        if (opusPackets > 0) {
+            double kbps = opusBytes * 8.0 / opusPackets / MediaProtocol.AUDIO_PACKET_MS;
+            System.out.printf("Codec: Opus, speech payload %.1f kbps (target %.0f kbps): %s%n",
+                    kbps, target, kbps <= target * 1.1 ? "OK" : "ABOVE TARGET");
+        }
+        if (pcmuPackets > 0) {
+            double kbps = pcmuBytes * 8.0 / pcmuPackets / MediaProtocol.AUDIO_PACKET_MS;
+            System.out.printf("Codec: mu-law fallback, speech payload %.1f kbps. " +
+                    "Opus target %.0f kbps NOT validated (FFmpeg natives unavailable)%n", kbps, target);
+        }
+    }
+
+    private static void send(AudioCapture capture, long[] packets, long[] bytes, int index) {
+        EncodedAudio packet = new EncodedAudio();
+        while (running) {
+            if (capture.takePacket(packet, 100)) {
+                synchronized (packets) {
+                    packets[index]++;
+                    bytes[index] += MediaProtocol.HEADER_SIZE + packet.getLength();
+                }
+                byte codec = packet.getData()[0];
+                if (!packet.isComfortNoise() && codec > 0 && codec < speechPackets.length) {
+                    synchronized (speechPackets) {
+                        speechPackets[codec]++;
+                        speechBytes[codec] += packet.getLength() - 1;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Nén rồi giải nén giọng tổng hợp qua Opus. Bỏ qua khi máy không có native FFmpeg/Opus
+ * (AudioEncoder khi đó chạy mu-law, không kiểm chứng được mục tiêu bitrate).
+ */
+public class AudioCodecTest {
+    private static final int SECONDS = 5;
+    private static final int PACKETS = SECONDS * 1000 / MediaProtocol.AUDIO_PACKET_MS;
+    /** Bỏ qua vài gói đầu: encoder/decoder Opus còn đang khởi động */
+    private static final int WARMUP_PACKETS = 5;
+
+    private AudioEncoder encoder;
+    private AudioDecoder decoder;
+
+    @Before
+    public void openCodec() {
+        encoder = new AudioEncoder(MediaProtocol.AUDIO_BITRATE);
+        decoder = new AudioDecoder();
+        assumeTrue("Opus natives unavailable", encoder.getCodec() == MediaProtocol.AUDIO_CODEC_OPUS);
+    }
+
+    @After
+    public void closeCodec() {
+        encoder.close();
+        decoder.close();
+    }
+
+    /**
+     * Gói thứ index của giọng tổng hợp giống SyntheticAudio.conversation lúc đang nói,
+     * sinh trực tiếp để không phải chờ nhịp thời gian thực
+     */
+    private static byte[] speech(int index) {
+        byte[] pcm = new byte[MediaProtocol.AUDIO_PACKET_BYTES];
+        for (int i = 0; i < MediaProtocol.AUDIO_PACKET_SAMPLES; i++) {
+            double t = (double) (index * MediaProtocol.AUDIO_PACKET_SAMPLES + i) / MediaProtocol.AUDIO_SAMPLE_RATE;
+            double phase = 2 * Math.PI * (150 * t - 40 / (2 * Math.PI * 0.7) * Math.cos(2 * Math.PI * 0.7 * t));
+            double envelope = 0.2 + 0.8 * Math.max(0, Math.sin(2 * Math.PI * 4 * t));
+            short sample = (short) (envelope * 7000 * (Math.sin(phase) + 0.5 * Math.sin(2 * phase)
+                    + 0.25 * Math.sin(3 * phase)));
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+
+    private static double energy(byte[] pcm) {
+        double sum = 0;
+        for (int i = 0; i < MediaProtocol.AUDIO_PACKET_SAMPLES; i++) {
+            short sample = (short) ((pcm[2 * i] & 0xFF) | (pcm[2 * i + 1] << 8));
+            sum += (double) sample * sample;
+        }
+        return sum;
+    }
+
+    @Test
+    public void speechBitrateStaysWithinTarget() {
+        byte[] out = new byte[MediaProtocol.MAX_MEDIA_PAYLOAD_SIZE];
+        long bytes = 0;
+        for (int i = 0; i < PACKETS; i++) {
+            int length = encoder.encode(speech(i), out);
+            assertTrue(length > 1);
+            assertEquals(MediaProtocol.AUDIO_CODEC_OPUS, out[0]);
+            bytes += length - 1;
+        }
+
+        double kbps = bytes * 8 / 1000.0 / SECONDS;
+        assertTrue("Opus payload " + kbps + " kbps", kbps >= 16 && kbps <= 32);
+    }
+
+    @Test
+    public void roundTripKeepsSpeechEnergy() {
+        byte[] out = new byte[MediaProtocol.MAX_MEDIA_PAYLOAD_SIZE];
+        byte[] decoded = new byte[MediaProtocol.AUDIO_PACKET_BYTES];
+        double inputEnergy = 0, outputEnergy = 0;
+        for (int i = 0; i < PACKETS; i++) {
+            byte[] pcm = speech(i);
+            int length = encoder.encode(pcm, out);
+            assertEquals(MediaProtocol.AUDIO_PACKET_BYTES, decoder.decode(out, length, decoded));
+            if (i >= WARMUP_PACKETS) {
+                inputEnergy += energy(pcm);
+                outputEnergy += energy(decoded);
+            }
+        }
+
+        // Opus lệch pha vài ms nên chỉ so tổng năng lượng, không so từng mẫu
+        double ratio = outputEnergy / inputEnergy;
+        assertTrue("Energy ratio " + ratio, ratio > 0.5 && ratio < 2.0);
+    }
+}
@@ -0,0 +1,183 @@
+package com.chatapp.client.media;
+
+import com.chatapp.client.model.CallSession;
+import com.chatapp.common.protocol.MediaProtocol;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Đo FEC trên đường truyền mất gói ngẫu nhiên: hai CallSession nối qua NetworkSimulator, bên gọi phát
+ * tone (đường audio thật của CallSession) và một luồng video tổng hợp ~1 Mbps (gói giả frame H.264,
+ * không cần FFmpeg) trên cùng MediaTransport. Tỉ lệ mất đổi theo giai đoạn; mỗi giây in:
+ *   - audio: mất trên đường truyền / mất còn lại sau FEC, kích thước nhóm FEC, tỉ lệ frame phải che lỗi
+ *   - video: như trên, tỉ lệ frame ghép đủ, số frame chỉ đủ nhờ FEC, phần băng thông dành cho FEC
+ *
+ * Cách chạy: java ... com.chatapp.client.media.FecBenchmark [số giây mỗi giai đoạn]
+ */
+public class FecBenchmark {
+
+    /** Tỉ lệ mất (phần nghìn) từng giai đoạn */
+    private static final int[] PHASES = {0, 20, 50, 100, 150, 0};
+
+    private static final int VIDEO_FPS = 30;
+    private static final int VIDEO_PACKETS_PER_FRAME = 4;
+    private static final int VIDEO_PACKETS_PER_KEYFRAME = 20;
+    private static final int VIDEO_PACKET_SIZE = 1050;
+    private static final int KEY_FRAME_INTERVAL = 60;
+
+    /** Bên nhận: ghép frame theo thứ tự gói như VideoRenderer, đếm frame đủ */
+    private static final class FrameCounter {
+        boolean assembling;
+        boolean rescued;
+        int expectedSequence;
+        volatile long complete;
+        volatile long rescuedFrames;
+
+        void onPacket(byte flags, int sequence) {
+            if ((flags & MediaProtocol.FLAG_FRAME_START) != 0) {
+                assembling = true;
+                rescued = false;
+                expectedSequence = sequence;
+            }
+            if (!assembling) {
+                return;
+            }
+            if (sequence != expectedSequence) {
+                assembling = false;
+                return;
+            }
+            expectedSequence++;
+            rescued |= (flags & MediaProtocol.FLAG_RECOVERED) != 0;
+            if ((flags & MediaProtocol.FLAG_FRAME_END) != 0) {
+                assembling = false;
+                complete++;
+                if (rescued) rescuedFrames++;
+            }
+        }
+    }
+
+    private static volatile boolean running = true;
+    private static volatile long framesSent;
+
+    public static void main(String[] args) throws Exception {
+        int phaseSeconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+        CallSession caller = new CallSession("fec", 2L, false, CallSession.State.OUTGOING);
+        CallSession callee = new CallSession("fec", 1L, false, CallSession.State.INCOMING);
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int callerPort = caller.openMedia(0);
+        int calleePort = callee.openMedia(0);
+
+        NetworkSimulator network = new NetworkSimulator(new InetSocketAddress(loopback, callerPort),
+                new InetSocketAddress(loopback, calleePort));
+        network.start();
+
+        caller.startMedia(new InetSocketAddress(loopback, network.getPortForA()),
+                SyntheticAudio.tone(440), SyntheticAudio.discard());
+        callee.startMedia(new InetSocketAddress(loopback, network.getPortForB()),
+                SyntheticAudio.silence(), SyntheticAudio.discard());
+
+        // Thay listener video của bên nhận: vẫn báo cho MediaFeedback để bên gửi nhận được receiver report
+        FrameCounter counter = new FrameCounter();
+        MediaFeedback calleeFeedback = callee.getFeedback();
+        callee.getTransport().setListener(MediaProtocol.KIND_VIDEO, (flags, stream, ssrc, sequence, timestamp, payload) -> {
+            calleeFeedback.onPacket(MediaProtocol.KIND_VIDEO, flags, ssrc, sequence, timestamp, payload.remaining());
+            counter.onPacket(flags, sequence);
+        });
+
+        MediaTransport transport = caller.getTransport();
+        Thread video = new Thread(() -> sendVideo(transport), "fec-video");
+        video.setDaemon(true);
+        video.start();
+
+        AudioPlayer player = callee.getAudioPlayer();
+        long lastPlayed = 0, lastConcealed = 0, lastFrames = 0, lastComplete = 0, lastRescued = 0;
+        long lastTotalBytes = 0;
+        int second = 0;
+        for (int loss : PHASES) {
+            network.setImpairment(20, 2, loss / 1000.0, 0);
+            for (int i = 0; i < phaseSeconds; i++) {
+                Thread.sleep(1000);
+                second++;
+
+                long played = player.getFramesPlayed();
+                long concealed = player.getFramesConcealed();
+                long audioFrames = Math.max(1, played - lastPlayed + concealed - lastConcealed);
+                long frames = framesSent;
+                long complete = counter.complete;
+                long rescued = counter.rescuedFrames;
+                long totalBytes = transport.getBytesSent();
+                long txBytes = totalBytes - lastTotalBytes;
+
+                System.out.printf("[%3ds] loss=%.1f%% | audio raw=%.1f%% residual=%.1f%% k=%d concealed=%.1f%% | " +
+                                "video raw=%.1f%% residual=%.1f%% k=%d frames=%.1f%% rescued=%d | " +
+                                "fec sent=%d recovered=%d tx=%.0fkbps%n",
+                        second, loss / 10.0,
+                        calleeFeedback.getAudioRawFractionLost() * 100, calleeFeedback.getAudioFractionLost() * 100,
+                        transport.getFecGroupSize(MediaProtocol.KIND_AUDIO),
+                        (concealed - lastConcealed) * 100.0 / audioFrames,
+                        calleeFeedback.getVideoRawFractionLost() * 100, calleeFeedback.getVideoFractionLost() * 100,
+                        transport.getFecGroupSize(MediaProtocol.KIND_VIDEO),
+                        (complete - lastComplete) * 100.0 / Math.max(1, frames - lastFrames),
+                        rescued - lastRescued,
+                        transport.getFecPacketsSent(), callee.getTransport().getFecRecovered(),
+                        txBytes * 8 / 1000.0);
+
+                lastPlayed = played;
+                lastConcealed = concealed;
+                lastFrames = frames;
+                lastComplete = complete;
+                lastRescued = rescued;
+                lastTotalBytes = totalBytes;
+            }
+        }
+
+        running = false;
+        caller.stopMedia();
+        callee.stopMedia();
+        network.stop();
+    }
+
+    /**
+     * Luồng video tổng hợp: mỗi frame vài gói cùng timestamp, keyframe định kỳ lớn hơn
+     */
+    private static void sendVideo(MediaTransport transport) {
+        byte[] payload = new byte[VIDEO_PACKET_SIZE];
+        ThreadLocalRandom.current().nextBytes(payload);
+        payload[0] = MediaProtocol.VIDEO_CODEC_H264;
+        int ssrc = ThreadLocalRandom.current().nextInt();
+        int sequence = 0;
+        long frameNanos = 1_000_000_000L / VIDEO_FPS;
+        long next = System.nanoTime();
+
+        try {
+            for (long frame = 0; running; frame++) {
+                boolean key = frame % KEY_FRAME_INTERVAL == 0;
+                int packets = key ? VIDEO_PACKETS_PER_KEYFRAME : VIDEO_PACKETS_PER_FRAME;
+                int timestamp = (int) (frame * MediaProtocol.VIDEO_CLOCK_RATE / VIDEO_FPS);
+                for (int i = 0; i < packets; i++) {
+                    byte flags = 0;
+                    if (key) flags |= MediaProtocol.FLAG_KEYFRAME;
+                    if (i == 0) flags |= MediaProtocol.FLAG_FRAME_START;
+                    if (i == packets - 1) flags |= MediaProtocol.FLAG_FRAME_END;
+                    transport.send(MediaProtocol.KIND_VIDEO, flags, 0, ssrc, sequence++, timestamp,
+                            payload, 0, payload.length);
+                }
+                framesSent++;
+
+                next += frameNanos;
+                long sleep = next - System.nanoTime();
+                if (sleep > 0) {
+                    Thread.sleep(sleep / 1_000_000L, (int) (sleep % 1_000_000L));
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            if (running) {
+                System.err.println("[FecBenchmark] Video send failed: " + e.getMessage());
+            }
+        }
+    }
+}
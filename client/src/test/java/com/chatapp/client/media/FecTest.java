@@ -0,0 +1,196 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FecTest {
+    private static final int SSRC = 0x1234;
+
+    /** Gói listener nhận được từ FecDecoder */
+    private static final class Received {
+        final byte flags;
+        final int stream;
+        final int sequence;
+        final int timestamp;
+        final byte[] payload;
+
+        Received(byte flags, int stream, int sequence, int timestamp, ByteBuffer payload) {
+            this.flags = flags;
+            this.stream = stream;
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.payload = new byte[payload.remaining()];
+            payload.duplicate().get(this.payload);
+        }
+    }
+
+    private final List<Received> received = new ArrayList<>();
+    private final MediaTransport.Listener listener = (flags, stream, ssrc, sequence, timestamp, payload) ->
+            received.add(new Received(flags, stream, sequence, timestamp, payload));
+
+    private static byte[] payload(int sequence, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (sequence * 31 + i);
+        }
+        return data;
+    }
+
+    /**
+     * Mã hóa một nhóm qua FecEncoder, giao cho FecDecoder mọi gói trừ lost rồi tới gói FEC
+     */
+    private void sendGroup(FecEncoder encoder, FecDecoder decoder, int base, int count, int lost,
+                           byte[][] payloads, byte[] flags) {
+        ByteBuffer parity = ByteBuffer.allocate(MediaProtocol.MAX_PACKET_SIZE);
+        boolean full = false;
+        for (int i = 0; i < count; i++) {
+            int sequence = base + i;
+            full = encoder.add(flags[i], i, SSRC, sequence, sequence * 960, payloads[i], 0, payloads[i].length);
+            if (sequence != lost) {
+                decoder.onMedia(flags[i], i, SSRC, sequence, sequence * 960, ByteBuffer.wrap(payloads[i]));
+            }
+        }
+        assertTrue(full);
+        encoder.writeParity(parity, MediaProtocol.KIND_AUDIO);
+        parity.flip();
+
+        assertEquals(MediaProtocol.KIND_FEC, parity.get(MediaProtocol.OFFSET_KIND));
+        int groupCount = parity.getShort(MediaProtocol.OFFSET_STREAM) & 0xFFFF;
+        int groupBase = parity.getInt(MediaProtocol.OFFSET_SEQUENCE);
+        int timestampXor = parity.getInt(MediaProtocol.OFFSET_TIMESTAMP);
+        assertEquals(count, groupCount);
+        assertEquals(base, groupBase);
+        parity.position(MediaProtocol.HEADER_SIZE);
+        decoder.onParity(parity.getInt(MediaProtocol.OFFSET_SSRC), groupBase, groupCount, timestampXor, parity);
+    }
+
+    @Test
+    public void recoversSingleLostPacketOfDifferentLength() {
+        FecEncoder encoder = new FecEncoder(4, 4, false);
+        FecDecoder decoder = new FecDecoder(false, listener);
+        byte[][] payloads = {payload(100, 80), payload(101, 120), payload(102, 40), payload(103, 100)};
+        byte[] flags = {0, MediaProtocol.FLAG_KEYFRAME, 0, 0};
+
+        sendGroup(encoder, decoder, 100, 4, 101, payloads, flags);
+
+        assertEquals(4, received.size());
+        Received recovered = received.get(3);
+        assertEquals(101, recovered.sequence);
+        assertEquals(101 * 960, recovered.timestamp);
+        assertEquals(1, recovered.stream);
+        assertEquals(MediaProtocol.FLAG_KEYFRAME | MediaProtocol.FLAG_RECOVERED, recovered.flags);
+        assertArrayEquals(payloads[1], recovered.payload);
+        assertEquals(1, decoder.getRecovered());
+    }
+
+    @Test
+    public void completeGroupNeedsNoRecovery() {
+        FecEncoder encoder = new FecEncoder(4, 4, false);
+        FecDecoder decoder = new FecDecoder(false, listener);
+        byte[][] payloads = {payload(0, 50), payload(1, 50), payload(2, 50), payload(3, 50)};
+
+        sendGroup(encoder, decoder, 0, 4, -1, payloads, new byte[4]);
+
+        assertEquals(4, received.size());
+        assertEquals(0, decoder.getRecovered());
+    }
+
+    @Test
+    public void twoLossesWaitForLatePacket() {
+        FecEncoder encoder = new FecEncoder(4, 4, false);
+        FecDecoder decoder = new FecDecoder(false, listener);
+        byte[][] payloads = {payload(10, 60), payload(11, 60), payload(12, 60), payload(13, 60)};
+        ByteBuffer parity = ByteBuffer.allocate(MediaProtocol.MAX_PACKET_SIZE);
+        for (int i = 0; i < 4; i++) {
+            encoder.add((byte) 0, 0, SSRC, 10 + i, 0, payloads[i], 0, payloads[i].length);
+        }
+        encoder.writeParity(parity, MediaProtocol.KIND_AUDIO);
+        parity.flip().position(MediaProtocol.HEADER_SIZE);
+
+        decoder.onMedia((byte) 0, 0, SSRC, 10, 0, ByteBuffer.wrap(payloads[0]));
+        decoder.onMedia((byte) 0, 0, SSRC, 13, 0, ByteBuffer.wrap(payloads[3]));
+        decoder.onParity(SSRC, 10, 4, 0, parity);
+        assertEquals(0, decoder.getRecovered());
+
+        // Gói 12 tới muộn: nhóm chỉ còn thiếu 11, parity đã giữ lại cứu được
+        decoder.onMedia((byte) 0, 0, SSRC, 12, 0, ByteBuffer.wrap(payloads[2]));
+        assertEquals(1, decoder.getRecovered());
+        Received recovered = received.get(received.size() - 1);
+        assertEquals(11, recovered.sequence);
+        assertArrayEquals(payloads[1], recovered.payload);
+    }
+
+    @Test
+    public void orderedModeHoldsPacketsUntilHoleIsFilled() {
+        FecEncoder encoder = new FecEncoder(16, 4, true);
+        FecDecoder decoder = new FecDecoder(true, listener);
+        byte[][] payloads = new byte[8][];
+        for (int i = 0; i < 8; i++) {
+            payloads[i] = payload(i, 200 - i * 10);
+        }
+        byte[] flags = {MediaProtocol.FLAG_FRAME_START, 0, 0, MediaProtocol.FLAG_FRAME_END};
+
+        // Nhóm đầu đủ gói (FEC bắt đầu chạy), nhóm sau mất gói 6: gói 7 phải chờ parity
+        sendGroup(encoder, decoder, 0, 4, -1, Arrays.copyOfRange(payloads, 0, 4), flags);
+        sendGroup(encoder, decoder, 4, 4, 6, Arrays.copyOfRange(payloads, 4, 8), flags);
+
+        assertEquals(8, received.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, received.get(i).sequence);
+            assertArrayEquals(payloads[i], received.get(i).payload);
+        }
+        assertTrue((received.get(6).flags & MediaProtocol.FLAG_RECOVERED) != 0);
+        assertEquals(0, decoder.getSkipped());
+    }
+
+    @Test
+    public void groupSizeFollowsLoss() {
+        FecEncoder encoder = new FecEncoder(16, 8, true);
+
+        encoder.onLoss(0.0);
+        assertEquals(0, encoder.getGroupSize());
+        encoder.onLoss(0.04);
+        assertEquals(6, encoder.getGroupSize());
+        encoder.onLoss(0.20);
+        assertEquals(FecEncoder.MIN_GROUP, encoder.getGroupSize());
+        // Mất giảm thì độ dư chỉ giảm từ từ
+        encoder.onLoss(0.01);
+        assertEquals(FecEncoder.MIN_GROUP, encoder.getGroupSize());
+    }
+
+    @Test
+    public void disabledEncoderProducesNoGroups() {
+        FecEncoder encoder = new FecEncoder(4, 4, false);
+        encoder.disable();
+        byte[] data = payload(0, 10);
+
+        for (int i = 0; i < 8; i++) {
+            assertFalse(encoder.add((byte) 0, 0, SSRC, i, 0, data, 0, data.length));
+        }
+    }
+
+    @Test
+    public void sequenceJumpRestartsGroup() {
+        FecEncoder encoder = new FecEncoder(2, 2, false);
+        byte[] data = payload(0, 10);
+
+        assertFalse(encoder.add((byte) 0, 0, SSRC, 0, 0, data, 0, data.length));
+        assertFalse(encoder.add((byte) 0, 0, SSRC, 5, 0, data, 0, data.length));
+        assertTrue(encoder.add((byte) 0, 0, SSRC, 6, 0, data, 0, data.length));
+
+        ByteBuffer parity = ByteBuffer.allocate(MediaProtocol.MAX_PACKET_SIZE);
+        encoder.writeParity(parity, MediaProtocol.KIND_AUDIO);
+        assertEquals(5, parity.getInt(MediaProtocol.OFFSET_SEQUENCE));
+        assertEquals(2, parity.getShort(MediaProtocol.OFFSET_STREAM));
+    }
+}
@@ -0,0 +1,130 @@
+package com.chatapp.client.media;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JitterBufferTest {
+    private static final int FRAME_SAMPLES = 960;
+
+    private final JitterBuffer buffer = new JitterBuffer(16, 20, 48000);
+    private final byte[] out = new byte[16];
+
+    /** Gói mang sequence trong byte đầu; các gói tới gần như cùng lúc với cùng timestamp nên jitter ~0, độ sâu giữ ở mức tối thiểu */
+    private void put(int sequence) {
+        buffer.put(sequence, 0, ByteBuffer.wrap(new byte[]{(byte) sequence, 1, 2}));
+    }
+
+    /** @return sequence của gói lấy ra, hoặc MISSING / NOT_READY */
+    private int pop() {
+        int length = buffer.pop(out);
+        return length >= 0 ? out[0] : length;
+    }
+
+    @Test
+    public void waitsForTargetDepthBeforePlaying() {
+        assertEquals(JitterBuffer.NOT_READY, pop());
+        put(0);
+        assertEquals(JitterBuffer.NOT_READY, pop());
+        put(1);
+
+        assertEquals(0, pop());
+        assertEquals(1, pop());
+        assertEquals(JitterBuffer.MISSING, pop());
+    }
+
+    @Test
+    public void reorderedPacketsPlayInSequence() {
+        put(1);
+        put(0);
+        put(3);
+        put(2);
+
+        assertEquals(0, pop());
+        assertEquals(1, pop());
+        assertEquals(2, pop());
+        assertEquals(3, pop());
+    }
+
+    @Test
+    public void lostPacketIsReportedAndSkipped() {
+        put(0);
+        put(1);
+        put(3);
+
+        assertEquals(0, pop());
+        assertEquals(1, pop());
+        assertEquals(JitterBuffer.MISSING, pop());
+        assertEquals(3, pop());
+        assertEquals(1, buffer.getMissing());
+    }
+
+    @Test
+    public void latePacketIsDropped() {
+        put(0);
+        put(1);
+        put(3);
+        pop();
+        pop();
+        pop();
+
+        put(2);
+
+        assertEquals(1, buffer.getLate());
+        assertEquals(3, pop());
+    }
+
+    @Test
+    public void duplicateIsCountedOnce() {
+        put(0);
+        put(0);
+        put(1);
+
+        assertEquals(1, buffer.getDuplicates());
+        assertEquals(0, pop());
+        assertEquals(1, pop());
+    }
+
+    @Test
+    public void deepBufferDrainsOldestFrames() {
+        for (int sequence = 0; sequence < 10; sequence++) {
+            put(sequence);
+        }
+
+        // Mục tiêu 2 frame + 2 frame dư: chỉ giữ 4 frame mới nhất
+        assertEquals(6, pop());
+        assertEquals(6, buffer.getDrained());
+        assertEquals(7, pop());
+    }
+
+    @Test
+    public void sequenceJumpRestartsPlayout() {
+        put(0);
+        put(1);
+        assertEquals(0, pop());
+
+        // Bên gửi khởi động lại luồng: sequence nhảy xa hơn dung lượng buffer
+        put(100);
+        put(101);
+
+        assertEquals(100, pop());
+        assertEquals(101, pop());
+    }
+
+    @Test
+    public void burstyArrivalRaisesTargetDepth() throws Exception {
+        for (int sequence = 0; sequence < 20; sequence++) {
+            // Gói tới dồn đôi: mỗi 40 ms hai gói liền nhau
+            if (sequence % 2 == 0) {
+                Thread.sleep(40);
+            }
+            buffer.put(sequence, sequence * FRAME_SAMPLES, ByteBuffer.wrap(new byte[]{(byte) sequence}));
+        }
+
+        assertTrue(buffer.getJitterMs() > 5);
+        assertTrue(buffer.getTargetDepth() > 2);
+    }
+}
@@ -0,0 +1,59 @@
+package com.chatapp.client.media;
+
+import com.chatapp.client.model.CallSession;
+import com.chatapp.client.model.CallStats;
+import com.chatapp.common.protocol.MediaProtocol;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * Chạy thử đường media: hai CallSession trên loopback, mỗi bên phát một tone tổng hợp,
+ * in thống kê mỗi giây (gói gửi/nhận, jitter, độ trễ buffer, frame che lỗi).
+ *
+ * Cách chạy: java ... com.chatapp.client.media.LoopbackCall [số giây] [--speaker]
+ */
+public class LoopbackCall {
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 && !args[0].startsWith("--") ? Integer.parseInt(args[0]) : 10;
+        boolean speaker = args.length > 0 && "--speaker".equals(args[args.length - 1]);
+
+        CallSession caller = new CallSession("loopback", 2L, false, CallSession.State.OUTGOING);
+        CallSession callee = new CallSession("loopback", 1L, false, CallSession.State.INCOMING);
+        int callerPort = caller.openMedia(0);
+        int calleePort = callee.openMedia(0);
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        caller.startMedia(new InetSocketAddress(loopback, calleePort), SyntheticAudio.tone(440),
+                speaker ? new AudioPlayer.SpeakerSink() : SyntheticAudio.discard());
+        callee.startMedia(new InetSocketAddress(loopback, callerPort), SyntheticAudio.tone(660),
+                SyntheticAudio.discard());
+
+        for (int i = 1; i <= seconds; i++) {
+            Thread.sleep(1000);
+            print("caller", i, caller);
+            print("callee", i, callee);
+        }
+
+        caller.stopMedia();
+        callee.stopMedia();
+        System.out.println(CallStats.describe(caller));
+        System.out.println(CallStats.summarize(caller));
+    }
+
+    private static void print(String name, int second, CallSession call) {
+        AudioPlayer player = call.getAudioPlayer();
+        JitterBuffer buffer = player.getJitterBuffer();
+        // Ước lượng đầu-cuối: một gói thu + độ trễ jitter buffer (mạng loopback ~0)
+        double endToEndMs = MediaProtocol.AUDIO_PACKET_MS + buffer.getDelayMs();
+
+        System.out.printf("[%2ds] %s sent=%d recv=%d jitter=%.2fms buffer=%.0fms target=%d " +
+                        "played=%d concealed=%d late=%d drained=%d ~e2e=%.0fms%n",
+                second, name,
+                call.getTransport().getPacketsSent(), call.getTransport().getPacketsReceived(),
+                buffer.getJitterMs(), buffer.getDelayMs(), buffer.getTargetDepth(),
+                player.getFramesPlayed(), player.getFramesConcealed(), buffer.getLate(), buffer.getDrained(),
+                endToEndMs);
+    }
+}
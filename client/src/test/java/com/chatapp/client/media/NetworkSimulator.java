@@ -0,0 +1,224 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Relay UDP trên loopback giả lập đường truyền xấu giữa hai đầu media, để đo bộ điều khiển bitrate.
+ * A gửi tới getPortForA(), B gửi tới getPortForB(); mỗi chiều có:
+ *   - mất gói ngẫu nhiên theo tỉ lệ
+ *   - giới hạn băng thông: gói xếp hàng ra với tốc độ bandwidth (như nút cổ chai),
+ *     hàng đợi quá MAX_QUEUE_MS thì bỏ gói cuối (drop-tail)
+ *   - trễ cố định cộng jitter ngẫu nhiên (giữ thứ tự gói)
+ * Thông số đổi được khi đang chạy.
+ */
+public class NetworkSimulator {
+    private static final int MAX_QUEUE_MS = 300;
+    private static final int POOL_SIZE = 4096;
+
+    private static final class Pending {
+        final byte[] data = new byte[MediaProtocol.MAX_PACKET_SIZE];
+        int length;
+        long releaseNanos;
+    }
+
+    /** Một chiều truyền: nhận ở in, xếp hàng, gửi ra out tới target */
+    private final class Direction {
+        final DatagramChannel in;
+        final DatagramChannel out;
+        final InetSocketAddress target;
+        final ArrayDeque<Pending> queue = new ArrayDeque<>();
+        long lastDepartureNanos;
+        long lastReleaseNanos;
+        volatile Thread sender;
+
+        volatile long forwarded;
+        volatile long dropped;
+        volatile long queueDropped;
+
+        Direction(DatagramChannel in, DatagramChannel out, InetSocketAddress target) {
+            this.in = in;
+            this.out = out;
+            this.target = target;
+        }
+    }
+
+    private final ArrayDeque<Pending> pool = new ArrayDeque<>(POOL_SIZE);
+    private final DatagramChannel sideA;
+    private final DatagramChannel sideB;
+    private final Direction aToB;
+    private final Direction bToA;
+    private volatile boolean running;
+
+    private volatile int delayMs;
+    private volatile int jitterMs;
+    private volatile double lossRate;
+    private volatile long bandwidthBps;
+
+    /**
+     * @param a địa chỉ media của đầu A
+     * @param b địa chỉ media của đầu B
+     */
+    public NetworkSimulator(InetSocketAddress a, InetSocketAddress b) throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        sideA = DatagramChannel.open().bind(new InetSocketAddress(loopback, 0));
+        sideB = DatagramChannel.open().bind(new InetSocketAddress(loopback, 0));
+        aToB = new Direction(sideA, sideB, b);
+        bToA = new Direction(sideB, sideA, a);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool.add(new Pending());
+        }
+    }
+
+    public int getPortForA() { return sideA.socket().getLocalPort(); }
+    public int getPortForB() { return sideB.socket().getLocalPort(); }
+
+    /**
+     * @param bandwidthBps 0 = không giới hạn
+     */
+    public void setImpairment(int delayMs, int jitterMs, double lossRate, long bandwidthBps) {
+        this.delayMs = delayMs;
+        this.jitterMs = jitterMs;
+        this.lossRate = lossRate;
+        this.bandwidthBps = bandwidthBps;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        startThreads(aToB, "a-b");
+        startThreads(bToA, "b-a");
+    }
+
+    public synchronized void stop() {
+        running = false;
+        try {
+            sideA.close();
+            sideB.close();
+        } catch (IOException e) {
+            System.err.println("[NetworkSimulator] Close error: " + e.getMessage());
+        }
+        LockSupport.unpark(aToB.sender);
+        LockSupport.unpark(bToA.sender);
+    }
+
+    public long getForwarded() { return aToB.forwarded + bToA.forwarded; }
+    public long getDropped() { return aToB.dropped + bToA.dropped; }
+    public long getQueueDropped() { return aToB.queueDropped + bToA.queueDropped; }
+
+    private void startThreads(Direction direction, String name) {
+        Thread receiver = new Thread(() -> receiveLoop(direction), "netsim-in-" + name);
+        Thread sender = new Thread(() -> sendLoop(direction), "netsim-out-" + name);
+        direction.sender = sender;
+        receiver.setDaemon(true);
+        sender.setDaemon(true);
+        receiver.start();
+        sender.start();
+    }
+
+    private void receiveLoop(Direction direction) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MediaProtocol.MAX_PACKET_SIZE);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            while (running) {
+                buffer.clear();
+                SocketAddress from = direction.in.receive(buffer);
+                if (from == null) {
+                    continue;
+                }
+                buffer.flip();
+                int length = buffer.remaining();
+
+                if (random.nextDouble() < lossRate) {
+                    direction.dropped++;
+                    continue;
+                }
+
+                long now = System.nanoTime();
+                synchronized (direction.queue) {
+                    // Thời điểm gói rời nút cổ chai (xếp sau gói trước), rồi cộng trễ đường truyền
+                    long bandwidth = bandwidthBps;
+                    long departure = Math.max(now, direction.lastDepartureNanos);
+                    if (bandwidth > 0) {
+                        departure += length * 8L * 1_000_000_000L / bandwidth;
+                        if (departure - now > MAX_QUEUE_MS * 1_000_000L) {
+                            direction.queueDropped++;
+                            continue;
+                        }
+                    }
+                    direction.lastDepartureNanos = departure;
+
+                    int jitter = jitterMs > 0 ? random.nextInt(jitterMs + 1) : 0;
+                    long release = Math.max(direction.lastReleaseNanos,
+                            departure + (delayMs + jitter) * 1_000_000L);
+                    direction.lastReleaseNanos = release;
+
+                    Pending packet;
+                    synchronized (pool) {
+                        packet = pool.poll();
+                    }
+                    if (packet == null) {
+                        direction.queueDropped++;
+                        continue;
+                    }
+                    buffer.get(packet.data, 0, length);
+                    packet.length = length;
+                    packet.releaseNanos = release;
+                    direction.queue.add(packet);
+                }
+                LockSupport.unpark(direction.sender);
+            }
+        } catch (ClosedChannelException e) {
+            // Đã dừng
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[NetworkSimulator] Receive error: " + e.getMessage());
+            }
+        }
+    }
+
+    private void sendLoop(Direction direction) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MediaProtocol.MAX_PACKET_SIZE);
+        try {
+            while (running) {
+                Pending packet;
+                long wait;
+                synchronized (direction.queue) {
+                    packet = direction.queue.peek();
+                    wait = packet == null ? 50_000_000L : packet.releaseNanos - System.nanoTime();
+                    if (packet != null && wait <= 0) {
+                        direction.queue.poll();
+                    }
+                }
+                if (packet == null || wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                    continue;
+                }
+
+                buffer.clear();
+                buffer.put(packet.data, 0, packet.length).flip();
+                direction.out.send(buffer, direction.target);
+                direction.forwarded++;
+                synchronized (pool) {
+                    pool.add(packet);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // Đã dừng
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[NetworkSimulator] Send error: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.chatapp.client.media;
+
+import com.chatapp.common.protocol.MediaProtocol;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Đo pipeline VideoCapture không cần camera: nguồn tổng hợp, gửi UDP về chính nó trên loopback.
+ * Mỗi giây in fps encode, frame bị bỏ, độ sâu các hàng đợi, bitrate, heap đang dùng và số lần GC,
+ * để kiểm tra heap phẳng và không rớt frame do GC.
+ *
+ * Cách chạy: java ... com.chatapp.client.media.VideoBenchmark [số giây] [rộng] [cao] [fps]
+ */
+public class VideoBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 1280;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 720;
+        int fps = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+
+        MediaTransport transport = new MediaTransport();
+        int port = transport.open(0);
+        transport.setRemote(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        long[] received = new long[1];
+        transport.setListener(MediaProtocol.KIND_VIDEO,
+                (flags, stream, ssrc, sequence, timestamp, payload) -> received[0]++);
+
+        VideoCapture capture = new VideoCapture(new SyntheticVideoSource(width, height, fps), transport,
+                ThreadLocalRandom.current().nextInt(), width, height, fps, 2_500_000);
+        capture.start();
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long lastEncoded = 0;
+        long lastBytes = 0;
+        for (int i = 1; i <= seconds; i++) {
+            Thread.sleep(1000);
+            long encoded = capture.getFramesEncoded();
+            long bytes = capture.getBytesEncoded();
+            long gcCount = 0;
+            long gcMillis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(0, gc.getCollectionCount());
+                gcMillis += Math.max(0, gc.getCollectionTime());
+            }
+
+            System.out.printf("[%2ds] %dx%d fps=%d dropped=%d keyframes=%d queues=%d/%d/%d " +
+                            "bitrate=%.0fkbps packets=%d/%d heap=%.1fMB gc=%d (%dms)%n",
+                    i, capture.getWidth(), capture.getHeight(), encoded - lastEncoded,
+                    capture.getFramesDropped(), capture.getKeyFrames(),
+                    capture.getRawQueued(), capture.getYuvQueued(), capture.getEncodedQueued(),
+                    (bytes - lastBytes) * 8 / 1000.0, capture.getPacketsSent(), received[0],
+                    memory.getHeapMemoryUsage().getUsed() / (1024.0 * 1024.0), gcCount, gcMillis);
+            lastEncoded = encoded;
+            lastBytes = bytes;
+        }
+
+        capture.stop();
+        transport.close();
+    }
+}
@@ -0,0 +1,120 @@
+package com.chatapp.client.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RangeDownloadTest {
+    private static final int SIZE = (int) (RangeDownload.BLOCK_SIZE * 3 + 12345);
+
+    private final byte[] data = new byte[SIZE];
+    private final AtomicInteger opens = new AtomicInteger();
+    /** Nguồn "mất kết nối" khi đọc tới byte này; sau đó mọi kết nối đều lỗi cho tới khi down = false */
+    private volatile long failAt = -1;
+    private volatile boolean down;
+    private Path part;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(1).nextBytes(data);
+        part = Files.createTempFile("range", ".part");
+        Files.delete(part);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        RangeDownload.discard(part);
+    }
+
+    /** Range đọc từ mảng data trong bộ nhớ */
+    private RangeDownload.Range open(long offset, long length) throws IOException {
+        opens.incrementAndGet();
+        if (down) {
+            throw new IOException("Source down");
+        }
+        long start = Math.min(offset, SIZE);
+        long end = length < 0 ? SIZE : Math.min(SIZE, start + length);
+        return new RangeDownload.Range() {
+            private long position = start;
+
+            @Override
+            public long getTotalSize() { return SIZE; }
+            @Override
+            public long getStart() { return start; }
+            @Override
+            public long getLength() { return end - start; }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (down || (failAt >= position && failAt < position + length)) {
+                    down = true;
+                    throw new IOException("Connection reset");
+                }
+                int count = (int) Math.min(length, end - position);
+                if (count <= 0) {
+                    return -1;
+                }
+                System.arraycopy(data, (int) position, buffer, offset, count);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Test
+    public void downloadsAllBlocksOverSeveralStreams() throws Exception {
+        assertEquals(SIZE, new RangeDownload(this::open, 4).download(part, null));
+
+        assertArrayEquals(data, Files.readAllBytes(part));
+        assertEquals(4, opens.get());
+        assertFalse(Files.exists(RangeDownload.rangesOf(part)));
+    }
+
+    @Test
+    public void failedAttemptResumesOnlyMissingRanges() throws Exception {
+        failAt = RangeDownload.BLOCK_SIZE + 100;
+        try {
+            new RangeDownload(this::open, 4).download(part, null);
+            fail("Expected the source to go down");
+        } catch (IOException expected) {
+        }
+        assertTrue(Files.exists(RangeDownload.rangesOf(part)));
+
+        down = false;
+        failAt = -1;
+        opens.set(0);
+        new RangeDownload(this::open, 4).download(part, null);
+
+        assertArrayEquals(data, Files.readAllBytes(part));
+        assertTrue(opens.get() <= 4);
+    }
+
+    @Test
+    public void sequentialPartWithoutRangesFileIsKept() throws Exception {
+        Files.write(part, Arrays.copyOf(data, 1000));
+        data[0] ^= 1; // Nếu tải lại từ 0 thì byte đầu của part sẽ khác bản đã có
+
+        new RangeDownload(this::open, 4).download(part, null);
+
+        byte[] result = Files.readAllBytes(part);
+        assertEquals((byte) (data[0] ^ 1), result[0]);
+        assertArrayEquals(Arrays.copyOfRange(data, 1, SIZE), Arrays.copyOfRange(result, 1, SIZE));
+    }
+}
@@ -0,0 +1,60 @@
+package com.chatapp.common.model;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Tóm tắt một cuộc trò chuyện của một user trong danh sách chat:
+ * tin nhắn cuối và số tin chưa đọc
+ */
+public class ConversationSummary implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String conversationId;
+    private Long peerId;            // Chat 1-1
+    private Long groupId;           // Chat nhóm
+    private String title;           // Tên người kia / tên nhóm
+    private String avatarUrl;
+    private Long lastMessageId;
+    private Long lastSenderId;
+    private String lastContent;
+    private Long lastSequence;
+    private LocalDateTime lastMessageAt;
+    private int unreadCount;
+
+    public ConversationSummary() {}
+
+    // Getters and Setters
+    public String getConversationId() { return conversationId; }
+    public void setConversationId(String conversationId) { this.conversationId = conversationId; }
+
+    public Long getPeerId() { return peerId; }
+    public void setPeerId(Long peerId) { this.peerId = peerId; }
+
+    public Long getGroupId() { return groupId; }
+    public void setGroupId(Long groupId) { this.groupId = groupId; }
+
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+
+    public String getAvatarUrl() { return avatarUrl; }
+    public void setAvatarUrl(String avatarUrl) { this.avatarUrl = avatarUrl; }
+
+    public Long getLastMessageId() { return lastMessageId; }
+    public void setLastMessageId(Long lastMessageId) { this.lastMessageId = lastMessageId; }
+
+    public Long getLastSenderId() { return lastSenderId; }
+    public void setLastSenderId(Long lastSenderId) { this.lastSenderId = lastSenderId; }
+
+    public String getLastContent() { return lastContent; }
+    public void setLastContent(String lastContent) { this.lastContent = lastContent; }
+
+    public Long getLastSequence() { return lastSequence; }
+    public void setLastSequence(Long lastSequence) { this.lastSequence = lastSequence; }
+
+    public LocalDateTime getLastMessageAt() { return lastMessageAt; }
+    public void setLastMessageAt(LocalDateTime lastMessageAt) { this.lastMessageAt = lastMessageAt; }
+
+    public int getUnreadCount() { return unreadCount; }
+    public void setUnreadCount(int unreadCount) { this.unreadCount = unreadCount; }
+}
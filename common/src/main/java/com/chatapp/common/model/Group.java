@@ -0,0 +1,52 @@
+package com.chatapp.common.model;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Model đại diện cho nhóm chat
+ */
+public class Group implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private String name;
+    private Long ownerId;
+    private String avatarUrl;
+    private int memberCount;
+    private LocalDateTime createdAt;
+
+    public Group() {}
+
+    public Group(String name, Long ownerId) {
+        this.name = name;
+        this.ownerId = ownerId;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public Long getOwnerId() { return ownerId; }
+    public void setOwnerId(Long ownerId) { this.ownerId = ownerId; }
+
+    public String getAvatarUrl() { return avatarUrl; }
+    public void setAvatarUrl(String avatarUrl) { this.avatarUrl = avatarUrl; }
+
+    public int getMemberCount() { return memberCount; }
+    public void setMemberCount(int memberCount) { this.memberCount = memberCount; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    /**
+     * ID cuộc trò chuyện của nhóm (dùng cho messages.conversation_id)
+     */
+    public String getConversationId() {
+        return Message.groupConversationId(id);
+    }
+}
@@ -7,8 +7,12 @@ public class Message implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private Long id;
+    private String conversationId;
+    private Long sequence;
+    private String clientMessageId;
     private Long senderId;
     private Long receiverId;
+    private Long groupId;
     private String content;
     private MessageType messageType;
     private Long fileId;
@@ -18,7 +22,7 @@ public class Message implements Serializable {
     private LocalDateTime readAt;
 
     public enum MessageType {
-        TEXT, FILE, IMAGE
+        TEXT, FILE, IMAGE, VOICE
     }
 
     public Message() {}
@@ -33,16 +37,44 @@ public class Message implements Serializable {
         this.createdAt = LocalDateTime.now();
     }
 
+    /**
+     * ID cuộc trò chuyện 1-1, không phụ thuộc thứ tự hai user
+     */
+    public static String directConversationId(Long userA, Long userB) {
+        long low = Math.min(userA, userB);
+        long high = Math.max(userA, userB);
+        return "d_" + low + "_" + high;
+    }
+
+    /**
+     * ID cuộc trò chuyện nhóm
+     */
+    public static String groupConversationId(Long groupId) {
+        return "g_" + groupId;
+    }
+
     // Getters and Setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
 
+    public String getConversationId() { return conversationId; }
+    public void setConversationId(String conversationId) { this.conversationId = conversationId; }
+
+    public Long getSequence() { return sequence; }
+    public void setSequence(Long sequence) { this.sequence = sequence; }
+
+    public String getClientMessageId() { return clientMessageId; }
+    public void setClientMessageId(String clientMessageId) { this.clientMessageId = clientMessageId; }
+
     public Long getSenderId() { return senderId; }
     public void setSenderId(Long senderId) { this.senderId = senderId; }
 
     public Long getReceiverId() { return receiverId; }
     public void setReceiverId(Long receiverId) { this.receiverId = receiverId; }
 
+    public Long getGroupId() { return groupId; }
+    public void setGroupId(Long groupId) { this.groupId = groupId; }
+
     public String getContent() { return content; }
     public void setContent(String content) { this.content = content; }
 
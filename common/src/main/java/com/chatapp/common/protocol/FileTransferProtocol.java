@@ -0,0 +1,47 @@
+package com.chatapp.common.protocol;
+
+/**
+ * Hằng số cho kênh truyền file nhị phân (cổng riêng, tách khỏi kênh JSON).
+ *
+ * Upload:
+ *   client -> server: writeUTF(header JSON {op, uploadId, token})
+ *   server -> client: writeLong(offset đã nhận)   (hoặc -1 + writeUTF(lỗi))
+ *   lặp lại từ offset đó:
+ *     client -> server: writeInt(độ dài chunk), writeLong(CRC32 của chunk), bytes
+ *     server -> client: writeByte(ACK | NACK), writeLong(offset đã ghi)
+ *   chunk cuối: writeByte(DONE), writeUTF(FileInfo JSON)
+ *
+ * Upload live (FILE_OFFER có live = true, vd. tin nhắn thoại đang ghi): như Upload nhưng chưa biết kích thước,
+ * mọi chunk đều được ACK; client kết thúc bằng chunk rỗng writeInt(0), writeLong(0),
+ * server chốt kích thước rồi trả DONE + FileInfo JSON.
+ *
+ * Upload nhiều luồng (FILE_ACCEPT có streams > 1): mỗi luồng là một kết nối riêng
+ *   client -> server: writeUTF(header JSON {op: UPLOAD_RANGES, uploadId, token})
+ *   server -> client: writeLong(0)   (hoặc -1 + writeUTF(lỗi))
+ *   lặp lại cho mỗi range:
+ *     client -> server: writeLong(offset), writeLong(độ dài range), rồi các chunk như Upload
+ *     server -> client: ACK | NACK + offset cho mỗi chunk; chunk làm file đủ thì DONE + FileInfo JSON
+ *   client -> server: writeLong(-1) khi luồng không còn range
+ *
+ * Download (vé lấy qua FILE_DOWNLOAD_REQUEST):
+ *   client -> server: writeUTF(header JSON {op, resource, expires, ticket, offset, length})
+ *                     length = -1 để đọc tới cuối file
+ *   server -> client: writeLong(tổng kích thước)   (hoặc -1 + writeUTF(lỗi))
+ *                     writeLong(offset bắt đầu), writeLong(số byte sẽ gửi), rồi đúng số byte đó
+ *
+ * P2P giữa hai client dùng lại khung Download: resource = transferId, ticket = token của offer.
+ */
+public final class FileTransferProtocol {
+    public static final String OP_UPLOAD = "UPLOAD";
+    public static final String OP_UPLOAD_RANGES = "UPLOAD_RANGES";
+    public static final String OP_DOWNLOAD = "DOWNLOAD";
+
+    public static final byte ACK = 0;     // Chunk đã ghi xuống đĩa
+    public static final byte NACK = 1;    // Sai checksum, gửi lại từ offset trả về
+    public static final byte DONE = 2;    // File đã nhận đủ và lưu xong
+    public static final byte ERROR = 3;   // Lỗi, kèm writeUTF(thông báo)
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private FileTransferProtocol() {}
+}
@@ -0,0 +1,92 @@
+package com.chatapp.common.protocol;
+
+/**
+ * Hằng số cho kênh media UDP của cuộc gọi (tách khỏi kênh JSON và cổng truyền file).
+ *
+ * Mỗi datagram là một gói media, header 16 byte (big-endian):
+ *   [0]      kind        loại gói (KIND_*)
+ *   [1]      flags       cờ theo loại gói
+ *   [2..3]   stream      số hiệu luồng con (dành cho lớp simulcast sau này), hiện là 0; gói FEC dùng cho k
+ *   [4..7]   ssrc        định danh luồng của người gửi (ngẫu nhiên mỗi cuộc gọi)
+ *   [8..11]  sequence    số thứ tự gói trong luồng, tăng 1 mỗi gói
+ *   [12..15] timestamp   thời điểm lấy mẫu (audio: đơn vị mẫu 48 kHz, video: đồng hồ 90 kHz)
+ * rồi tới payload.
+ *
+ * Audio: thu PCM 16-bit little-endian mono 48 kHz theo frame AUDIO_FRAME_MS, mỗi gói nén AUDIO_PACKET_MS.
+ * Byte đầu payload là mã codec (AUDIO_CODEC_*), sau đó là dữ liệu:
+ *   OPUS   một gói Opus (~24 kbps)
+ *   PCMU   G.711 mu-law 16 kHz, chỉ dùng khi máy không có FFmpeg/Opus
+ *   CN     comfort noise khi bên gửi im lặng (VAD): [1] mức nhiễu nền -dBov (0..127) như RFC 3389.
+ *          Trong lúc im lặng chỉ gửi CN khi mức nhiễu đổi hoặc mỗi AUDIO_CN_INTERVAL_MS, sequence không tăng cho các gói bỏ qua
+ *          (timestamp vẫn theo đồng hồ mẫu), bên nhận phát nhiễu nền tới khi có tiếng nói lại.
+ *
+ * Video: mỗi frame nén được cắt thành nhiều gói liên tiếp cùng timestamp; flags đánh dấu
+ * gói đầu/cuối frame và keyframe. Byte đầu payload là mã codec (VIDEO_CODEC_*), sau đó là dữ liệu.
+ *
+ * Control (giống RTCP): flags là loại báo cáo (CONTROL_*), timestamp là đồng hồ ms của người gửi,
+ * sequence không dùng. Payload (big-endian):
+ *   SENDER_REPORT    [0..3] số gói đã gửi, [4..7] số byte đã gửi
+ *   RECEIVER_REPORT  [0..3] ssrc luồng được báo cáo, [4] tỉ lệ mất từ báo cáo trước (x/256),
+ *                    [5..8] tổng gói mất, [9..12] sequence cao nhất, [13..16] jitter (đơn vị timestamp),
+ *                    [17..20] timestamp của sender report gần nhất, [21..24] ms từ lúc nhận nó (tính RTT)
+ *   KEYFRAME_REQUEST [0..3] ssrc luồng video cần keyframe
+ *
+ * FEC: sau mỗi nhóm k gói liên tiếp của một luồng audio/video, bên gửi phát một gói KIND_FEC là XOR
+ * của cả nhóm, nhờ đó bên nhận dựng lại được một gói mất bất kỳ trong nhóm mà không cần gửi lại.
+ * Header: flags = loại gói được bảo vệ, stream = k, ssrc = ssrc luồng được bảo vệ,
+ * sequence = sequence gói đầu nhóm, timestamp = XOR các timestamp. Payload:
+ *   [0..1] XOR độ dài payload, [2] XOR flags, [3] XOR stream, rồi XOR các payload (đệm 0 tới gói dài nhất).
+ * Vì vậy payload gói media không vượt MAX_MEDIA_PAYLOAD_SIZE. k đổi theo tỉ lệ mất đo được.
+ */
+public final class MediaProtocol {
+    public static final int HEADER_SIZE = 16;
+    public static final int MAX_PACKET_SIZE = 1400;
+    public static final int MAX_PAYLOAD_SIZE = MAX_PACKET_SIZE - HEADER_SIZE;
+    public static final int FEC_HEADER_SIZE = 4;
+    public static final int MAX_MEDIA_PAYLOAD_SIZE = MAX_PAYLOAD_SIZE - FEC_HEADER_SIZE;
+
+    public static final int OFFSET_KIND = 0;
+    public static final int OFFSET_FLAGS = 1;
+    public static final int OFFSET_STREAM = 2;
+    public static final int OFFSET_SSRC = 4;
+    public static final int OFFSET_SEQUENCE = 8;
+    public static final int OFFSET_TIMESTAMP = 12;
+
+    public static final byte KIND_AUDIO = 1;
+    public static final byte KIND_VIDEO = 2;
+    public static final byte KIND_CONTROL = 3;
+    public static final byte KIND_FEC = 4;
+
+    public static final byte FLAG_KEYFRAME = 0x01;
+    public static final byte FLAG_FRAME_START = 0x02;
+    public static final byte FLAG_FRAME_END = 0x04;
+    /** Chỉ dùng bên nhận: gói được FEC dựng lại, không có trên đường truyền */
+    public static final byte FLAG_RECOVERED = 0x40;
+
+    public static final int AUDIO_SAMPLE_RATE = 48000;
+    public static final int AUDIO_FRAME_MS = 10;
+    public static final int AUDIO_FRAME_SAMPLES = AUDIO_SAMPLE_RATE * AUDIO_FRAME_MS / 1000;
+    public static final int AUDIO_FRAME_BYTES = AUDIO_FRAME_SAMPLES * 2;
+    public static final int AUDIO_PACKET_MS = 20;
+    public static final int AUDIO_PACKET_SAMPLES = AUDIO_SAMPLE_RATE * AUDIO_PACKET_MS / 1000;
+    public static final int AUDIO_PACKET_BYTES = AUDIO_PACKET_SAMPLES * 2;
+    public static final int AUDIO_BITRATE = 24000;
+    public static final int AUDIO_CN_INTERVAL_MS = 1000;
+    public static final byte AUDIO_CODEC_OPUS = 1;
+    public static final byte AUDIO_CODEC_PCMU = 2;
+    public static final byte AUDIO_CODEC_CN = 3;
+
+    public static final int VIDEO_CLOCK_RATE = 90000;
+    public static final byte VIDEO_CODEC_H264 = 1;
+    public static final byte VIDEO_CODEC_VP8 = 2;
+    public static final byte VIDEO_CODEC_MPEG4 = 3;
+
+    public static final byte CONTROL_SENDER_REPORT = 1;
+    public static final byte CONTROL_RECEIVER_REPORT = 2;
+    public static final byte CONTROL_KEYFRAME_REQUEST = 3;
+    public static final int SENDER_REPORT_SIZE = 8;
+    public static final int RECEIVER_REPORT_SIZE = 26;
+    public static final int REPORT_INTERVAL_MS = 500;
+
+    private MediaProtocol() {}
+}
@@ -30,6 +30,8 @@ public enum MessageType {
     UPLOAD_AVATAR_RESPONSE,
     GET_USER_INFO_REQUEST,
     GET_USER_INFO_RESPONSE,
+    GET_AVATAR_REQUEST,
+    GET_AVATAR_RESPONSE,
 
     // Friend Management - CẬP NHẬT MỚI
     ADD_FRIEND_REQUEST,
@@ -57,12 +59,28 @@ public enum MessageType {
     GET_MESSAGES_RESPONSE,
     TYPING_INDICATOR,
     READ_RECEIPT,
+    SEARCH_MESSAGES_REQUEST,
+    SEARCH_MESSAGES_RESPONSE,
+    GET_CONVERSATIONS_REQUEST,
+    GET_CONVERSATIONS_RESPONSE,
+
+    // Group
+    CREATE_GROUP_REQUEST,
+    CREATE_GROUP_RESPONSE,
+    GET_GROUPS_REQUEST,
+    GET_GROUPS_RESPONSE,
+    ADD_GROUP_MEMBERS_REQUEST,
+    ADD_GROUP_MEMBERS_RESPONSE,
+    LEAVE_GROUP_REQUEST,
+    LEAVE_GROUP_RESPONSE,
 
     // File
     FILE_OFFER,
     FILE_ACCEPT,
     FILE_REJECT,
     FILE_INFO,
+    FILE_DOWNLOAD_REQUEST,
+    FILE_DOWNLOAD_RESPONSE,
 
     // Call
     CALL_REQUEST,
@@ -1,7 +1,9 @@
 package com.chatapp.common.protocol;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Packet implements Serializable {
@@ -63,6 +65,20 @@ public class Packet implements Serializable {
         return null;
     }
 
+    public List<Long> getLongList(String key) {
+        Object value = data.get(key);
+        if (!(value instanceof List)) {
+            return null;
+        }
+        List<Long> result = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+            if (item instanceof Number) {
+                result.add(((Number) item).longValue());
+            }
+        }
+        return result;
+    }
+
     public Long getTimestamp() { return timestamp; }
     public void setTimestamp(Long timestamp) { this.timestamp = timestamp; }
 
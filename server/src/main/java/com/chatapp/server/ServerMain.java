@@ -1,6 +1,14 @@
 package com.chatapp.server;
 
+import com.chatapp.server.core.AvatarThumbnails;
+import com.chatapp.server.core.CallRegistry;
 import com.chatapp.server.core.ChatServer;
+import com.chatapp.server.core.ConversationSummaries;
+import com.chatapp.server.core.FileTransferServer;
+import com.chatapp.server.core.OfflineInbox;
+import com.chatapp.server.core.ReadWatermarks;
+import com.chatapp.server.core.SearchIndex;
+import com.chatapp.server.core.StorageJanitor;
 import com.chatapp.server.database.DatabaseManager;
 import com.chatapp.server.util.Logger;
 
@@ -21,11 +29,22 @@ public class ServerMain {
             // Start server
             logger.info("Starting chat server...");
             ChatServer server = new ChatServer();
+            FileTransferServer fileTransferServer = new FileTransferServer();
+            fileTransferServer.start();
+            StorageJanitor.getInstance();
 
             // Add shutdown hook
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 logger.info("Shutting down server...");
                 server.stop();
+                fileTransferServer.stop();
+                StorageJanitor.getInstance().shutdown();
+                AvatarThumbnails.getInstance().shutdown();
+                CallRegistry.getInstance().shutdown();
+                OfflineInbox.getInstance().flushAll();
+                ReadWatermarks.getInstance().shutdown();
+                SearchIndex.getInstance().shutdown();
+                ConversationSummaries.getInstance().shutdown();
                 DatabaseManager.getInstance().close();
                 logger.info("Server stopped");
             }));
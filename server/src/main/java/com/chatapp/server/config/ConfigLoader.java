@@ -78,4 +78,16 @@ public class ConfigLoader {
         }
         return defaultValue;
     }
-}
\ No newline at end of file
+
+    public long getLongProperty(String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value != null) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
+    }
+}
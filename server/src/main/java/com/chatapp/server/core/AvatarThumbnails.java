@@ -0,0 +1,298 @@
+package com.chatapp.server.core;
+
+import com.chatapp.server.config.ConfigLoader;
+import com.chatapp.server.service.FileStorageService;
+import com.chatapp.server.util.Logger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Thumbnail avatar ở các kích thước cố định (40/96/256 px, JPEG vuông, cắt giữa).
+ * Ảnh gốc được decode một lần để sinh đủ các kích thước trên một pool giới hạn;
+ * thumbnail được giữ trong LRU theo tổng số byte, kèm ETag để client không tải lại.
+ * Kích thước ảnh được đọc từ header trước khi decode: ảnh vượt max.pixels bị từ chối (chống ảnh
+ * nén nhỏ nhưng giải nén ra hàng GB), ảnh lớn được decode với subsampling chỉ vừa đủ cho size lớn nhất.
+ */
+public class AvatarThumbnails {
+    private static AvatarThumbnails instance;
+
+    public static final int[] SIZES = {40, 96, 256};
+    private static final float JPEG_QUALITY = 0.85f;
+
+    private final FileStorageService fileStorage;
+    private final ThreadPoolExecutor workers;
+    private final Map<String, Thumbnail> cache;
+    private final long maxCacheBytes;
+    private final long maxPixels;
+    private long cacheBytes;
+    private final Logger logger = Logger.getInstance();
+
+    private AvatarThumbnails() {
+        ConfigLoader config = ConfigLoader.getInstance();
+        int threads = config.getIntProperty("avatar.thumbnail.threads", 2);
+        int queueSize = config.getIntProperty("avatar.thumbnail.queue.size", 64);
+        this.maxCacheBytes = config.getLongProperty("avatar.thumbnail.cache.bytes", 16L * 1024 * 1024);
+        this.maxPixels = config.getLongProperty("avatar.thumbnail.max.pixels", 25_000_000L);
+        this.fileStorage = FileStorageService.getInstance();
+
+        // Hàng đợi giới hạn: khi đầy thì bỏ việc sinh trước, thumbnail sẽ được sinh khi có request
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread t = new Thread(r, "avatar-thumbnail");
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        this.cache = new LinkedHashMap<>(256, 0.75f, true);
+    }
+
+    public static AvatarThumbnails getInstance() {
+        if (instance == null) {
+            synchronized (AvatarThumbnails.class) {
+                if (instance == null) {
+                    instance = new AvatarThumbnails();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Sinh trước các thumbnail cho avatar vừa upload (chạy nền)
+     */
+    public void submit(String avatarUrl) {
+        try {
+            workers.execute(() -> {
+                try {
+                    render(avatarUrl);
+                } catch (Exception e) {
+                    logger.error("Failed to render thumbnails for " + avatarUrl + ": " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Thumbnail queue full, deferring " + avatarUrl);
+        }
+    }
+
+    /**
+     * Lấy thumbnail kích thước gần nhất (không nhỏ hơn size nếu có thể).
+     * Chưa có trên đĩa thì sinh qua pool và chờ, để số ảnh decode đồng thời vẫn bị giới hạn.
+     */
+    public Thumbnail get(String avatarUrl, int size) throws IOException {
+        int snapped = snapSize(size);
+        String key = avatarUrl + "@" + snapped;
+
+        synchronized (cache) {
+            Thumbnail cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        Path path = fileStorage.getThumbnailPath(avatarUrl, snapped);
+        if (!Files.exists(path)) {
+            try {
+                Future<?> task = workers.submit(() -> {
+                    render(avatarUrl);
+                    return null;
+                });
+                task.get(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while rendering thumbnail");
+            } catch (ExecutionException | TimeoutException e) {
+                throw new IOException("Failed to render thumbnail: " + e.getMessage());
+            } catch (RejectedExecutionException e) {
+                throw new IOException("Thumbnail workers busy");
+            }
+        }
+
+        Thumbnail thumbnail = new Thumbnail(Files.readAllBytes(path));
+        put(key, thumbnail);
+        return thumbnail;
+    }
+
+    /**
+     * Bỏ các thumbnail của avatar đã bị xóa khỏi LRU
+     */
+    public void evict(String avatarUrl) {
+        synchronized (cache) {
+            for (int size : SIZES) {
+                Thumbnail removed = cache.remove(avatarUrl + "@" + size);
+                if (removed != null) {
+                    cacheBytes -= removed.getData().length;
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Decode ảnh gốc một lần, ghi các kích thước còn thiếu
+     */
+    private void render(String avatarUrl) throws IOException {
+        BufferedImage source = null;
+        for (int size : SIZES) {
+            Path target = fileStorage.getThumbnailPath(avatarUrl, size);
+            if (Files.exists(target)) {
+                continue;
+            }
+            if (source == null) {
+                source = readSource(fileStorage.getAvatarPath(avatarUrl));
+            }
+
+            byte[] jpeg = encodeJpeg(scaleSquare(source, size));
+            Path temp = target.resolveSibling(target.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+            Files.createDirectories(target.getParent());
+            Files.write(temp, jpeg);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Đọc kích thước từ header, từ chối ảnh quá lớn, rồi decode với subsampling sao cho
+     * cạnh ngắn vẫn ít nhất gấp đôi size lớn nhất
+     */
+    private BufferedImage readSource(Path file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                long width = reader.getWidth(0);
+                long height = reader.getHeight(0);
+                if (width <= 0 || height <= 0 || width * height > maxPixels) {
+                    throw new IOException("Image too large: " + width + "x" + height);
+                }
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = (int) Math.max(1, Math.min(width, height) / (2L * SIZES[SIZES.length - 1]));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private void put(String key, Thumbnail thumbnail) {
+        synchronized (cache) {
+            Thumbnail previous = cache.put(key, thumbnail);
+            if (previous != null) {
+                cacheBytes -= previous.getData().length;
+            }
+            cacheBytes += thumbnail.getData().length;
+
+            Iterator<Thumbnail> iterator = cache.values().iterator();
+            while (cacheBytes > maxCacheBytes && iterator.hasNext()) {
+                cacheBytes -= iterator.next().getData().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    private static int snapSize(int size) {
+        for (int candidate : SIZES) {
+            if (candidate >= size) {
+                return candidate;
+            }
+        }
+        return SIZES[SIZES.length - 1];
+    }
+
+    /**
+     * Cắt phần vuông ở giữa rồi thu nhỏ. Thu nhỏ nhiều bước (mỗi bước tối đa một nửa)
+     * để ảnh lớn không bị răng cưa khi dùng nội suy bilinear.
+     */
+    private static BufferedImage scaleSquare(BufferedImage source, int size) {
+        int side = Math.min(source.getWidth(), source.getHeight());
+        BufferedImage current = source.getSubimage(
+                (source.getWidth() - side) / 2, (source.getHeight() - side) / 2, side, side);
+
+        int currentSize = side;
+        do {
+            currentSize = Math.max(size, currentSize / 2);
+            BufferedImage next = new BufferedImage(currentSize, currentSize, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(current, 0, 0, currentSize, currentSize, null);
+            g.dispose();
+            current = next;
+        } while (currentSize > size);
+
+        return current;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Bytes JPEG của một thumbnail và ETag (hash nội dung)
+     */
+    public static class Thumbnail {
+        private final byte[] data;
+        private final String etag;
+
+        Thumbnail(byte[] data) {
+            this.data = data;
+            this.etag = etagOf(data);
+        }
+
+        public byte[] getData() { return data; }
+        public String getEtag() { return etag; }
+
+        private static String etagOf(byte[] data) {
+            try {
+                byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+                StringBuilder hex = new StringBuilder();
+                for (int i = 0; i < 8; i++) {
+                    hex.append(String.format("%02x", hash[i]));
+                }
+                return hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.chatapp.server.core;
+
+import com.chatapp.server.util.Logger;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tổng hợp báo cáo chất lượng cuối cuộc gọi của client (CALL_INFO có summary, xem CallStats ở client):
+ * mỗi chỉ số số học giữ số lần, tổng và max, không khóa. Cuộc gọi vượt ngưỡng (RTT, mất gói, độ trễ
+ * jitter buffer/hiển thị) bị tính là kém và ghi log warn kèm chỉ số vi phạm, để truy được khi chất lượng
+ * tụt; cứ LOG_EVERY_CALLS báo cáo thì ghi một dòng trung bình các chỉ số chính.
+ * Tên chỉ số do client gửi nên bị giới hạn độ dài và số lượng.
+ */
+public class CallQualityStats {
+    private static CallQualityStats instance;
+
+    private static final int MAX_METRICS = 128;
+    private static final int MAX_NAME_LENGTH = 40;
+    private static final int LOG_EVERY_CALLS = 100;
+
+    /** Ngưỡng cuộc gọi kém: tên chỉ số -> giá trị lớn nhất chấp nhận được */
+    private static final Map<String, Double> POOR_THRESHOLDS = Map.of(
+            "rttP95Ms", 400.0,
+            "audioLossPct", 5.0,
+            "videoLossPct", 5.0,
+            "audioJitterBufferP95Ms", 200.0,
+            "videoRenderP95Ms", 300.0,
+            "videoSendP95Ms", 200.0
+    );
+
+    private static final String[] LOGGED_METRICS = {
+            "durationMs", "rttP50Ms", "rttP95Ms", "audioLossPct", "audioJitterBufferP95Ms",
+            "videoLossPct", "videoKbps", "videoSendP95Ms", "videoRenderP95Ms"
+    };
+
+    static final class Metric {
+        final LongAdder count = new LongAdder();
+        final DoubleAdder sum = new DoubleAdder();
+        final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+        void add(double value) {
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        double mean() {
+            long n = count.sum();
+            return n > 0 ? sum.sum() / n : 0;
+        }
+    }
+
+    private final Logger logger = Logger.getInstance();
+    private final ConcurrentHashMap<String, Metric> metrics = new ConcurrentHashMap<>();
+    private final LongAdder callsReported = new LongAdder();
+    private final LongAdder poorCalls = new LongAdder();
+
+    private CallQualityStats() {}
+
+    public static CallQualityStats getInstance() {
+        if (instance == null) {
+            synchronized (CallQualityStats.class) {
+                if (instance == null) {
+                    instance = new CallQualityStats();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Ghi báo cáo của một bên trong cuộc gọi (mỗi bên gửi một báo cáo riêng)
+     *
+     * @throws IllegalArgumentException nếu báo cáo không có thời lượng hợp lệ
+     */
+    public void record(long userId, String callId, Map<?, ?> summary) {
+        Object duration = summary.get("durationMs");
+        if (!(duration instanceof Number) || ((Number) duration).doubleValue() <= 0) {
+            throw new IllegalArgumentException("Invalid call summary");
+        }
+
+        StringBuilder violations = new StringBuilder();
+        for (Map.Entry<?, ?> entry : summary.entrySet()) {
+            if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof Number)) {
+                continue;
+            }
+            String name = (String) entry.getKey();
+            double value = ((Number) entry.getValue()).doubleValue();
+            if (name.length() > MAX_NAME_LENGTH || !Double.isFinite(value)) {
+                continue;
+            }
+            Metric metric = metrics.get(name);
+            if (metric == null) {
+                if (metrics.size() >= MAX_METRICS) {
+                    continue;
+                }
+                metric = metrics.computeIfAbsent(name, key -> new Metric());
+            }
+            metric.add(value);
+
+            Double threshold = POOR_THRESHOLDS.get(name);
+            if (threshold != null && value > threshold) {
+                violations.append(' ').append(name).append('=').append(value);
+            }
+        }
+
+        callsReported.increment();
+        if (violations.length() > 0) {
+            poorCalls.increment();
+            logger.warn("Poor call quality " + callId + " (user " + userId + "):" + violations);
+        } else {
+            logger.debug("Call quality " + callId + " (user " + userId + ") ok");
+        }
+        if (callsReported.sum() % LOG_EVERY_CALLS == 0) {
+            logger.info(describe());
+        }
+    }
+
+    /**
+     * Trung bình các chỉ số chính trên mọi báo cáo
+     */
+    public String describe() {
+        StringBuilder text = new StringBuilder("Call quality: reports=").append(getCallsReported())
+                .append(" poor=").append(getPoorCalls());
+        for (String name : LOGGED_METRICS) {
+            Metric metric = metrics.get(name);
+            if (metric != null) {
+                text.append(String.format(" %s=%.1f", name, metric.mean()));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Tên chỉ số -> {số lần, trung bình, max}
+     */
+    public Map<String, double[]> snapshot() {
+        Map<String, double[]> result = new TreeMap<>();
+        metrics.forEach((name, metric) ->
+                result.put(name, new double[]{metric.count.sum(), metric.mean(), metric.max.get()}));
+        return result;
+    }
+
+    public long getCallsReported() { return callsReported.sum(); }
+    public long getPoorCalls() { return poorCalls.sum(); }
+}
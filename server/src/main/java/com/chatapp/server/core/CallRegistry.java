@@ -0,0 +1,394 @@
+package com.chatapp.server.core;
+
+import com.chatapp.common.protocol.MessageType;
+import com.chatapp.common.protocol.Packet;
+import com.chatapp.common.protocol.PacketBuilder;
+import com.chatapp.server.config.ConfigLoader;
+import com.chatapp.server.network.ClientHandler;
+import com.chatapp.server.util.Logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Trạng thái các cuộc gọi 1-1 đang diễn ra: RINGING -> CONNECTED -> ENDED (hoặc RINGING -> ENDED khi
+ * bị từ chối, hủy, hết giờ đổ chuông). Mọi chuyển trạng thái của một cuộc gọi đều khóa trên chính nó;
+ * mỗi user chỉ ở trong một cuộc gọi (activeByUser), nên server tự trả "Peer busy" mà không cần hỏi client.
+ *
+ * Glare (hai người gọi nhau cùng lúc): lời gọi tới sau được gộp vào cuộc gọi đang đổ chuông theo chiều
+ * ngược lại, coi như người kia đã nghe máy; hai yêu cầu của cùng một cặp user được xử lý tuần tự nhờ
+ * khóa phân dải theo cặp, nên luôn phát hiện được.
+ *
+ * Cuộc gọi đã kết thúc còn được giữ trong recent thêm RECENT_CALL_MS để nhận báo cáo chất lượng
+ * (CALL_INFO summary): chỉ caller/callee được gửi, mỗi người một lần cho mỗi cuộc gọi.
+ *
+ * Hết giờ đổ chuông dùng một TimerWheel chung, sự kiện được đẩy cho client qua ClientRegistry.
+ * Không có thread nào theo từng cuộc gọi. Ghi socket là blocking nên gói được chuẩn bị khi giữ khóa
+ * và chỉ gửi sau khi đã nhả khóa cặp/khóa cuộc gọi.
+ */
+public class CallRegistry {
+    private static CallRegistry instance;
+
+    private static final int PAIR_LOCKS = 256;
+    private static final long RECENT_CALL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    public enum State { RINGING, CONNECTED, ENDED }
+
+    /** Đẩy một gói cho user đang online */
+    interface Push {
+        boolean send(long userId, Packet packet);
+    }
+
+    public static final class Call {
+        private final String callId;
+        private final long callerId;
+        private final long calleeId;
+        private final boolean video;
+        private final String callerHost;
+        private final Integer callerPort;
+        private final long createdAt = System.currentTimeMillis();
+        private String calleeHost;
+        private Integer calleePort;
+        private State state = State.RINGING;
+        private long connectedAt;
+        private long endedAt;
+        private String endReason;
+        private TimerWheel.Timeout ringTimeout;
+        private boolean callerSummarized;
+        private boolean calleeSummarized;
+
+        private Call(String callId, long callerId, long calleeId, boolean video, String callerHost, Integer callerPort) {
+            this.callId = callId;
+            this.callerId = callerId;
+            this.calleeId = calleeId;
+            this.video = video;
+            this.callerHost = callerHost;
+            this.callerPort = callerPort;
+        }
+
+        public String getCallId() { return callId; }
+        public long getCallerId() { return callerId; }
+        public long getCalleeId() { return calleeId; }
+        public boolean isVideo() { return video; }
+        public String getCallerHost() { return callerHost; }
+        public Integer getCallerPort() { return callerPort; }
+        public long getCreatedAt() { return createdAt; }
+        public synchronized String getCalleeHost() { return calleeHost; }
+        public synchronized Integer getCalleePort() { return calleePort; }
+        public synchronized State getState() { return state; }
+        public synchronized long getConnectedAt() { return connectedAt; }
+        public synchronized long getEndedAt() { return endedAt; }
+        public synchronized String getEndReason() { return endReason; }
+
+        public long getPeerOf(long userId) {
+            return userId == callerId ? calleeId : callerId;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Call> calls = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Call> activeByUser = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Call> recent = new ConcurrentHashMap<>();
+    private final Object[] pairLocks = new Object[PAIR_LOCKS];
+    private final Logger logger = Logger.getInstance();
+    private final Push push;
+    private final long ringTimeoutMs;
+    private final long recentCallMs;
+    private final TimerWheel timer;
+
+    private final LongAdder callsStarted = new LongAdder();
+    private final LongAdder callsConnected = new LongAdder();
+    private final LongAdder ringTimeouts = new LongAdder();
+    private final LongAdder glares = new LongAdder();
+
+    private CallRegistry() {
+        this((userId, packet) -> {
+            ClientHandler client = ClientRegistry.getInstance().getClient(userId);
+            return client != null && client.sendPacket(packet);
+        }, TimeUnit.SECONDS.toMillis(ConfigLoader.getInstance().getIntProperty("call.ring.timeout.seconds", 45)));
+    }
+
+    CallRegistry(Push push, long ringTimeoutMs) {
+        this(push, ringTimeoutMs, RECENT_CALL_MS);
+    }
+
+    CallRegistry(Push push, long ringTimeoutMs, long recentCallMs) {
+        this.push = push;
+        this.ringTimeoutMs = ringTimeoutMs;
+        this.recentCallMs = recentCallMs;
+        this.timer = new TimerWheel("call-timer", 100, 512);
+        for (int i = 0; i < PAIR_LOCKS; i++) {
+            pairLocks[i] = new Object();
+        }
+    }
+
+    public static CallRegistry getInstance() {
+        if (instance == null) {
+            synchronized (CallRegistry.class) {
+                if (instance == null) {
+                    instance = new CallRegistry();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Bắt đầu gọi: đổ chuông bên kia, hoặc gộp vào cuộc gọi ngược chiều đang đổ chuông (glare)
+     *
+     * @return cuộc gọi mới (RINGING) hoặc cuộc gọi đã gộp (CONNECTED, người gọi là bên kia)
+     * @throws IllegalStateException nếu một trong hai đang bận, bên kia offline hoặc callId trùng
+     */
+    public Call request(long callerId, long calleeId, String callId, boolean video, String host, Integer mediaPort) {
+        if (callerId == calleeId) {
+            throw new IllegalStateException("Cannot call yourself");
+        }
+
+        Call call = null;
+        Call merged = null;
+        Packet accepted = null;
+        synchronized (pairLock(callerId, calleeId)) {
+            Call existing = activeByUser.get(calleeId);
+            if (existing != null && existing.callerId == calleeId && existing.calleeId == callerId) {
+                synchronized (existing) {
+                    if (existing.state == State.RINGING) {
+                        glares.increment();
+                        accepted = connect(existing, host, mediaPort);
+                        merged = existing;
+                    }
+                }
+            }
+            if (merged == null) {
+                call = register(callerId, calleeId, callId, video, host, mediaPort);
+            }
+        }
+        if (merged != null) {
+            push.send(merged.callerId, accepted);
+            logger.info("Call glare between " + callerId + " and " + calleeId + ": merged into " + merged.callId);
+            return merged;
+        }
+
+        boolean delivered = push.send(calleeId, PacketBuilder.create(MessageType.CALL_REQUEST)
+                .success(true)
+                .put("fromUserId", callerId)
+                .put("callId", callId)
+                .put("video", video)
+                .put("host", host)
+                .put("mediaPort", mediaPort)
+                .build());
+        String endedReason;
+        synchronized (call) {
+            if (!delivered && call.state != State.ENDED) {
+                finish(call, "offline");
+            }
+            endedReason = call.state == State.ENDED ? call.endReason : null;
+        }
+        if (!delivered) {
+            throw new IllegalStateException("Peer offline");
+        }
+        if (endedReason != null) {
+            // Người gọi hủy trước khi lời mời tới nơi: báo lại để CALL_END đến sau CALL_REQUEST
+            push.send(calleeId, signal(MessageType.CALL_END, call, callerId, endedReason));
+        }
+        callsStarted.increment();
+        return call;
+    }
+
+    /**
+     * Bên được gọi nghe máy
+     *
+     * @return false nếu cuộc gọi không còn đổ chuông (đã hủy, hết giờ...)
+     */
+    public boolean accept(long userId, String callId, String host, Integer mediaPort) {
+        Call call = calls.get(callId);
+        if (call == null) {
+            return false;
+        }
+        Packet accepted;
+        synchronized (call) {
+            if (call.state != State.RINGING || call.calleeId != userId) {
+                return false;
+            }
+            accepted = connect(call, host, mediaPort);
+        }
+        push.send(call.callerId, accepted);
+        return true;
+    }
+
+    /**
+     * Bên được gọi từ chối khi đang đổ chuông
+     */
+    public void reject(long userId, String callId, String reason) {
+        Call call = calls.get(callId);
+        if (call == null) {
+            return;
+        }
+        synchronized (call) {
+            // Từ chối tới sau khi đã nối (vd. client báo "busy" cho cuộc gọi đã gộp vì glare) thì bỏ qua
+            if (call.state != State.RINGING || call.calleeId != userId) {
+                return;
+            }
+            finish(call, reason != null ? reason : "rejected");
+        }
+        push.send(call.callerId, signal(MessageType.CALL_REJECT, call, userId, reason));
+    }
+
+    /**
+     * Một bên gác máy (hoặc người gọi hủy khi đang đổ chuông)
+     */
+    public void end(long userId, String callId, String reason) {
+        Call call = calls.get(callId);
+        if (call == null) {
+            return;
+        }
+        synchronized (call) {
+            if (call.state == State.ENDED || (userId != call.callerId && userId != call.calleeId)) {
+                return;
+            }
+            finish(call, reason != null ? reason : "hangup");
+        }
+        push.send(call.getPeerOf(userId), signal(MessageType.CALL_END, call, userId, call.getEndReason()));
+    }
+
+    /**
+     * User mất kết nối: kết thúc cuộc gọi của họ, báo bên kia
+     */
+    public void onDisconnect(long userId) {
+        Call call = activeByUser.get(userId);
+        if (call != null) {
+            end(userId, call.callId, "disconnected");
+        }
+    }
+
+    /**
+     * Giành quyền gửi báo cáo chất lượng cho cuộc gọi (đang diễn ra hoặc vừa kết thúc)
+     *
+     * @return false nếu không có cuộc gọi này, user không phải caller/callee, hoặc user đã gửi rồi
+     */
+    public boolean claimSummary(long userId, String callId) {
+        Call call = calls.get(callId);
+        if (call == null) {
+            call = recent.get(callId);
+        }
+        if (call == null) {
+            return false;
+        }
+        synchronized (call) {
+            if (userId == call.callerId && !call.callerSummarized) {
+                call.callerSummarized = true;
+                return true;
+            }
+            if (userId == call.calleeId && !call.calleeSummarized) {
+                call.calleeSummarized = true;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Cuộc gọi hiện tại của user (null nếu không có)
+     */
+    public Call getCall(long userId) {
+        return activeByUser.get(userId);
+    }
+
+    public void shutdown() {
+        timer.stop();
+    }
+
+    public int getActiveCalls() { return calls.size(); }
+    public long getCallsStarted() { return callsStarted.sum(); }
+    public long getCallsConnected() { return callsConnected.sum(); }
+    public long getRingTimeouts() { return ringTimeouts.sum(); }
+    public long getGlares() { return glares.sum(); }
+
+    /**
+     * Tạo cuộc gọi RINGING và giữ chỗ cho cả hai user (gọi khi đang giữ khóa cặp)
+     */
+    private Call register(long callerId, long calleeId, String callId, boolean video, String host, Integer mediaPort) {
+        Call call = new Call(callId, callerId, calleeId, video, host, mediaPort);
+        if (calls.putIfAbsent(callId, call) != null) {
+            throw new IllegalStateException("Duplicate call id");
+        }
+        if (activeByUser.putIfAbsent(callerId, call) != null) {
+            calls.remove(callId, call);
+            throw new IllegalStateException("Already in a call");
+        }
+        if (activeByUser.putIfAbsent(calleeId, call) != null) {
+            activeByUser.remove(callerId, call);
+            calls.remove(callId, call);
+            throw new IllegalStateException("Peer busy");
+        }
+        synchronized (call) {
+            call.ringTimeout = timer.schedule(() -> onRingTimeout(call), ringTimeoutMs);
+        }
+        return call;
+    }
+
+    // ===== Nội bộ (gọi khi đang giữ khóa của call) =====
+
+    /**
+     * @return gói CALL_ACCEPT cho người gọi, gửi sau khi nhả khóa
+     */
+    private Packet connect(Call call, String host, Integer mediaPort) {
+        call.state = State.CONNECTED;
+        call.connectedAt = System.currentTimeMillis();
+        call.calleeHost = host;
+        call.calleePort = mediaPort;
+        if (call.ringTimeout != null) {
+            call.ringTimeout.cancel();
+        }
+        callsConnected.increment();
+
+        return PacketBuilder.create(MessageType.CALL_ACCEPT)
+                .success(true)
+                .put("fromUserId", call.calleeId)
+                .put("callId", call.callId)
+                .put("host", host)
+                .put("mediaPort", mediaPort)
+                .build();
+    }
+
+    private void onRingTimeout(Call call) {
+        synchronized (call) {
+            if (call.state != State.RINGING) {
+                return;
+            }
+            ringTimeouts.increment();
+            finish(call, "timeout");
+        }
+        push.send(call.callerId, signal(MessageType.CALL_END, call, call.calleeId, "no-answer"));
+        push.send(call.calleeId, signal(MessageType.CALL_END, call, call.callerId, "timeout"));
+    }
+
+    private void finish(Call call, String reason) {
+        call.state = State.ENDED;
+        call.endedAt = System.currentTimeMillis();
+        call.endReason = reason;
+        if (call.ringTimeout != null) {
+            call.ringTimeout.cancel();
+        }
+        calls.remove(call.callId, call);
+        activeByUser.remove(call.callerId, call);
+        activeByUser.remove(call.calleeId, call);
+        recent.put(call.callId, call);
+        timer.schedule(() -> recent.remove(call.callId, call), recentCallMs);
+    }
+
+    private static Packet signal(MessageType type, Call call, long fromUserId, String reason) {
+        return PacketBuilder.create(type)
+                .success(true)
+                .put("fromUserId", fromUserId)
+                .put("callId", call.callId)
+                .put("reason", reason)
+                .build();
+    }
+
+    private Object pairLock(long a, long b) {
+        long low = Math.min(a, b);
+        long high = Math.max(a, b);
+        int hash = Long.hashCode(low * 31 + high);
+        return pairLocks[(hash ^ (hash >>> 16)) & (PAIR_LOCKS - 1)];
+    }
+}
@@ -35,6 +35,12 @@ public class ClientRegistry {
         }
     }
 
+    public void removeClient(Long userId, ClientHandler handler) {
+        if (userId != null && handler != null) {
+            clients.remove(userId, handler);
+        }
+    }
+
     public ClientHandler getClient(Long userId) {
         return userId != null ? clients.get(userId) : null;
     }
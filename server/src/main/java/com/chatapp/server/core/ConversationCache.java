@@ -0,0 +1,221 @@
+package com.chatapp.server.core;
+
+import com.chatapp.common.model.Message;
+import com.chatapp.server.config.ConfigLoader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache trong RAM giữ N message cuối của các cuộc trò chuyện đang hoạt động (LRU).
+ * Mỗi cuộc trò chuyện có một ring buffer; mở chat (trang mới nhất) được phục vụ
+ * trực tiếp từ đây mà không cần query MySQL.
+ */
+public class ConversationCache {
+    private static ConversationCache instance;
+    private final Map<String, Tail> tails;
+    private final int tailSize;
+
+    private ConversationCache() {
+        this(ConfigLoader.getInstance().getIntProperty("chat.cache.conversations", 5000),
+                ConfigLoader.getInstance().getIntProperty("chat.cache.tail.size", 200));
+    }
+
+    ConversationCache(int maxConversations, int tailSize) {
+        this.tailSize = tailSize;
+        this.tails = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tail> eldest) {
+                return size() > maxConversations;
+            }
+        };
+    }
+
+    public static ConversationCache getInstance() {
+        if (instance == null) {
+            synchronized (ConversationCache.class) {
+                if (instance == null) {
+                    instance = new ConversationCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Thêm message vừa lưu vào tail của cuộc trò chuyện (tạo tail mới nếu chưa có)
+     */
+    public void append(Message message) {
+        Tail tail;
+        synchronized (tails) {
+            tail = tails.get(message.getConversationId());
+            if (tail == null) {
+                // Tail mới chỉ chắc chắn đầy đủ từ message này trở đi
+                tail = new Tail(tailSize, message.getSequence());
+                tails.put(message.getConversationId(), tail);
+            }
+        }
+        tail.add(message);
+    }
+
+    /**
+     * Nạp tail từ trang mới nhất đọc ở DB.
+     *
+     * @param latest   các message mới nhất, tăng dần theo seq
+     * @param complete true nếu đây là toàn bộ lịch sử (DB trả về ít hơn limit)
+     */
+    public void seed(String conversationId, List<Message> latest, boolean complete) {
+        long floor = complete || latest.isEmpty() ? 0 : latest.get(0).getSequence();
+        Tail tail = new Tail(tailSize, floor);
+        for (Message message : latest) {
+            tail.add(message);
+        }
+        Tail current;
+        synchronized (tails) {
+            current = tails.putIfAbsent(conversationId, tail);
+        }
+        if (current != null) {
+            // Tail đã có (append() trong lúc đọc DB): gộp trang DB vào phía trước thay vì ghi đè
+            current.merge(latest, floor);
+        }
+    }
+
+    /**
+     * Lấy tối đa limit message có seq < beforeSeq; null nếu cache không đủ dữ liệu
+     */
+    public List<Message> getBefore(String conversationId, long beforeSeq, int limit) {
+        Tail tail = get(conversationId);
+        return tail != null ? tail.before(beforeSeq, limit) : null;
+    }
+
+    /**
+     * Lấy tối đa limit message có seq > afterSeq; null nếu cache không đủ dữ liệu
+     */
+    public List<Message> getAfter(String conversationId, long afterSeq, int limit) {
+        Tail tail = get(conversationId);
+        return tail != null ? tail.after(afterSeq, limit) : null;
+    }
+
+    private Tail get(String conversationId) {
+        synchronized (tails) {
+            return tails.get(conversationId);
+        }
+    }
+
+    /**
+     * Ring buffer các message cuối của một cuộc trò chuyện, tăng dần theo seq.
+     * floorSeq: mọi message có seq >= floorSeq đều nằm trong buffer.
+     */
+    private static class Tail {
+        private final Message[] ring;
+        private int start;
+        private int count;
+        private long floorSeq;
+
+        Tail(int capacity, long floorSeq) {
+            this.ring = new Message[capacity];
+            this.floorSeq = floorSeq;
+        }
+
+        synchronized void add(Message message) {
+            long seq = message.getSequence();
+            if (seq < floorSeq) {
+                return; // Cũ hơn phần cache đảm bảo, đã có trong DB
+            }
+
+            if (count == ring.length) {
+                // Bỏ message cũ nhất, tail chỉ còn đầy đủ từ message kế tiếp
+                floorSeq = ring[start].getSequence() + 1;
+                ring[start] = null;
+                start = (start + 1) % ring.length;
+                count--;
+                if (seq < floorSeq) {
+                    return;
+                }
+            }
+
+            // Thường là append cuối; chèn đúng vị trí nếu hai sender cấp seq xen kẽ
+            int pos = count;
+            while (pos > 0 && at(pos - 1).getSequence() > seq) {
+                ring[index(pos)] = at(pos - 1);
+                pos--;
+            }
+            ring[index(pos)] = message;
+            count++;
+        }
+
+        /**
+         * Gộp các message cũ hơn đọc từ DB (tăng dần, mọi seq >= olderFloor đến cuối danh sách)
+         * vào trước buffer và hạ floorSeq. Bỏ qua nếu giữa danh sách và buffer có khoảng trống.
+         */
+        synchronized void merge(List<Message> older, long olderFloor) {
+            if (olderFloor >= floorSeq) {
+                return;
+            }
+            if (!older.isEmpty() && older.get(older.size() - 1).getSequence() < floorSeq - 1) {
+                return; // Có message ở giữa không nằm trong cả hai
+            }
+
+            List<Message> merged = new ArrayList<>(older.size() + count);
+            for (Message message : older) {
+                if (message.getSequence() < floorSeq) {
+                    merged.add(message);
+                }
+            }
+            merged.addAll(slice(0, count));
+
+            // Giữ các message mới nhất nếu vượt dung lượng
+            int from = Math.max(0, merged.size() - ring.length);
+            floorSeq = from > 0 ? merged.get(from).getSequence() : olderFloor;
+            Arrays.fill(ring, null);
+            start = 0;
+            count = 0;
+            for (int i = from; i < merged.size(); i++) {
+                ring[count++] = merged.get(i);
+            }
+        }
+
+        synchronized List<Message> before(long beforeSeq, int limit) {
+            int end = count;
+            while (end > 0 && at(end - 1).getSequence() >= beforeSeq) {
+                end--;
+            }
+            int from = Math.max(0, end - limit);
+            // Không đủ limit message và cache không chứa phần đầu lịch sử -> phải đọc DB
+            if (end - from < limit && floorSeq > 0) {
+                return null;
+            }
+            return slice(from, end);
+        }
+
+        synchronized List<Message> after(long afterSeq, int limit) {
+            if (afterSeq + 1 < floorSeq) {
+                return null;
+            }
+            int from = 0;
+            while (from < count && at(from).getSequence() <= afterSeq) {
+                from++;
+            }
+            return slice(from, Math.min(count, from + limit));
+        }
+
+        private List<Message> slice(int from, int to) {
+            List<Message> result = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                result.add(at(i));
+            }
+            return result;
+        }
+
+        private Message at(int i) {
+            return ring[index(i)];
+        }
+
+        private int index(int i) {
+            return (start + i) % ring.length;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.chatapp.server.core;
+
+import com.chatapp.common.model.ConversationSummary;
+import com.chatapp.common.model.Message;
+import com.chatapp.server.config.ConfigLoader;
+import com.chatapp.server.database.dao.ConversationSummaryDAO;
+import com.chatapp.server.util.Logger;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Danh sách chat đã tính sẵn (tin nhắn cuối + số tin chưa đọc) cho từng user.
+ * Được cập nhật mỗi khi gửi tin và khi nhận read watermark:
+ * - user online: giữ toàn bộ danh sách trong RAM, GET_CONVERSATIONS trả về ngay;
+ * - bảng conversation_summaries: ghi write-behind, các cập nhật cùng (user, cuộc trò chuyện)
+ *   trong một chu kỳ được gộp thành một dòng.
+ * Khi nạp danh sách, các cập nhật chưa xuống DB (đang chờ hoặc đang ghi) được áp lên kết quả đọc DB
+ * sau khi đã đăng ký danh sách; áp theo sequence nên áp hai lần cũng không sai. Nếu có lượt flush
+ * xong trong lúc nạp thì nạp lại, nên thread request không phải tự flush toàn bộ.
+ */
+public class ConversationSummaries {
+    private static ConversationSummaries instance;
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+    private final ConcurrentHashMap<Long, Map<String, ConversationSummary>> loaded;
+    private final ConcurrentHashMap<String, Pending> pending;
+    private final ConcurrentHashMap<String, Pending> inFlight;
+    private final AtomicLong flushCount;
+    private final ConversationSummaryDAO summaryDAO;
+    private final ScheduledExecutorService flusher;
+    private final Logger logger = Logger.getInstance();
+
+    private ConversationSummaries() {
+        long intervalMs = ConfigLoader.getInstance().getIntProperty("chat.summary.flush.interval.ms", 2000);
+        this.loaded = new ConcurrentHashMap<>();
+        this.pending = new ConcurrentHashMap<>();
+        this.inFlight = new ConcurrentHashMap<>();
+        this.flushCount = new AtomicLong();
+        this.summaryDAO = new ConversationSummaryDAO();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "conversation-summary-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flush, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static ConversationSummaries getInstance() {
+        if (instance == null) {
+            synchronized (ConversationSummaries.class) {
+                if (instance == null) {
+                    instance = new ConversationSummaries();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Cập nhật danh sách chat của mọi thành viên cuộc trò chuyện khi có tin nhắn mới.
+     * Người gửi coi như đã đọc tới tin của chính mình.
+     */
+    public void onMessage(Message message, long[] participants) {
+        for (long userId : participants) {
+            boolean own = userId == message.getSenderId();
+            ConversationSummary last = fromMessage(message, userId, own ? 0 : 1);
+            Long readSeq = own ? message.getSequence() : null;
+
+            pending.merge(key(userId, message.getConversationId()),
+                    new Pending(userId, message.getConversationId(), last, readSeq), Pending::combine);
+
+            Map<String, ConversationSummary> summaries = loaded.get(userId);
+            if (summaries == null) {
+                continue;
+            }
+            synchronized (summaries) {
+                ConversationSummary current = summaries.get(message.getConversationId());
+                if (current == null) {
+                    // Cuộc trò chuyện mới: nạp lại (kèm tên/avatar) ở lần GET_CONVERSATIONS sau
+                    loaded.remove(userId, summaries);
+                    continue;
+                }
+                if (current.getLastSequence() != null && message.getSequence() <= current.getLastSequence()) {
+                    continue; // Đã áp khi nạp danh sách
+                }
+                current.setLastMessageId(message.getId());
+                current.setLastSenderId(message.getSenderId());
+                current.setLastContent(message.getContent());
+                current.setLastSequence(message.getSequence());
+                current.setLastMessageAt(message.getCreatedAt());
+                current.setUnreadCount(own ? 0 : current.getUnreadCount() + 1);
+            }
+        }
+    }
+
+    /**
+     * Cập nhật số tin chưa đọc theo watermark
+     */
+    public void onRead(Long userId, String conversationId, long readSeq) {
+        pending.merge(key(userId, conversationId),
+                new Pending(userId, conversationId, null, readSeq), Pending::combine);
+
+        Map<String, ConversationSummary> summaries = loaded.get(userId);
+        if (summaries == null) {
+            return;
+        }
+        synchronized (summaries) {
+            ConversationSummary current = summaries.get(conversationId);
+            if (current != null) {
+                current.setUnreadCount(unreadAfterRead(current.getUnreadCount(), current.getLastSequence(), readSeq));
+            }
+        }
+    }
+
+    /**
+     * Danh sách chat của user, mới nhất trước.
+     * Lần đầu (sau khi đăng nhập) đọc DB bằng một query, sau đó phục vụ từ RAM.
+     */
+    public List<ConversationSummary> getConversations(Long userId) throws SQLException {
+        Map<String, ConversationSummary> summaries = loaded.get(userId);
+
+        for (int attempt = 1; summaries == null; attempt++) {
+            long flushesBefore = flushCount.get();
+            Map<String, ConversationSummary> read = new HashMap<>();
+            for (ConversationSummary summary : summaryDAO.findByUser(userId)) {
+                read.put(summary.getConversationId(), summary);
+            }
+
+            boolean complete;
+            synchronized (read) {
+                // Đăng ký trước rồi mới áp cập nhật chưa xuống DB: cập nhật đến sau đó được onMessage/onRead áp trực tiếp
+                loaded.put(userId, read);
+                complete = applyUnflushed(userId, read);
+            }
+
+            if (attempt >= MAX_LOAD_ATTEMPTS) {
+                summaries = read; // DB lỗi liên tục: dùng kết quả hiện có, onMessage sẽ nạp lại khi cần
+            } else if (!complete) {
+                // Cuộc trò chuyện mới chưa có dòng trong DB (cần tên/avatar từ query): ghi phần của user này rồi đọc lại
+                loaded.remove(userId, read);
+                flushUser(userId);
+            } else if (flushCount.get() != flushesBefore) {
+                // Một lượt flush xong giữa lúc đọc DB và lúc áp: có thể thiếu cập nhật, đọc lại
+                loaded.remove(userId, read);
+            } else {
+                summaries = read;
+            }
+        }
+
+        List<ConversationSummary> result;
+        synchronized (summaries) {
+            result = new ArrayList<>(summaries.values());
+        }
+        result.sort(Comparator.comparing(ConversationSummary::getLastMessageAt,
+                Comparator.nullsLast(Comparator.reverseOrder())));
+        return result;
+    }
+
+    /**
+     * Bỏ danh sách trong RAM khi user ngắt kết nối
+     */
+    public void unload(Long userId) {
+        if (userId != null) {
+            loaded.remove(userId);
+        }
+    }
+
+    /**
+     * Áp các cập nhật đang ghi và đang chờ của user lên danh sách vừa đọc DB (gọi khi giữ khóa danh sách)
+     *
+     * @return false nếu có cuộc trò chuyện chưa có trong danh sách
+     */
+    private boolean applyUnflushed(Long userId, Map<String, ConversationSummary> summaries) {
+        boolean complete = true;
+        for (Map<String, Pending> source : List.of(inFlight, pending)) {
+            for (Pending update : source.values()) {
+                if (update.userId != userId) {
+                    continue;
+                }
+                ConversationSummary current = summaries.get(update.conversationId);
+                if (current == null) {
+                    complete &= update.last == null;
+                    continue;
+                }
+                if (update.last != null && (current.getLastSequence() == null
+                        || update.last.getLastSequence() > current.getLastSequence())) {
+                    current.setLastMessageId(update.last.getLastMessageId());
+                    current.setLastSenderId(update.last.getLastSenderId());
+                    current.setLastContent(update.last.getLastContent());
+                    current.setLastSequence(update.last.getLastSequence());
+                    current.setLastMessageAt(update.last.getLastMessageAt());
+                    current.setUnreadCount(current.getUnreadCount() + update.last.getUnreadCount());
+                }
+                if (update.readSeq != null) {
+                    current.setUnreadCount(unreadAfterRead(current.getUnreadCount(), current.getLastSequence(),
+                            update.readSeq));
+                }
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Ghi các cập nhật đang chờ xuống DB: một batch tin nhắn cuối, một batch watermark
+     */
+    public void flush() {
+        flush(null);
+    }
+
+    /**
+     * Chỉ ghi các cập nhật đang chờ của một user
+     */
+    private void flushUser(Long userId) {
+        flush(userId);
+    }
+
+    private synchronized void flush(Long userId) {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Pending> batch = new ArrayList<>();
+        for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+            if (userId != null && entry.getValue().userId != userId) {
+                continue;
+            }
+            // Đưa vào inFlight trước khi bỏ khỏi pending để lúc nào cũng thấy được ở một trong hai
+            inFlight.put(entry.getKey(), entry.getValue());
+            Pending update = pending.remove(entry.getKey());
+            if (update == null) {
+                inFlight.remove(entry.getKey());
+                continue;
+            }
+            inFlight.put(entry.getKey(), update);
+            batch.add(update);
+        }
+
+        Map<Long, List<ConversationSummary>> lastMessages = new HashMap<>();
+        Map<Long, Map<String, Long>> reads = new HashMap<>();
+        for (Pending update : batch) {
+            if (update.last != null) {
+                lastMessages.computeIfAbsent(update.userId, id -> new ArrayList<>()).add(update.last);
+            }
+            if (update.readSeq != null) {
+                reads.computeIfAbsent(update.userId, id -> new HashMap<>()).put(update.conversationId, update.readSeq);
+            }
+        }
+
+        try {
+            if (!lastMessages.isEmpty()) {
+                summaryDAO.upsertLastMessages(lastMessages);
+            }
+            if (!reads.isEmpty()) {
+                summaryDAO.applyReadWatermarks(reads);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to flush conversation summaries: " + e.getMessage(), e);
+            // Trả lại để lần sau ghi tiếp (gộp với các cập nhật mới hơn)
+            for (Pending update : batch) {
+                pending.merge(key(update.userId, update.conversationId), update, (newer, older) -> older.combine(newer));
+            }
+        } finally {
+            inFlight.clear();
+            flushCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Dừng thread nền và ghi nốt phần còn lại (gọi khi tắt server)
+     */
+    public void shutdown() {
+        flusher.shutdown();
+        flush();
+    }
+
+    private static int unreadAfterRead(int unread, Long lastSeq, long readSeq) {
+        if (lastSeq == null || readSeq >= lastSeq) {
+            return 0;
+        }
+        return (int) Math.min(unread, lastSeq - readSeq);
+    }
+
+    private static ConversationSummary fromMessage(Message message, long userId, int unreadDelta) {
+        ConversationSummary summary = new ConversationSummary();
+        summary.setConversationId(message.getConversationId());
+        if (message.getGroupId() != null) {
+            summary.setGroupId(message.getGroupId());
+        } else {
+            summary.setPeerId(userId == message.getSenderId() ? message.getReceiverId() : message.getSenderId());
+        }
+        summary.setLastMessageId(message.getId());
+        summary.setLastSenderId(message.getSenderId());
+        summary.setLastContent(message.getContent());
+        summary.setLastSequence(message.getSequence());
+        summary.setLastMessageAt(message.getCreatedAt());
+        summary.setUnreadCount(unreadDelta);
+        return summary;
+    }
+
+    private static String key(Long userId, String conversationId) {
+        return userId + ":" + conversationId;
+    }
+
+    /**
+     * Cập nhật chưa ghi DB của một (user, cuộc trò chuyện).
+     * last.unreadCount là số tin chưa đọc cần cộng thêm.
+     */
+    private static class Pending {
+        private final long userId;
+        private final String conversationId;
+        private final ConversationSummary last;
+        private final Long readSeq;
+
+        Pending(long userId, String conversationId, ConversationSummary last, Long readSeq) {
+            this.userId = userId;
+            this.conversationId = conversationId;
+            this.last = last;
+            this.readSeq = readSeq;
+        }
+
+        /**
+         * Gộp cập nhật cũ (this) với cập nhật mới hơn
+         */
+        Pending combine(Pending newer) {
+            ConversationSummary merged = newer.last != null ? newer.last : last;
+            Long read = readSeq == null ? newer.readSeq
+                    : newer.readSeq == null ? readSeq : Math.max(readSeq, newer.readSeq);
+
+            if (merged != null) {
+                int unread = (last != null ? last.getUnreadCount() : 0)
+                        + (newer.last != null ? newer.last.getUnreadCount() : 0);
+                if (read != null) {
+                    unread = unreadAfterRead(unread, merged.getLastSequence(), read);
+                }
+                merged = copyOf(merged);
+                merged.setUnreadCount(unread);
+            }
+            return new Pending(userId, conversationId, merged, read);
+        }
+
+        private static ConversationSummary copyOf(ConversationSummary source) {
+            ConversationSummary copy = new ConversationSummary();
+            copy.setConversationId(source.getConversationId());
+            copy.setPeerId(source.getPeerId());
+            copy.setGroupId(source.getGroupId());
+            copy.setLastMessageId(source.getLastMessageId());
+            copy.setLastSenderId(source.getLastSenderId());
+            copy.setLastContent(source.getLastContent());
+            copy.setLastSequence(source.getLastSequence());
+            copy.setLastMessageAt(source.getLastMessageAt());
+            copy.setUnreadCount(source.getUnreadCount());
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.chatapp.server.core;
+
+import com.chatapp.server.config.ConfigLoader;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vé download cho cổng truyền file: HMAC-SHA256 của (resource, hạn dùng) với khóa sinh lúc khởi động.
+ * Không lưu trạng thái; client dùng lại vé cho nhiều range (tải tiếp, tua video) tới khi hết hạn.
+ */
+public class DownloadTickets {
+    private static DownloadTickets instance;
+    private final SecretKeySpec key;
+    private final long ttlMs;
+
+    private DownloadTickets() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, "HmacSHA256");
+        this.ttlMs = TimeUnit.MINUTES.toMillis(
+                ConfigLoader.getInstance().getIntProperty("file.download.ticket.ttl.minutes", 60));
+    }
+
+    public static DownloadTickets getInstance() {
+        if (instance == null) {
+            synchronized (DownloadTickets.class) {
+                if (instance == null) {
+                    instance = new DownloadTickets();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Thời điểm hết hạn cho vé cấp bây giờ
+     */
+    public long newExpiry() {
+        return System.currentTimeMillis() + ttlMs;
+    }
+
+    /**
+     * Cấp vé cho resource (vd. "file:12", "avatar:5_abc.png")
+     */
+    public String issue(String resource, long expires) {
+        return sign(resource + "|" + expires);
+    }
+
+    /**
+     * Kiểm tra vé còn hạn và đúng chữ ký
+     */
+    public boolean verify(String resource, long expires, String ticket) {
+        if (resource == null || ticket == null || expires < System.currentTimeMillis()) {
+            return false;
+        }
+        byte[] expected = sign(resource + "|" + expires).getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, ticket.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private String sign(String value) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : mac.doFinal(value.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+}
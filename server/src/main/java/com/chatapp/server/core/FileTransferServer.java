@@ -0,0 +1,62 @@
+package com.chatapp.server.core;
+
+import com.chatapp.server.config.ConfigLoader;
+import com.chatapp.server.network.FileTransferConnection;
+import com.chatapp.server.util.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Cổng truyền file nhị phân, tách khỏi kênh JSON để bytes của file
+ * không phải encode Base64 và không chặn tin nhắn của client.
+ * Dùng ServerSocketChannel để kết nối có SocketChannel, cho phép download bằng transferTo.
+ */
+public class FileTransferServer {
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+    private final int port;
+    private final Logger logger = Logger.getInstance();
+
+    public FileTransferServer() {
+        this.port = ConfigLoader.getInstance().getIntProperty("file.transfer.port", 8889);
+    }
+
+    /**
+     * Chạy vòng accept trên thread nền
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        running = true;
+        logger.info("File transfer server started on port " + port);
+
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (running) {
+                    SocketChannel channel = serverChannel.accept();
+                    new Thread(new FileTransferConnection(channel), "file-transfer").start();
+                }
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("File transfer server error", e);
+                }
+            }
+        }, "file-transfer-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            logger.error("Error stopping file transfer server", e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.chatapp.server.core;
+
+import com.chatapp.server.config.ConfigLoader;
+import com.chatapp.server.database.dao.GroupDAO;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache danh sách thành viên nhóm (LRU).
+ * Giá trị là mảng long bất biến, được thay mới khi thành viên thay đổi,
+ * nên fan-out có thể duyệt mà không cần khóa và không phải query DB cho mỗi tin nhắn.
+ * Danh sách đọc từ DB chỉ được cache nếu không có invalidate() nào xảy ra trong lúc đọc.
+ */
+public class GroupMemberCache {
+    private static GroupMemberCache instance;
+    private final Map<Long, long[]> members;
+    private final GroupDAO groupDAO;
+    private long version; // Tăng mỗi lần invalidate(), bảo vệ bởi khóa members
+
+    private GroupMemberCache() {
+        int maxGroups = ConfigLoader.getInstance().getIntProperty("chat.cache.groups", 1000);
+        this.groupDAO = new GroupDAO();
+        this.members = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, long[]> eldest) {
+                return size() > maxGroups;
+            }
+        };
+    }
+
+    public static GroupMemberCache getInstance() {
+        if (instance == null) {
+            synchronized (GroupMemberCache.class) {
+                if (instance == null) {
+                    instance = new GroupMemberCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Lấy ID thành viên của nhóm (nạp từ DB nếu chưa có trong cache)
+     */
+    public long[] getMembers(Long groupId) throws SQLException {
+        synchronized (members) {
+            long[] cached = members.get(groupId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        long version;
+        synchronized (members) {
+            version = this.version;
+        }
+        long[] loaded = groupDAO.findMemberIds(groupId);
+        synchronized (members) {
+            // invalidate() trong lúc đọc DB: danh sách vừa đọc có thể đã cũ, không đưa vào cache
+            if (version != this.version) {
+                return loaded;
+            }
+            members.putIfAbsent(groupId, loaded);
+            return members.get(groupId);
+        }
+    }
+
+    /**
+     * Kiểm tra user có thuộc nhóm không
+     */
+    public boolean isMember(Long groupId, Long userId) throws SQLException {
+        for (long memberId : getMembers(groupId)) {
+            if (memberId == userId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Bỏ cache khi thành viên nhóm thay đổi
+     */
+    public void invalidate(Long groupId) {
+        synchronized (members) {
+            members.remove(groupId);
+            version++;
+        }
+    }
+}
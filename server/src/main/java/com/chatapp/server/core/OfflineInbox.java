@@ -0,0 +1,249 @@
+package com.chatapp.server.core;
+
+import com.chatapp.common.model.Message;
+import com.chatapp.server.config.ConfigLoader;
+import com.chatapp.server.database.dao.OfflineMessageDAO;
+import com.chatapp.server.util.Logger;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hộp thư offline theo từng user, giới hạn bộ nhớ.
+ * Khi một user vượt quá giới hạn, phần trong RAM của user đó được đẩy xuống bảng offline_messages
+ * bằng một batch insert trên thread nền (không chặn thread gửi tin). Khi tổng bộ nhớ vượt ngưỡng,
+ * các hộp thư lớn nhất bị đẩy xuống cho tới khi tổng về dưới 3/4 ngưỡng. Nếu DB lỗi và tổng chạm
+ * hard limit thì message mới không được giữ trong hộp thư nữa (vẫn nằm trong bảng messages, client
+ * lấy lại qua lịch sử). Phần trong DB luôn cũ hơn phần trong RAM, nên khi drain: take() chờ các lô
+ * đang ghi xong, đọc DB, rồi mới giao phần RAM.
+ */
+public class OfflineInbox {
+    private static OfflineInbox instance;
+    private static final int LOG_EVERY_DROPS = 1000;
+
+    private final ConcurrentHashMap<Long, Inbox> inboxes;
+    private final OfflineMessageDAO offlineMessageDAO;
+    private final ExecutorService spillExecutor;
+    private final AtomicInteger totalInMemory;
+    private final AtomicInteger spillingInMemory;
+    private final AtomicBoolean evicting;
+    private final AtomicLong dropped;
+    private final int perUserLimit;
+    private final int globalLimit;
+    private final int hardLimit;
+    private final Logger logger = Logger.getInstance();
+
+    private OfflineInbox() {
+        ConfigLoader config = ConfigLoader.getInstance();
+        this.inboxes = new ConcurrentHashMap<>();
+        this.offlineMessageDAO = new OfflineMessageDAO();
+        this.spillExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "offline-spill");
+            t.setDaemon(true);
+            return t;
+        });
+        this.totalInMemory = new AtomicInteger();
+        this.spillingInMemory = new AtomicInteger();
+        this.evicting = new AtomicBoolean();
+        this.dropped = new AtomicLong();
+        this.perUserLimit = config.getIntProperty("chat.offline.user.memory.limit", 200);
+        this.globalLimit = config.getIntProperty("chat.offline.total.memory.limit", 100000);
+        this.hardLimit = Math.max(globalLimit,
+                config.getIntProperty("chat.offline.total.memory.hard.limit", globalLimit * 2));
+    }
+
+    public static OfflineInbox getInstance() {
+        if (instance == null) {
+            synchronized (OfflineInbox.class) {
+                if (instance == null) {
+                    instance = new OfflineInbox();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Thêm message chờ giao cho user đang offline
+     */
+    public void enqueue(Long userId, Message message) {
+        if (totalInMemory.get() >= hardLimit) {
+            // DB không theo kịp (hoặc lỗi): không giữ thêm trong RAM, message vẫn có trong lịch sử
+            long count = dropped.incrementAndGet();
+            if (count % LOG_EVERY_DROPS == 1) {
+                logger.warn("Offline inbox full, " + count + " messages not queued (user " + userId + ")");
+            }
+            return;
+        }
+
+        while (true) {
+            Inbox inbox = inboxes.computeIfAbsent(userId, id -> new Inbox());
+
+            synchronized (inbox) {
+                if (inbox.closed) {
+                    continue; // Vừa bị take() lấy đi, tạo hộp mới
+                }
+                inbox.memory.add(message);
+                totalInMemory.incrementAndGet();
+                if (inbox.memory.size() >= perUserLimit) {
+                    spillAsync(userId, inbox);
+                }
+                break;
+            }
+        }
+
+        if (totalInMemory.get() - spillingInMemory.get() >= globalLimit) {
+            evictLargest();
+        }
+    }
+
+    /**
+     * Lấy và xóa phần hộp thư trong RAM của user, sau khi các lô đang ghi xuống DB đã xong
+     * (phần đã đẩy xuống DB được đọc riêng qua OfflineMessageDAO)
+     */
+    public List<Message> take(Long userId) {
+        Inbox inbox = inboxes.remove(userId);
+        if (inbox == null) {
+            return new ArrayList<>();
+        }
+
+        synchronized (inbox) {
+            inbox.closed = true;
+            while (inbox.spilling > 0) {
+                try {
+                    inbox.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            totalInMemory.addAndGet(-inbox.memory.size());
+            return inbox.memory;
+        }
+    }
+
+    /**
+     * Đẩy toàn bộ hộp thư trong RAM xuống DB (gọi khi tắt server)
+     */
+    public void flushAll() {
+        spillExecutor.shutdown();
+        try {
+            spillExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Map.Entry<Long, Inbox> entry : inboxes.entrySet()) {
+            Inbox inbox = entry.getValue();
+            synchronized (inbox) {
+                if (inbox.memory.isEmpty()) {
+                    continue;
+                }
+                try {
+                    offlineMessageDAO.insertBatch(entry.getKey(), inbox.memory);
+                    totalInMemory.addAndGet(-inbox.memory.size());
+                    inbox.memory = new ArrayList<>();
+                } catch (SQLException e) {
+                    logger.error("Failed to flush offline inbox for user " + entry.getKey() + ": " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    public int getTotalInMemory() { return totalInMemory.get(); }
+    public long getDropped() { return dropped.get(); }
+
+    /**
+     * Tổng bộ nhớ vượt ngưỡng: đẩy các hộp thư lớn nhất xuống DB tới khi phần chưa ghi còn dưới 3/4 ngưỡng.
+     * Kích thước đọc không khóa nên thứ tự chỉ gần đúng; chỉ một thread chọn hộp thư tại một thời điểm.
+     */
+    private void evictLargest() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int toFree = totalInMemory.get() - spillingInMemory.get() - globalLimit * 3 / 4;
+            if (toFree <= 0) {
+                return;
+            }
+
+            List<Map.Entry<Long, Inbox>> largest = new ArrayList<>(inboxes.entrySet());
+            largest.sort(Comparator.comparingInt((Map.Entry<Long, Inbox> entry) -> entry.getValue().memory.size())
+                    .reversed());
+            for (Map.Entry<Long, Inbox> entry : largest) {
+                if (toFree <= 0) {
+                    break;
+                }
+                Inbox inbox = entry.getValue();
+                synchronized (inbox) {
+                    if (!inbox.closed && !inbox.memory.isEmpty()) {
+                        toFree -= inbox.memory.size();
+                        spillAsync(entry.getKey(), inbox);
+                    }
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Tách phần trong RAM thành một lô và ghi xuống DB trên thread nền (gọi khi đang giữ khóa inbox)
+     */
+    private void spillAsync(Long userId, Inbox inbox) {
+        List<Message> batch = inbox.memory;
+        inbox.memory = new ArrayList<>();
+        inbox.spilling++;
+        spillingInMemory.addAndGet(batch.size());
+        try {
+            spillExecutor.execute(() -> spill(userId, inbox, batch));
+        } catch (RejectedExecutionException e) {
+            // Đang tắt server: giữ lại để flushAll() ghi
+            restore(inbox, batch);
+        }
+    }
+
+    /**
+     * Ghi một lô xuống DB; nếu DB lỗi thì trả lô về đầu hộp thư để không mất message
+     */
+    private void spill(Long userId, Inbox inbox, List<Message> batch) {
+        try {
+            offlineMessageDAO.insertBatch(userId, batch);
+            synchronized (inbox) {
+                inbox.spilling--;
+                spillingInMemory.addAndGet(-batch.size());
+                totalInMemory.addAndGet(-batch.size());
+                inbox.notifyAll();
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to spill offline inbox for user " + userId + ": " + e.getMessage(), e);
+            restore(inbox, batch);
+        }
+    }
+
+    private void restore(Inbox inbox, List<Message> batch) {
+        synchronized (inbox) {
+            inbox.memory.addAll(0, batch);
+            inbox.spilling--;
+            spillingInMemory.addAndGet(-batch.size());
+            inbox.notifyAll();
+        }
+    }
+
+    private static class Inbox {
+        private List<Message> memory = new ArrayList<>();
+        private int spilling;
+        private boolean closed;
+    }
+}
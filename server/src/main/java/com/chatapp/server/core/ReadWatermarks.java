@@ -0,0 +1,104 @@
+package com.chatapp.server.core;
+
+import com.chatapp.server.config.ConfigLoader;
+import com.chatapp.server.database.dao.ReadReceiptDAO;
+import com.chatapp.server.util.Logger;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watermark đã đọc (read-up-to sequence) với write-behind.
+ * Các read receipt chỉ cập nhật giá trị lớn nhất trong RAM (key = userId + conversationId);
+ * một thread nền ghi các watermark đã thay đổi xuống DB theo chu kỳ bằng một batch,
+ * nên đọc 500 tin nhắn liên tiếp chỉ thành một lần ghi.
+ */
+public class ReadWatermarks {
+    private static ReadWatermarks instance;
+    private final ConcurrentHashMap<String, Long> dirty;
+    private final ReadReceiptDAO readReceiptDAO;
+    private final ScheduledExecutorService flusher;
+    private final Logger logger = Logger.getInstance();
+
+    private ReadWatermarks() {
+        long intervalMs = ConfigLoader.getInstance().getIntProperty("chat.read.flush.interval.ms", 2000);
+        this.dirty = new ConcurrentHashMap<>();
+        this.readReceiptDAO = new ReadReceiptDAO();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "read-watermark-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flush, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static ReadWatermarks getInstance() {
+        if (instance == null) {
+            synchronized (ReadWatermarks.class) {
+                if (instance == null) {
+                    instance = new ReadWatermarks();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Ghi nhận user đã đọc tới readSeq trong cuộc trò chuyện (chỉ tăng, không lùi)
+     */
+    public void advance(Long userId, String conversationId, long readSeq) {
+        dirty.merge(key(userId, conversationId), readSeq, Math::max);
+    }
+
+    /**
+     * Watermark chưa ghi xuống DB (null nếu không có thay đổi đang chờ)
+     */
+    public Long getPending(Long userId, String conversationId) {
+        return dirty.get(key(userId, conversationId));
+    }
+
+    /**
+     * Ghi các watermark đang chờ xuống DB trong một batch
+     */
+    public void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        Map<String, Long> snapshot = new HashMap<>(dirty);
+        Map<Long, Map<String, Long>> batch = new HashMap<>();
+        for (Map.Entry<String, Long> entry : snapshot.entrySet()) {
+            int separator = entry.getKey().indexOf(':');
+            Long userId = Long.parseLong(entry.getKey().substring(0, separator));
+            String conversationId = entry.getKey().substring(separator + 1);
+            batch.computeIfAbsent(userId, id -> new HashMap<>()).put(conversationId, entry.getValue());
+        }
+
+        try {
+            readReceiptDAO.upsertBatch(batch);
+            // Chỉ xóa nếu không bị tăng thêm trong lúc đang ghi
+            for (Map.Entry<String, Long> entry : snapshot.entrySet()) {
+                dirty.remove(entry.getKey(), entry.getValue());
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to flush read watermarks: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Dừng thread nền và ghi nốt phần còn lại (gọi khi tắt server)
+     */
+    public void shutdown() {
+        flusher.shutdown();
+        flush();
+    }
+
+    private static String key(Long userId, String conversationId) {
+        return userId + ":" + conversationId;
+    }
+}
@@ -0,0 +1,59 @@
+package com.chatapp.server.core;
+
+import com.chatapp.common.model.Message;
+import com.chatapp.server.config.ConfigLoader;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cửa sổ giới hạn các clientMessageId gần đây để loại bỏ message gửi lại (retransmit).
+ * Key = senderId + clientMessageId, value = future hoàn tất khi lần đầu đã lưu DB (có id, sequence),
+ * để lần gửi lại nhận đúng ack của lần đầu mà không cần query DB; bản gửi lại tới khi lần đầu
+ * còn đang lưu thì chờ future thay vì ack message chưa có sequence.
+ */
+public class RecentMessageIds {
+    private static RecentMessageIds instance;
+    private final Map<String, CompletableFuture<Message>> window;
+
+    private RecentMessageIds() {
+        int capacity = ConfigLoader.getInstance().getIntProperty("chat.dedup.window.size", 10000);
+        this.window = new LinkedHashMap<>(capacity, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Message>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public static RecentMessageIds getInstance() {
+        if (instance == null) {
+            synchronized (RecentMessageIds.class) {
+                if (instance == null) {
+                    instance = new RecentMessageIds();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Giữ chỗ cho message; trả về future của lần đầu nếu đây là bản gửi lại, null nếu là message mới
+     */
+    public synchronized CompletableFuture<Message> putIfAbsent(Long senderId, String clientMessageId,
+                                                               CompletableFuture<Message> pending) {
+        return window.putIfAbsent(key(senderId, clientMessageId), pending);
+    }
+
+    /**
+     * Bỏ chỗ đã giữ (khi lưu thất bại, để client có thể gửi lại)
+     */
+    public synchronized void remove(Long senderId, String clientMessageId, CompletableFuture<Message> pending) {
+        window.remove(key(senderId, clientMessageId), pending);
+    }
+
+    private String key(Long senderId, String clientMessageId) {
+        return senderId + ":" + clientMessageId;
+    }
+}
@@ -0,0 +1,154 @@
+package com.chatapp.server.core;
+
+import com.chatapp.common.model.Message;
+import com.chatapp.server.config.ConfigLoader;
+import com.chatapp.server.database.dao.SearchIndexDAO;
+import com.chatapp.server.database.dao.SearchIndexDAO.Posting;
+import com.chatapp.server.util.Logger;
+import com.chatapp.server.util.SearchTokenizer;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inverted index tăng dần cho tìm kiếm tin nhắn, theo từng cuộc trò chuyện.
+ * Message mới được tách từ ngay khi lưu và đưa vào segment trong RAM (tìm được ngay);
+ * một thread nền định kỳ gộp segment này vào bảng message_terms bằng một batch.
+ */
+public class SearchIndex {
+    private static SearchIndex instance;
+    private final SearchIndexDAO searchIndexDAO;
+    private final ScheduledExecutorService merger;
+    private final Logger logger = Logger.getInstance();
+
+    // Segment đang nhận posting mới và segment đang được ghi xuống DB
+    private Map<String, List<Posting>> live = new HashMap<>();
+    private Map<String, List<Posting>> merging = new HashMap<>();
+
+    private SearchIndex() {
+        long intervalMs = ConfigLoader.getInstance().getIntProperty("chat.search.merge.interval.ms", 5000);
+        this.searchIndexDAO = new SearchIndexDAO();
+        this.merger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "search-index-merger");
+            t.setDaemon(true);
+            return t;
+        });
+        this.merger.scheduleWithFixedDelay(this::merge, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static SearchIndex getInstance() {
+        if (instance == null) {
+            synchronized (SearchIndex.class) {
+                if (instance == null) {
+                    instance = new SearchIndex();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Đưa message vừa lưu vào index
+     */
+    public void add(Message message) {
+        Map<String, Integer> terms = SearchTokenizer.tokenize(message.getContent());
+        if (terms.isEmpty()) {
+            return;
+        }
+
+        List<Posting> postings = new ArrayList<>(terms.size());
+        for (Map.Entry<String, Integer> term : terms.entrySet()) {
+            postings.add(new Posting(term.getKey(), message.getConversationId(), message.getId(), term.getValue()));
+        }
+
+        synchronized (this) {
+            live.computeIfAbsent(message.getConversationId(), cid -> new ArrayList<>()).addAll(postings);
+        }
+    }
+
+    /**
+     * Tìm message trong cuộc trò chuyện, kết hợp kết quả từ DB và segment chưa gộp.
+     *
+     * @return ID message xếp theo độ liên quan giảm dần (cùng điểm thì mới hơn trước)
+     */
+    public List<Long> search(String conversationId, String query, int limit) throws SQLException {
+        Collection<String> terms = SearchTokenizer.tokenize(query).keySet();
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, Integer> scores = new HashMap<>(searchIndexDAO.search(conversationId, terms, limit));
+
+        // Segment trong RAM: matched * 1000 + tf, giống cách tính ở DB
+        Map<Long, Integer> recent = new LinkedHashMap<>();
+        synchronized (this) {
+            scoreSegment(merging.get(conversationId), terms, recent);
+            scoreSegment(live.get(conversationId), terms, recent);
+        }
+        recent.forEach((id, score) -> scores.merge(id, score, Math::max));
+
+        List<Long> ranked = new ArrayList<>(scores.keySet());
+        ranked.sort((a, b) -> {
+            int byScore = Integer.compare(scores.get(b), scores.get(a));
+            return byScore != 0 ? byScore : Long.compare(b, a);
+        });
+        return ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked;
+    }
+
+    private void scoreSegment(List<Posting> postings, Collection<String> terms, Map<Long, Integer> scores) {
+        if (postings == null) {
+            return;
+        }
+        for (Posting posting : postings) {
+            if (terms.contains(posting.getTerm())) {
+                scores.merge(posting.getMessageId(), 1000 + posting.getTf(), Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Gộp segment trong RAM vào bảng message_terms (một batch cho cả segment)
+     */
+    public void merge() {
+        List<Posting> batch = new ArrayList<>();
+        synchronized (this) {
+            if (live.isEmpty()) {
+                return;
+            }
+            merging = live;
+            live = new HashMap<>();
+            merging.values().forEach(batch::addAll);
+        }
+
+        try {
+            searchIndexDAO.insertPostings(batch);
+            synchronized (this) {
+                merging = new HashMap<>();
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to merge search segment: " + e.getMessage(), e);
+            // Trả segment về để lần gộp sau thử lại
+            synchronized (this) {
+                merging.forEach((cid, postings) ->
+                        live.computeIfAbsent(cid, k -> new ArrayList<>()).addAll(0, postings));
+                merging = new HashMap<>();
+            }
+        }
+    }
+
+    /**
+     * Dừng thread nền và gộp nốt segment còn lại (gọi khi tắt server)
+     */
+    public void shutdown() {
+        merger.shutdown();
+        merge();
+    }
+}
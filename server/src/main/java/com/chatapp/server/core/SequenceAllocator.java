@@ -0,0 +1,65 @@
+package com.chatapp.server.core;
+
+import com.chatapp.server.config.ConfigLoader;
+import com.chatapp.server.database.dao.SequenceDAO;
+
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cấp phát sequence tăng dần theo từng cuộc trò chuyện.
+ * Sequence được giữ trong RAM và chỉ ghi xuống DB theo block, nên mỗi message
+ * không cần một lần lock row. Khi server restart, phần còn lại của block cũ bị bỏ qua:
+ * sequence có thể có khoảng trống nhưng luôn tăng dần.
+ */
+public class SequenceAllocator {
+    private static SequenceAllocator instance;
+    private final ConcurrentHashMap<String, Block> blocks;
+    private final SequenceDAO sequenceDAO;
+    private final int blockSize;
+
+    private SequenceAllocator() {
+        this(new SequenceDAO(), ConfigLoader.getInstance().getIntProperty("chat.sequence.block.size", 100));
+    }
+
+    SequenceAllocator(SequenceDAO sequenceDAO, int blockSize) {
+        this.blocks = new ConcurrentHashMap<>();
+        this.sequenceDAO = sequenceDAO;
+        this.blockSize = blockSize;
+    }
+
+    public static SequenceAllocator getInstance() {
+        if (instance == null) {
+            synchronized (SequenceAllocator.class) {
+                if (instance == null) {
+                    instance = new SequenceAllocator();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Lấy sequence tiếp theo của cuộc trò chuyện
+     */
+    public long next(String conversationId) throws SQLException {
+        Block block = blocks.computeIfAbsent(conversationId, id -> new Block());
+
+        synchronized (block) {
+            if (block.next > block.limit) {
+                long highWater = sequenceDAO.reserveBlock(conversationId, blockSize);
+                block.next = highWater - blockSize + 1;
+                block.limit = highWater;
+            }
+            return block.next++;
+        }
+    }
+
+    /**
+     * Block sequence đã đặt trước: [next, limit]
+     */
+    private static class Block {
+        private long next = 1;
+        private long limit = 0;
+    }
+}
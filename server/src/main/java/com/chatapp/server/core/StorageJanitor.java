@@ -0,0 +1,339 @@
+package com.chatapp.server.core;
+
+import com.chatapp.server.config.ConfigLoader;
+import com.chatapp.server.database.dao.FileDAO;
+import com.chatapp.server.service.FileStorageService;
+import com.chatapp.server.util.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+/**
+ * Dọn file không còn ai tham chiếu trong thư mục upload, chạy nền với độ ưu tiên thấp:
+ * - avatars/: avatar không còn là avatar_url của user hay nhóm nào (avatar cũ sau khi đổi)
+ * - avatars/thumbs/: thumbnail của avatar đã bị xóa
+ * - bảng files: file upload xong nhưng không tin nhắn nào dùng sau orphan.file.hours (giảm ref_count blob)
+ * - blobs/: blob có ref_count = 0 hoặc không có dòng file_blobs (upload hỏng giữa chừng)
+ * - tmp/: file .part không thuộc phiên upload nào (phiên mất khi server khởi động lại)
+ * Thư mục được duyệt dần, mỗi lô đối chiếu DB bằng một query rồi nghỉ một khoảng, nên không
+ * chiếm I/O và kết nối DB của request thường. File mới hơn min.age không bị đụng tới, vì avatar
+ * vừa upload chỉ được gán vào profile ở request sau. Lô blob được xử lý dưới write lock của kho blob
+ * (upload giữ read lock từ storeBlob tới khi tạo tham chiếu) và kiểm tra lại thời gian sửa ngay trước khi xóa.
+ * Số byte/file thu hồi theo từng khu vực có ở snapshot()/describe(), cuối mỗi lượt được ghi log.
+ */
+public class StorageJanitor {
+    private static StorageJanitor instance;
+
+    private final FileStorageService fileStorage;
+    private final FileDAO fileDAO;
+    private final ScheduledExecutorService scheduler;
+    private final int batchSize;
+    private final long batchDelayMs;
+    private final long minAgeMs;
+    private final long orphanFileAgeMs;
+    private final Logger logger = Logger.getInstance();
+
+    /** Khu vực dọn, dùng cho thống kê */
+    public enum Area { AVATARS, THUMBNAILS, BLOBS, TEMP }
+
+    private final LongAdder[] reclaimedBytes = newAdders();
+    private final LongAdder[] reclaimedFiles = newAdders();
+    private final LongAdder orphanFilesRemoved = new LongAdder();
+    private final LongAdder runs = new LongAdder();
+    private volatile long lastRunMillis;
+
+    private volatile boolean running = true;
+
+    private StorageJanitor() {
+        ConfigLoader config = ConfigLoader.getInstance();
+        long intervalMinutes = config.getIntProperty("storage.janitor.interval.minutes", 360);
+        this.batchSize = config.getIntProperty("storage.janitor.batch.size", 100);
+        this.batchDelayMs = config.getLongProperty("storage.janitor.batch.delay.ms", 1000);
+        this.minAgeMs = TimeUnit.MINUTES.toMillis(config.getIntProperty("storage.janitor.min.age.minutes", 60));
+        this.orphanFileAgeMs = TimeUnit.HOURS.toMillis(config.getIntProperty("storage.janitor.orphan.file.hours", 24));
+        this.fileStorage = FileStorageService.getInstance();
+        this.fileDAO = new FileDAO();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "storage-janitor");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::run, 5, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    public static StorageJanitor getInstance() {
+        if (instance == null) {
+            synchronized (StorageJanitor.class) {
+                if (instance == null) {
+                    instance = new StorageJanitor();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public long getReclaimedBytes() {
+        long total = 0;
+        for (LongAdder bytes : reclaimedBytes) total += bytes.sum();
+        return total;
+    }
+
+    public long getReclaimedFiles() {
+        long total = 0;
+        for (LongAdder files : reclaimedFiles) total += files.sum();
+        return total;
+    }
+
+    public long getReclaimedBytes(Area area) { return reclaimedBytes[area.ordinal()].sum(); }
+    public long getReclaimedFiles(Area area) { return reclaimedFiles[area.ordinal()].sum(); }
+    public long getOrphanFilesRemoved() { return orphanFilesRemoved.sum(); }
+    public long getRuns() { return runs.sum(); }
+    public long getLastRunMillis() { return lastRunMillis; }
+
+    /**
+     * Tên chỉ số -> giá trị (byte/file thu hồi theo khu vực, số dòng files mồ côi đã xóa, số lượt chạy)
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Area area : Area.values()) {
+            String name = area.name().toLowerCase();
+            result.put(name + "Bytes", getReclaimedBytes(area));
+            result.put(name + "Files", getReclaimedFiles(area));
+        }
+        result.put("orphanFilesRemoved", getOrphanFilesRemoved());
+        result.put("runs", getRuns());
+        result.put("lastRunMillis", getLastRunMillis());
+        return result;
+    }
+
+    /**
+     * Tổng số đã thu hồi, theo khu vực
+     */
+    public String describe() {
+        StringBuilder text = new StringBuilder("Storage janitor: runs=").append(getRuns())
+                .append(" reclaimed=").append(getReclaimedBytes()).append(" bytes/")
+                .append(getReclaimedFiles()).append(" files");
+        for (Area area : Area.values()) {
+            text.append(' ').append(area.name().toLowerCase()).append('=')
+                    .append(getReclaimedBytes(area)).append('/').append(getReclaimedFiles(area));
+        }
+        return text.append(" orphanFiles=").append(getOrphanFilesRemoved()).toString();
+    }
+
+    public void shutdown() {
+        running = false;
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Một lượt dọn toàn bộ các thư mục
+     */
+    private void run() {
+        long startBytes = getReclaimedBytes();
+        long startFiles = getReclaimedFiles();
+        try {
+            sweepAvatars();
+            sweepThumbnails();
+            sweepOrphanFiles();
+            sweepBlobs();
+            sweepTemp();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            logger.error("Storage janitor failed: " + e.getMessage(), e);
+        }
+        runs.increment();
+        lastRunMillis = System.currentTimeMillis();
+        logger.info("Storage janitor reclaimed " + (getReclaimedBytes() - startBytes) + " bytes in "
+                + (getReclaimedFiles() - startFiles) + " files. " + describe());
+    }
+
+    /**
+     * Avatar không còn được user hay nhóm nào dùng: xóa cùng các thumbnail của nó
+     */
+    private void sweepAvatars() throws IOException, SQLException, InterruptedException {
+        sweep(fileStorage.getAvatarDir(), 1, batch -> {
+            Map<String, Path> byUrl = new HashMap<>();
+            for (Path file : batch) {
+                byUrl.put("/avatars/" + file.getFileName(), file);
+            }
+
+            Set<String> referenced = fileDAO.findReferencedAvatars(byUrl.keySet());
+            for (Map.Entry<String, Path> entry : byUrl.entrySet()) {
+                if (referenced.contains(entry.getKey())) {
+                    continue;
+                }
+                delete(entry.getValue(), Area.AVATARS);
+                for (int size : AvatarThumbnails.SIZES) {
+                    delete(fileStorage.getThumbnailPath(entry.getKey(), size), Area.THUMBNAILS);
+                }
+                AvatarThumbnails.getInstance().evict(entry.getKey());
+            }
+        });
+    }
+
+    /**
+     * Thumbnail (<tên avatar>_<size>.jpg) mà avatar gốc không còn trên đĩa
+     */
+    private void sweepThumbnails() throws IOException, SQLException, InterruptedException {
+        sweep(fileStorage.getThumbnailDir(), 1, batch -> {
+            for (Path file : batch) {
+                String name = file.getFileName().toString();
+                int suffix = name.lastIndexOf('_');
+                if (suffix <= 0 || !Files.exists(fileStorage.getAvatarDir().resolve(name.substring(0, suffix)))) {
+                    delete(file, Area.THUMBNAILS);
+                }
+            }
+        });
+    }
+
+    /**
+     * Dòng files không tin nhắn nào dùng: xóa theo lô, mỗi lô giảm ref_count của blob tương ứng
+     * để sweepBlobs() dọn nội dung
+     */
+    private void sweepOrphanFiles() throws SQLException, InterruptedException {
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - orphanFileAgeMs);
+        int deleted = 0;
+        while (running) {
+            List<Long> orphans = fileDAO.findOrphanFiles(cutoff, batchSize);
+            if (orphans.isEmpty()) {
+                break;
+            }
+            int removed = fileDAO.delete(orphans);
+            orphanFilesRemoved.add(removed);
+            deleted += removed;
+            Thread.sleep(batchDelayMs);
+        }
+        if (deleted > 0) {
+            logger.info("Storage janitor removed " + deleted + " unattached files");
+        }
+    }
+
+    /**
+     * Blob (blobs/ab/cd/<sha256>) không còn file nào tham chiếu.
+     * Cả lô chạy dưới write lock của kho blob nên không xen vào giữa storeBlob và tạo tham chiếu;
+     * blob vừa được dùng lại (storeBlob làm mới thời gian sửa) được bỏ qua.
+     * Xóa dòng file_blobs trước (chỉ khi ref_count vẫn bằng 0) rồi mới xóa nội dung.
+     */
+    private void sweepBlobs() throws IOException, SQLException, InterruptedException {
+        sweep(fileStorage.getBlobDir(), 3, batch -> {
+            Lock lock = fileStorage.getBlobLock().writeLock();
+            lock.lock();
+            try {
+                long cutoff = System.currentTimeMillis() - minAgeMs;
+                Map<String, Path> byChecksum = new HashMap<>();
+                for (Path file : batch) {
+                    if (isOlderThan(file, cutoff)) {
+                        byChecksum.put(file.getFileName().toString(), file);
+                    }
+                }
+
+                Set<String> referenced = fileDAO.findReferencedBlobs(byChecksum.keySet());
+                byChecksum.keySet().removeAll(referenced);
+                fileDAO.deleteUnreferencedBlobs(byChecksum.keySet());
+
+                for (Path file : byChecksum.values()) {
+                    delete(file, Area.BLOBS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * File .part không còn phiên upload tương ứng
+     */
+    private void sweepTemp() throws IOException, SQLException, InterruptedException {
+        UploadSessions sessions = UploadSessions.getInstance();
+        sweep(fileStorage.getTempDir(), 1, batch -> {
+            for (Path file : batch) {
+                String name = file.getFileName().toString();
+                String uploadId = name.endsWith(".part") ? name.substring(0, name.length() - 5) : name;
+                if (sessions.get(uploadId) == null) {
+                    delete(file, Area.TEMP);
+                }
+            }
+        });
+    }
+
+    /**
+     * Duyệt dần thư mục, gom các file đủ cũ thành lô, xử lý từng lô rồi nghỉ batchDelayMs
+     */
+    private void sweep(Path dir, int depth, BatchAction action) throws IOException, SQLException, InterruptedException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - minAgeMs;
+        try (Stream<Path> files = Files.walk(dir, depth)) {
+            Iterator<Path> iterator = files.filter(path -> path.getNameCount() - dir.getNameCount() == depth).iterator();
+            List<Path> batch = new ArrayList<>(batchSize);
+
+            while (running && iterator.hasNext()) {
+                Path file = iterator.next();
+                if (isOlderThan(file, cutoff)) {
+                    batch.add(file);
+                }
+
+                if (batch.size() >= batchSize || (!iterator.hasNext() && !batch.isEmpty())) {
+                    action.process(batch);
+                    batch.clear();
+                    Thread.sleep(batchDelayMs);
+                }
+            }
+        }
+    }
+
+    private static boolean isOlderThan(Path file, long cutoff) {
+        try {
+            return Files.isRegularFile(file) && Files.getLastModifiedTime(file).toMillis() < cutoff;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void delete(Path file, Area area) {
+        try {
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                reclaimedBytes[area.ordinal()].add(size);
+                reclaimedFiles[area.ordinal()].increment();
+            }
+        } catch (IOException e) {
+            // File đã bị xóa hoặc không đọc được, lượt sau thử lại
+        }
+    }
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[Area.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    @FunctionalInterface
+    private interface BatchAction {
+        void process(List<Path> batch) throws IOException, SQLException;
+    }
+}
@@ -0,0 +1,136 @@
+package com.chatapp.server.core;
+
+import com.chatapp.server.util.Logger;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Timer wheel băm (giống HashedWheelTimer của Netty) cho các hạn chờ ngắn số lượng lớn (vd. hết giờ đổ chuông):
+ * một thread duy nhất quay qua các ô mỗi tick, đặt/hủy hẹn giờ là O(1) và không cần thread riêng cho mỗi hẹn.
+ * Hẹn giờ mới đi qua hàng đợi không khóa rồi mới được thread quay xếp vào ô (danh sách liên kết trong ô
+ * chỉ thread quay đụng tới). Hủy chỉ đặt cờ, thread quay gỡ khi đi qua. Độ chính xác bằng một tick.
+ * Task chạy ngay trên thread quay nên phải ngắn.
+ */
+class TimerWheel {
+
+    /** Một hẹn giờ; cancel() gọi được từ thread bất kỳ */
+    static final class Timeout {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private long rounds;
+        private Timeout next;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final Logger logger = Logger.getInstance();
+    private final long tickNanos;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * @param ticksPerWheel làm tròn lên lũy thừa của 2
+     */
+    TimerWheel(String name, long tickMs, int ticksPerWheel) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        int size = Integer.highestOneBit(Math.max(2, ticksPerWheel - 1)) << 1;
+        this.buckets = new Timeout[size];
+        this.mask = size - 1;
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Hẹn chạy task sau delayMs
+     */
+    Timeout schedule(Runnable task, long delayMs) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(delayMs));
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = deadline - (System.nanoTime() - startNanos)) > 0 && running) {
+                LockSupport.parkNanos(this, sleep);
+            }
+            if (!running) {
+                return;
+            }
+
+            transferIncoming();
+            expire(tick & mask, deadline);
+            tick++;
+        }
+    }
+
+    private void transferIncoming() {
+        Timeout timeout;
+        // Giới hạn mỗi tick để một đợt hẹn dồn dập không làm trễ các ô đang tới hạn
+        for (int i = 0; i < 100_000 && (timeout = incoming.poll()) != null; i++) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long ticks = Math.max(timeout.deadlineNanos / tickNanos, tick);
+            timeout.rounds = (ticks - tick) / buckets.length;
+            int index = (int) (ticks & mask);
+            timeout.next = buckets[index];
+            buckets[index] = timeout;
+        }
+    }
+
+    private void expire(long index, long deadline) {
+        int bucket = (int) index;
+        Timeout previous = null;
+        Timeout timeout = buckets[bucket];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            boolean remove = timeout.cancelled;
+            if (!remove && timeout.rounds <= 0 && timeout.deadlineNanos <= deadline) {
+                remove = true;
+                try {
+                    timeout.task.run();
+                } catch (Exception e) {
+                    logger.error("Timer task failed", e);
+                }
+            } else if (!remove) {
+                timeout.rounds--;
+            }
+
+            if (remove) {
+                if (previous == null) {
+                    buckets[bucket] = next;
+                } else {
+                    previous.next = next;
+                }
+                timeout.next = null;
+            } else {
+                previous = timeout;
+            }
+            timeout = next;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.chatapp.server.core;
+
+import com.chatapp.common.model.FileInfo;
+import com.chatapp.server.config.ConfigLoader;
+import com.chatapp.server.service.FileStorageService;
+import com.chatapp.server.util.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Các phiên upload đang dở.
+ * Dữ liệu đã nhận nằm trong file .part trên đĩa, SHA-256 được tính dần theo từng chunk đã ghi;
+ * offset tiếp tục là số byte đã đưa vào digest, nên client reconnect chỉ cần gửi lại uploadId
+ * để upload tiếp. Phiên bỏ dở quá lâu bị xóa.
+ */
+public class UploadSessions {
+    private static UploadSessions instance;
+    private final ConcurrentHashMap<String, UploadSession> sessions;
+    private final FileStorageService fileStorage;
+    private final ScheduledExecutorService sweeper;
+    private final long ttlMs;
+    private final Logger logger = Logger.getInstance();
+
+    private UploadSessions() {
+        this.sessions = new ConcurrentHashMap<>();
+        this.fileStorage = FileStorageService.getInstance();
+        this.ttlMs = TimeUnit.MINUTES.toMillis(
+                ConfigLoader.getInstance().getIntProperty("file.upload.session.ttl.minutes", 1440));
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "upload-session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        this.sweeper.scheduleWithFixedDelay(this::expire, 10, 10, TimeUnit.MINUTES);
+    }
+
+    public static UploadSessions getInstance() {
+        if (instance == null) {
+            synchronized (UploadSessions.class) {
+                if (instance == null) {
+                    instance = new UploadSessions();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Mở phiên upload mới
+     *
+     * @param streams số kết nối song song (1 = tuần tự, SHA-256 tính dần theo chunk)
+     */
+    public UploadSession create(Long userId, FileInfo fileInfo, int streams) {
+        String uploadId = UUID.randomUUID().toString();
+        UploadSession session = new UploadSession(uploadId, UUID.randomUUID().toString(), userId,
+                fileInfo, fileStorage.getTempPath(uploadId), streams, false);
+        sessions.put(uploadId, session);
+        return session;
+    }
+
+    /**
+     * Mở phiên upload chưa biết kích thước (vd. tin nhắn thoại đang ghi): client gửi chunk tới đâu
+     * ghi tới đó, chunk rỗng đánh dấu hết dữ liệu. Luôn tuần tự, không có checksum khai báo trước.
+     */
+    public UploadSession createLive(Long userId, FileInfo fileInfo) {
+        String uploadId = UUID.randomUUID().toString();
+        UploadSession session = new UploadSession(uploadId, UUID.randomUUID().toString(), userId,
+                fileInfo, fileStorage.getTempPath(uploadId), 1, true);
+        sessions.put(uploadId, session);
+        return session;
+    }
+
+    public UploadSession get(String uploadId) {
+        return uploadId != null ? sessions.get(uploadId) : null;
+    }
+
+    /**
+     * Kết thúc phiên (file tạm đã được chuyển đi hoặc bị hủy)
+     */
+    public void remove(String uploadId) {
+        sessions.remove(uploadId);
+    }
+
+    /**
+     * Xóa các phiên không hoạt động quá TTL cùng file tạm của chúng
+     */
+    private void expire() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> {
+            if (session.isActive() || now - session.getLastActivity() < ttlMs) {
+                return false;
+            }
+            try {
+                Files.deleteIfExists(session.getTempFile());
+            } catch (IOException e) {
+                logger.error("Failed to delete expired upload " + session.getUploadId() + ": " + e.getMessage());
+            }
+            logger.info("Upload session expired: " + session.getUploadId());
+            return true;
+        });
+    }
+
+    /**
+     * Một phiên upload: thông tin file client khai báo và file tạm đang ghi.
+     * Phiên nhiều luồng nhận các range không theo thứ tự, nên ghi nhận các đoạn đã nhận
+     * thay cho offset, và chỉ tính SHA-256 khi đã đủ file.
+     */
+    public static class UploadSession {
+        private final String uploadId;
+        private final String token;
+        private final Long userId;
+        private final FileInfo fileInfo;
+        private final Path tempFile;
+        private final int streams;
+        private final boolean live;
+        private final MessageDigest digest;
+        private volatile long receivedBytes;
+        private volatile boolean active;
+        private volatile long lastActivity;
+
+        // Chỉ dùng cho phiên nhiều luồng: các đoạn đã nhận [start -> end), đã gộp
+        private final TreeMap<Long, Long> ranges = new TreeMap<>();
+        private int activeStreams;
+        private boolean completing;
+
+        UploadSession(String uploadId, String token, Long userId, FileInfo fileInfo, Path tempFile, int streams,
+                      boolean live) {
+            this.uploadId = uploadId;
+            this.token = token;
+            this.userId = userId;
+            this.fileInfo = fileInfo;
+            this.tempFile = tempFile;
+            this.streams = Math.max(1, streams);
+            this.live = live;
+            this.lastActivity = System.currentTimeMillis();
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        /**
+         * Số byte đã nhận và đã đưa vào digest.
+         * Phần file tạm vượt quá offset này (ghi dở khi mất kết nối) sẽ bị cắt bỏ.
+         */
+        public long getReceivedBytes() {
+            return isMultiStream() ? coveredBytes() : receivedBytes;
+        }
+
+        /**
+         * Ghi nhận một chunk đã ghi xuống file tạm (chỉ gọi bởi kết nối đang giữ phiên)
+         */
+        public void append(byte[] buffer, int offset, int length) {
+            digest.update(buffer, offset, length);
+            receivedBytes += length;
+            touch();
+        }
+
+        /**
+         * SHA-256 (hex) của toàn bộ dữ liệu đã nhận; chỉ gọi một lần khi hoàn tất
+         */
+        public String finishDigest() {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+
+        /**
+         * Ghi nhận đoạn [start, end) đã ghi xuống file tạm (phiên nhiều luồng)
+         */
+        public synchronized void markReceived(long start, long end) {
+            Map.Entry<Long, Long> before = ranges.floorEntry(start);
+            if (before != null && before.getValue() >= start) {
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+            }
+            Map.Entry<Long, Long> next = ranges.ceilingEntry(start);
+            while (next != null && next.getKey() <= end) {
+                end = Math.max(end, next.getValue());
+                ranges.remove(next.getKey());
+                next = ranges.ceilingEntry(start);
+            }
+            ranges.put(start, end);
+            touch();
+        }
+
+        /**
+         * Các đoạn chưa nhận [start, end) của phiên nhiều luồng, để client gửi tiếp sau khi mất kết nối
+         */
+        public synchronized List<long[]> getMissingRanges() {
+            List<long[]> missing = new ArrayList<>();
+            long position = 0;
+            for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+                if (range.getKey() > position) {
+                    missing.add(new long[]{position, range.getKey()});
+                }
+                position = Math.max(position, range.getValue());
+            }
+            if (position < fileInfo.getFileSize()) {
+                missing.add(new long[]{position, fileInfo.getFileSize()});
+            }
+            return missing;
+        }
+
+        /**
+         * true cho đúng một kết nối khi phiên nhiều luồng vừa nhận đủ file; kết nối đó sẽ hoàn tất upload
+         */
+        public synchronized boolean tryBeginCompletion() {
+            if (completing || coveredBytes() < fileInfo.getFileSize()) {
+                return false;
+            }
+            completing = true;
+            return true;
+        }
+
+        private synchronized long coveredBytes() {
+            long total = 0;
+            for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+                total += range.getValue() - range.getKey();
+            }
+            return total;
+        }
+
+        /**
+         * Giữ phiên cho một kết nối dữ liệu; false nếu đang có kết nối khác ghi vào
+         * (phiên nhiều luồng cho phép nhiều kết nối cùng lúc cho tới khi hoàn tất)
+         */
+        public synchronized boolean acquire() {
+            if (isMultiStream()) {
+                if (completing) {
+                    return false;
+                }
+                activeStreams++;
+                touch();
+                return true;
+            }
+            if (active) {
+                return false;
+            }
+            active = true;
+            touch();
+            return true;
+        }
+
+        public synchronized void release() {
+            if (isMultiStream()) {
+                activeStreams--;
+            } else {
+                active = false;
+            }
+            touch();
+        }
+
+        public boolean isMultiStream() {
+            return streams > 1;
+        }
+
+        /**
+         * Phiên chưa biết kích thước: kích thước file chốt lại khi client gửi chunk kết thúc
+         */
+        public boolean isLive() {
+            return live;
+        }
+
+        public void touch() {
+            lastActivity = System.currentTimeMillis();
+        }
+
+        public String getUploadId() { return uploadId; }
+        public String getToken() { return token; }
+        public Long getUserId() { return userId; }
+        public FileInfo getFileInfo() { return fileInfo; }
+        public Path getTempFile() { return tempFile; }
+        public int getStreams() { return streams; }
+        public synchronized boolean isActive() { return active || activeStreams > 0; }
+        public long getLastActivity() { return lastActivity; }
+    }
+}
@@ -0,0 +1,143 @@
+package com.chatapp.server.database.dao;
+
+import com.chatapp.common.model.ConversationSummary;
+import com.chatapp.server.database.DatabaseManager;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DAO để thao tác với bảng conversation_summaries
+ * (user_id, conversation_id, peer_id, group_id, last_message_id, last_sender_id, last_content,
+ *  last_seq, last_at, unread_count, PRIMARY KEY (user_id, conversation_id)):
+ * danh sách chat được đọc bằng một query, không phải aggregate trên bảng messages
+ */
+public class ConversationSummaryDAO {
+
+    /**
+     * Ghi tin nhắn cuối cho một lô (userId -> summary). unreadCount của mỗi summary là
+     * số tin chưa đọc cần cộng thêm, không phải giá trị tuyệt đối.
+     */
+    public void upsertLastMessages(Map<Long, List<ConversationSummary>> updates) throws SQLException {
+        String sql = "INSERT INTO conversation_summaries (user_id, conversation_id, peer_id, group_id, " +
+                "last_message_id, last_sender_id, last_content, last_seq, last_at, unread_count) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE unread_count = unread_count + VALUES(unread_count), " +
+                "last_message_id = VALUES(last_message_id), last_sender_id = VALUES(last_sender_id), " +
+                "last_content = VALUES(last_content), last_seq = VALUES(last_seq), last_at = VALUES(last_at)";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            for (Map.Entry<Long, List<ConversationSummary>> user : updates.entrySet()) {
+                for (ConversationSummary summary : user.getValue()) {
+                    stmt.setLong(1, user.getKey());
+                    stmt.setString(2, summary.getConversationId());
+                    setNullableLong(stmt, 3, summary.getPeerId());
+                    setNullableLong(stmt, 4, summary.getGroupId());
+                    stmt.setLong(5, summary.getLastMessageId());
+                    stmt.setLong(6, summary.getLastSenderId());
+                    stmt.setString(7, summary.getLastContent());
+                    stmt.setLong(8, summary.getLastSequence());
+                    stmt.setTimestamp(9, Timestamp.valueOf(summary.getLastMessageAt()));
+                    stmt.setInt(10, summary.getUnreadCount());
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Cập nhật số tin chưa đọc theo watermark cho một lô (userId -> conversationId -> readSeq)
+     */
+    public void applyReadWatermarks(Map<Long, Map<String, Long>> watermarks) throws SQLException {
+        String sql = "UPDATE conversation_summaries " +
+                "SET unread_count = IF(? >= last_seq, 0, LEAST(unread_count, last_seq - ?)) " +
+                "WHERE user_id = ? AND conversation_id = ?";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            for (Map.Entry<Long, Map<String, Long>> user : watermarks.entrySet()) {
+                for (Map.Entry<String, Long> entry : user.getValue().entrySet()) {
+                    stmt.setLong(1, entry.getValue());
+                    stmt.setLong(2, entry.getValue());
+                    stmt.setLong(3, user.getKey());
+                    stmt.setString(4, entry.getKey());
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Lấy toàn bộ danh sách chat của user kèm tên/avatar người kia hoặc nhóm (một query)
+     */
+    public List<ConversationSummary> findByUser(Long userId) throws SQLException {
+        String sql = "SELECT s.*, COALESCE(u.full_name, g.name) AS title, " +
+                "COALESCE(u.avatar_url, g.avatar_url) AS avatar " +
+                "FROM conversation_summaries s " +
+                "LEFT JOIN users u ON u.id = s.peer_id " +
+                "LEFT JOIN chat_groups g ON g.id = s.group_id " +
+                "WHERE s.user_id = ? ORDER BY s.last_at DESC";
+
+        List<ConversationSummary> summaries = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, userId);
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                summaries.add(mapResultSetToSummary(rs));
+            }
+        }
+
+        return summaries;
+    }
+
+    private void setNullableLong(PreparedStatement stmt, int index, Long value) throws SQLException {
+        if (value != null) {
+            stmt.setLong(index, value);
+        } else {
+            stmt.setNull(index, Types.BIGINT);
+        }
+    }
+
+    /**
+     * Map ResultSet to ConversationSummary object
+     */
+    private ConversationSummary mapResultSetToSummary(ResultSet rs) throws SQLException {
+        ConversationSummary summary = new ConversationSummary();
+        summary.setConversationId(rs.getString("conversation_id"));
+
+        long peerId = rs.getLong("peer_id");
+        if (!rs.wasNull()) {
+            summary.setPeerId(peerId);
+        }
+        long groupId = rs.getLong("group_id");
+        if (!rs.wasNull()) {
+            summary.setGroupId(groupId);
+        }
+
+        summary.setTitle(rs.getString("title"));
+        summary.setAvatarUrl(rs.getString("avatar"));
+        summary.setLastMessageId(rs.getLong("last_message_id"));
+        summary.setLastSenderId(rs.getLong("last_sender_id"));
+        summary.setLastContent(rs.getString("last_content"));
+        summary.setLastSequence(rs.getLong("last_seq"));
+        summary.setUnreadCount(rs.getInt("unread_count"));
+
+        Timestamp lastAt = rs.getTimestamp("last_at");
+        if (lastAt != null) {
+            summary.setLastMessageAt(lastAt.toLocalDateTime());
+        }
+
+        return summary;
+    }
+}
@@ -0,0 +1,347 @@
+package com.chatapp.server.database.dao;
+
+import com.chatapp.common.model.FileInfo;
+import com.chatapp.server.database.DatabaseManager;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * DAO để thao tác với bảng files
+ * (id, uploader_id, file_name, file_size, file_type, mime_type, checksum, storage_path, uploaded_at)
+ * và bảng file_blobs (checksum, storage_path, file_size, ref_count).
+ * Mỗi dòng files là một tham chiếu tới blob có cùng checksum; ref_count đếm số tham chiếu đó:
+ * insert() tăng, delete() giảm (file không còn tin nhắn nào dùng được StorageJanitor xóa qua delete()).
+ */
+public class FileDAO {
+
+    /**
+     * Lưu thông tin file và tăng ref_count của blob trong một transaction, gán ID cho file
+     */
+    public void insert(FileInfo fileInfo, String storagePath) throws SQLException {
+        String sql = "INSERT INTO files (uploader_id, file_name, file_size, file_type, mime_type, checksum, " +
+                "storage_path, uploaded_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        String blobSql = "INSERT INTO file_blobs (checksum, storage_path, file_size, ref_count) VALUES (?, ?, ?, 1) " +
+                "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1";
+
+        Connection conn = null;
+        try {
+            conn = DatabaseManager.getInstance().getConnection();
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setLong(1, fileInfo.getUploaderId());
+                stmt.setString(2, fileInfo.getFileName());
+                stmt.setLong(3, fileInfo.getFileSize());
+                stmt.setString(4, fileInfo.getFileType());
+                stmt.setString(5, fileInfo.getMimeType());
+                stmt.setString(6, fileInfo.getChecksum());
+                stmt.setString(7, storagePath);
+                stmt.setTimestamp(8, Timestamp.valueOf(fileInfo.getUploadedAt()));
+                stmt.executeUpdate();
+
+                ResultSet rs = stmt.getGeneratedKeys();
+                if (rs.next()) {
+                    fileInfo.setId(rs.getLong(1));
+                }
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(blobSql)) {
+                stmt.setString(1, fileInfo.getChecksum());
+                stmt.setString(2, storagePath);
+                stmt.setLong(3, fileInfo.getFileSize());
+                stmt.executeUpdate();
+            }
+
+            conn.commit();
+
+        } catch (SQLException e) {
+            if (conn != null) try { conn.rollback(); } catch (SQLException ex) { /* ignore */ }
+            throw e;
+        } finally {
+            if (conn != null) try { conn.setAutoCommit(true); conn.close(); } catch (SQLException ex) { /* ignore */ }
+        }
+    }
+
+    /**
+     * Xóa các file và giảm ref_count của blob tương ứng trong một transaction
+     *
+     * @return số file đã xóa
+     */
+    public int delete(Collection<Long> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        String placeholders = placeholders(ids.size());
+        String selectSql = "SELECT checksum FROM files WHERE id IN (" + placeholders + ") FOR UPDATE";
+        String deleteSql = "DELETE FROM files WHERE id IN (" + placeholders + ")";
+        String blobSql = "UPDATE file_blobs SET ref_count = ref_count - 1 WHERE checksum = ? AND ref_count > 0";
+
+        Connection conn = null;
+        try {
+            conn = DatabaseManager.getInstance().getConnection();
+            conn.setAutoCommit(false);
+
+            List<String> checksums = new ArrayList<>();
+            try (PreparedStatement stmt = conn.prepareStatement(selectSql)) {
+                int index = 1;
+                for (Long id : ids) {
+                    stmt.setLong(index++, id);
+                }
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    checksums.add(rs.getString("checksum"));
+                }
+            }
+
+            int deleted;
+            try (PreparedStatement stmt = conn.prepareStatement(deleteSql)) {
+                int index = 1;
+                for (Long id : ids) {
+                    stmt.setLong(index++, id);
+                }
+                deleted = stmt.executeUpdate();
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(blobSql)) {
+                for (String checksum : checksums) {
+                    if (checksum != null) {
+                        stmt.setString(1, checksum);
+                        stmt.addBatch();
+                    }
+                }
+                stmt.executeBatch();
+            }
+
+            conn.commit();
+            return deleted;
+
+        } catch (SQLException e) {
+            if (conn != null) try { conn.rollback(); } catch (SQLException ex) { /* ignore */ }
+            throw e;
+        } finally {
+            if (conn != null) try { conn.setAutoCommit(true); conn.close(); } catch (SQLException ex) { /* ignore */ }
+        }
+    }
+
+    /**
+     * File upload trước thời điểm cho trước mà không tin nhắn nào dùng (upload xong nhưng không gửi)
+     */
+    public List<Long> findOrphanFiles(Timestamp uploadedBefore, int limit) throws SQLException {
+        String sql = "SELECT f.id FROM files f WHERE f.uploaded_at < ? " +
+                "AND NOT EXISTS (SELECT 1 FROM messages m WHERE m.file_id = f.id) " +
+                "ORDER BY f.id LIMIT ?";
+        List<Long> ids = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setTimestamp(1, uploadedBefore);
+            stmt.setInt(2, limit);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                ids.add(rs.getLong("id"));
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Tìm blob đang được tham chiếu theo checksum và kích thước (upload theo hash)
+     *
+     * @return đường dẫn lưu trữ, hoặc null nếu server chưa có nội dung này
+     */
+    public String findBlobPath(String checksum, long fileSize) throws SQLException {
+        String sql = "SELECT storage_path FROM file_blobs WHERE checksum = ? AND file_size = ? AND ref_count > 0";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, checksum);
+            stmt.setLong(2, fileSize);
+            ResultSet rs = stmt.executeQuery();
+
+            if (rs.next()) {
+                return rs.getString("storage_path");
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Tìm file theo ID
+     */
+    public FileInfo findById(Long id) throws SQLException {
+        String sql = "SELECT * FROM files WHERE id = ?";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, id);
+            ResultSet rs = stmt.executeQuery();
+
+            if (rs.next()) {
+                return mapResultSetToFileInfo(rs);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Lấy đường dẫn lưu trữ của file
+     */
+    public String findStoragePath(Long id) throws SQLException {
+        String sql = "SELECT storage_path FROM files WHERE id = ?";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, id);
+            ResultSet rs = stmt.executeQuery();
+
+            if (rs.next()) {
+                return rs.getString("storage_path");
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * User được tải file nếu là người upload hoặc file nằm trong tin nhắn user gửi/nhận
+     * (kể cả tin nhắn của nhóm user đang là thành viên)
+     */
+    public boolean canAccess(Long fileId, Long userId) throws SQLException {
+        String sql = "SELECT 1 FROM files f WHERE f.id = ? AND (f.uploader_id = ? " +
+                "OR EXISTS (SELECT 1 FROM messages m WHERE m.file_id = f.id " +
+                "AND (m.sender_id = ? OR m.receiver_id = ? OR m.group_id IN " +
+                "(SELECT gm.group_id FROM group_members gm WHERE gm.user_id = ?))))";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, fileId);
+            stmt.setLong(2, userId);
+            stmt.setLong(3, userId);
+            stmt.setLong(4, userId);
+            stmt.setLong(5, userId);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next();
+        }
+    }
+
+    /**
+     * Trong các URL avatar cho trước, lấy những URL vẫn đang được user hoặc nhóm dùng
+     */
+    public Set<String> findReferencedAvatars(Collection<String> avatarUrls) throws SQLException {
+        Set<String> referenced = new HashSet<>();
+        if (avatarUrls.isEmpty()) {
+            return referenced;
+        }
+
+        String placeholders = placeholders(avatarUrls.size());
+        String sql = "SELECT avatar_url FROM users WHERE avatar_url IN (" + placeholders + ") " +
+                "UNION SELECT avatar_url FROM chat_groups WHERE avatar_url IN (" + placeholders + ")";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            for (int pass = 0; pass < 2; pass++) {
+                for (String url : avatarUrls) {
+                    stmt.setString(index++, url);
+                }
+            }
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                referenced.add(rs.getString("avatar_url"));
+            }
+        }
+
+        return referenced;
+    }
+
+    /**
+     * Trong các checksum cho trước, lấy những blob còn ít nhất một file tham chiếu
+     */
+    public Set<String> findReferencedBlobs(Collection<String> checksums) throws SQLException {
+        Set<String> referenced = new HashSet<>();
+        if (checksums.isEmpty()) {
+            return referenced;
+        }
+
+        String sql = "SELECT checksum FROM file_blobs WHERE ref_count > 0 AND checksum IN (" +
+                placeholders(checksums.size()) + ")";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            for (String checksum : checksums) {
+                stmt.setString(index++, checksum);
+            }
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                referenced.add(rs.getString("checksum"));
+            }
+        }
+
+        return referenced;
+    }
+
+    /**
+     * Xóa dòng file_blobs của các blob không còn tham chiếu (ref_count = 0)
+     */
+    public void deleteUnreferencedBlobs(Collection<String> checksums) throws SQLException {
+        if (checksums.isEmpty()) {
+            return;
+        }
+
+        String sql = "DELETE FROM file_blobs WHERE ref_count <= 0 AND checksum IN (" +
+                placeholders(checksums.size()) + ")";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            for (String checksum : checksums) {
+                stmt.setString(index++, checksum);
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Map ResultSet to FileInfo object
+     */
+    private FileInfo mapResultSetToFileInfo(ResultSet rs) throws SQLException {
+        FileInfo fileInfo = new FileInfo();
+        fileInfo.setId(rs.getLong("id"));
+        fileInfo.setUploaderId(rs.getLong("uploader_id"));
+        fileInfo.setFileName(rs.getString("file_name"));
+        fileInfo.setFileSize(rs.getLong("file_size"));
+        fileInfo.setFileType(rs.getString("file_type"));
+        fileInfo.setMimeType(rs.getString("mime_type"));
+        fileInfo.setChecksum(rs.getString("checksum"));
+
+        Timestamp uploadedAt = rs.getTimestamp("uploaded_at");
+        if (uploadedAt != null) {
+            fileInfo.setUploadedAt(uploadedAt.toLocalDateTime());
+        }
+
+        return fileInfo;
+    }
+}
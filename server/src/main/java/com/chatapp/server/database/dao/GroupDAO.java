@@ -0,0 +1,153 @@
+package com.chatapp.server.database.dao;
+
+import com.chatapp.common.model.Group;
+import com.chatapp.server.database.DatabaseManager;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DAO để thao tác với bảng chat_groups và group_members (group_id, user_id)
+ */
+public class GroupDAO {
+
+    /**
+     * Tạo nhóm và thêm thành viên (gồm cả owner) trong một transaction
+     */
+    public Group createGroup(Group group, List<Long> memberIds) throws SQLException {
+        String sql = "INSERT INTO chat_groups (name, owner_id, avatar_url, created_at) VALUES (?, ?, ?, ?)";
+
+        Connection conn = null;
+        try {
+            conn = DatabaseManager.getInstance().getConnection();
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setString(1, group.getName());
+                stmt.setLong(2, group.getOwnerId());
+                stmt.setString(3, group.getAvatarUrl());
+                stmt.setTimestamp(4, Timestamp.valueOf(group.getCreatedAt()));
+                stmt.executeUpdate();
+
+                ResultSet rs = stmt.getGeneratedKeys();
+                if (rs.next()) {
+                    group.setId(rs.getLong(1));
+                }
+            }
+
+            insertMembers(conn, group.getId(), memberIds);
+            conn.commit();
+
+            group.setMemberCount(memberIds.size());
+            return group;
+
+        } catch (SQLException e) {
+            if (conn != null) try { conn.rollback(); } catch (SQLException ex) { /* ignore */ }
+            throw e;
+        } finally {
+            if (conn != null) try { conn.setAutoCommit(true); conn.close(); } catch (SQLException ex) { /* ignore */ }
+        }
+    }
+
+    /**
+     * Thêm thành viên vào nhóm (bỏ qua người đã là thành viên)
+     */
+    public void addMembers(Long groupId, List<Long> memberIds) throws SQLException {
+        try (Connection conn = DatabaseManager.getInstance().getConnection()) {
+            insertMembers(conn, groupId, memberIds);
+        }
+    }
+
+    private void insertMembers(Connection conn, Long groupId, List<Long> memberIds) throws SQLException {
+        String sql = "INSERT IGNORE INTO group_members (group_id, user_id) VALUES (?, ?)";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (Long memberId : memberIds) {
+                stmt.setLong(1, groupId);
+                stmt.setLong(2, memberId);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Xóa thành viên khỏi nhóm
+     */
+    public void removeMember(Long groupId, Long userId) throws SQLException {
+        String sql = "DELETE FROM group_members WHERE group_id = ? AND user_id = ?";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, groupId);
+            stmt.setLong(2, userId);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Lấy ID tất cả thành viên của nhóm
+     */
+    public long[] findMemberIds(Long groupId) throws SQLException {
+        String sql = "SELECT user_id FROM group_members WHERE group_id = ?";
+        List<Long> memberIds = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, groupId);
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                memberIds.add(rs.getLong("user_id"));
+            }
+        }
+
+        return memberIds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Lấy danh sách nhóm mà user là thành viên
+     */
+    public List<Group> findGroupsByUser(Long userId) throws SQLException {
+        String sql = "SELECT g.*, (SELECT COUNT(*) FROM group_members c WHERE c.group_id = g.id) AS member_count " +
+                "FROM chat_groups g INNER JOIN group_members m ON m.group_id = g.id " +
+                "WHERE m.user_id = ? ORDER BY g.name";
+
+        List<Group> groups = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, userId);
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                groups.add(mapResultSetToGroup(rs));
+            }
+        }
+
+        return groups;
+    }
+
+    /**
+     * Map ResultSet to Group object
+     */
+    private Group mapResultSetToGroup(ResultSet rs) throws SQLException {
+        Group group = new Group();
+        group.setId(rs.getLong("id"));
+        group.setName(rs.getString("name"));
+        group.setOwnerId(rs.getLong("owner_id"));
+        group.setAvatarUrl(rs.getString("avatar_url"));
+        group.setMemberCount(rs.getInt("member_count"));
+
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        if (createdAt != null) {
+            group.setCreatedAt(createdAt.toLocalDateTime());
+        }
+
+        return group;
+    }
+}
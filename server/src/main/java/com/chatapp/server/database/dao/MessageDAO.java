@@ -0,0 +1,180 @@
+package com.chatapp.server.database.dao;
+
+import com.chatapp.common.model.Message;
+import com.chatapp.server.database.DatabaseManager;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * DAO để thao tác với bảng messages
+ */
+public class MessageDAO {
+
+    /**
+     * Lưu message mới (sequence đã được cấp phát trước)
+     */
+    public void insert(Message message) throws SQLException {
+        String sql = "INSERT INTO messages (conversation_id, seq, client_message_id, sender_id, receiver_id, " +
+                "group_id, content, message_type, file_id, is_read, created_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, FALSE, ?)";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+            stmt.setString(1, message.getConversationId());
+            stmt.setLong(2, message.getSequence());
+            stmt.setString(3, message.getClientMessageId());
+            stmt.setLong(4, message.getSenderId());
+            if (message.getReceiverId() != null) {
+                stmt.setLong(5, message.getReceiverId());
+            } else {
+                stmt.setNull(5, Types.BIGINT);
+            }
+            if (message.getGroupId() != null) {
+                stmt.setLong(6, message.getGroupId());
+            } else {
+                stmt.setNull(6, Types.BIGINT);
+            }
+            stmt.setString(7, message.getContent());
+            stmt.setString(8, message.getMessageType().name());
+            if (message.getFileId() != null) {
+                stmt.setLong(9, message.getFileId());
+            } else {
+                stmt.setNull(9, Types.BIGINT);
+            }
+            stmt.setTimestamp(10, Timestamp.valueOf(message.getCreatedAt()));
+
+            stmt.executeUpdate();
+
+            ResultSet rs = stmt.getGeneratedKeys();
+            if (rs.next()) {
+                message.setId(rs.getLong(1));
+            }
+        }
+    }
+
+    /**
+     * Lấy tối đa limit message có seq < beforeSeq (keyset pagination, không dùng OFFSET).
+     * Kết quả sắp xếp tăng dần theo seq.
+     */
+    public List<Message> findBefore(String conversationId, long beforeSeq, int limit) throws SQLException {
+        String sql = "SELECT * FROM messages WHERE conversation_id = ? AND seq < ? AND is_deleted = FALSE " +
+                "ORDER BY seq DESC LIMIT ?";
+
+        List<Message> messages = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, conversationId);
+            stmt.setLong(2, beforeSeq);
+            stmt.setInt(3, limit);
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                messages.add(mapResultSetToMessage(rs));
+            }
+        }
+
+        Collections.reverse(messages);
+        return messages;
+    }
+
+    /**
+     * Lấy tối đa limit message có seq > afterSeq, sắp xếp tăng dần theo seq
+     */
+    public List<Message> findAfter(String conversationId, long afterSeq, int limit) throws SQLException {
+        String sql = "SELECT * FROM messages WHERE conversation_id = ? AND seq > ? AND is_deleted = FALSE " +
+                "ORDER BY seq ASC LIMIT ?";
+
+        List<Message> messages = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, conversationId);
+            stmt.setLong(2, afterSeq);
+            stmt.setInt(3, limit);
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                messages.add(mapResultSetToMessage(rs));
+            }
+        }
+
+        return messages;
+    }
+
+    /**
+     * Lấy các message theo danh sách ID (thứ tự không xác định)
+     */
+    public List<Message> findByIds(Collection<Long> ids) throws SQLException {
+        List<Message> messages = new ArrayList<>();
+        if (ids.isEmpty()) {
+            return messages;
+        }
+
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        String sql = "SELECT * FROM messages WHERE id IN (" + placeholders + ") AND is_deleted = FALSE";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            for (Long id : ids) {
+                stmt.setLong(index++, id);
+            }
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                messages.add(mapResultSetToMessage(rs));
+            }
+        }
+
+        return messages;
+    }
+
+    /**
+     * Map ResultSet to Message object
+     */
+    Message mapResultSetToMessage(ResultSet rs) throws SQLException {
+        Message message = new Message();
+        message.setId(rs.getLong("id"));
+        message.setConversationId(rs.getString("conversation_id"));
+        message.setSequence(rs.getLong("seq"));
+        message.setClientMessageId(rs.getString("client_message_id"));
+        message.setSenderId(rs.getLong("sender_id"));
+
+        long receiverId = rs.getLong("receiver_id");
+        if (!rs.wasNull()) {
+            message.setReceiverId(receiverId);
+        }
+
+        long groupId = rs.getLong("group_id");
+        if (!rs.wasNull()) {
+            message.setGroupId(groupId);
+        }
+
+        message.setContent(rs.getString("content"));
+        message.setMessageType(Message.MessageType.valueOf(rs.getString("message_type")));
+
+        long fileId = rs.getLong("file_id");
+        if (!rs.wasNull()) {
+            message.setFileId(fileId);
+        }
+
+        message.setRead(rs.getBoolean("is_read"));
+        message.setDeleted(rs.getBoolean("is_deleted"));
+
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        if (createdAt != null) {
+            message.setCreatedAt(createdAt.toLocalDateTime());
+        }
+
+        return message;
+    }
+}
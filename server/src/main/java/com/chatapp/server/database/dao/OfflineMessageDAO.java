@@ -0,0 +1,76 @@
+package com.chatapp.server.database.dao;
+
+import com.chatapp.common.model.Message;
+import com.chatapp.server.database.DatabaseManager;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DAO để thao tác với bảng offline_messages (user_id, message_id):
+ * phần hộp thư offline bị đẩy xuống DB khi vượt quá giới hạn bộ nhớ
+ */
+public class OfflineMessageDAO {
+
+    /**
+     * Lưu một lô message ID chờ giao cho user (một round trip bằng batch)
+     */
+    public void insertBatch(Long userId, List<Message> messages) throws SQLException {
+        String sql = "INSERT IGNORE INTO offline_messages (user_id, message_id) VALUES (?, ?)";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            for (Message message : messages) {
+                stmt.setLong(1, userId);
+                stmt.setLong(2, message.getId());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Lấy một trang message chờ giao (keyset theo message_id), kèm nội dung message
+     */
+    public List<Message> findPage(Long userId, long afterMessageId, int limit) throws SQLException {
+        String sql = "SELECT m.* FROM offline_messages o " +
+                "INNER JOIN messages m ON m.id = o.message_id " +
+                "WHERE o.user_id = ? AND o.message_id > ? " +
+                "ORDER BY o.message_id ASC LIMIT ?";
+
+        List<Message> messages = new ArrayList<>();
+        MessageDAO messageDAO = new MessageDAO();
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, userId);
+            stmt.setLong(2, afterMessageId);
+            stmt.setInt(3, limit);
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                messages.add(messageDAO.mapResultSetToMessage(rs));
+            }
+        }
+
+        return messages;
+    }
+
+    /**
+     * Xóa các message đã giao (message_id <= maxMessageId)
+     */
+    public void deleteUpTo(Long userId, long maxMessageId) throws SQLException {
+        String sql = "DELETE FROM offline_messages WHERE user_id = ? AND message_id <= ?";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, userId);
+            stmt.setLong(2, maxMessageId);
+            stmt.executeUpdate();
+        }
+    }
+}
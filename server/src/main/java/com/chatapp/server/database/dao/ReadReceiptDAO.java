@@ -0,0 +1,59 @@
+package com.chatapp.server.database.dao;
+
+import com.chatapp.server.database.DatabaseManager;
+
+import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * DAO để thao tác với bảng read_receipts
+ * (user_id BIGINT, conversation_id VARCHAR, read_seq BIGINT, PRIMARY KEY (user_id, conversation_id)):
+ * mỗi user chỉ lưu một watermark "đã đọc tới sequence" cho mỗi cuộc trò chuyện
+ */
+public class ReadReceiptDAO {
+
+    /**
+     * Ghi một lô watermark (userId -> conversationId -> readSeq) trong một batch.
+     * GREATEST để watermark không bao giờ lùi.
+     */
+    public void upsertBatch(Map<Long, Map<String, Long>> watermarks) throws SQLException {
+        String sql = "INSERT INTO read_receipts (user_id, conversation_id, read_seq) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE read_seq = GREATEST(read_seq, VALUES(read_seq))";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            for (Map.Entry<Long, Map<String, Long>> user : watermarks.entrySet()) {
+                for (Map.Entry<String, Long> entry : user.getValue().entrySet()) {
+                    stmt.setLong(1, user.getKey());
+                    stmt.setString(2, entry.getKey());
+                    stmt.setLong(3, entry.getValue());
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Lấy tất cả watermark của user (conversationId -> readSeq)
+     */
+    public Map<String, Long> findByUser(Long userId) throws SQLException {
+        String sql = "SELECT conversation_id, read_seq FROM read_receipts WHERE user_id = ?";
+        Map<String, Long> watermarks = new HashMap<>();
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, userId);
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                watermarks.put(rs.getString("conversation_id"), rs.getLong("read_seq"));
+            }
+        }
+
+        return watermarks;
+    }
+}
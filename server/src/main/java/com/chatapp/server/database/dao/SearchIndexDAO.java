@@ -0,0 +1,93 @@
+package com.chatapp.server.database.dao;
+
+import com.chatapp.server.database.DatabaseManager;
+
+import java.sql.*;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DAO để thao tác với bảng message_terms (inverted index cho tìm kiếm):
+ * (term VARCHAR(64), conversation_id VARCHAR(64), message_id BIGINT, tf SMALLINT,
+ *  PRIMARY KEY (conversation_id, term, message_id))
+ */
+public class SearchIndexDAO {
+
+    /**
+     * Ghi một lô posting (một segment đã gom trong RAM) bằng batch
+     */
+    public void insertPostings(List<Posting> postings) throws SQLException {
+        String sql = "INSERT IGNORE INTO message_terms (term, conversation_id, message_id, tf) VALUES (?, ?, ?, ?)";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            for (Posting posting : postings) {
+                stmt.setString(1, posting.term);
+                stmt.setString(2, posting.conversationId);
+                stmt.setLong(3, posting.messageId);
+                stmt.setInt(4, posting.tf);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Tìm message trong cuộc trò chuyện khớp với các term (chỉ đọc index, không quét bảng messages).
+     * Điểm = số term khớp * 1000 + tổng tf; cùng điểm thì message mới hơn đứng trước.
+     *
+     * @return messageId -> điểm, đã sắp xếp giảm dần
+     */
+    public Map<Long, Integer> search(String conversationId, Collection<String> terms, int limit) throws SQLException {
+        String placeholders = String.join(", ", Collections.nCopies(terms.size(), "?"));
+        String sql = "SELECT message_id, COUNT(*) * 1000 + SUM(tf) AS score FROM message_terms " +
+                "WHERE conversation_id = ? AND term IN (" + placeholders + ") " +
+                "GROUP BY message_id ORDER BY score DESC, message_id DESC LIMIT ?";
+
+        Map<Long, Integer> hits = new LinkedHashMap<>();
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            stmt.setString(index++, conversationId);
+            for (String term : terms) {
+                stmt.setString(index++, term);
+            }
+            stmt.setInt(index, limit);
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                hits.put(rs.getLong("message_id"), rs.getInt("score"));
+            }
+        }
+
+        return hits;
+    }
+
+    /**
+     * Một dòng trong inverted index
+     */
+    public static class Posting {
+        private final String term;
+        private final String conversationId;
+        private final long messageId;
+        private final int tf;
+
+        public Posting(String term, String conversationId, long messageId, int tf) {
+            this.term = term;
+            this.conversationId = conversationId;
+            this.messageId = messageId;
+            this.tf = tf;
+        }
+
+        public String getTerm() { return term; }
+        public String getConversationId() { return conversationId; }
+        public long getMessageId() { return messageId; }
+        public int getTf() { return tf; }
+    }
+}
@@ -0,0 +1,46 @@
+package com.chatapp.server.database.dao;
+
+import com.chatapp.server.database.DatabaseManager;
+
+import java.sql.*;
+
+/**
+ * DAO để thao tác với bảng conversation_sequences
+ * (conversation_id VARCHAR PRIMARY KEY, high_water BIGINT)
+ */
+public class SequenceDAO {
+
+    /**
+     * Đặt trước một block sequence cho cuộc trò chuyện.
+     * Chỉ một câu lệnh upsert, không giữ row lock qua nhiều message.
+     *
+     * @return high-water mark mới (block hợp lệ là (kết quả - blockSize, kết quả])
+     */
+    public long reserveBlock(String conversationId, int blockSize) throws SQLException {
+        String sql = "INSERT INTO conversation_sequences (conversation_id, high_water) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE high_water = LAST_INSERT_ID(high_water + ?)";
+
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, conversationId);
+            stmt.setLong(2, blockSize);
+            stmt.setLong(3, blockSize);
+            int affected = stmt.executeUpdate();
+
+            // 1 = insert mới (high_water = blockSize), 2 = update qua LAST_INSERT_ID
+            if (affected == 1) {
+                return blockSize;
+            }
+
+            try (Statement select = conn.createStatement();
+                 ResultSet rs = select.executeQuery("SELECT LAST_INSERT_ID()")) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+            }
+        }
+
+        throw new SQLException("Failed to reserve sequence block for " + conversationId);
+    }
+}
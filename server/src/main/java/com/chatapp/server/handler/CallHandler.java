@@ -0,0 +1,145 @@
+package com.chatapp.server.handler;
+
+import com.chatapp.common.protocol.MessageType;
+import com.chatapp.common.protocol.Packet;
+import com.chatapp.common.protocol.PacketBuilder;
+import com.chatapp.server.core.CallQualityStats;
+import com.chatapp.server.core.CallRegistry;
+import com.chatapp.server.core.ClientRegistry;
+import com.chatapp.server.network.ClientHandler;
+import com.chatapp.server.util.Logger;
+
+import java.util.Map;
+
+/**
+ * Signaling cuộc gọi. Cuộc gọi 1-1 do CallRegistry giữ trạng thái (đổ chuông, đã nối, kết thúc, hết giờ, glare);
+ * server kèm IP mà nó nhìn thấy của mỗi bên để bên kia gửi media UDP thẳng tới đó.
+ * Khi cuộc gọi kết thúc, client gửi CALL_INFO kèm summary (báo cáo chất lượng) để CallQualityStats tổng hợp.
+ */
+public class CallHandler {
+    private final Logger logger = Logger.getInstance();
+    private final CallRegistry callRegistry = CallRegistry.getInstance();
+
+    /**
+     * Handle CALL_REQUEST: đổ chuông bên kia, trả CALL_INFO cho người gọi.
+     * Nếu bên kia đang gọi mình (glare), cuộc gọi được nối luôn và CALL_INFO mang địa chỉ media của họ.
+     */
+    public Packet handleCallRequest(Packet request, Long userId, String senderHost) {
+        Long peerId = request.getLong("peerId");
+        String callId = request.getString("callId");
+
+        if (userId == null || peerId == null || callId == null) {
+            return PacketBuilder.create(MessageType.CALL_INFO)
+                    .error("Missing required fields")
+                    .build();
+        }
+
+        try {
+            CallRegistry.Call call = callRegistry.request(userId, peerId, callId,
+                    Boolean.TRUE.equals(request.getBoolean("video")), senderHost, request.getInt("mediaPort"));
+
+            if (call.getState() == CallRegistry.State.CONNECTED) {
+                return PacketBuilder.create(MessageType.CALL_INFO)
+                        .success(true)
+                        .put("callId", call.getCallId())
+                        .put("state", "connected")
+                        .put("video", call.isVideo())
+                        .put("host", call.getCallerHost())
+                        .put("mediaPort", call.getCallerPort())
+                        .build();
+            }
+
+            logger.info("Call " + callId + " from " + userId + " to " + peerId);
+            return PacketBuilder.create(MessageType.CALL_INFO)
+                    .success(true)
+                    .put("callId", callId)
+                    .put("state", "ringing")
+                    .build();
+
+        } catch (IllegalStateException e) {
+            return PacketBuilder.create(MessageType.CALL_INFO)
+                    .error(e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Handle CALL_INFO: trạng thái cuộc gọi hiện tại của user (vd. sau khi kết nối lại)
+     */
+    public Packet handleCallInfo(Long userId) {
+        CallRegistry.Call call = userId != null ? callRegistry.getCall(userId) : null;
+        if (call == null) {
+            return PacketBuilder.create(MessageType.CALL_INFO)
+                    .error("No active call")
+                    .build();
+        }
+        return PacketBuilder.create(MessageType.CALL_INFO)
+                .success(true)
+                .put("callId", call.getCallId())
+                .put("state", call.getState().name().toLowerCase())
+                .put("peerId", call.getPeerOf(userId))
+                .put("outgoing", call.getCallerId() == userId)
+                .put("video", call.isVideo())
+                .put("createdAt", call.getCreatedAt())
+                .put("connectedAt", call.getConnectedAt())
+                .build();
+    }
+
+    /**
+     * Handle CALL_INFO có summary: báo cáo chất lượng cuối cuộc gọi, không có response.
+     * Chỉ nhận từ caller/callee của cuộc gọi còn trong CallRegistry, mỗi người một lần.
+     */
+    public void handleCallSummary(Packet request, Long userId) {
+        String callId = request.getString("callId");
+        Object summary = request.get("summary");
+        if (userId == null || callId == null || !(summary instanceof Map)) {
+            return;
+        }
+        if (!callRegistry.claimSummary(userId, callId)) {
+            logger.warn("Call summary " + callId + " from " + userId + " rejected: unknown call or already reported");
+            return;
+        }
+
+        try {
+            CallQualityStats.getInstance().record(userId, callId, (Map<?, ?>) summary);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Call summary " + callId + " from " + userId + " rejected: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handle CALL_ACCEPT / CALL_REJECT / CALL_END: chuyển trạng thái trong CallRegistry, không có response
+     */
+    public void handleCallSignal(Packet request, Long userId, String senderHost) {
+        String callId = request.getString("callId");
+        if (userId == null || callId == null) {
+            return;
+        }
+
+        switch (request.getType()) {
+            case CALL_ACCEPT:
+                if (!callRegistry.accept(userId, callId, senderHost, request.getInt("mediaPort"))) {
+                    // Người gọi đã hủy hoặc hết giờ: báo để client đóng cửa sổ cuộc gọi
+                    ClientHandler client = ClientRegistry.getInstance().getClient(userId);
+                    if (client != null) {
+                        client.sendPacket(PacketBuilder.create(MessageType.CALL_END)
+                                .success(true)
+                                .put("callId", callId)
+                                .put("reason", "cancelled")
+                                .build());
+                    }
+                }
+                break;
+            case CALL_REJECT:
+                callRegistry.reject(userId, callId, request.getString("reason"));
+                break;
+            case CALL_END:
+                callRegistry.end(userId, callId, request.getString("reason"));
+                break;
+            default:
+                return;
+        }
+
+        logger.info("Call " + callId + ": " + request.getType() + " from " + userId);
+    }
+}
@@ -1,3 +1,273 @@
 package com.chatapp.server.handler;
 
-public class ChatHandler {}
+import com.chatapp.common.model.ConversationSummary;
+import com.chatapp.common.model.Message;
+import com.chatapp.common.protocol.MessageType;
+import com.chatapp.common.protocol.Packet;
+import com.chatapp.common.protocol.PacketBuilder;
+import com.chatapp.server.core.GroupMemberCache;
+import com.chatapp.server.service.ChatService;
+import com.chatapp.server.util.Logger;
+
+import java.sql.SQLException;
+import java.util.List;
+
+public class ChatHandler {
+    private final ChatService chatService;
+    private final Logger logger = Logger.getInstance();
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+
+    public ChatHandler() {
+        this.chatService = ChatService.getInstance();
+    }
+
+    /**
+     * Handle send message request.
+     * clientMessageId do client sinh ra, client có thể gửi lại cùng ID sau khi reconnect
+     * mà không bị nhận trùng.
+     */
+    public Packet handleSendMessage(Packet request, Long senderId) {
+        try {
+            if (senderId == null) {
+                return PacketBuilder.create(MessageType.SEND_MESSAGE_RESPONSE)
+                        .error("Not logged in")
+                        .build();
+            }
+            Long receiverId = request.getLong("receiverId");
+            Long groupId = request.getLong("groupId");
+            String clientMessageId = request.getString("clientMessageId");
+            String content = request.getString("content");
+            String typeStr = request.getString("messageType");
+            Long fileId = request.getLong("fileId"); // File đã upload qua FILE_OFFER
+
+            if ((receiverId == null && groupId == null)
+                    || clientMessageId == null || content == null) {
+                return PacketBuilder.create(MessageType.SEND_MESSAGE_RESPONSE)
+                        .error("Missing required fields")
+                        .build();
+            }
+
+            Message.MessageType messageType = typeStr != null
+                    ? Message.MessageType.valueOf(typeStr)
+                    : Message.MessageType.TEXT;
+
+            ChatService.SendResult result = groupId != null
+                    ? chatService.sendGroupMessage(senderId, groupId, clientMessageId, content, messageType, fileId)
+                    : chatService.sendMessage(senderId, receiverId, clientMessageId, content, messageType, fileId);
+            Message message = result.getMessage();
+
+            return PacketBuilder.create(MessageType.SEND_MESSAGE_RESPONSE)
+                    .success(true)
+                    .put("clientMessageId", clientMessageId)
+                    .put("messageId", message.getId())
+                    .put("conversationId", message.getConversationId())
+                    .put("sequence", message.getSequence())
+                    .put("createdAt", message.getCreatedAt())
+                    .put("duplicate", result.isDuplicate())
+                    .build();
+
+        } catch (IllegalArgumentException e) {
+            return PacketBuilder.create(MessageType.SEND_MESSAGE_RESPONSE)
+                    .error("Invalid message type")
+                    .build();
+        } catch (IllegalStateException e) {
+            return PacketBuilder.create(MessageType.SEND_MESSAGE_RESPONSE)
+                    .error(e.getMessage())
+                    .build();
+        } catch (SQLException e) {
+            logger.error("Database error while sending message: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.SEND_MESSAGE_RESPONSE)
+                    .error("Database error: " + e.getMessage())
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error sending message: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.SEND_MESSAGE_RESPONSE)
+                    .error("Server error: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Handle get messages request (keyset pagination: beforeSequence / afterSequence + limit).
+     * Chat 1-1 dùng peerId, chat nhóm dùng groupId.
+     */
+    public Packet handleGetMessages(Packet request, Long userId) {
+        try {
+            if (userId == null) {
+                return PacketBuilder.create(MessageType.GET_MESSAGES_RESPONSE)
+                        .error("Not logged in")
+                        .build();
+            }
+            Long peerId = request.getLong("peerId");
+            Long groupId = request.getLong("groupId");
+            Long beforeSeq = request.getLong("beforeSequence");
+            Long afterSeq = request.getLong("afterSequence");
+            Integer limitValue = request.getInt("limit");
+
+            if (peerId == null && groupId == null) {
+                return PacketBuilder.create(MessageType.GET_MESSAGES_RESPONSE)
+                        .error("Missing required fields")
+                        .build();
+            }
+
+            if (groupId != null && !GroupMemberCache.getInstance().isMember(groupId, userId)) {
+                return PacketBuilder.create(MessageType.GET_MESSAGES_RESPONSE)
+                        .error("Not a member of this group")
+                        .build();
+            }
+
+            int limit = limitValue != null ? Math.max(1, Math.min(limitValue, MAX_PAGE_SIZE)) : DEFAULT_PAGE_SIZE;
+            String conversationId = groupId != null
+                    ? Message.groupConversationId(groupId)
+                    : Message.directConversationId(userId, peerId);
+
+            List<Message> messages = chatService.getMessages(conversationId, beforeSeq, afterSeq, limit);
+
+            return PacketBuilder.create(MessageType.GET_MESSAGES_RESPONSE)
+                    .success(true)
+                    .put("conversationId", conversationId)
+                    .put("messages", messages)
+                    .put("count", messages.size())
+                    .put("hasMore", messages.size() == limit)
+                    .build();
+
+        } catch (SQLException e) {
+            logger.error("Database error while getting messages: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.GET_MESSAGES_RESPONSE)
+                    .error("Database error: " + e.getMessage())
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error getting messages: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.GET_MESSAGES_RESPONSE)
+                    .error("Server error: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Handle get conversations request: toàn bộ danh sách chat trong một round trip
+     */
+    public Packet handleGetConversations(Packet request, Long userId) {
+        try {
+            if (userId == null) {
+                return PacketBuilder.create(MessageType.GET_CONVERSATIONS_RESPONSE)
+                        .error("Not logged in")
+                        .build();
+            }
+
+            List<ConversationSummary> conversations = chatService.getConversations(userId);
+
+            return PacketBuilder.create(MessageType.GET_CONVERSATIONS_RESPONSE)
+                    .success(true)
+                    .put("conversations", conversations)
+                    .put("count", conversations.size())
+                    .build();
+
+        } catch (SQLException e) {
+            logger.error("Database error while getting conversations: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.GET_CONVERSATIONS_RESPONSE)
+                    .error("Database error: " + e.getMessage())
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error getting conversations: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.GET_CONVERSATIONS_RESPONSE)
+                    .error("Server error: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Handle search messages request (trong một cuộc trò chuyện 1-1 hoặc nhóm)
+     */
+    public Packet handleSearchMessages(Packet request, Long userId) {
+        try {
+            if (userId == null) {
+                return PacketBuilder.create(MessageType.SEARCH_MESSAGES_RESPONSE)
+                        .error("Not logged in")
+                        .build();
+            }
+            Long peerId = request.getLong("peerId");
+            Long groupId = request.getLong("groupId");
+            String query = request.getString("query");
+            Integer limitValue = request.getInt("limit");
+
+            if ((peerId == null && groupId == null) || query == null || query.trim().isEmpty()) {
+                return PacketBuilder.create(MessageType.SEARCH_MESSAGES_RESPONSE)
+                        .error("Missing required fields")
+                        .build();
+            }
+
+            if (groupId != null && !GroupMemberCache.getInstance().isMember(groupId, userId)) {
+                return PacketBuilder.create(MessageType.SEARCH_MESSAGES_RESPONSE)
+                        .error("Not a member of this group")
+                        .build();
+            }
+
+            int limit = limitValue != null ? Math.max(1, Math.min(limitValue, MAX_PAGE_SIZE)) : DEFAULT_PAGE_SIZE;
+            String conversationId = groupId != null
+                    ? Message.groupConversationId(groupId)
+                    : Message.directConversationId(userId, peerId);
+
+            List<Message> messages = chatService.searchMessages(conversationId, query, limit);
+
+            return PacketBuilder.create(MessageType.SEARCH_MESSAGES_RESPONSE)
+                    .success(true)
+                    .put("conversationId", conversationId)
+                    .put("messages", messages)
+                    .put("count", messages.size())
+                    .build();
+
+        } catch (SQLException e) {
+            logger.error("Database error while searching messages: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.SEARCH_MESSAGES_RESPONSE)
+                    .error("Database error: " + e.getMessage())
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error searching messages: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.SEARCH_MESSAGES_RESPONSE)
+                    .error("Server error: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Handle typing indicator (one-way: không có response)
+     */
+    public void handleTypingIndicator(Packet request, Long senderId) {
+        Long peerId = request.getLong("peerId");
+        Boolean typing = request.getBoolean("typing");
+
+        if (senderId == null || peerId == null) {
+            return;
+        }
+        chatService.relayTyping(senderId, peerId, !Boolean.FALSE.equals(typing));
+    }
+
+    /**
+     * Handle read receipt (one-way: không có response).
+     * Client gửi watermark "đã đọc tới readSequence" thay vì từng message, kèm peerId hoặc groupId.
+     */
+    public void handleReadReceipt(Packet request, Long userId) {
+        Long peerId = request.getLong("peerId");
+        Long groupId = request.getLong("groupId");
+        Long readSeq = request.getLong("readSequence");
+
+        if (userId == null || readSeq == null || (peerId == null && groupId == null)) {
+            return;
+        }
+        if (groupId == null) {
+            chatService.markRead(userId, peerId, readSeq);
+            return;
+        }
+
+        try {
+            if (GroupMemberCache.getInstance().isMember(groupId, userId)) {
+                chatService.markGroupRead(userId, groupId, readSeq);
+            }
+        } catch (SQLException e) {
+            logger.error("Database error while marking group " + groupId + " read: " + e.getMessage(), e);
+        }
+    }
+}
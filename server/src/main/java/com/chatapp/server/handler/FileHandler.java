@@ -1,3 +1,260 @@
 package com.chatapp.server.handler;
 
-public class FileHandler {}
+import com.chatapp.common.model.FileInfo;
+import com.chatapp.common.protocol.MessageType;
+import com.chatapp.common.protocol.Packet;
+import com.chatapp.common.protocol.PacketBuilder;
+import com.chatapp.server.config.ConfigLoader;
+import com.chatapp.server.core.ClientRegistry;
+import com.chatapp.server.core.DownloadTickets;
+import com.chatapp.server.core.UploadSessions.UploadSession;
+import com.chatapp.server.network.ClientHandler;
+import com.chatapp.server.service.FileService;
+import com.chatapp.server.util.Logger;
+
+import java.sql.SQLException;
+
+public class FileHandler {
+    private final FileService fileService;
+    private final DownloadTickets downloadTickets;
+    private final int transferPort;
+    private final Logger logger = Logger.getInstance();
+
+    public FileHandler() {
+        this.fileService = FileService.getInstance();
+        this.downloadTickets = DownloadTickets.getInstance();
+        this.transferPort = ConfigLoader.getInstance().getIntProperty("file.transfer.port", 8889);
+    }
+
+    /**
+     * Handle FILE_OFFER: client đề nghị upload file (hoặc upload tiếp với uploadId).
+     * Trả về FILE_ACCEPT kèm uploadId/token/offset để mở kết nối tới cổng truyền file,
+     * FILE_ACCEPT kèm challenge nếu server đã có nội dung cùng checksum (client gửi lại offer kèm proof,
+     * đúng thì FILE_ACCEPT với complete=true, sai thì upload bình thường),
+     * streams > 1 nếu file đủ lớn để upload song song nhiều kết nối (kèm các đoạn còn thiếu),
+     * live = true để upload dữ liệu chưa biết kích thước (chunk rỗng kết thúc),
+     * hoặc FILE_REJECT nếu không hợp lệ.
+     */
+    public Packet handleFileOffer(Packet request, Long userId) {
+        try {
+            String uploadId = request.getString("uploadId");
+
+            if (userId == null) {
+                return PacketBuilder.create(MessageType.FILE_REJECT)
+                        .error("Not logged in")
+                        .build();
+            }
+
+            UploadSession session;
+            if (uploadId != null) {
+                session = fileService.resumeUpload(userId, uploadId);
+                if (session == null) {
+                    return PacketBuilder.create(MessageType.FILE_REJECT)
+                            .error("Upload not found")
+                            .build();
+                }
+            } else if (Boolean.TRUE.equals(request.getBoolean("live"))) {
+                // Dữ liệu đang được tạo ra (ghi âm): chưa có kích thước/checksum, không thể dùng lại blob
+                session = fileService.openLiveUpload(userId, request.getString("fileName"),
+                        request.getString("mimeType"));
+            } else {
+                Long fileSize = request.getLong("fileSize");
+                long size = fileSize != null ? fileSize : 0;
+
+                String proof = request.getString("proof");
+                if (proof != null) {
+                    // Trả lời thử thách đúng: trả luôn file, không cần truyền byte nào
+                    FileInfo existing = fileService.reuseBlob(userId, request.getString("fileName"), size,
+                            request.getString("mimeType"), request.getString("checksum"),
+                            request.getString("challenge"), proof);
+                    if (existing != null) {
+                        return PacketBuilder.create(MessageType.FILE_ACCEPT)
+                                .success(true)
+                                .put("complete", true)
+                                .put("file", existing)
+                                .build();
+                    }
+                } else {
+                    // Server đã có nội dung này: yêu cầu chứng minh có nội dung trước khi dùng lại
+                    FileService.BlobChallenge challenge = fileService.challengeBlob(userId,
+                            request.getString("fileName"), size, request.getString("checksum"));
+                    if (challenge != null) {
+                        return PacketBuilder.create(MessageType.FILE_ACCEPT)
+                                .success(true)
+                                .put("challenge", challenge.getId())
+                                .put("proofOffset", challenge.getOffset())
+                                .put("proofLength", challenge.getLength())
+                                .build();
+                    }
+                }
+
+                Integer streams = request.getInt("streams");
+                session = fileService.openUpload(userId, request.getString("fileName"), size,
+                        request.getString("mimeType"), request.getString("checksum"),
+                        streams != null ? streams : 1);
+            }
+
+            PacketBuilder accept = PacketBuilder.create(MessageType.FILE_ACCEPT)
+                    .success(true)
+                    .put("uploadId", session.getUploadId())
+                    .put("token", session.getToken())
+                    .put("offset", session.getReceivedBytes())
+                    .put("chunkSize", fileService.getChunkSize())
+                    .put("port", transferPort)
+                    .put("streams", session.getStreams());
+            if (session.isMultiStream()) {
+                // Các đoạn còn thiếu, client chia cho các luồng
+                accept.put("missing", session.getMissingRanges());
+            }
+            return accept.build();
+
+        } catch (SQLException e) {
+            logger.error("Database error handling file offer: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.FILE_REJECT)
+                    .error("Database error: " + e.getMessage())
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return PacketBuilder.create(MessageType.FILE_REJECT)
+                    .error(e.getMessage())
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error handling file offer: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.FILE_REJECT)
+                    .error("Server error: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Handle FILE_DOWNLOAD_REQUEST: cấp vé download cho file (fileId) hoặc avatar (avatarUrl).
+     * Bytes được tải qua cổng truyền file bằng vé này, hỗ trợ đọc theo range;
+     * streams là số range client được đọc song song.
+     */
+    public Packet handleFileDownload(Packet request, Long userId) {
+        try {
+            if (userId == null) {
+                return PacketBuilder.create(MessageType.FILE_DOWNLOAD_RESPONSE)
+                        .error("Not logged in")
+                        .build();
+            }
+
+            Long fileId = request.getLong("fileId");
+            String avatarUrl = request.getString("avatarUrl");
+            String resource;
+            FileInfo fileInfo = null;
+
+            if (fileId != null) {
+                fileInfo = fileService.authorizeDownload(userId, fileId);
+                if (fileInfo == null) {
+                    return PacketBuilder.create(MessageType.FILE_DOWNLOAD_RESPONSE)
+                            .error("File not found")
+                            .build();
+                }
+                resource = FileService.RESOURCE_FILE + fileId;
+            } else if (avatarUrl != null) {
+                resource = FileService.RESOURCE_AVATAR + avatarUrl;
+            } else {
+                return PacketBuilder.create(MessageType.FILE_DOWNLOAD_RESPONSE)
+                        .error("fileId or avatarUrl is required")
+                        .build();
+            }
+
+            long expires = downloadTickets.newExpiry();
+            return PacketBuilder.create(MessageType.FILE_DOWNLOAD_RESPONSE)
+                    .success(true)
+                    .put("resource", resource)
+                    .put("expires", expires)
+                    .put("ticket", downloadTickets.issue(resource, expires))
+                    .put("port", transferPort)
+                    .put("streams", fileService.getMaxStreams())
+                    .put("file", fileInfo)
+                    .build();
+
+        } catch (SQLException e) {
+            logger.error("Database error handling file download: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.FILE_DOWNLOAD_RESPONSE)
+                    .error("Database error: " + e.getMessage())
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error handling file download: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.FILE_DOWNLOAD_RESPONSE)
+                    .error("Server error: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Handle FILE_OFFER có peerId: người gửi đề nghị gửi file trực tiếp (P2P) cho peer.
+     * Server chỉ chuyển tiếp offer kèm địa chỉ người gửi quan sát được từ kết nối,
+     * bytes của file không đi qua server.
+     *
+     * @param senderHost địa chỉ IP của kết nối người gửi
+     */
+    public Packet handlePeerOffer(Packet request, Long userId, String senderHost) {
+        Long peerId = request.getLong("peerId");
+        String transferId = request.getString("transferId");
+
+        if (userId == null || peerId == null || transferId == null) {
+            return PacketBuilder.create(MessageType.FILE_INFO)
+                    .error("Missing required fields")
+                    .build();
+        }
+
+        ClientHandler peer = ClientRegistry.getInstance().getClient(peerId);
+        if (peer == null) {
+            return PacketBuilder.create(MessageType.FILE_INFO)
+                    .error("Peer offline")
+                    .build();
+        }
+
+        boolean delivered = peer.sendPacket(PacketBuilder.create(MessageType.FILE_OFFER)
+                .success(true)
+                .put("fromUserId", userId)
+                .put("transferId", transferId)
+                .put("token", request.getString("token"))
+                .put("fileName", request.getString("fileName"))
+                .put("fileSize", request.getLong("fileSize"))
+                .put("checksum", request.getString("checksum"))
+                .put("host", senderHost)
+                .put("port", request.getInt("port"))
+                .build());
+
+        if (!delivered) {
+            return PacketBuilder.create(MessageType.FILE_INFO)
+                    .error("Peer offline")
+                    .build();
+        }
+
+        logger.info("P2P offer " + transferId + " relayed from " + userId + " to " + peerId);
+        return PacketBuilder.create(MessageType.FILE_INFO)
+                .success(true)
+                .put("transferId", transferId)
+                .build();
+    }
+
+    /**
+     * Handle FILE_ACCEPT/FILE_REJECT của người nhận cho offer P2P: chuyển tiếp cho người gửi (một chiều).
+     * FILE_ACCEPT có received là xác nhận đã nhận đủ và đúng checksum.
+     */
+    public void handlePeerAnswer(Packet request, Long userId) {
+        Long peerId = request.getLong("peerId");
+        if (userId == null || peerId == null) {
+            return;
+        }
+
+        ClientHandler peer = ClientRegistry.getInstance().getClient(peerId);
+        if (peer != null) {
+            PacketBuilder answer = PacketBuilder.create(request.getType())
+                    .success(true)
+                    .put("fromUserId", userId)
+                    .put("transferId", request.getString("transferId"));
+            if (request.get("reason") != null) {
+                answer.put("reason", request.getString("reason"));
+            }
+            if (Boolean.TRUE.equals(request.getBoolean("received"))) {
+                answer.put("received", true);
+            }
+            peer.sendPacket(answer.build());
+        }
+    }
+}
@@ -2,8 +2,13 @@ package com.chatapp.server.network;
 
 import com.chatapp.common.protocol.*;
 import com.chatapp.common.util.JsonUtil;
+import com.chatapp.server.core.CallRegistry;
 import com.chatapp.server.core.ClientRegistry;
+import com.chatapp.server.core.ConversationSummaries;
 import com.chatapp.server.handler.AuthHandler;
+import com.chatapp.server.handler.CallHandler;
+import com.chatapp.server.handler.ChatHandler;
+import com.chatapp.server.handler.FileHandler;
 import com.chatapp.server.service.*;
 import com.chatapp.server.util.Logger;
 
@@ -18,6 +23,9 @@ public class ClientHandler implements Runnable {
     private final Socket socket;
     private final ClientRegistry clientRegistry;
     private final AuthHandler authHandler;
+    private final ChatHandler chatHandler;
+    private final FileHandler fileHandler;
+    private final CallHandler callHandler;
     private final UserService userService;
     private final AuthService authService;
     private final Logger logger = Logger.getInstance();
@@ -30,6 +38,9 @@ public class ClientHandler implements Runnable {
         this.socket = socket;
         this.clientRegistry = clientRegistry;
         this.authHandler = new AuthHandler();
+        this.chatHandler = new ChatHandler();
+        this.fileHandler = new FileHandler();
+        this.callHandler = new CallHandler();
         this.userService = UserService.getInstance();
         this.authService = AuthService.getInstance();
     }
@@ -68,13 +79,20 @@ public class ClientHandler implements Runnable {
         try {
             Packet request = JsonUtil.fromJson(line, Packet.class);
             Packet response = handleRequest(request);
+            if (response == null) {
+                return; // Gói tin một chiều (typing, read receipt)
+            }
 
             String responseJson = JsonUtil.toJson(response);
-            output.println(responseJson);
-            output.flush();
+            send(responseJson);
 
             logger.info("Sent: " + responseJson);
 
+            // Giao tin nhắn offline sau khi client đã nhận login response
+            if (request.getType() == MessageType.LOGIN_REQUEST && response.isSuccess()) {
+                ChatService.getInstance().drainOfflineMessages(userId, this);
+            }
+
         } catch (Exception e) {
             logger.error("Error processing request: " + e.getMessage(), e);
             sendError("Server error: " + e.getMessage());
@@ -88,7 +106,34 @@ public class ClientHandler implements Runnable {
         Packet errorResponse = PacketBuilder.create(MessageType.ERROR)
                 .error(message)
                 .build();
-        output.println(JsonUtil.toJson(errorResponse));
+        send(JsonUtil.toJson(errorResponse));
+    }
+
+    /**
+     * Đẩy gói tin (không phải response) tới client, ví dụ RECEIVE_MESSAGE.
+     * Có thể được gọi từ thread của client khác.
+     *
+     * @return false nếu không ghi được (client đã ngắt kết nối)
+     */
+    public boolean sendPacket(Packet packet) {
+        return send(JsonUtil.toJson(packet));
+    }
+
+    /**
+     * Đẩy một frame JSON đã encode sẵn (dùng chung cho nhiều người nhận khi fan-out nhóm)
+     */
+    public boolean sendFrame(String json) {
+        return send(json);
+    }
+
+    /**
+     * Ghi một dòng JSON ra socket; đồng bộ để response và push không bị xen kẽ.
+     */
+    private synchronized boolean send(String json) {
+        if (output == null) return false;
+        output.println(json);
+        output.flush();
+        return !output.checkError();
     }
 
     /**
@@ -112,7 +157,10 @@ public class ClientHandler implements Runnable {
                     return authHandler.handleRegister(request);
 
                 case LOGOUT_REQUEST:
-                    if (userId != null) clientRegistry.removeClient(userId);
+                    if (userId != null) {
+                        clientRegistry.removeClient(userId);
+                        ConversationSummaries.getInstance().unload(userId);
+                    }
                     return authHandler.handleLogout(request);
 
                 case VERIFY_OTP_REQUEST:
@@ -140,6 +188,9 @@ public class ClientHandler implements Runnable {
                 case GET_USER_INFO_REQUEST:
                     return userService.handleGetUserInfo(request);
 
+                case GET_AVATAR_REQUEST:
+                    return userService.handleGetAvatar(request);
+
                 case STATUS_UPDATE:
                     return userService.handleStatusUpdate(request);
 
@@ -168,7 +219,74 @@ public class ClientHandler implements Runnable {
                 case SEARCH_USERS_REQUEST:
                     return FriendService.getInstance().handleSearchUsers(request);
 
-                // TODO: Thêm handler cho Chat, File, Call...
+                // Chat
+                case SEND_MESSAGE_REQUEST:
+                    return chatHandler.handleSendMessage(request, userId);
+
+                case GET_MESSAGES_REQUEST:
+                    return chatHandler.handleGetMessages(request, userId);
+
+                case GET_CONVERSATIONS_REQUEST:
+                    return chatHandler.handleGetConversations(request, userId);
+
+                case SEARCH_MESSAGES_REQUEST:
+                    return chatHandler.handleSearchMessages(request, userId);
+
+                // Group
+                case CREATE_GROUP_REQUEST:
+                    return GroupService.getInstance().handleCreateGroup(request, userId);
+
+                case GET_GROUPS_REQUEST:
+                    return GroupService.getInstance().handleGetGroups(request, userId);
+
+                case ADD_GROUP_MEMBERS_REQUEST:
+                    return GroupService.getInstance().handleAddMembers(request, userId);
+
+                case LEAVE_GROUP_REQUEST:
+                    return GroupService.getInstance().handleLeaveGroup(request, userId);
+
+                // One-way: không trả response để tránh một round trip cho mỗi lần gõ phím / đọc
+                case TYPING_INDICATOR:
+                    chatHandler.handleTypingIndicator(request, userId);
+                    return null;
+
+                case READ_RECEIPT:
+                    chatHandler.handleReadReceipt(request, userId);
+                    return null;
+
+                // File (bytes đi qua cổng truyền file, ở đây chỉ thương lượng)
+                case FILE_OFFER:
+                    if (request.get("peerId") != null) {
+                        return fileHandler.handlePeerOffer(request, userId, getRemoteAddress());
+                    }
+                    return fileHandler.handleFileOffer(request, userId);
+
+                // Trả lời offer P2P: chuyển cho người gửi, không cần response
+                case FILE_ACCEPT:
+                case FILE_REJECT:
+                    fileHandler.handlePeerAnswer(request, userId);
+                    return null;
+
+                case FILE_DOWNLOAD_REQUEST:
+                    return fileHandler.handleFileDownload(request, userId);
+
+                // Cuộc gọi: server giữ trạng thái signaling, media UDP đi thẳng giữa hai client
+                case CALL_REQUEST:
+                    return callHandler.handleCallRequest(request, userId, getRemoteAddress());
+
+                case CALL_ACCEPT:
+                case CALL_REJECT:
+                case CALL_END:
+                    callHandler.handleCallSignal(request, userId, getRemoteAddress());
+                    return null;
+
+                case CALL_INFO:
+                    if (request.get("summary") != null) {
+                        callHandler.handleCallSummary(request, userId);
+                        return null;
+                    }
+                    return callHandler.handleCallInfo(userId);
+
                 default:
                     return PacketBuilder.create(MessageType.ERROR)
                             .error("Unsupported message type: " + type)
@@ -187,6 +305,15 @@ public class ClientHandler implements Runnable {
      * Dọn dẹp tài nguyên khi client ngắt kết nối.
      */
     private void cleanup() {
+        // Chỉ gỡ nếu registry chưa trỏ sang kết nối mới của cùng user
+        if (userId != null) {
+            clientRegistry.removeClient(userId, this);
+            if (!clientRegistry.isOnline(userId)) {
+                ConversationSummaries.getInstance().unload(userId);
+                CallRegistry.getInstance().onDisconnect(userId);
+            }
+        }
+
         try {
             if (input != null) input.close();
             if (output != null) output.close();
@@ -202,4 +329,11 @@ public class ClientHandler implements Runnable {
     public Long getUserId() {
         return userId;
     }
+
+    /**
+     * IP của client theo kết nối (dùng làm địa chỉ P2P của client)
+     */
+    public String getRemoteAddress() {
+        return socket.getInetAddress().getHostAddress();
+    }
 }
@@ -0,0 +1,319 @@
+package com.chatapp.server.network;
+
+import com.chatapp.common.model.FileInfo;
+import com.chatapp.common.protocol.FileTransferProtocol;
+import com.chatapp.common.protocol.Packet;
+import com.chatapp.common.util.JsonUtil;
+import com.chatapp.server.core.DownloadTickets;
+import com.chatapp.server.core.UploadSessions;
+import com.chatapp.server.core.UploadSessions.UploadSession;
+import com.chatapp.server.service.FileService;
+import com.chatapp.server.util.Logger;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Xử lý một kết nối trên cổng truyền file (xem FileTransferProtocol).
+ * Upload: mỗi chunk được đọc vào một buffer cố định rồi ghi thẳng xuống file tạm,
+ * nên bộ nhớ dùng không phụ thuộc kích thước file.
+ * Download: bytes đi thẳng từ file sang socket bằng FileChannel.transferTo, không qua heap.
+ */
+public class FileTransferConnection implements Runnable {
+
+    private final SocketChannel socketChannel;
+    private final FileService fileService;
+    private final Logger logger = Logger.getInstance();
+
+    public FileTransferConnection(SocketChannel socketChannel) {
+        this.socketChannel = socketChannel;
+        this.fileService = FileService.getInstance();
+    }
+
+    @Override
+    public void run() {
+        try (SocketChannel channel = socketChannel;
+             Socket s = channel.socket();
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 64 * 1024));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+
+            Packet header = JsonUtil.fromJson(in.readUTF(), Packet.class);
+            String op = header.getString("op");
+
+            if (FileTransferProtocol.OP_UPLOAD.equals(op)) {
+                handleUpload(header, in, out);
+            } else if (FileTransferProtocol.OP_UPLOAD_RANGES.equals(op)) {
+                handleUploadRanges(header, in, out);
+            } else if (FileTransferProtocol.OP_DOWNLOAD.equals(op)) {
+                handleDownload(header, out);
+            } else {
+                out.writeLong(-1);
+                out.writeUTF("Unsupported operation: " + op);
+                out.flush();
+            }
+
+        } catch (EOFException e) {
+            logger.info("File transfer connection closed by client");
+        } catch (IOException e) {
+            logger.error("File transfer error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Nhận các chunk từ offset đã lưu cho tới khi đủ kích thước file (phiên live: tới chunk rỗng)
+     */
+    private void handleUpload(Packet header, DataInputStream in, DataOutputStream out) throws IOException {
+        UploadSession session = UploadSessions.getInstance().get(header.getString("uploadId"));
+        if (session == null || !session.getToken().equals(header.getString("token")) || session.isMultiStream()) {
+            out.writeLong(-1);
+            out.writeUTF("Invalid upload");
+            out.flush();
+            return;
+        }
+        if (!session.acquire()) {
+            out.writeLong(-1);
+            out.writeUTF("Upload already in progress");
+            out.flush();
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(session.getTempFile(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+            // Phiên live chưa biết kích thước: nhận tới chunk rỗng, tối đa file.max.size
+            boolean live = session.isLive();
+            long fileSize = live ? fileService.getMaxFileSize() : session.getFileInfo().getFileSize();
+            long offset = session.getReceivedBytes();
+            if (channel.size() > offset) {
+                channel.truncate(offset);
+            }
+            out.writeLong(offset);
+            out.flush();
+
+            byte[] buffer = new byte[fileService.getChunkSize()];
+            CRC32 crc = new CRC32();
+
+            while (offset < fileSize) {
+                int length = in.readInt();
+                long expectedCrc = in.readLong();
+                if (live && length == 0) {
+                    break;
+                }
+                if (length <= 0 || length > buffer.length || offset + length > fileSize) {
+                    out.writeByte(FileTransferProtocol.ERROR);
+                    out.writeUTF("Invalid chunk length: " + length);
+                    out.flush();
+                    return;
+                }
+                in.readFully(buffer, 0, length);
+
+                crc.reset();
+                crc.update(buffer, 0, length);
+                if (crc.getValue() != expectedCrc) {
+                    out.writeByte(FileTransferProtocol.NACK);
+                    out.writeLong(offset);
+                    out.flush();
+                    continue;
+                }
+
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, length);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk, offset + chunk.position());
+                }
+                offset += length;
+                session.append(buffer, 0, length);
+
+                if (live || offset < fileSize) {
+                    out.writeByte(FileTransferProtocol.ACK);
+                    out.writeLong(offset);
+                    out.flush();
+                }
+            }
+            if (live) {
+                if (offset == 0) {
+                    out.writeByte(FileTransferProtocol.ERROR);
+                    out.writeUTF("Empty upload");
+                    out.flush();
+                    return;
+                }
+                session.getFileInfo().setFileSize(offset);
+            }
+
+            channel.force(false);
+        } finally {
+            session.release();
+        }
+
+        try {
+            FileInfo fileInfo = fileService.completeUpload(session);
+            out.writeByte(FileTransferProtocol.DONE);
+            out.writeUTF(JsonUtil.toJson(fileInfo));
+        } catch (Exception e) {
+            logger.error("Failed to complete upload " + session.getUploadId() + ": " + e.getMessage(), e);
+            out.writeByte(FileTransferProtocol.ERROR);
+            out.writeUTF(e.getMessage());
+        }
+        out.flush();
+    }
+
+    /**
+     * Một luồng của upload nhiều luồng: nhận lần lượt các range client gửi, ghi theo vị trí.
+     * Luồng nào ghi chunk làm file đủ thì hoàn tất upload và trả DONE.
+     */
+    private void handleUploadRanges(Packet header, DataInputStream in, DataOutputStream out) throws IOException {
+        UploadSession session = UploadSessions.getInstance().get(header.getString("uploadId"));
+        if (session == null || !session.getToken().equals(header.getString("token")) || !session.isMultiStream()) {
+            out.writeLong(-1);
+            out.writeUTF("Invalid upload");
+            out.flush();
+            return;
+        }
+        if (!session.acquire()) {
+            out.writeLong(-1);
+            out.writeUTF("Upload already completing");
+            out.flush();
+            return;
+        }
+
+        boolean complete = false;
+        try (FileChannel channel = FileChannel.open(session.getTempFile(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+            long fileSize = session.getFileInfo().getFileSize();
+            out.writeLong(0);
+            out.flush();
+
+            byte[] buffer = new byte[fileService.getChunkSize()];
+            CRC32 crc = new CRC32();
+
+            ranges:
+            while (true) {
+                long offset = in.readLong();
+                if (offset < 0) {
+                    break; // Client không còn range cho luồng này
+                }
+                long end = offset + in.readLong();
+                if (end <= offset || end > fileSize) {
+                    out.writeByte(FileTransferProtocol.ERROR);
+                    out.writeUTF("Invalid range: " + offset + "-" + end);
+                    out.flush();
+                    return;
+                }
+
+                while (offset < end) {
+                    int length = in.readInt();
+                    long expectedCrc = in.readLong();
+                    if (length <= 0 || length > buffer.length || offset + length > end) {
+                        out.writeByte(FileTransferProtocol.ERROR);
+                        out.writeUTF("Invalid chunk length: " + length);
+                        out.flush();
+                        return;
+                    }
+                    in.readFully(buffer, 0, length);
+
+                    crc.reset();
+                    crc.update(buffer, 0, length);
+                    if (crc.getValue() != expectedCrc) {
+                        out.writeByte(FileTransferProtocol.NACK);
+                        out.writeLong(offset);
+                        out.flush();
+                        continue;
+                    }
+
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, length);
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk, offset + chunk.position());
+                    }
+                    session.markReceived(offset, offset + length);
+                    offset += length;
+
+                    if (session.tryBeginCompletion()) {
+                        channel.force(false);
+                        complete = true;
+                        break ranges;
+                    }
+
+                    out.writeByte(FileTransferProtocol.ACK);
+                    out.writeLong(offset);
+                    out.flush();
+                }
+            }
+        } finally {
+            session.release();
+        }
+
+        if (complete) {
+            try {
+                FileInfo fileInfo = fileService.completeUpload(session);
+                out.writeByte(FileTransferProtocol.DONE);
+                out.writeUTF(JsonUtil.toJson(fileInfo));
+            } catch (Exception e) {
+                logger.error("Failed to complete upload " + session.getUploadId() + ": " + e.getMessage(), e);
+                out.writeByte(FileTransferProtocol.ERROR);
+                out.writeUTF(e.getMessage());
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Gửi một range của file đã lưu hoặc avatar theo vé download
+     */
+    private void handleDownload(Packet header, DataOutputStream out) throws IOException {
+        String resource = header.getString("resource");
+        Long expires = header.getLong("expires");
+        if (expires == null || !DownloadTickets.getInstance().verify(resource, expires, header.getString("ticket"))) {
+            out.writeLong(-1);
+            out.writeUTF("Invalid ticket");
+            out.flush();
+            return;
+        }
+
+        Path path;
+        try {
+            path = fileService.resolveResource(resource);
+        } catch (Exception e) {
+            logger.error("Failed to resolve " + resource + ": " + e.getMessage());
+            path = null;
+        }
+        if (path == null) {
+            out.writeLong(-1);
+            out.writeUTF("File not found");
+            out.flush();
+            return;
+        }
+
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = file.size();
+            Long offsetValue = header.getLong("offset");
+            Long lengthValue = header.getLong("length");
+            long start = Math.min(Math.max(offsetValue != null ? offsetValue : 0, 0), size);
+            long count = lengthValue == null || lengthValue < 0
+                    ? size - start
+                    : Math.min(lengthValue, size - start);
+
+            out.writeLong(size);
+            out.writeLong(start);
+            out.writeLong(count);
+            out.flush();
+
+            // Kênh blocking: transferTo có thể gửi ít hơn yêu cầu, lặp tới khi đủ
+            long position = start;
+            long end = start + count;
+            while (position < end) {
+                long sent = file.transferTo(position, end - position, socketChannel);
+                if (sent <= 0 && !socketChannel.isOpen()) {
+                    throw new EOFException("Client closed download");
+                }
+                position += sent;
+            }
+            logger.info("Download sent " + resource + " [" + start + ", " + end + ") of " + size);
+        }
+    }
+}
@@ -0,0 +1,517 @@
+package com.chatapp.server.service;
+
+import com.chatapp.common.model.ConversationSummary;
+import com.chatapp.common.model.Message;
+import com.chatapp.common.protocol.MessageType;
+import com.chatapp.common.protocol.Packet;
+import com.chatapp.common.protocol.PacketBuilder;
+import com.chatapp.common.util.JsonUtil;
+import com.chatapp.server.config.ConfigLoader;
+import com.chatapp.server.core.ClientRegistry;
+import com.chatapp.server.core.ConversationCache;
+import com.chatapp.server.core.ConversationSummaries;
+import com.chatapp.server.core.GroupMemberCache;
+import com.chatapp.server.core.OfflineInbox;
+import com.chatapp.server.core.ReadWatermarks;
+import com.chatapp.server.core.SearchIndex;
+import com.chatapp.server.core.RecentMessageIds;
+import com.chatapp.server.core.SequenceAllocator;
+import com.chatapp.server.database.dao.FileDAO;
+import com.chatapp.server.database.dao.MessageDAO;
+import com.chatapp.server.database.dao.OfflineMessageDAO;
+import com.chatapp.server.network.ClientHandler;
+import com.chatapp.server.util.Logger;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Service xử lý gửi/nhận tin nhắn
+ */
+public class ChatService {
+    private static ChatService instance;
+    private static final long DUPLICATE_WAIT_SECONDS = 30;
+    private final MessageDAO messageDAO;
+    private final FileDAO fileDAO;
+    private final SequenceAllocator sequenceAllocator;
+    private final RecentMessageIds recentMessageIds;
+    private final ConversationCache conversationCache;
+    private final ClientRegistry clientRegistry;
+    private final OfflineInbox offlineInbox;
+    private final OfflineMessageDAO offlineMessageDAO;
+    private final ExecutorService drainExecutor;
+    private final int bundleSize;
+    private final ReadWatermarks readWatermarks;
+    private final ConcurrentHashMap<String, Long> lastTypingRelay;
+    private final long typingIntervalMs;
+    private final GroupMemberCache groupMemberCache;
+    private final ForkJoinPool fanoutPool;
+    private final int fanoutChunkSize;
+    private final SearchIndex searchIndex;
+    private final ConversationSummaries conversationSummaries;
+    private final Logger logger = Logger.getInstance();
+
+    private ChatService() {
+        this(new FileDAO());
+    }
+
+    ChatService(FileDAO fileDAO) {
+        ConfigLoader config = ConfigLoader.getInstance();
+        this.messageDAO = new MessageDAO();
+        this.fileDAO = fileDAO;
+        this.sequenceAllocator = SequenceAllocator.getInstance();
+        this.recentMessageIds = RecentMessageIds.getInstance();
+        this.conversationCache = ConversationCache.getInstance();
+        this.clientRegistry = ClientRegistry.getInstance();
+        this.offlineInbox = OfflineInbox.getInstance();
+        this.offlineMessageDAO = new OfflineMessageDAO();
+        this.bundleSize = config.getIntProperty("chat.offline.bundle.size", 200);
+        this.drainExecutor = Executors.newFixedThreadPool(
+                config.getIntProperty("chat.offline.drain.threads", 4), r -> {
+                    Thread t = new Thread(r, "offline-drain");
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.readWatermarks = ReadWatermarks.getInstance();
+        this.lastTypingRelay = new ConcurrentHashMap<>();
+        this.typingIntervalMs = config.getIntProperty("chat.typing.interval.ms", 3000);
+        this.groupMemberCache = GroupMemberCache.getInstance();
+        this.fanoutPool = new ForkJoinPool(config.getIntProperty("chat.fanout.threads",
+                Runtime.getRuntime().availableProcessors()));
+        this.fanoutChunkSize = config.getIntProperty("chat.fanout.chunk.size", 256);
+        this.searchIndex = SearchIndex.getInstance();
+        this.conversationSummaries = ConversationSummaries.getInstance();
+    }
+
+    public static ChatService getInstance() {
+        if (instance == null) {
+            synchronized (ChatService.class) {
+                if (instance == null) {
+                    instance = new ChatService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Gửi tin nhắn 1-1: cấp sequence, loại bản gửi lại, lưu DB rồi đẩy cho người nhận nếu online
+     *
+     * @throws IllegalStateException nếu người gửi không có quyền với file đính kèm
+     */
+    public SendResult sendMessage(Long senderId, Long receiverId, String clientMessageId,
+                                  String content, Message.MessageType messageType, Long fileId) throws SQLException {
+        checkAttachment(senderId, fileId);
+        Message message = new Message(senderId, receiverId, content, messageType);
+        message.setFileId(fileId);
+        message.setClientMessageId(clientMessageId);
+        message.setConversationId(Message.directConversationId(senderId, receiverId));
+
+        SendResult result = persist(message);
+        if (!result.isDuplicate()) {
+            conversationSummaries.onMessage(message, new long[]{senderId, receiverId});
+            deliver(message);
+        }
+        return result;
+    }
+
+    /**
+     * Gửi tin nhắn nhóm: lưu DB một lần rồi fan-out cho các thành viên
+     *
+     * @throws IllegalStateException nếu người gửi không thuộc nhóm hoặc không có quyền với file đính kèm
+     */
+    public SendResult sendGroupMessage(Long senderId, Long groupId, String clientMessageId,
+                                       String content, Message.MessageType messageType, Long fileId)
+            throws SQLException {
+        if (!groupMemberCache.isMember(groupId, senderId)) {
+            throw new IllegalStateException("Not a member of this group");
+        }
+        checkAttachment(senderId, fileId);
+
+        Message message = new Message(senderId, null, content, messageType);
+        message.setGroupId(groupId);
+        message.setFileId(fileId);
+        message.setClientMessageId(clientMessageId);
+        message.setConversationId(Message.groupConversationId(groupId));
+
+        SendResult result = persist(message);
+        if (!result.isDuplicate()) {
+            long[] members = groupMemberCache.getMembers(groupId);
+            conversationSummaries.onMessage(message, members);
+            fanOut(message, members);
+        }
+        return result;
+    }
+
+    /**
+     * Chỉ được đính kèm file mình đã upload hoặc đã có quyền tải trước khi gửi (vd. chuyển tiếp file nhận được).
+     * Kiểm tra trước khi lưu, vì chính tin nhắn này sẽ cho người gửi quyền tải file.
+     */
+    private void checkAttachment(Long senderId, Long fileId) throws SQLException {
+        if (fileId != null && !fileDAO.canAccess(fileId, senderId)) {
+            throw new IllegalStateException("File not found");
+        }
+    }
+
+    /**
+     * Loại bản gửi lại, cấp sequence, lưu DB và thêm vào cache.
+     * Bản gửi lại tới khi lần đầu còn đang lưu thì chờ lần đầu xong để ack đúng id/sequence.
+     */
+    private SendResult persist(Message message) throws SQLException {
+        Long senderId = message.getSenderId();
+        String clientMessageId = message.getClientMessageId();
+
+        CompletableFuture<Message> pending = new CompletableFuture<>();
+        CompletableFuture<Message> existing = recentMessageIds.putIfAbsent(senderId, clientMessageId, pending);
+        if (existing != null) {
+            Message first = awaitFirst(existing);
+            if (first == null) {
+                // Lần đầu lưu thất bại (chỗ giữ đã được bỏ): xử lý như message mới
+                return persist(message);
+            }
+            logger.info("Duplicate message dropped: " + senderId + "/" + clientMessageId);
+            return new SendResult(first, true);
+        }
+
+        try {
+            message.setSequence(sequenceAllocator.next(message.getConversationId()));
+            messageDAO.insert(message);
+        } catch (SQLException | RuntimeException e) {
+            recentMessageIds.remove(senderId, clientMessageId, pending);
+            pending.completeExceptionally(e);
+            throw e;
+        }
+        pending.complete(message);
+
+        conversationCache.append(message);
+        searchIndex.add(message);
+        return new SendResult(message, false);
+    }
+
+    /**
+     * Chờ lần gửi đầu lưu xong; null nếu lần đầu thất bại
+     */
+    private Message awaitFirst(CompletableFuture<Message> first) throws SQLException {
+        try {
+            return first.get(DUPLICATE_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return null;
+        } catch (TimeoutException e) {
+            throw new SQLException("Timed out waiting for the original message to be saved");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the original message");
+        }
+    }
+
+    /**
+     * Lấy lịch sử tin nhắn theo keyset (before/after sequence).
+     * Trang mới nhất và các trang gần đây được phục vụ từ ConversationCache,
+     * chỉ đọc DB khi cuộn sâu hơn phần đã cache.
+     *
+     * @param beforeSeq lấy các message có seq < beforeSeq (null = mới nhất)
+     * @param afterSeq  nếu khác null, lấy các message có seq > afterSeq
+     * @return danh sách tăng dần theo seq
+     */
+    public List<Message> getMessages(String conversationId, Long beforeSeq, Long afterSeq, int limit)
+            throws SQLException {
+        if (afterSeq != null) {
+            List<Message> cached = conversationCache.getAfter(conversationId, afterSeq, limit);
+            return cached != null ? cached : messageDAO.findAfter(conversationId, afterSeq, limit);
+        }
+
+        long before = beforeSeq != null ? beforeSeq : Long.MAX_VALUE;
+        List<Message> cached = conversationCache.getBefore(conversationId, before, limit);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<Message> messages = messageDAO.findBefore(conversationId, before, limit);
+        if (beforeSeq == null) {
+            conversationCache.seed(conversationId, messages, messages.size() < limit);
+        }
+        return messages;
+    }
+
+    /**
+     * Tìm kiếm tin nhắn trong cuộc trò chuyện qua inverted index
+     *
+     * @return các message khớp, xếp theo độ liên quan
+     */
+    public List<Message> searchMessages(String conversationId, String query, int limit) throws SQLException {
+        List<Long> rankedIds = searchIndex.search(conversationId, query, limit);
+
+        Map<Long, Message> byId = new HashMap<>();
+        for (Message message : messageDAO.findByIds(rankedIds)) {
+            byId.put(message.getId(), message);
+        }
+
+        List<Message> results = new ArrayList<>();
+        for (Long id : rankedIds) {
+            Message message = byId.get(id);
+            if (message != null) {
+                results.add(message);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Danh sách chat của user (tin nhắn cuối + số chưa đọc), đã tính sẵn
+     */
+    public List<ConversationSummary> getConversations(Long userId) throws SQLException {
+        return conversationSummaries.getConversations(userId);
+    }
+
+    /**
+     * Chuyển tiếp trạng thái đang nhập cho người kia (chỉ trong RAM, không ack, không lưu DB).
+     * "Đang nhập" được chuyển tối đa một lần mỗi chat.typing.interval.ms cho mỗi cuộc trò chuyện;
+     * "dừng nhập" chỉ được chuyển nếu trước đó đã báo đang nhập.
+     */
+    public void relayTyping(Long senderId, Long peerId, boolean typing) {
+        String conversationId = Message.directConversationId(senderId, peerId);
+        String key = senderId + ":" + conversationId;
+        long now = System.currentTimeMillis();
+
+        if (typing) {
+            Long last = lastTypingRelay.get(key);
+            if (last != null && now - last < typingIntervalMs) {
+                return;
+            }
+            lastTypingRelay.put(key, now);
+        } else if (lastTypingRelay.remove(key) == null) {
+            return;
+        }
+
+        ClientHandler peer = clientRegistry.getClient(peerId);
+        if (peer != null) {
+            peer.sendPacket(PacketBuilder.create(MessageType.TYPING_INDICATOR)
+                    .success(true)
+                    .put("senderId", senderId)
+                    .put("conversationId", conversationId)
+                    .put("typing", typing)
+                    .build());
+        }
+    }
+
+    /**
+     * Ghi nhận user đã đọc tới readSeq trong cuộc trò chuyện với peer.
+     * Watermark được ghi DB theo kiểu write-behind; người gửi được báo "đã xem" nếu đang online.
+     */
+    public void markRead(Long userId, Long peerId, long readSeq) {
+        String conversationId = Message.directConversationId(userId, peerId);
+        readWatermarks.advance(userId, conversationId, readSeq);
+        conversationSummaries.onRead(userId, conversationId, readSeq);
+
+        ClientHandler peer = clientRegistry.getClient(peerId);
+        if (peer != null) {
+            peer.sendPacket(PacketBuilder.create(MessageType.READ_RECEIPT)
+                    .success(true)
+                    .put("userId", userId)
+                    .put("conversationId", conversationId)
+                    .put("readSequence", readSeq)
+                    .build());
+        }
+    }
+
+    /**
+     * Ghi nhận user đã đọc tới readSeq trong nhóm (caller đã kiểm tra thành viên).
+     * Chỉ cập nhật watermark và số chưa đọc của chính user, không báo "đã xem" cho cả nhóm.
+     */
+    public void markGroupRead(Long userId, Long groupId, long readSeq) {
+        String conversationId = Message.groupConversationId(groupId);
+        readWatermarks.advance(userId, conversationId, readSeq);
+        conversationSummaries.onRead(userId, conversationId, readSeq);
+    }
+
+    /**
+     * Đẩy tin nhắn tới người nhận nếu đang online, ngược lại đưa vào hộp thư offline
+     */
+    private void deliver(Message message) {
+        ClientHandler recipient = clientRegistry.getClient(message.getReceiverId());
+
+        boolean sent = recipient != null && recipient.sendPacket(PacketBuilder.create(MessageType.RECEIVE_MESSAGE)
+                .success(true)
+                .put("message", message)
+                .build());
+
+        if (!sent) {
+            offlineInbox.enqueue(message.getReceiverId(), message);
+        }
+    }
+
+    /**
+     * Đẩy tin nhắn nhóm cho các thành viên (trừ người gửi).
+     * Gói tin được encode JSON đúng một lần, mọi thành viên nhận chung một frame;
+     * danh sách được chia thành các đoạn chạy trên ForkJoinPool để client ghi chậm
+     * không giữ chân các thành viên khác. Ghi socket là blocking nên mỗi đoạn chạy trong
+     * ManagedBlocker: pool tạo thêm thread bù khi các đoạn đang chờ ghi, không bị cạn worker.
+     */
+    private void fanOut(Message message, long[] members) {
+        String frame = JsonUtil.toJson(PacketBuilder.create(MessageType.RECEIVE_MESSAGE)
+                .success(true)
+                .put("message", message)
+                .build());
+
+        for (int from = 0; from < members.length; from += fanoutChunkSize) {
+            FanOutChunk chunk = new FanOutChunk(message, frame, members, from,
+                    Math.min(from + fanoutChunkSize, members.length));
+            fanoutPool.execute(() -> {
+                try {
+                    ForkJoinPool.managedBlock(chunk);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+    }
+
+    /**
+     * Một đoạn fan-out: ghi frame cho các thành viên [start, end), ai không nhận được thì vào hộp thư offline
+     */
+    private class FanOutChunk implements ForkJoinPool.ManagedBlocker {
+        private final Message message;
+        private final String frame;
+        private final long[] members;
+        private final int start;
+        private final int end;
+        private volatile boolean done;
+
+        FanOutChunk(Message message, String frame, long[] members, int start, int end) {
+            this.message = message;
+            this.frame = frame;
+            this.members = members;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean block() {
+            for (int i = start; i < end; i++) {
+                long memberId = members[i];
+                if (memberId == message.getSenderId()) {
+                    continue;
+                }
+
+                ClientHandler member = clientRegistry.getClient(memberId);
+                if (member == null || !member.sendFrame(frame)) {
+                    offlineInbox.enqueue(memberId, message);
+                }
+            }
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done;
+        }
+    }
+
+    /**
+     * Giao toàn bộ tin nhắn offline sau khi user đăng nhập (chạy nền, không chặn thread của client).
+     * Tin nhắn được gom thành các bundle RECEIVE_MESSAGE ("messages"); mỗi bundle từ DB tương ứng
+     * một truy vấn keyset. Ghi socket là blocking nên client đọc chậm sẽ tự làm chậm việc đọc DB.
+     */
+    public void drainOfflineMessages(Long userId, ClientHandler handler) {
+        drainExecutor.submit(() -> {
+            try {
+                int total = 0;
+                while (true) {
+                    // take() chờ các lô đang ghi xuống DB xong, nên đọc DB sau đó sẽ có mọi thứ cũ hơn pending
+                    List<Message> pending = offlineInbox.take(userId);
+                    total += drainStored(userId, handler);
+                    if (pending.isEmpty()) {
+                        break;
+                    }
+
+                    for (int from = 0; from < pending.size(); from += bundleSize) {
+                        List<Message> bundle = pending.subList(from, Math.min(from + bundleSize, pending.size()));
+                        if (!sendBundle(handler, bundle)) {
+                            requeue(userId, pending.subList(from, pending.size()));
+                            return;
+                        }
+                        total += bundle.size();
+                    }
+                    // Lặp lại cho tin nhắn rơi vào hộp thư trong lúc user vừa đăng nhập
+                }
+
+                if (total > 0) {
+                    logger.info("Delivered " + total + " offline messages to user " + userId);
+                }
+            } catch (SQLException e) {
+                logger.error("Database error while draining offline messages: " + e.getMessage(), e);
+            } catch (Exception e) {
+                logger.error("Error draining offline messages: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Giao phần hộp thư đã lưu trong DB; chỉ xóa khỏi DB sau khi bundle đã ghi ra socket
+     */
+    private int drainStored(Long userId, ClientHandler handler) throws SQLException {
+        int total = 0;
+        long afterId = 0;
+
+        while (true) {
+            List<Message> page = offlineMessageDAO.findPage(userId, afterId, bundleSize);
+            if (page.isEmpty()) {
+                return total;
+            }
+
+            if (!sendBundle(handler, page)) {
+                return total; // Mất kết nối: phần còn lại giữ trong DB cho lần đăng nhập sau
+            }
+
+            afterId = page.get(page.size() - 1).getId();
+            offlineMessageDAO.deleteUpTo(userId, afterId);
+            total += page.size();
+
+            if (page.size() < bundleSize) {
+                return total;
+            }
+        }
+    }
+
+    private boolean sendBundle(ClientHandler handler, List<Message> bundle) {
+        return handler.sendPacket(PacketBuilder.create(MessageType.RECEIVE_MESSAGE)
+                .success(true)
+                .put("messages", bundle)
+                .put("offline", true)
+                .build());
+    }
+
+    private void requeue(Long userId, List<Message> messages) {
+        for (Message message : messages) {
+            offlineInbox.enqueue(userId, message);
+        }
+    }
+
+    /**
+     * Kết quả gửi tin nhắn
+     */
+    public static class SendResult {
+        private final Message message;
+        private final boolean duplicate;
+
+        public SendResult(Message message, boolean duplicate) {
+            this.message = message;
+            this.duplicate = duplicate;
+        }
+
+        public Message getMessage() { return message; }
+        public boolean isDuplicate() { return duplicate; }
+    }
+}
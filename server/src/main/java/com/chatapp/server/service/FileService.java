@@ -0,0 +1,367 @@
+package com.chatapp.server.service;
+
+import com.chatapp.common.model.FileInfo;
+import com.chatapp.server.config.ConfigLoader;
+import com.chatapp.server.core.UploadSessions;
+import com.chatapp.server.core.UploadSessions.UploadSession;
+import com.chatapp.server.database.dao.FileDAO;
+import com.chatapp.server.util.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Service xử lý upload file theo chunk qua kênh truyền file.
+ * Nội dung được lưu một lần theo SHA-256; các file trùng nội dung chỉ thêm tham chiếu.
+ * Upload theo hash phải chứng minh có nội dung: server chọn ngẫu nhiên một đoạn của blob, client trả
+ * SHA-256(challenge || đoạn đó). Biết checksum và kích thước thôi không đủ để lấy bản sao file của người khác.
+ */
+public class FileService {
+    private static FileService instance;
+    private final FileDAO fileDAO;
+    private final FileStorageService fileStorage;
+    private final UploadSessions uploadSessions;
+    private final long maxFileSize;
+    private final int chunkSize;
+    private final long multiStreamMinSize;
+    private final int maxStreams;
+    private final Logger logger = Logger.getInstance();
+
+    public static final String RESOURCE_FILE = "file:";
+    public static final String RESOURCE_AVATAR = "avatar:";
+
+    private static final int PROOF_LENGTH = 64 * 1024;
+    private static final long CHALLENGE_TTL_MS = 60_000;
+    private static final int MAX_CHALLENGES = 10_000;
+
+    /**
+     * Thử thách upload theo hash: client phải băm đúng đoạn [offset, offset + length) của nội dung
+     */
+    public static final class BlobChallenge {
+        private final String id;
+        private final long userId;
+        private final String checksum;
+        private final long fileSize;
+        private final String storagePath;
+        private final long offset;
+        private final int length;
+        private final long expiresAt = System.currentTimeMillis() + CHALLENGE_TTL_MS;
+
+        private BlobChallenge(String id, long userId, String checksum, long fileSize, String storagePath,
+                              long offset, int length) {
+            this.id = id;
+            this.userId = userId;
+            this.checksum = checksum;
+            this.fileSize = fileSize;
+            this.storagePath = storagePath;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String getId() { return id; }
+        public long getOffset() { return offset; }
+        public int getLength() { return length; }
+    }
+
+    private final ConcurrentHashMap<String, BlobChallenge> challenges = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    private FileService() {
+        ConfigLoader config = ConfigLoader.getInstance();
+        this.fileDAO = new FileDAO();
+        this.fileStorage = FileStorageService.getInstance();
+        this.uploadSessions = UploadSessions.getInstance();
+        this.maxFileSize = config.getLongProperty("file.max.size", 52428800L);
+        this.chunkSize = config.getIntProperty("file.chunk.size", 1024 * 1024);
+        this.multiStreamMinSize = config.getLongProperty("file.multistream.min.size", 64L * 1024 * 1024);
+        this.maxStreams = config.getIntProperty("file.multistream.max.streams", 8);
+    }
+
+    public static FileService getInstance() {
+        if (instance == null) {
+            synchronized (FileService.class) {
+                if (instance == null) {
+                    instance = new FileService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Mở phiên upload cho file client đề nghị gửi
+     *
+     * @throws IllegalArgumentException nếu thông tin file không hợp lệ
+     */
+    public UploadSession openUpload(Long userId, String fileName, long fileSize, String mimeType, String checksum,
+                                    int requestedStreams) {
+        if (fileName == null || fileName.trim().isEmpty() || fileSize <= 0) {
+            throw new IllegalArgumentException("Invalid file");
+        }
+        if (fileSize > maxFileSize) {
+            throw new IllegalArgumentException("File too large (max " + maxFileSize + " bytes)");
+        }
+
+        FileInfo fileInfo = new FileInfo(userId, fileName.trim(), fileSize, fileTypeOf(mimeType), mimeType);
+        fileInfo.setChecksum(checksum);
+
+        // File lớn mới chia nhiều luồng; file nhỏ giữ upload tuần tự với SHA-256 tính dần
+        int streams = fileSize >= multiStreamMinSize ? Math.min(Math.max(requestedStreams, 1), maxStreams) : 1;
+        UploadSession session = uploadSessions.create(userId, fileInfo, streams);
+        logger.info("Upload opened: " + session.getUploadId() + " (" + fileName + ", " + fileSize + " bytes, "
+                + streams + " streams)");
+        return session;
+    }
+
+    /**
+     * Mở phiên upload chưa biết kích thước, client vừa tạo dữ liệu vừa gửi (tin nhắn thoại đang ghi).
+     * Kích thước tối đa vẫn là file.max.size, kiểm tra theo từng chunk lúc nhận.
+     *
+     * @throws IllegalArgumentException nếu tên file không hợp lệ
+     */
+    public UploadSession openLiveUpload(Long userId, String fileName, String mimeType) {
+        if (fileName == null || fileName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid file");
+        }
+
+        FileInfo fileInfo = new FileInfo(userId, fileName.trim(), 0L, fileTypeOf(mimeType), mimeType);
+        UploadSession session = uploadSessions.createLive(userId, fileInfo);
+        logger.info("Live upload opened: " + session.getUploadId() + " (" + fileName + ")");
+        return session;
+    }
+
+    /**
+     * Lấy phiên upload để upload tiếp sau khi mất kết nối
+     *
+     * @return null nếu phiên không tồn tại hoặc không thuộc user
+     */
+    public UploadSession resumeUpload(Long userId, String uploadId) {
+        UploadSession session = uploadSessions.get(uploadId);
+        if (session == null || !session.getUserId().equals(userId)) {
+            return null;
+        }
+        session.touch();
+        return session;
+    }
+
+    /**
+     * Upload theo hash, bước 1: nếu server đã có blob cùng checksum và kích thước thì cấp thử thách
+     * chứng minh client có nội dung
+     *
+     * @return thử thách, hoặc null nếu chưa có blob và client phải upload
+     */
+    public BlobChallenge challengeBlob(Long userId, String fileName, long fileSize, String checksum)
+            throws SQLException {
+        if (checksum == null || fileName == null || fileName.trim().isEmpty() || fileSize <= 0) {
+            return null;
+        }
+
+        String normalized = checksum.toLowerCase();
+        String storagePath = fileDAO.findBlobPath(normalized, fileSize);
+        if (storagePath == null || !fileStorage.blobExists(storagePath)) {
+            return null;
+        }
+
+        if (challenges.size() >= MAX_CHALLENGES) {
+            long now = System.currentTimeMillis();
+            challenges.values().removeIf(challenge -> challenge.expiresAt < now);
+            if (challenges.size() >= MAX_CHALLENGES) {
+                return null; // Quá nhiều thử thách đang chờ: upload bình thường
+            }
+        }
+
+        byte[] nonce = new byte[16];
+        random.nextBytes(nonce);
+        int length = (int) Math.min(PROOF_LENGTH, fileSize);
+        long offset = ThreadLocalRandom.current().nextLong(fileSize - length + 1);
+        BlobChallenge challenge = new BlobChallenge(toHex(nonce), userId, normalized, fileSize, storagePath,
+                offset, length);
+        challenges.put(challenge.id, challenge);
+        return challenge;
+    }
+
+    /**
+     * Upload theo hash, bước 2: kiểm tra câu trả lời thử thách rồi tạo bản ghi file trỏ tới blob
+     * (tăng ref_count), client không cần gửi nội dung
+     *
+     * @return file đã tạo, hoặc null nếu thử thách không hợp lệ/hết hạn/sai và client phải upload
+     */
+    public FileInfo reuseBlob(Long userId, String fileName, long fileSize, String mimeType, String checksum,
+                              String challengeId, String proof) throws SQLException, IOException {
+        BlobChallenge challenge = challengeId != null ? challenges.remove(challengeId) : null;
+        if (challenge == null || proof == null || checksum == null || fileName == null
+                || fileName.trim().isEmpty() || challenge.userId != userId
+                || challenge.expiresAt < System.currentTimeMillis()
+                || challenge.fileSize != fileSize || !challenge.checksum.equalsIgnoreCase(checksum)) {
+            return null;
+        }
+
+        Path blob = fileStorage.resolve(challenge.storagePath);
+        if (!Files.isRegularFile(blob) || !MessageDigest.isEqual(
+                proofOf(blob, challenge).getBytes(StandardCharsets.US_ASCII),
+                proof.toLowerCase().getBytes(StandardCharsets.US_ASCII))) {
+            logger.warn("Upload-by-hash proof rejected for user " + userId + " (" + challenge.checksum + ")");
+            return null;
+        }
+
+        FileInfo fileInfo = new FileInfo(userId, fileName.trim(), fileSize, fileTypeOf(mimeType), mimeType);
+        fileInfo.setChecksum(challenge.checksum);
+        Lock lock = fileStorage.getBlobLock().readLock();
+        lock.lock();
+        try {
+            // Janitor có thể đã dọn blob sau khi cấp thử thách
+            if (!fileStorage.blobExists(challenge.storagePath)) {
+                return null;
+            }
+            fileDAO.insert(fileInfo, challenge.storagePath);
+        } finally {
+            lock.unlock();
+        }
+
+        logger.info("Upload deduplicated by hash: file " + fileInfo.getId() + " -> " + challenge.storagePath);
+        return fileInfo;
+    }
+
+    /**
+     * Hoàn tất upload: so SHA-256 với checksum client khai báo, chuyển vào kho blob (bỏ bản trùng) và lưu DB.
+     * Upload tuần tự đã tính SHA-256 dần trong lúc nhận; upload nhiều luồng nhận không theo thứ tự
+     * nên đọc lại file một lượt.
+     */
+    public FileInfo completeUpload(UploadSession session) throws IOException, SQLException {
+        Path tempFile = session.getTempFile();
+        FileInfo fileInfo = session.getFileInfo();
+
+        String actual = session.isMultiStream() ? sha256(tempFile) : session.finishDigest();
+        if (fileInfo.getChecksum() != null && !fileInfo.getChecksum().equalsIgnoreCase(actual)) {
+            Files.deleteIfExists(tempFile);
+            uploadSessions.remove(session.getUploadId());
+            throw new IOException("Checksum mismatch");
+        }
+        fileInfo.setChecksum(actual);
+
+        // Giữ read lock từ lúc đưa blob vào kho tới khi có tham chiếu, để janitor không xóa blob ở giữa
+        Lock lock = fileStorage.getBlobLock().readLock();
+        lock.lock();
+        try {
+            String storagePath = fileStorage.storeBlob(tempFile, actual);
+            fileDAO.insert(fileInfo, storagePath);
+        } finally {
+            lock.unlock();
+        }
+        uploadSessions.remove(session.getUploadId());
+
+        logger.info("Upload completed: " + session.getUploadId() + " -> file " + fileInfo.getId());
+        return fileInfo;
+    }
+
+    /**
+     * Lấy thông tin file nếu user có quyền tải
+     *
+     * @return null nếu file không tồn tại hoặc user không có quyền
+     */
+    public FileInfo authorizeDownload(Long userId, Long fileId) throws SQLException {
+        if (!fileDAO.canAccess(fileId, userId)) {
+            return null;
+        }
+        return fileDAO.findById(fileId);
+    }
+
+    /**
+     * Đường dẫn trên đĩa của resource trong vé download ("file:<id>" hoặc "avatar:<url>")
+     *
+     * @return null nếu resource không tồn tại
+     */
+    public Path resolveResource(String resource) throws SQLException {
+        Path path = null;
+        if (resource.startsWith(RESOURCE_FILE)) {
+            String storagePath = fileDAO.findStoragePath(Long.parseLong(resource.substring(RESOURCE_FILE.length())));
+            if (storagePath != null) {
+                path = fileStorage.resolve(storagePath);
+            }
+        } else if (resource.startsWith(RESOURCE_AVATAR)) {
+            path = fileStorage.getAvatarPath(resource.substring(RESOURCE_AVATAR.length()));
+        }
+        return path != null && Files.isRegularFile(path) ? path : null;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * Số kết nối tối đa một client được mở song song cho một upload hoặc download
+     */
+    public int getMaxStreams() {
+        return maxStreams;
+    }
+
+    /**
+     * SHA-256(challenge id || đoạn nội dung được chọn), hex
+     */
+    private static String proofOf(Path blob, BlobChallenge challenge) throws IOException {
+        try (FileChannel channel = FileChannel.open(blob)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(challenge.id.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer buffer = ByteBuffer.allocate(challenge.length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, challenge.offset + buffer.position()) < 0) {
+                    throw new IOException("Blob shorter than expected");
+                }
+            }
+            buffer.flip();
+            digest.update(buffer);
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static String sha256(Path file) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = Files.newInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+    }
+
+    private static String fileTypeOf(String mimeType) {
+        if (mimeType == null) return "FILE";
+        if (mimeType.startsWith("image/")) return "IMAGE";
+        if (mimeType.startsWith("video/")) return "VIDEO";
+        if (mimeType.startsWith("audio/")) return "AUDIO";
+        return "FILE";
+    }
+}
@@ -1,29 +1,56 @@
 package com.chatapp.server.service;
 
+import com.chatapp.server.config.ConfigLoader;
+
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class FileStorageService {
+    private static FileStorageService instance;
 
+    private final Path rootPath;
     private final String avatarStoragePath;
+    private final Path blobStoragePath;
+    private final Path tempStoragePath;
+    private final ReadWriteLock blobLock = new ReentrantReadWriteLock();
 
-    public FileStorageService(String avatarStoragePath) {
-        this.avatarStoragePath = avatarStoragePath;
+    private FileStorageService() {
+        this.rootPath = Paths.get(ConfigLoader.getInstance().getProperty("file.upload.dir", "uploads"));
+        this.avatarStoragePath = rootPath.resolve("avatars").toString();
+        this.blobStoragePath = rootPath.resolve("blobs");
+        this.tempStoragePath = rootPath.resolve("tmp");
         initializeStorage();
     }
 
+    public static FileStorageService getInstance() {
+        if (instance == null) {
+            synchronized (FileStorageService.class) {
+                if (instance == null) {
+                    instance = new FileStorageService();
+                }
+            }
+        }
+        return instance;
+    }
+
     private void initializeStorage() {
         try {
-            Path path = Paths.get(avatarStoragePath);
-            if (!Files.exists(path)) {
-                Files.createDirectories(path);
-                System.out.println("[FILE_STORAGE] Created avatar directory: " + avatarStoragePath);
+            for (Path path : new Path[]{Paths.get(avatarStoragePath), blobStoragePath, tempStoragePath}) {
+                if (!Files.exists(path)) {
+                    Files.createDirectories(path);
+                    System.out.println("[FILE_STORAGE] Created directory: " + path);
+                }
             }
         } catch (IOException e) {
-            System.err.println("[FILE_STORAGE] Failed to create avatar directory: " + e.getMessage());
+            System.err.println("[FILE_STORAGE] Failed to create storage directories: " + e.getMessage());
         }
     }
 
@@ -59,11 +86,101 @@ public class FileStorageService {
     }
 
     /**
-     * Lấy file data
+     * Đường dẫn file avatar theo URL (chỉ lấy tên file, không cho thoát khỏi thư mục avatars).
+     * Nội dung được gửi thẳng từ đĩa qua cổng truyền file, không đọc vào heap.
      */
-    public byte[] getFile(String avatarUrl) throws IOException {
+    public Path getAvatarPath(String avatarUrl) {
         String fileName = avatarUrl.substring(avatarUrl.lastIndexOf('/') + 1);
-        Path filePath = Paths.get(avatarStoragePath, fileName);
-        return Files.readAllBytes(filePath);
+        if (fileName.isEmpty() || fileName.startsWith(".") || fileName.contains("\\")) {
+            throw new IllegalArgumentException("Invalid avatar");
+        }
+        return Paths.get(avatarStoragePath, fileName);
+    }
+
+    /**
+     * Đường dẫn thumbnail của avatar ở một kích thước (avatars/thumbs/<tên>_<size>.jpg)
+     */
+    public Path getThumbnailPath(String avatarUrl, int size) {
+        String fileName = getAvatarPath(avatarUrl).getFileName().toString();
+        return Paths.get(avatarStoragePath, "thumbs", fileName + "_" + size + ".jpg");
+    }
+
+    /**
+     * File tạm (.part) của một phiên upload; kích thước file chính là offset đã nhận
+     */
+    public Path getTempPath(String uploadId) {
+        return tempStoragePath.resolve(uploadId + ".part");
+    }
+
+    /**
+     * Chuyển file tạm đã upload xong vào kho blob theo SHA-256 (blobs/ab/cd/abcd...).
+     * Nội dung đã có sẵn thì bỏ file tạm, không ghi thêm bản sao nào.
+     *
+     * @return đường dẫn lưu trữ tương đối so với thư mục upload
+     */
+    public String storeBlob(Path tempFile, String checksum) throws IOException {
+        Path target = blobPath(checksum);
+        Files.createDirectories(target.getParent());
+
+        if (Files.exists(target)) {
+            Files.deleteIfExists(tempFile);
+            // Làm mới thời gian sửa để janitor không dọn blob vừa được tham chiếu lại
+            Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+        } else {
+            try {
+                Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Upload khác cùng nội dung vừa hoàn tất trước
+                Files.deleteIfExists(tempFile);
+            }
+        }
+        return rootPath.relativize(target).toString().replace('\\', '/');
+    }
+
+    /**
+     * Khóa kho blob: đưa blob vào kho và tạo tham chiếu trong DB giữ read lock,
+     * StorageJanitor giữ write lock khi kiểm tra ref_count và xóa blob
+     */
+    public ReadWriteLock getBlobLock() {
+        return blobLock;
+    }
+
+    /**
+     * Blob đã tồn tại trên đĩa hay chưa
+     */
+    public boolean blobExists(String storagePath) {
+        return storagePath != null && Files.isRegularFile(resolve(storagePath));
+    }
+
+    /**
+     * Đường dẫn tuyệt đối của file theo đường dẫn lưu trữ trong DB
+     */
+    public Path resolve(String storagePath) {
+        return rootPath.resolve(storagePath);
+    }
+
+    public Path getAvatarDir() {
+        return Paths.get(avatarStoragePath);
+    }
+
+    public Path getThumbnailDir() {
+        return Paths.get(avatarStoragePath, "thumbs");
+    }
+
+    public Path getBlobDir() {
+        return blobStoragePath;
+    }
+
+    public Path getTempDir() {
+        return tempStoragePath;
+    }
+
+    private Path blobPath(String checksum) {
+        if (checksum == null || !checksum.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Invalid checksum");
+        }
+        return blobStoragePath.resolve(checksum.substring(0, 2))
+                .resolve(checksum.substring(2, 4))
+                .resolve(checksum);
     }
-}
\ No newline at end of file
+}
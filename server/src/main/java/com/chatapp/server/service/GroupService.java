@@ -0,0 +1,212 @@
+package com.chatapp.server.service;
+
+import com.chatapp.common.model.Group;
+import com.chatapp.common.protocol.MessageType;
+import com.chatapp.common.protocol.Packet;
+import com.chatapp.common.protocol.PacketBuilder;
+import com.chatapp.server.core.GroupMemberCache;
+import com.chatapp.server.database.dao.GroupDAO;
+import com.chatapp.server.util.Logger;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Service xử lý các thao tác liên quan đến nhóm chat
+ */
+public class GroupService {
+    private static GroupService instance;
+    private final GroupDAO groupDAO;
+    private final GroupMemberCache groupMemberCache;
+    private final Logger logger = Logger.getInstance();
+
+    private GroupService() {
+        this.groupDAO = new GroupDAO();
+        this.groupMemberCache = GroupMemberCache.getInstance();
+    }
+
+    public static GroupService getInstance() {
+        if (instance == null) {
+            synchronized (GroupService.class) {
+                if (instance == null) {
+                    instance = new GroupService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Xử lý tạo nhóm mới (người tạo là owner và tự động là thành viên).
+     * userId luôn lấy từ phiên đăng nhập của kết nối, không tin userId trong request.
+     */
+    public Packet handleCreateGroup(Packet request, Long userId) {
+        try {
+            if (userId == null) {
+                return PacketBuilder.create(MessageType.CREATE_GROUP_RESPONSE)
+                        .error("Not logged in")
+                        .build();
+            }
+            String name = request.getString("name");
+            List<Long> memberIds = request.getLongList("memberIds");
+
+            if (name == null || name.trim().isEmpty()) {
+                return PacketBuilder.create(MessageType.CREATE_GROUP_RESPONSE)
+                        .error("Missing required fields")
+                        .build();
+            }
+
+            List<Long> members = new ArrayList<>();
+            members.add(userId);
+            if (memberIds != null) {
+                for (Long memberId : memberIds) {
+                    if (!members.contains(memberId)) {
+                        members.add(memberId);
+                    }
+                }
+            }
+
+            Group group = groupDAO.createGroup(new Group(name.trim(), userId), members);
+
+            logger.info("Group created: " + group.getId() + " by user " + userId);
+
+            return PacketBuilder.create(MessageType.CREATE_GROUP_RESPONSE)
+                    .success(true)
+                    .put("group", group)
+                    .build();
+
+        } catch (SQLException e) {
+            logger.error("Database error while creating group: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.CREATE_GROUP_RESPONSE)
+                    .error("Database error: " + e.getMessage())
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error creating group: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.CREATE_GROUP_RESPONSE)
+                    .error("Server error: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Xử lý lấy danh sách nhóm của user
+     */
+    public Packet handleGetGroups(Packet request, Long userId) {
+        try {
+            if (userId == null) {
+                return PacketBuilder.create(MessageType.GET_GROUPS_RESPONSE)
+                        .error("Not logged in")
+                        .build();
+            }
+
+            List<Group> groups = groupDAO.findGroupsByUser(userId);
+
+            return PacketBuilder.create(MessageType.GET_GROUPS_RESPONSE)
+                    .success(true)
+                    .put("groups", groups)
+                    .put("count", groups.size())
+                    .build();
+
+        } catch (SQLException e) {
+            logger.error("Database error while getting groups: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.GET_GROUPS_RESPONSE)
+                    .error("Database error: " + e.getMessage())
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error getting groups: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.GET_GROUPS_RESPONSE)
+                    .error("Server error: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Xử lý thêm thành viên vào nhóm (chỉ thành viên hiện tại mới được thêm)
+     */
+    public Packet handleAddMembers(Packet request, Long userId) {
+        try {
+            if (userId == null) {
+                return PacketBuilder.create(MessageType.ADD_GROUP_MEMBERS_RESPONSE)
+                        .error("Not logged in")
+                        .build();
+            }
+            Long groupId = request.getLong("groupId");
+            List<Long> memberIds = request.getLongList("memberIds");
+
+            if (groupId == null || memberIds == null || memberIds.isEmpty()) {
+                return PacketBuilder.create(MessageType.ADD_GROUP_MEMBERS_RESPONSE)
+                        .error("Missing required fields")
+                        .build();
+            }
+
+            if (!groupMemberCache.isMember(groupId, userId)) {
+                return PacketBuilder.create(MessageType.ADD_GROUP_MEMBERS_RESPONSE)
+                        .error("Not a member of this group")
+                        .build();
+            }
+
+            groupDAO.addMembers(groupId, memberIds);
+            groupMemberCache.invalidate(groupId);
+
+            logger.info("Added " + memberIds.size() + " members to group " + groupId);
+
+            return PacketBuilder.create(MessageType.ADD_GROUP_MEMBERS_RESPONSE)
+                    .success(true)
+                    .put("message", "Members added successfully")
+                    .build();
+
+        } catch (SQLException e) {
+            logger.error("Database error while adding group members: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.ADD_GROUP_MEMBERS_RESPONSE)
+                    .error("Database error: " + e.getMessage())
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error adding group members: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.ADD_GROUP_MEMBERS_RESPONSE)
+                    .error("Server error: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Xử lý rời nhóm
+     */
+    public Packet handleLeaveGroup(Packet request, Long userId) {
+        try {
+            if (userId == null) {
+                return PacketBuilder.create(MessageType.LEAVE_GROUP_RESPONSE)
+                        .error("Not logged in")
+                        .build();
+            }
+            Long groupId = request.getLong("groupId");
+
+            if (groupId == null) {
+                return PacketBuilder.create(MessageType.LEAVE_GROUP_RESPONSE)
+                        .error("Missing required fields")
+                        .build();
+            }
+
+            groupDAO.removeMember(groupId, userId);
+            groupMemberCache.invalidate(groupId);
+
+            logger.info("User " + userId + " left group " + groupId);
+
+            return PacketBuilder.create(MessageType.LEAVE_GROUP_RESPONSE)
+                    .success(true)
+                    .put("message", "Left group successfully")
+                    .build();
+
+        } catch (SQLException e) {
+            logger.error("Database error while leaving group: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.LEAVE_GROUP_RESPONSE)
+                    .error("Database error: " + e.getMessage())
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error leaving group: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.LEAVE_GROUP_RESPONSE)
+                    .error("Server error: " + e.getMessage())
+                    .build();
+        }
+    }
+}
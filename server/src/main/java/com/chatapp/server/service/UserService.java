@@ -4,16 +4,23 @@ import com.chatapp.common.model.User;
 import com.chatapp.common.protocol.Packet;
 import com.chatapp.common.protocol.PacketBuilder;
 import com.chatapp.common.protocol.MessageType;
+import com.chatapp.server.core.AvatarThumbnails;
 import com.chatapp.server.database.dao.UserDAO;
 import com.chatapp.server.util.Logger;
 import org.mindrot.jbcrypt.BCrypt;
 
 import java.sql.SQLException;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -27,6 +34,7 @@ public class UserService {
     // Thư mục lưu avatar (có thể config trong file properties)
     private static final String AVATAR_UPLOAD_DIR = "uploads/avatars/";
     private static final long MAX_AVATAR_SIZE = 5 * 1024 * 1024; // 5MB
+    private static final int MAX_AVATAR_BATCH = 32;
 
     private UserService() {
         this.userDAO = new UserDAO();
@@ -253,15 +261,10 @@ public class UserService {
 
             // Tạo tên file unique
             String newFileName = userId + "_" + UUID.randomUUID() + "." + extension;
-            String filePath = AVATAR_UPLOAD_DIR + newFileName;
 
-            // Lưu file
-            try (FileOutputStream fos = new FileOutputStream(filePath)) {
-                fos.write(fileData);
-            }
-
-            // URL avatar (có thể là relative path hoặc full URL)
-            String avatarUrl = "/avatars/" + newFileName;
+            // Lưu file gốc (cùng thư mục với thumbnail), rồi sinh thumbnail ở nền
+            String avatarUrl = FileStorageService.getInstance().saveAvatar(fileData, newFileName);
+            AvatarThumbnails.getInstance().submit(avatarUrl);
 
             logger.info("Avatar uploaded successfully for user " + userId + ": " + avatarUrl);
 
@@ -325,6 +328,109 @@ public class UserService {
         }
     }
 
+    /**
+     * Lấy thumbnail avatar (40/96/256 px).
+     * Client gửi kèm etag đã cache; nếu trùng thì chỉ trả notModified, không gửi lại ảnh.
+     * Có thể xin nhiều ảnh trong một request: avatars là danh sách {avatarUrl, size, etag},
+     * response trả danh sách cùng thứ tự, ảnh nào lỗi thì mục đó có error.
+     */
+    public Packet handleGetAvatar(Packet request) {
+        try {
+            Object items = request.get("avatars");
+            if (items instanceof List) {
+                return handleGetAvatars((List<?>) items);
+            }
+
+            String avatarUrl = request.getString("avatarUrl");
+            Integer size = request.getInt("size");
+
+            if (avatarUrl == null) {
+                return PacketBuilder.create(MessageType.GET_AVATAR_RESPONSE)
+                        .error("Avatar URL is required")
+                        .build();
+            }
+
+            PacketBuilder response = PacketBuilder.create(MessageType.GET_AVATAR_RESPONSE).success(true);
+            loadAvatar(avatarUrl, size, request.getString("etag")).forEach(response::put);
+            return response.build();
+
+        } catch (IllegalArgumentException | NoSuchFileException e) {
+            return PacketBuilder.create(MessageType.GET_AVATAR_RESPONSE)
+                    .error("Avatar not found")
+                    .build();
+        } catch (IOException e) {
+            logger.error("IO error while loading avatar: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.GET_AVATAR_RESPONSE)
+                    .error("Failed to load avatar: " + e.getMessage())
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error loading avatar: " + e.getMessage(), e);
+            return PacketBuilder.create(MessageType.GET_AVATAR_RESPONSE)
+                    .error("Server error: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    private Packet handleGetAvatars(List<?> items) {
+        if (items.size() > MAX_AVATAR_BATCH) {
+            return PacketBuilder.create(MessageType.GET_AVATAR_RESPONSE)
+                    .error("Too many avatars in one request")
+                    .build();
+        }
+
+        List<Map<String, Object>> avatars = new ArrayList<>();
+        for (Object item : items) {
+            Map<?, ?> entry = item instanceof Map ? (Map<?, ?>) item : Collections.emptyMap();
+            Object url = entry.get("avatarUrl");
+            Object size = entry.get("size");
+            Object etag = entry.get("etag");
+            Map<String, Object> result;
+            try {
+                if (!(url instanceof String)) {
+                    throw new IllegalArgumentException("Avatar URL is required");
+                }
+                result = loadAvatar((String) url, size instanceof Number ? ((Number) size).intValue() : null,
+                        etag instanceof String ? (String) etag : null);
+            } catch (IllegalArgumentException | NoSuchFileException e) {
+                result = new HashMap<>();
+                result.put("avatarUrl", url);
+                result.put("size", size);
+                result.put("error", "Avatar not found");
+            } catch (IOException e) {
+                logger.error("IO error while loading avatar: " + e.getMessage(), e);
+                result = new HashMap<>();
+                result.put("avatarUrl", url);
+                result.put("size", size);
+                result.put("error", "Failed to load avatar: " + e.getMessage());
+            }
+            avatars.add(result);
+        }
+
+        return PacketBuilder.create(MessageType.GET_AVATAR_RESPONSE)
+                .success(true)
+                .put("avatars", avatars)
+                .build();
+    }
+
+    /**
+     * Một thumbnail: avatarUrl, size, etag và data (Base64) hoặc notModified nếu client đã có bản này
+     */
+    private Map<String, Object> loadAvatar(String avatarUrl, Integer size, String etag) throws IOException {
+        AvatarThumbnails.Thumbnail thumbnail = AvatarThumbnails.getInstance()
+                .get(avatarUrl, size != null ? size : AvatarThumbnails.SIZES[0]);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("avatarUrl", avatarUrl);
+        result.put("size", size);
+        result.put("etag", thumbnail.getEtag());
+        if (thumbnail.getEtag().equals(etag)) {
+            result.put("notModified", true);
+        } else {
+            result.put("data", Base64.getEncoder().encodeToString(thumbnail.getData()));
+        }
+        return result;
+    }
+
     /**
      * Xử lý cập nhật status
      */
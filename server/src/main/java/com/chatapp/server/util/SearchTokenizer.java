@@ -0,0 +1,70 @@
+package com.chatapp.server.util;
+
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Tách từ cho tìm kiếm tin nhắn.
+ * Bỏ dấu tiếng Việt ("Đà Nẵng" -> "da", "nang"), chuyển chữ thường,
+ * mỗi emoji được giữ lại thành một token riêng.
+ */
+public final class SearchTokenizer {
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private SearchTokenizer() {}
+
+    /**
+     * Bỏ dấu và chuyển chữ thường
+     */
+    public static String fold(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        return stripped.replace('đ', 'd').replace('Đ', 'D').toLowerCase();
+    }
+
+    /**
+     * Tách văn bản thành các term kèm số lần xuất hiện (giữ thứ tự xuất hiện đầu tiên)
+     */
+    public static Map<String, Integer> tokenize(String text) {
+        Map<String, Integer> terms = new LinkedHashMap<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+
+        String folded = fold(text);
+        StringBuilder word = new StringBuilder();
+
+        for (int i = 0; i < folded.length(); ) {
+            int codePoint = folded.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (Character.isLetterOrDigit(codePoint)) {
+                word.appendCodePoint(codePoint);
+                continue;
+            }
+
+            addTerm(terms, word);
+            if (isEmoji(codePoint)) {
+                terms.merge(new String(Character.toChars(codePoint)), 1, Integer::sum);
+            }
+        }
+        addTerm(terms, word);
+
+        return terms;
+    }
+
+    private static void addTerm(Map<String, Integer> terms, StringBuilder word) {
+        if (word.length() > 0) {
+            String term = word.length() > MAX_TERM_LENGTH ? word.substring(0, MAX_TERM_LENGTH) : word.toString();
+            terms.merge(term, 1, Integer::sum);
+            word.setLength(0);
+        }
+    }
+
+    private static boolean isEmoji(int codePoint) {
+        return Character.getType(codePoint) == Character.OTHER_SYMBOL;
+    }
+}
@@ -0,0 +1,128 @@
+package com.chatapp.server.core;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Đo CallRegistry không qua mạng (push chỉ đếm gói): nhiều thread liên tục dựng cuộc gọi giữa các cặp user.
+ * Mỗi vòng chọn ngẫu nhiên:
+ *   - 80%: gọi -> nghe -> gác máy
+ *   - 10%: gọi rồi bỏ đó, chờ timer wheel báo hết giờ đổ chuông
+ *   - 10%: hai bên gọi nhau cùng lúc (glare) -> gộp -> gác máy
+ * Mỗi giây in số lời gọi/giây, độ trễ request() p50/p99, số cuộc gọi đang mở, hết giờ, glare, bận.
+ *
+ * Cách chạy: java ... com.chatapp.server.core.CallRegistryBenchmark [số thread] [số giây] [ring timeout ms]
+ */
+public class CallRegistryBenchmark {
+    private static final int USERS_PER_THREAD = 20_000;
+    private static final int LATENCY_BUCKETS = 10_000;
+
+    private static final LongAdder requests = new LongAdder();
+    private static final LongAdder busy = new LongAdder();
+    private static final LongAdder pushes = new LongAdder();
+    private static final long[][] latencies = new long[64][];
+    private static volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long ringTimeoutMs = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+
+        CallRegistry registry = new CallRegistry((userId, packet) -> {
+            pushes.increment();
+            return true;
+        }, ringTimeoutMs);
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long[] histogram = new long[LATENCY_BUCKETS];
+            latencies[t] = histogram;
+            long firstUser = (long) t * USERS_PER_THREAD + 1;
+            workers[t] = new Thread(() -> work(registry, firstUser, histogram), "call-bench-" + t);
+            workers[t].setDaemon(true);
+            workers[t].start();
+        }
+
+        long lastRequests = 0;
+        for (int second = 1; second <= seconds; second++) {
+            Thread.sleep(1000);
+            long total = requests.sum();
+            long[] merged = new long[LATENCY_BUCKETS];
+            for (int t = 0; t < threads; t++) {
+                synchronized (latencies[t]) {
+                    for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                        merged[i] += latencies[t][i];
+                        latencies[t][i] = 0;
+                    }
+                }
+            }
+            System.out.printf("[%2ds] requests=%d/s p50=%dus p99=%dus | active=%d connected=%d timeouts=%d " +
+                            "glares=%d busy=%d pushes=%d%n",
+                    second, total - lastRequests, percentile(merged, 0.50), percentile(merged, 0.99),
+                    registry.getActiveCalls(), registry.getCallsConnected(), registry.getRingTimeouts(),
+                    registry.getGlares(), busy.sum(), pushes.sum());
+            lastRequests = total;
+        }
+
+        running = false;
+        registry.shutdown();
+    }
+
+    private static void work(CallRegistry registry, long firstUser, long[] histogram) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long sequence = 0;
+        while (running) {
+            long caller = firstUser + random.nextInt(USERS_PER_THREAD);
+            long callee = firstUser + random.nextInt(USERS_PER_THREAD);
+            if (caller == callee) {
+                continue;
+            }
+            String callId = Thread.currentThread().getName() + "-" + sequence++;
+            int scenario = random.nextInt(10);
+
+            try {
+                long start = System.nanoTime();
+                CallRegistry.Call call = registry.request(caller, callee, callId, true, "127.0.0.1", 5000);
+                record(histogram, System.nanoTime() - start);
+                requests.increment();
+
+                if (scenario == 0) {
+                    continue; // Để hết giờ đổ chuông
+                }
+                if (scenario == 1) {
+                    // Bên kia cũng gọi lại ngay: được gộp vào cuộc gọi đang đổ chuông
+                    start = System.nanoTime();
+                    registry.request(callee, caller, callId + "-glare", true, "127.0.0.2", 5002);
+                    record(histogram, System.nanoTime() - start);
+                    requests.increment();
+                } else {
+                    registry.accept(callee, call.getCallId(), "127.0.0.2", 5002);
+                }
+                registry.end(caller, call.getCallId(), "hangup");
+            } catch (IllegalStateException e) {
+                busy.increment();
+            }
+        }
+    }
+
+    private static void record(long[] histogram, long nanos) {
+        int bucket = (int) Math.min(LATENCY_BUCKETS - 1, nanos / 1000);
+        synchronized (histogram) {
+            histogram[bucket]++;
+        }
+    }
+
+    private static long percentile(long[] histogram, double fraction) {
+        long total = 0;
+        for (long count : histogram) total += count;
+        long target = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= target && seen > 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
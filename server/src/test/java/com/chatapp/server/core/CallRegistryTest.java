@@ -0,0 +1,197 @@
+package com.chatapp.server.core;
+
+import com.chatapp.common.protocol.MessageType;
+import com.chatapp.common.protocol.Packet;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CallRegistryTest {
+
+    /** Gói đã đẩy cho từng user; user trong offline thì send() trả false */
+    private static class RecordingPush implements CallRegistry.Push {
+        final List<Long> targets = new CopyOnWriteArrayList<>();
+        final List<Packet> packets = new CopyOnWriteArrayList<>();
+        final Set<Long> offline = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public boolean send(long userId, Packet packet) {
+            if (offline.contains(userId)) {
+                return false;
+            }
+            targets.add(userId);
+            packets.add(packet);
+            return true;
+        }
+
+        Packet last(long userId, MessageType type) {
+            Packet found = null;
+            for (int i = 0; i < packets.size(); i++) {
+                if (targets.get(i) == userId && packets.get(i).getType() == type) {
+                    found = packets.get(i);
+                }
+            }
+            return found;
+        }
+    }
+
+    private final RecordingPush push = new RecordingPush();
+    private CallRegistry registry;
+
+    @After
+    public void shutdown() {
+        if (registry != null) {
+            registry.shutdown();
+        }
+    }
+
+    @Test
+    public void requestRingsCalleeAndAcceptConnects() {
+        registry = new CallRegistry(push, 60_000);
+        CallRegistry.Call call = registry.request(1, 2, "c1", false, "10.0.0.1", 5000);
+
+        assertEquals(CallRegistry.State.RINGING, call.getState());
+        assertEquals("c1", push.last(2, MessageType.CALL_REQUEST).getString("callId"));
+
+        assertTrue(registry.accept(2, "c1", "10.0.0.2", 6000));
+        assertEquals(CallRegistry.State.CONNECTED, call.getState());
+        assertEquals(Integer.valueOf(6000), push.last(1, MessageType.CALL_ACCEPT).getInt("mediaPort"));
+        assertFalse(registry.accept(2, "c1", "10.0.0.2", 6000));
+    }
+
+    @Test
+    public void glareMergesIntoTheRingingCall() {
+        registry = new CallRegistry(push, 60_000);
+        CallRegistry.Call first = registry.request(1, 2, "c1", false, "10.0.0.1", 5000);
+
+        CallRegistry.Call merged = registry.request(2, 1, "c2", false, "10.0.0.2", 6000);
+
+        assertSame(first, merged);
+        assertEquals(CallRegistry.State.CONNECTED, merged.getState());
+        assertEquals("10.0.0.2", merged.getCalleeHost());
+        assertEquals("c1", push.last(1, MessageType.CALL_ACCEPT).getString("callId"));
+        assertEquals(1, registry.getGlares());
+        assertEquals(1, registry.getActiveCalls());
+    }
+
+    @Test
+    public void busyPeerIsRejected() {
+        registry = new CallRegistry(push, 60_000);
+        registry.request(1, 2, "c1", false, "h", 1);
+
+        try {
+            registry.request(3, 2, "c2", false, "h", 1);
+            fail("Expected peer busy");
+        } catch (IllegalStateException e) {
+            assertEquals("Peer busy", e.getMessage());
+        }
+        assertNull(registry.getCall(3));
+    }
+
+    @Test
+    public void offlineCalleeReleasesBothUsers() {
+        registry = new CallRegistry(push, 60_000);
+        push.offline.add(2L);
+
+        try {
+            registry.request(1, 2, "c1", false, "h", 1);
+            fail("Expected peer offline");
+        } catch (IllegalStateException e) {
+            assertEquals("Peer offline", e.getMessage());
+        }
+        assertNull(registry.getCall(1));
+        assertNull(registry.getCall(2));
+        assertEquals(0, registry.getActiveCalls());
+    }
+
+    @Test
+    public void ringTimeoutEndsCallAndNotifiesBothSides() throws Exception {
+        registry = new CallRegistry(push, 100);
+        CallRegistry.Call call = registry.request(1, 2, "c1", false, "h", 1);
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (call.getState() != CallRegistry.State.ENDED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(CallRegistry.State.ENDED, call.getState());
+        assertEquals("timeout", call.getEndReason());
+        assertEquals(1, registry.getRingTimeouts());
+        assertEquals("no-answer", push.last(1, MessageType.CALL_END).getString("reason"));
+        assertEquals("timeout", push.last(2, MessageType.CALL_END).getString("reason"));
+        assertNull(registry.getCall(1));
+        assertNull(registry.getCall(2));
+    }
+
+    @Test
+    public void acceptedCallIsNotTimedOut() throws Exception {
+        registry = new CallRegistry(push, 100);
+        CallRegistry.Call call = registry.request(1, 2, "c1", false, "h", 1);
+        assertTrue(registry.accept(2, "c1", "h", 2));
+
+        Thread.sleep(400);
+
+        assertEquals(CallRegistry.State.CONNECTED, call.getState());
+        assertEquals(0, registry.getRingTimeouts());
+        assertNull(push.last(1, MessageType.CALL_END));
+    }
+
+    @Test
+    public void hangupNotifiesPeerAndFreesUsers() {
+        registry = new CallRegistry(push, 60_000);
+        registry.request(1, 2, "c1", false, "h", 1);
+        registry.accept(2, "c1", "h", 2);
+
+        registry.end(1, "c1", null);
+
+        assertEquals("hangup", push.last(2, MessageType.CALL_END).getString("reason"));
+        assertNull(registry.getCall(1));
+        assertNull(registry.getCall(2));
+    }
+
+    @Test
+    public void summaryIsAcceptedOncePerParticipantAfterTheCallEnds() {
+        registry = new CallRegistry(push, 60_000);
+        registry.request(1, 2, "c1", false, "h", 1);
+        registry.accept(2, "c1", "h", 2);
+        registry.end(1, "c1", null);
+
+        assertTrue(registry.claimSummary(1, "c1"));
+        assertTrue(registry.claimSummary(2, "c1"));
+        assertFalse(registry.claimSummary(1, "c1"));
+        assertFalse(registry.claimSummary(2, "c1"));
+    }
+
+    @Test
+    public void summaryFromOutsiderOrUnknownCallIsRejected() {
+        registry = new CallRegistry(push, 60_000);
+        registry.request(1, 2, "c1", false, "h", 1);
+
+        assertFalse(registry.claimSummary(3, "c1"));
+        assertFalse(registry.claimSummary(1, "c2"));
+        assertTrue(registry.claimSummary(1, "c1"));
+    }
+
+    @Test
+    public void endedCallIsForgottenAfterTheSummaryWindow() throws Exception {
+        registry = new CallRegistry(push, 60_000, 100);
+        registry.request(1, 2, "c1", false, "h", 1);
+        registry.end(1, "c1", null);
+        assertTrue(registry.claimSummary(2, "c1"));
+
+        Thread.sleep(400);
+
+        assertFalse(registry.claimSummary(1, "c1"));
+    }
+}
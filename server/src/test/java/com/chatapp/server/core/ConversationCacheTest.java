@@ -0,0 +1,134 @@
+package com.chatapp.server.core;
+
+import com.chatapp.common.model.Message;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ConversationCacheTest {
+    private static final String CONVERSATION = "1_2";
+
+    private static Message message(long seq) {
+        Message message = new Message();
+        message.setConversationId(CONVERSATION);
+        message.setSequence(seq);
+        return message;
+    }
+
+    private static List<Message> range(long fromSeq, long toSeq) {
+        List<Message> messages = new ArrayList<>();
+        for (long seq = fromSeq; seq <= toSeq; seq++) {
+            messages.add(message(seq));
+        }
+        return messages;
+    }
+
+    private static List<Long> seqs(List<Message> messages) {
+        List<Long> result = new ArrayList<>();
+        for (Message message : messages) {
+            result.add(message.getSequence());
+        }
+        return result;
+    }
+
+    private static List<Long> seqRange(long fromSeq, long toSeq) {
+        return seqs(range(fromSeq, toSeq));
+    }
+
+    @Test
+    public void unknownConversationIsAMiss() {
+        ConversationCache cache = new ConversationCache(10, 5);
+
+        assertNull(cache.getBefore(CONVERSATION, Long.MAX_VALUE, 5));
+        assertNull(cache.getAfter(CONVERSATION, 0, 5));
+    }
+
+    @Test
+    public void completeHistoryServesShortPages() {
+        ConversationCache cache = new ConversationCache(10, 5);
+        cache.seed(CONVERSATION, range(1, 3), true);
+
+        assertEquals(seqRange(1, 3), seqs(cache.getBefore(CONVERSATION, Long.MAX_VALUE, 10)));
+        assertEquals(seqRange(2, 3), seqs(cache.getAfter(CONVERSATION, 1, 10)));
+    }
+
+    @Test
+    public void partialHistoryMissesWhenPageReachesBelowFloor() {
+        ConversationCache cache = new ConversationCache(10, 5);
+        cache.seed(CONVERSATION, range(6, 10), false);
+
+        assertEquals(seqRange(8, 10), seqs(cache.getBefore(CONVERSATION, Long.MAX_VALUE, 3)));
+        assertNull(cache.getBefore(CONVERSATION, 8, 3));
+        assertNull(cache.getAfter(CONVERSATION, 2, 3));
+    }
+
+    @Test
+    public void appendEvictsOldestAndRaisesFloor() {
+        ConversationCache cache = new ConversationCache(10, 5);
+        cache.seed(CONVERSATION, range(1, 5), true);
+        cache.append(message(6));
+        cache.append(message(7));
+
+        assertEquals(seqRange(3, 7), seqs(cache.getBefore(CONVERSATION, Long.MAX_VALUE, 5)));
+        assertNull(cache.getBefore(CONVERSATION, 3, 1));
+    }
+
+    @Test
+    public void outOfOrderAppendIsInsertedInPlace() {
+        ConversationCache cache = new ConversationCache(10, 10);
+        cache.seed(CONVERSATION, range(1, 2), true);
+        cache.append(message(4));
+        cache.append(message(3));
+
+        assertEquals(seqRange(1, 4), seqs(cache.getBefore(CONVERSATION, Long.MAX_VALUE, 10)));
+    }
+
+    @Test
+    public void seedMergesIntoTailCreatedByAppend() {
+        // append() tới trong lúc đang đọc trang mới nhất ở DB: tail mới chỉ đủ từ seq 11
+        ConversationCache cache = new ConversationCache(10, 20);
+        cache.append(message(11));
+        cache.seed(CONVERSATION, range(1, 10), true);
+
+        assertEquals(seqRange(1, 11), seqs(cache.getBefore(CONVERSATION, Long.MAX_VALUE, 20)));
+        assertEquals(seqRange(1, 11), seqs(cache.getAfter(CONVERSATION, 0, 20)));
+    }
+
+    @Test
+    public void seedMergeKeepsNewestWhenOverCapacity() {
+        ConversationCache cache = new ConversationCache(10, 5);
+        cache.append(message(9));
+        cache.append(message(10));
+        cache.seed(CONVERSATION, range(3, 8), false);
+
+        assertEquals(seqRange(6, 10), seqs(cache.getBefore(CONVERSATION, Long.MAX_VALUE, 5)));
+        assertNull(cache.getBefore(CONVERSATION, 6, 1));
+    }
+
+    @Test
+    public void seedWithGapDoesNotMerge() {
+        // Trang DB dừng ở 5 nhưng tail bắt đầu từ 8: thiếu 6, 7 nên không được gộp
+        ConversationCache cache = new ConversationCache(10, 20);
+        cache.append(message(8));
+        cache.seed(CONVERSATION, range(1, 5), true);
+
+        assertEquals(seqRange(8, 8), seqs(cache.getBefore(CONVERSATION, Long.MAX_VALUE, 1)));
+        assertNull(cache.getBefore(CONVERSATION, Long.MAX_VALUE, 2));
+    }
+
+    @Test
+    public void leastRecentlyUsedConversationIsEvicted() {
+        ConversationCache cache = new ConversationCache(2, 5);
+        cache.seed("a", range(1, 1), true);
+        cache.seed("b", range(1, 1), true);
+        cache.getAfter("a", 0, 1);
+        cache.seed("c", range(1, 1), true);
+
+        assertEquals(1, cache.getAfter("a", 0, 1).size());
+        assertNull(cache.getAfter("b", 0, 1));
+    }
+}
@@ -0,0 +1,86 @@
+package com.chatapp.server.core;
+
+import com.chatapp.server.database.dao.SequenceDAO;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SequenceAllocatorTest {
+
+    /** Giả lập bảng conversation_sequences trong RAM, đếm số lần đặt block */
+    private static class FakeSequenceDAO extends SequenceDAO {
+        final ConcurrentHashMap<String, AtomicLong> highWater = new ConcurrentHashMap<>();
+        final AtomicLong reservations = new AtomicLong();
+
+        @Override
+        public long reserveBlock(String conversationId, int blockSize) {
+            reservations.incrementAndGet();
+            return highWater.computeIfAbsent(conversationId, id -> new AtomicLong()).addAndGet(blockSize);
+        }
+    }
+
+    @Test
+    public void sequencesIncreaseAndReserveOneBlockAtATime() throws Exception {
+        FakeSequenceDAO dao = new FakeSequenceDAO();
+        SequenceAllocator allocator = new SequenceAllocator(dao, 10);
+
+        for (long expected = 1; expected <= 25; expected++) {
+            assertEquals(expected, allocator.next("c1"));
+        }
+        assertEquals(3, dao.reservations.get());
+    }
+
+    @Test
+    public void conversationsHaveIndependentSequences() throws Exception {
+        SequenceAllocator allocator = new SequenceAllocator(new FakeSequenceDAO(), 10);
+
+        assertEquals(1, allocator.next("a"));
+        assertEquals(2, allocator.next("a"));
+        assertEquals(1, allocator.next("b"));
+        assertEquals(3, allocator.next("a"));
+    }
+
+    @Test
+    public void restartSkipsRestOfBlockButStaysIncreasing() throws Exception {
+        FakeSequenceDAO dao = new FakeSequenceDAO();
+        SequenceAllocator before = new SequenceAllocator(dao, 10);
+        before.next("c1");
+        before.next("c1");
+
+        SequenceAllocator after = new SequenceAllocator(dao, 10);
+        assertEquals(11, after.next("c1"));
+    }
+
+    @Test
+    public void concurrentCallersNeverShareASequence() throws Exception {
+        SequenceAllocator allocator = new SequenceAllocator(new FakeSequenceDAO(), 7);
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 1000; i++) {
+                        assertTrue(seen.add(allocator.next("c1")));
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8000, seen.size());
+        assertEquals(8001, allocator.next("c1"));
+    }
+}
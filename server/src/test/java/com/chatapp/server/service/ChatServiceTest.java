@@ -0,0 +1,59 @@
+package com.chatapp.server.service;
+
+import com.chatapp.common.model.Message;
+import com.chatapp.server.database.dao.FileDAO;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ChatServiceTest {
+
+    /** Chỉ user 1 có quyền với file 10; ghi lại các lần kiểm tra */
+    private static class FakeFileDAO extends FileDAO {
+        final List<long[]> checks = new ArrayList<>();
+
+        @Override
+        public boolean canAccess(Long fileId, Long userId) {
+            checks.add(new long[]{fileId, userId});
+            return fileId == 10L && userId == 1L;
+        }
+    }
+
+    @Test
+    public void spoofedFileIdIsRejectedBeforeTheMessageIsSaved() throws Exception {
+        FakeFileDAO fileDAO = new FakeFileDAO();
+        ChatService chatService = new ChatService(fileDAO);
+
+        try {
+            // User 2 gửi cho chính mình một file của user 1 để lấy quyền tải
+            chatService.sendMessage(2L, 2L, "cmid-1", "x", Message.MessageType.FILE, 10L);
+            fail("Expected the attachment to be rejected");
+        } catch (IllegalStateException e) {
+            assertEquals("File not found", e.getMessage());
+        }
+
+        assertEquals(1, fileDAO.checks.size());
+        assertEquals(10L, fileDAO.checks.get(0)[0]);
+        assertEquals(2L, fileDAO.checks.get(0)[1]);
+    }
+
+    @Test
+    public void retransmitOfRejectedMessageIsCheckedAgain() throws Exception {
+        FakeFileDAO fileDAO = new FakeFileDAO();
+        ChatService chatService = new ChatService(fileDAO);
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                chatService.sendMessage(3L, 1L, "cmid-2", "x", Message.MessageType.FILE, 10L);
+                fail("Expected the attachment to be rejected");
+            } catch (IllegalStateException e) {
+                assertEquals("File not found", e.getMessage());
+            }
+        }
+        assertEquals(2, fileDAO.checks.size());
+    }
+}
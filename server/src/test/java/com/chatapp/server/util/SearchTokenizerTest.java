@@ -0,0 +1,62 @@
+package com.chatapp.server.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SearchTokenizerTest {
+
+    @Test
+    public void foldStripsVietnameseMarksAndLowercases() {
+        assertEquals("da nang", SearchTokenizer.fold("Đà Nẵng"));
+        assertEquals("tieng viet co dau", SearchTokenizer.fold("Tiếng Việt có dấu"));
+    }
+
+    @Test
+    public void tokenizeSplitsOnPunctuationAndCountsTerms() {
+        Map<String, Integer> terms = SearchTokenizer.tokenize("Hẹn gặp ở Đà Nẵng, đà nẵng nhé!");
+
+        assertEquals(Arrays.asList("hen", "gap", "o", "da", "nang", "nhe"), new ArrayList<>(terms.keySet()));
+        assertEquals(Integer.valueOf(2), terms.get("da"));
+        assertEquals(Integer.valueOf(2), terms.get("nang"));
+        assertEquals(Integer.valueOf(1), terms.get("hen"));
+    }
+
+    @Test
+    public void emojiBecomesItsOwnToken() {
+        Map<String, Integer> terms = SearchTokenizer.tokenize("ok👍👍 xong");
+
+        assertEquals(Arrays.asList("ok", "👍", "xong"), new ArrayList<>(terms.keySet()));
+        assertEquals(Integer.valueOf(2), terms.get("👍"));
+    }
+
+    @Test
+    public void digitsStayInsideTerms() {
+        Map<String, Integer> terms = SearchTokenizer.tokenize("phòng A203 lúc 9h30");
+
+        assertTrue(terms.containsKey("a203"));
+        assertTrue(terms.containsKey("9h30"));
+    }
+
+    @Test
+    public void longTermsAreTruncated() {
+        char[] word = new char[100];
+        Arrays.fill(word, 'a');
+        Map<String, Integer> terms = SearchTokenizer.tokenize(new String(word));
+
+        assertEquals(1, terms.size());
+        assertEquals(64, terms.keySet().iterator().next().length());
+    }
+
+    @Test
+    public void emptyOrNullTextHasNoTerms() {
+        assertTrue(SearchTokenizer.tokenize(null).isEmpty());
+        assertTrue(SearchTokenizer.tokenize("").isEmpty());
+        assertTrue(SearchTokenizer.tokenize("  ...  ").isEmpty());
+    }
+}